@@ -19,9 +19,11 @@
 
 package io.hydramq;
 
+import java.nio.file.Path;
 import java.util.concurrent.CompletableFuture;
 
 import io.hydramq.network.server.HydraServerTransport;
+import io.hydramq.network.server.PartitionExecutorGroup;
 import io.hydramq.network.server.ProtocolSelector;
 import io.hydramq.network.server.TopicManagerProtocol;
 import io.hydramq.network.server.TopicProtocol;
@@ -32,19 +34,49 @@ import io.hydramq.network.server.TopicProtocol;
 public class HydraServer {
 
     private HydraServerTransport transport;
+    private PartitionExecutorGroup partitionExecutors = new PartitionExecutorGroup();
+    private TopicProtocol topicProtocol;
 
     public HydraServer(TopicManager topicManager, int port) {
         ProtocolSelector protocolSelector = new ProtocolSelector();
-        protocolSelector.addProtocol(new TopicProtocol(topicManager));
+        topicProtocol = new TopicProtocol(topicManager, partitionExecutors);
+        protocolSelector.addProtocol(topicProtocol);
         protocolSelector.addProtocol(new TopicManagerProtocol(topicManager));
         transport = new HydraServerTransport(protocolSelector, port);
     }
 
+    /**
+     * Sets the number of writes each connection may have unacknowledged.
+     */
+    public HydraServer writeWindow(int writeWindow) {
+        topicProtocol.writeWindow(writeWindow);
+        return this;
+    }
+
+    /**
+     * Also accepts connections on a Unix domain socket at the given path, for clients on the same host.
+     */
+    public HydraServer domainSocket(Path socketPath) {
+        transport.domainSocket(socketPath);
+        return this;
+    }
+
+    /**
+     * Also accepts in-VM connections at the given local name, for clients embedding the server, which skip the network
+     * and the encoding of commands and messages.
+     *
+     * @see io.hydramq.TopicManagers#local(String)
+     */
+    public HydraServer local(String localName) {
+        transport.local(localName);
+        return this;
+    }
+
     public CompletableFuture<Integer> start() {
         return transport.start();
     }
 
     public CompletableFuture<Void> stop() {
-        return transport.stop();
+        return transport.stop().thenRun(partitionExecutors::close);
     }
 }
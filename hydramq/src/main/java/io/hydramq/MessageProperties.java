@@ -19,19 +19,30 @@
 
 package io.hydramq;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import io.hydramq.exceptions.HydraRuntimeException;
+import io.hydramq.internal.util.Assert;
 
 /**
  * @author jfulton
  */
 public class MessageProperties {
 
-    private Map<Class<?>, Map<String, Object>> propertyMaps = new HashMap<>();
+    // Entries live in parallel arrays, so a property costs no more than its key and, for Strings and byte[], its value.
+    // Small sets, the common case, are scanned linearly; larger ones are indexed by an open-addressing table of entry
+    // numbers.
+    private static final int LINEAR_SCAN_LIMIT = 8;
+    private int size = 0;
+    private String[] keys = new String[4];
+    private Class<?>[] types = new Class<?>[4];
+    private long[] primitives = new long[4];
+    private Object[] objects = new Object[4];
+    private int[] table;
 
     // Get values with defaults
 
@@ -44,51 +55,53 @@ public class MessageProperties {
     }
 
     public boolean getBoolean(String key, boolean defaultValue) {
-        return getValue(Boolean.class, key, defaultValue);
+        return getPrimitive(Boolean.class, key, defaultValue ? 1L : 0L) != 0;
     }
 
     public boolean getBoolean(PropertyKey key, boolean defaultValue) {
-        return getValue(Boolean.class, key.toString(), defaultValue);
+        return getPrimitive(Boolean.class, key.toString(), defaultValue ? 1L : 0L) != 0;
     }
 
     public short getShort(String key, short defaultValue) {
-        return getValue(Short.class, key, defaultValue);
+        return (short) getPrimitive(Short.class, key, defaultValue);
     }
 
     public short getShort(PropertyKey key, short defaultValue) {
-        return getValue(Short.class, key.toString(), defaultValue);
+        return (short) getPrimitive(Short.class, key.toString(), defaultValue);
     }
 
     public int getInteger(String key, int defaultValue) {
-        return getValue(Integer.class, key, defaultValue);
+        return (int) getPrimitive(Integer.class, key, defaultValue);
     }
 
     public int getInteger(PropertyKey key, int defaultValue) {
-        return getValue(Integer.class, key.toString(), defaultValue);
+        return (int) getPrimitive(Integer.class, key.toString(), defaultValue);
     }
 
     public long getLong(String key, long defaultValue) {
-        return getValue(Long.class, key, defaultValue);
+        return getPrimitive(Long.class, key, defaultValue);
     }
 
     public long getLong(PropertyKey key, long defaultValue) {
-        return getValue(Long.class, key.toString(), defaultValue);
+        return getPrimitive(Long.class, key.toString(), defaultValue);
     }
 
     public float getFloat(String key, float defaultValue) {
-        return getValue(Float.class, key, defaultValue);
+        return Float.intBitsToFloat((int) getPrimitive(Float.class, key, Float.floatToRawIntBits(defaultValue)));
     }
 
     public float getFloat(PropertyKey key, float defaultValue) {
-        return getValue(Float.class, key.toString(), defaultValue);
+        return Float.intBitsToFloat(
+                (int) getPrimitive(Float.class, key.toString(), Float.floatToRawIntBits(defaultValue)));
     }
 
     public double getDouble(String key, double defaultValue) {
-        return getValue(Double.class, key, defaultValue);
+        return Double.longBitsToDouble(getPrimitive(Double.class, key, Double.doubleToRawLongBits(defaultValue)));
     }
 
     public double getDouble(PropertyKey key, double defaultValue) {
-        return getValue(Double.class, key.toString(), defaultValue);
+        return Double.longBitsToDouble(
+                getPrimitive(Double.class, key.toString(), Double.doubleToRawLongBits(defaultValue)));
     }
 
     public byte[] getBytes(String key, byte[] defaultValue) {
@@ -100,11 +113,11 @@ public class MessageProperties {
     }
 
     public byte getByte(String key, byte defaultValue) {
-        return getValue(Byte.class, key, defaultValue);
+        return (byte) getPrimitive(Byte.class, key, defaultValue);
     }
 
     public byte getByte(PropertyKey key, byte defaultValue) {
-        return getValue(Byte.class, key.toString(), defaultValue);
+        return (byte) getPrimitive(Byte.class, key.toString(), defaultValue);
     }
 
     // Get values, exception if not exists
@@ -118,51 +131,51 @@ public class MessageProperties {
     }
 
     public boolean getBoolean(String key) {
-        return getValue(Boolean.class, key);
+        return getPrimitive(Boolean.class, key) != 0;
     }
 
     public boolean getBoolean(PropertyKey key) {
-        return getValue(Boolean.class, key.toString());
+        return getPrimitive(Boolean.class, key.toString()) != 0;
     }
 
     public short getShort(String key) {
-        return getValue(Short.class, key);
+        return (short) getPrimitive(Short.class, key);
     }
 
     public short getShort(PropertyKey key) {
-        return getValue(Short.class, key.toString());
+        return (short) getPrimitive(Short.class, key.toString());
     }
 
     public int getInteger(String key) {
-        return getValue(Integer.class, key);
+        return (int) getPrimitive(Integer.class, key);
     }
 
     public int getInteger(PropertyKey key) {
-        return getValue(Integer.class, key.toString());
+        return (int) getPrimitive(Integer.class, key.toString());
     }
 
     public long getLong(String key) {
-        return getValue(Long.class, key);
+        return getPrimitive(Long.class, key);
     }
 
     public long getLong(PropertyKey key) {
-        return getValue(Long.class, key.toString());
+        return getPrimitive(Long.class, key.toString());
     }
 
     public float getFloat(String key) {
-        return getValue(Float.class, key);
+        return Float.intBitsToFloat((int) getPrimitive(Float.class, key));
     }
 
     public float getFloat(PropertyKey key) {
-        return getValue(Float.class, key.toString());
+        return Float.intBitsToFloat((int) getPrimitive(Float.class, key.toString()));
     }
 
     public double getDouble(String key) {
-        return getValue(Double.class, key);
+        return Double.longBitsToDouble(getPrimitive(Double.class, key));
     }
 
     public double getDouble(PropertyKey key) {
-        return getValue(Double.class, key.toString());
+        return Double.longBitsToDouble(getPrimitive(Double.class, key.toString()));
     }
 
     public byte[] getBytes(String key) {
@@ -174,11 +187,11 @@ public class MessageProperties {
     }
 
     public byte getByte(String key) {
-        return getValue(Byte.class, key);
+        return (byte) getPrimitive(Byte.class, key);
     }
 
     public byte getByte(PropertyKey key) {
-        return getValue(Byte.class, key.toString());
+        return (byte) getPrimitive(Byte.class, key.toString());
     }
 
     // Set values
@@ -194,63 +207,63 @@ public class MessageProperties {
     }
 
     public MessageProperties setBoolean(String key, boolean value) {
-        setValue(Boolean.class, key, value);
+        setPrimitive(Boolean.class, key, value ? 1L : 0L);
         return this;
     }
 
     public MessageProperties setBoolean(PropertyKey key, boolean value) {
-        setValue(Boolean.class, key.toString(), value);
+        setPrimitive(Boolean.class, key.toString(), value ? 1L : 0L);
         return this;
     }
 
     public MessageProperties setShort(String key, short value) {
-        setValue(Short.class, key, value);
+        setPrimitive(Short.class, key, value);
         return this;
     }
 
     public MessageProperties setShort(PropertyKey key, short value) {
-        setValue(Short.class, key.toString(), value);
+        setPrimitive(Short.class, key.toString(), value);
         return this;
     }
 
 
     public MessageProperties setInteger(String key, int value) {
-        setValue(Integer.class, key, value);
+        setPrimitive(Integer.class, key, value);
         return this;
     }
 
     public MessageProperties setInteger(PropertyKey key, int value) {
-        setValue(Integer.class, key.toString(), value);
+        setPrimitive(Integer.class, key.toString(), value);
         return this;
     }
 
     public MessageProperties setLong(String key, long value) {
-        setValue(Long.class, key, value);
+        setPrimitive(Long.class, key, value);
         return this;
     }
 
     public MessageProperties setLong(PropertyKey key, long value) {
-        setValue(Long.class, key.toString(), value);
+        setPrimitive(Long.class, key.toString(), value);
         return this;
     }
 
     public MessageProperties setFloat(String key, float value) {
-        setValue(Float.class, key, value);
+        setPrimitive(Float.class, key, Float.floatToRawIntBits(value));
         return this;
     }
 
     public MessageProperties setFloat(PropertyKey key, float value) {
-        setValue(Float.class, key.toString(), value);
+        setPrimitive(Float.class, key.toString(), Float.floatToRawIntBits(value));
         return this;
     }
 
     public MessageProperties setDouble(String key, double value) {
-        setValue(Double.class, key, value);
+        setPrimitive(Double.class, key, Double.doubleToRawLongBits(value));
         return this;
     }
 
     public MessageProperties setDouble(PropertyKey key, double value) {
-        setValue(Double.class, key.toString(), value);
+        setPrimitive(Double.class, key.toString(), Double.doubleToRawLongBits(value));
         return this;
     }
 
@@ -265,12 +278,12 @@ public class MessageProperties {
     }
 
     public MessageProperties setByte(String key, byte b) {
-        setValue(Byte.class, key, b);
+        setPrimitive(Byte.class, key, b);
         return this;
     }
 
     public MessageProperties setByte(PropertyKey key, byte b) {
-        setValue(Byte.class, key.toString(), b);
+        setPrimitive(Byte.class, key.toString(), b);
         return this;
     }
 
@@ -467,28 +480,28 @@ public class MessageProperties {
         return this;
     }
 
-    // Generic utilities
+    // Generic utilities.  Every typed accessor above funnels through these, so subclasses may override them to change
+    // how values are stored.  Primitive values travel as raw long bits: booleans as 0 or 1, floats and doubles as their
+    // IEEE 754 bits, and everything else sign-extended.
 
-    private <T> Set<String> getKeys(Class<T> type) {
-        if (propertyMaps.containsKey(type)) {
-            return propertyMaps.get(type).keySet();
-        } else {
-            return Collections.emptySet();
-        }
+    protected <T> Set<String> getKeys(Class<T> type) {
+        return new KeySet(type);
     }
 
-    private <T> boolean hasValue(Class<T> type, String key) {
-        return propertyMaps.containsKey(type) && propertyMaps.get(type).containsKey(key);
+    protected <T> boolean hasValue(Class<T> type, String key) {
+        return find(type, key) >= 0;
     }
 
-    private <T> T getValue(Class<T> type, String key) {
-        if (propertyMaps.containsKey(type) && propertyMaps.get(type).containsKey(key)) {
-            return (T) propertyMaps.get(type).get(key);
+    @SuppressWarnings("unchecked")
+    protected <T> T getValue(Class<T> type, String key) {
+        int entry = find(type, key);
+        if (entry < 0) {
+            throw missing(type, key);
         }
-        throw new HydraRuntimeException("Missing " + type.getSimpleName() + " property with key '" + key + "'");
+        return isPrimitive(type) ? (T) box(type, primitives[entry]) : (T) objects[entry];
     }
 
-    private <T> T getValue(Class<T> type, String key, T defaultValue) {
+    protected <T> T getValue(Class<T> type, String key, T defaultValue) {
         if (hasValue(type, key)) {
             return getValue(type, key);
         } else {
@@ -496,17 +509,240 @@ public class MessageProperties {
         }
     }
 
-    private <T> void setValue(Class<T> type, String key, T value) {
-        propertyMaps.computeIfAbsent(type, aClass -> new HashMap<>()).put(key, value);
+    protected <T> void setValue(Class<T> type, String key, T value) {
+        if (isPrimitive(type)) {
+            Assert.argumentNotNull(value, "value");
+            setPrimitive(type, key, bits(value));
+        } else {
+            int entry = entry(type, key);
+            objects[entry] = value;
+        }
     }
 
-    private <T> void removeType(Class<T> type) {
-        propertyMaps.remove(type);
+    protected <T> void removeValue(Class<T> type, String key) {
+        int entry = find(type, key);
+        if (entry >= 0) {
+            int moved = size - entry - 1;
+            System.arraycopy(keys, entry + 1, keys, entry, moved);
+            System.arraycopy(types, entry + 1, types, entry, moved);
+            System.arraycopy(primitives, entry + 1, primitives, entry, moved);
+            System.arraycopy(objects, entry + 1, objects, entry, moved);
+            size--;
+            keys[size] = null;
+            types[size] = null;
+            objects[size] = null;
+            if (table != null) {
+                rehash();
+            }
+        }
     }
 
-    private <T> void removeValue(Class<T> type, String key) {
-        if (hasValue(type, key)) {
-            propertyMaps.get(type).remove(key);
+    protected long getPrimitive(Class<?> type, String key) {
+        int entry = find(type, key);
+        if (entry < 0) {
+            throw missing(type, key);
+        }
+        return primitives[entry];
+    }
+
+    protected long getPrimitive(Class<?> type, String key, long defaultValue) {
+        int entry = find(type, key);
+        return entry < 0 ? defaultValue : primitives[entry];
+    }
+
+    protected void setPrimitive(Class<?> type, String key, long value) {
+        int entry = entry(type, key);
+        primitives[entry] = value;
+    }
+
+    private int find(Class<?> type, String key) {
+        if (key == null) {
+            return -1;
+        }
+        if (table == null) {
+            for (int entry = 0; entry < size; entry++) {
+                if (types[entry] == type && matches(keys[entry], key)) {
+                    return entry;
+                }
+            }
+            return -1;
+        }
+        int mask = table.length - 1;
+        for (int slot = hash(type, key) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (types[entry] == type && matches(keys[entry], key)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private int entry(Class<?> type, String key) {
+        Assert.argumentNotNull(key, "key");
+        int entry = find(type, key);
+        if (entry >= 0) {
+            return entry;
+        }
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            types = Arrays.copyOf(types, capacity);
+            primitives = Arrays.copyOf(primitives, capacity);
+            objects = Arrays.copyOf(objects, capacity);
+        }
+        entry = size++;
+        keys[entry] = key;
+        types[entry] = type;
+        if (table != null && size * 2 <= table.length) {
+            insert(entry);
+        } else if (size > LINEAR_SCAN_LIMIT) {
+            rehash();
+        }
+        return entry;
+    }
+
+    private void rehash() {
+        if (size <= LINEAR_SCAN_LIMIT) {
+            table = null;
+            return;
+        }
+        table = new int[Integer.highestOneBit(size) << 2];
+        for (int entry = 0; entry < size; entry++) {
+            insert(entry);
+        }
+    }
+
+    private void insert(int entry) {
+        int mask = table.length - 1;
+        int slot = hash(types[entry], keys[entry]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    private static int hash(Class<?> type, String key) {
+        int hash = key.hashCode() * 31 + type.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String candidate, String key) {
+        return candidate == key || candidate.equals(key);
+    }
+
+    private static boolean isPrimitive(Class<?> type) {
+        return type != String.class && type != byte[].class;
+    }
+
+    private static long bits(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1L : 0L;
+        } else if (value instanceof Float) {
+            return Float.floatToRawIntBits((Float) value);
+        } else if (value instanceof Double) {
+            return Double.doubleToRawLongBits((Double) value);
+        }
+        return ((Number) value).longValue();
+    }
+
+    private static Object box(Class<?> type, long bits) {
+        if (type == Boolean.class) {
+            return bits != 0;
+        } else if (type == Short.class) {
+            return (short) bits;
+        } else if (type == Integer.class) {
+            return (int) bits;
+        } else if (type == Long.class) {
+            return bits;
+        } else if (type == Float.class) {
+            return Float.intBitsToFloat((int) bits);
+        } else if (type == Double.class) {
+            return Double.longBitsToDouble(bits);
+        } else if (type == Byte.class) {
+            return (byte) bits;
+        }
+        throw new HydraRuntimeException("Unsupported property type " + type.getName());
+    }
+
+    private static HydraRuntimeException missing(Class<?> type, String key) {
+        return new HydraRuntimeException("Missing " + type.getSimpleName() + " property with key '" + key + "'");
+    }
+
+    /**
+     * A live view of the keys of one type.  Removing a key removes its property.
+     */
+    private class KeySet extends AbstractSet<String> {
+
+        private final Class<?> type;
+
+        private KeySet(final Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int next = advance(0);
+                private int last = -1;
+
+                private int advance(int from) {
+                    while (from < size && types[from] != type) {
+                        from++;
+                    }
+                    return from;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public String next() {
+                    if (next >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next;
+                    next = advance(next + 1);
+                    return keys[last];
+                }
+
+                @Override
+                public void remove() {
+                    if (last < 0) {
+                        throw new IllegalStateException();
+                    }
+                    // Later entries shift down into the removed slot
+                    removeValue(type, keys[last]);
+                    next = advance(last);
+                    last = -1;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            int count = 0;
+            for (int entry = 0; entry < MessageProperties.this.size; entry++) {
+                if (types[entry] == type) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public boolean contains(final Object key) {
+            return key instanceof String && find(type, (String) key) >= 0;
+        }
+
+        @Override
+        public boolean remove(final Object key) {
+            if (contains(key)) {
+                removeValue(type, (String) key);
+                return true;
+            }
+            return false;
         }
     }
 
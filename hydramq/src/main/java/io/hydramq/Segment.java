@@ -21,6 +21,7 @@ package io.hydramq;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 
 import io.hydramq.exceptions.HydraRuntimeException;
 
@@ -33,6 +34,15 @@ public interface Segment extends Closeable {
 
     void write(Message message) throws HydraRuntimeException;
 
+    /**
+     * Appends messages in order.  Implementations that can should append them all at once.
+     */
+    default void write(List<Message> messages) throws HydraRuntimeException {
+        for (Message message : messages) {
+            write(message);
+        }
+    }
+
     void read(int messageOffset, int maxMessages, MessageSet messages) throws HydraRuntimeException;
 
     void delete() throws IOException;
@@ -0,0 +1,56 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A stream of the MessageSets written to a partition, delivered in order to a consumer as they arrive.  Sources that
+ * push messages stop once the consumer's credits are spent; consuming a MessageSet grants its messages back.
+ *
+ * @author jfulton
+ */
+public interface Subscription {
+
+    PartitionId getPartitionId();
+
+    /**
+     * @return the offset following the last message delivered
+     */
+    long nextOffset();
+
+    /**
+     * Grants further credits, on top of those granted as messages are consumed.
+     *
+     * @param messages the number of further messages the source may deliver
+     * @param bytes the number of further bytes the source may deliver
+     */
+    void grant(int messages, long bytes);
+
+    /**
+     * Stops delivery.  The returned future completes once no further MessageSets will be delivered.
+     */
+    CompletableFuture<Void> cancel();
+
+    /**
+     * @return a future completing when the subscription ends, exceptionally if the source failed
+     */
+    CompletableFuture<Void> closeFuture();
+}
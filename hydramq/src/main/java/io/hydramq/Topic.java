@@ -26,7 +26,9 @@ import java.util.SortedSet;
 import java.util.concurrent.CompletableFuture;
 
 import io.hydramq.listeners.Listen;
+import io.hydramq.listeners.MessageSetConsumer;
 import io.hydramq.listeners.PartitionListener;
+import io.hydramq.readers.PollingSubscription;
 import io.hydramq.subscriptions.LockListener;
 
 /**
@@ -44,6 +46,15 @@ public interface Topic extends Closeable, ClosingAware {
 
     CompletableFuture<MessageSet> read(PartitionId partitionId, long messageOffset, int maxMessages);
 
+    /**
+     * Delivers the partition's MessageSets, of up to maxMessages each, from the given offset on, until cancelled.
+     * Unless overridden, the subscription reads in a loop.
+     */
+    default Subscription subscribe(PartitionId partitionId, long messageOffset, int maxMessages,
+                                   MessageSetConsumer messageSetConsumer) {
+        return new PollingSubscription(this, partitionId, messageOffset, maxMessages, messageSetConsumer);
+    }
+
     void discoverPartitions(PartitionListener listener);
 
     void discoverPartitions(PartitionListener listener, Listen listen);
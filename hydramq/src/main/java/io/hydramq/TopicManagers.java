@@ -19,24 +19,41 @@
 
 package io.hydramq;
 
-import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.nio.file.Path;
 
 import io.hydramq.disk.DiskTopicManager;
 import io.hydramq.network.NetworkTopicManager;
 import io.hydramq.topicmanagers.CompositeTopicManager;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.unix.DomainSocketAddress;
 
 /**
  * @author jfulton
  */
 public class TopicManagers {
 
-    public static TopicManager network(InetSocketAddress endpoint) {
+    public static TopicManager network(SocketAddress endpoint) {
         NetworkTopicManager topicManager = new NetworkTopicManager();
         topicManager.connect(endpoint).join();
         return topicManager;
     }
 
+    /**
+     * Connects to a server on the same host over its Unix domain socket.
+     */
+    public static TopicManager network(Path socketPath) {
+        return network(new DomainSocketAddress(socketPath.toFile()));
+    }
+
+    /**
+     * Connects to a server in the same VM, started with {@link HydraServer#local(String)}, handing messages across
+     * without encoding them.
+     */
+    public static TopicManager local(String localName) {
+        return network(new LocalAddress(localName));
+    }
+
     public static TopicManager disk(Path topicsDirectory) {
         return new DiskTopicManager(topicsDirectory);
     }
@@ -92,14 +92,16 @@ public class BatchTopicWriter implements TopicWriter {
                 Map<PartitionId, List<Message>> localMessageCache = messageCache;
                 futures = new ArrayList<>();
                 messageCache = new HashMap<>();
+                messageCacheSize.set(0);
 
-                topic.write(localMessageCache).thenAccept(aVoid -> {
+                topic.write(localMessageCache).whenComplete((aVoid, throwable) -> {
                     for (CompletableFuture<Void> f : localFutures) {
-                        f.complete(null);
+                        if (throwable == null) {
+                            f.complete(null);
+                        } else {
+                            f.completeExceptionally(throwable);
+                        }
                     }
-                }).exceptionally(throwable -> {
-                    future.completeExceptionally(throwable);
-                    return null;
                 });
             }
             return future;
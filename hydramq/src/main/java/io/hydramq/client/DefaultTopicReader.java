@@ -19,13 +19,13 @@
 
 package io.hydramq.client;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 
 import io.hydramq.PartitionId;
+import io.hydramq.Subscription;
 import io.hydramq.Topic;
 import io.hydramq.TopicWriter;
 import io.hydramq.exceptions.HydraRuntimeException;
@@ -41,7 +41,7 @@ import static org.slf4j.LoggerFactory.getLogger;
 public class DefaultTopicReader {
 
     private static final Logger logger = getLogger(DefaultTopicReader.class);
-    private ExecutorService executorService = Executors.newCachedThreadPool();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
     private final Topic topic;
     private long startOffset = 0;
     private int maxMessages = 100;
@@ -84,44 +84,30 @@ public class DefaultTopicReader {
         return this;
     }
 
+    /**
+     * Pushed to, where the topic can, and otherwise read with several reads outstanding, rather than one read at a time.
+     */
     private void start(PartitionId partitionId, MessageSetConsumer messageSetConsumer) {
-        executorService.submit(() -> {
-            AtomicLong messageOffset = new AtomicLong(startOffset);
-            // TODO: Replace with onClose
-            while (started.get()) {
-                topic.read(partitionId, messageOffset.get(), maxMessages)
-                        .thenAccept(messageSet -> {
-                            messageOffset.set(messageSet.nextOffset());
-                            if (messageSet.size() > 0) {
-                                messageSetConsumer.consume(partitionId, messageSet);
-                            }
-                        }).exceptionally(throwable -> {
-                    logger.error("Error!", throwable);
-                    return null;
-                }).join();
-            }
+        Subscription subscription = topic.subscribe(partitionId, startOffset, maxMessages, messageSetConsumer);
+        subscription.closeFuture().exceptionally(throwable -> {
+            logger.error("Error!", throwable);
+            return null;
         });
+        subscriptions.add(subscription);
     }
 
     private void start(PartitionId partitionId, MessageConsumer messageConsumer) {
-        executorService.submit(() -> {
-            AtomicLong messageOffset = new AtomicLong(startOffset);
-            while (started.get()) {
-                topic.read(partitionId, messageOffset.get(), maxMessages)
-                        .thenAccept(messageSet -> {
-                            messageOffset.set(messageSet.nextOffset());
-                            AtomicInteger messageCount = new AtomicInteger();
-                            messageSet.forEach(message -> messageConsumer.onMessage(partitionId, messageSet.startOffset() + messageCount.getAndIncrement(), message));
-                        }).exceptionally(throwable -> {
-                    logger.error("Error!", throwable);
-                    return null;
-                }).join();
-            }
+        start(partitionId, (MessageSetConsumer) (id, messageSet) -> {
+            AtomicInteger messageCount = new AtomicInteger();
+            messageSet.forEach(message -> messageConsumer.onMessage(partitionId, messageSet.startOffset() + messageCount.getAndIncrement(), message));
         });
     }
 
     public void stop() {
-        started.set(false);
+        if (started.compareAndSet(true, false)) {
+            subscriptions.forEach(Subscription::cancel);
+            subscriptions.clear();
+        }
     }
 
     public DefaultTopicReader setStartOffset(long startOffset) {
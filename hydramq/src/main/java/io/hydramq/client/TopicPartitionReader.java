@@ -94,20 +94,8 @@ public class TopicPartitionReader {
     }
 
     public CompletableFuture<Void> followingTail(Consumer<MessageSet> messageSetConsumer) {
-        CompletableFuture<Void> future = new CompletableFuture<>();
-        CompletableFuture.runAsync(() -> {
-            future.complete(null);
-            AtomicLong messageOffset = new AtomicLong(startOffset);
-            AtomicBoolean stop = new AtomicBoolean(false);
-
-            while (!stop.get()) {
-                topic.read(partitionId, messageOffset.get(), maxMessages).thenAccept(messageBatch -> {
-                    messageOffset.set(messageBatch.nextOffset());
-                    messageSetConsumer.accept(messageBatch);
-                }).join();
-            }
-        });
-        return future;
+        topic.subscribe(partitionId, startOffset, maxMessages, (id, messageSet) -> messageSetConsumer.accept(messageSet));
+        return CompletableFuture.completedFuture(null);
     }
 
     public CompletableFuture<Void> readingToTail(BiConsumer<MessageSet, Throwable> messageSetConsumer) {
@@ -131,21 +119,11 @@ public class TopicPartitionReader {
     }
 
     public CompletableFuture<Void> followingTail(BiConsumer<MessageSet, Throwable> messageSetConsumer) {
-        CompletableFuture<Void> future = new CompletableFuture<>();
-        CompletableFuture.runAsync(() -> {
-
-            AtomicLong messageOffset = new AtomicLong(startOffset);
-            while (!topic.closeFuture().isDone()) {
-                topic.read(partitionId, messageOffset.get(), maxMessages).thenAccept(messageBatch -> {
-                    messageOffset.set(messageBatch.nextOffset());
-                    messageSetConsumer.accept(messageBatch, null);
-                }).exceptionally(throwable -> {
-                    messageSetConsumer.accept(null, throwable);
-                    return null;
-                }).join();
-            }
-        });
-        future.complete(null);
-        return future;
+        topic.subscribe(partitionId, startOffset, maxMessages, (id, messageSet) -> messageSetConsumer.accept(messageSet, null))
+             .closeFuture().exceptionally(throwable -> {
+                 messageSetConsumer.accept(null, throwable);
+                 return null;
+             });
+        return CompletableFuture.completedFuture(null);
     }
 }
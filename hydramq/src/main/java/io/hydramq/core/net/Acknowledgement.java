@@ -19,13 +19,30 @@
 
 package io.hydramq.core.net;
 
+import io.hydramq.internal.util.Recyclable;
+import io.netty.util.Recycler;
+
 /**
  * @author jfulton
  */
-public class Acknowledgement extends Response {
+public class Acknowledgement extends Response implements Recyclable {
+
+    private static final Recycler<Acknowledgement> RECYCLER = new Recycler<Acknowledgement>() {
+        @Override
+        protected Acknowledgement newObject(final Handle handle) {
+            return new Acknowledgement(handle);
+        }
+    };
+    private final Recycler.Handle handle;
 
     protected Acknowledgement(final int correlationId) {
         super(correlationId);
+        this.handle = null;
+    }
+
+    private Acknowledgement(final Recycler.Handle handle) {
+        super(0);
+        this.handle = handle;
     }
 
     public static Acknowledgement replyTo(Command command) {
@@ -35,4 +52,20 @@ public class Acknowledgement extends Response {
     public static Acknowledgement replyTo(int correlationId) {
         return new Acknowledgement(correlationId);
     }
+
+    /**
+     * @return a pooled acknowledgement, recycled by whatever encodes it, so it must not be referenced once sent.
+     */
+    public static Acknowledgement newInstance(int correlationId) {
+        Acknowledgement acknowledgement = RECYCLER.get();
+        acknowledgement.correlationId(correlationId);
+        return acknowledgement;
+    }
+
+    @Override
+    public void recycle() {
+        if (handle != null) {
+            RECYCLER.recycle(this, handle);
+        }
+    }
 }
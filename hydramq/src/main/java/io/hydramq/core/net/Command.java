@@ -25,7 +25,7 @@ package io.hydramq.core.net;
 public abstract class Command {
 
     private static CorrelationIdGenerator idGenerator = DefaultCorrelationIdGenerator.getInstance();
-    private final int correlationId;
+    private int correlationId;
 
     protected Command(final int correlationId) {
         this.correlationId = correlationId;
@@ -39,6 +39,13 @@ public abstract class Command {
         return correlationId;
     }
 
+    /**
+     * Reassigns the correlationId of a pooled command as it is reused.
+     */
+    protected void correlationId(int correlationId) {
+        this.correlationId = correlationId;
+    }
+
     public static void setIdGenerator(CorrelationIdGenerator idGenerator) {
         Command.idGenerator = idGenerator;
     }
@@ -21,10 +21,9 @@ package io.hydramq.core.net.netty;
 
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
 
-import io.hydramq.core.net.Command;
 import io.hydramq.core.net.protocols.topic.NetworkLockListener;
+import io.hydramq.core.type.ConversionContext;
 import io.hydramq.listeners.DiscoverTopicsListener;
 import io.hydramq.listeners.PartitionListener;
 import io.netty.util.AttributeKey;
@@ -34,7 +33,7 @@ import io.netty.util.AttributeKey;
  */
 public class ChannelAttributes {
 
-    public static AttributeKey<Map<Integer, CompletableFuture<Command>>> COMMAND_FUTURES =
+    public static AttributeKey<PendingReplies> COMMAND_FUTURES =
             AttributeKey.newInstance("correlatedFutures");
 
     public static AttributeKey<DiscoverTopicsListener> DISCOVER_TOPICS_LISTENER =
@@ -45,4 +44,10 @@ public class ChannelAttributes {
 
     public static AttributeKey<Map<UUID, NetworkLockListener>> LOCK_LISTENERS =
             AttributeKey.newInstance("subscriptions");
+
+    public static AttributeKey<ConversionContext> CONVERSION_CONTEXT =
+            AttributeKey.newInstance("conversionContext");
+
+    public static AttributeKey<CommandEncoder> COMMAND_ENCODER =
+            AttributeKey.newInstance("commandEncoder");
 }
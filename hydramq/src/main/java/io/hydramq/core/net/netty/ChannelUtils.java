@@ -21,10 +21,10 @@ package io.hydramq.core.net.netty;
 
 import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 import io.hydramq.core.net.Acknowledgement;
 import io.hydramq.core.net.Command;
-import io.hydramq.internal.util.AsyncUtils;
 import io.netty.channel.Channel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,21 +41,36 @@ public class ChannelUtils {
     }
 
     public static CompletableFuture<Command> sendForReply(Channel channel, Command command) {
-        CompletableFuture<Command> future = new CompletableFuture<>();
-        channel.attr(ChannelAttributes.COMMAND_FUTURES).get().put(command.correlationId(), future);
-        channel.writeAndFlush(command).addListener(writeFuture -> {
-            if (!writeFuture.isSuccess()) {
-                channel.attr(ChannelAttributes.COMMAND_FUTURES).get().remove(command.correlationId());
-                logger.info("Error sending command", writeFuture.cause());
-                future.completeExceptionally(writeFuture.cause());
-            }
-
-        });
-        return future;
+        return sendForReply(channel, command, null);
     }
 
     public static CompletableFuture<Command> sendForReply(Channel channel, Command command, Duration within) {
-        return AsyncUtils.within(sendForReply(channel, command), within);
+        CompletableFuture<Command> future = new CompletableFuture<>();
+        PendingReplies pendingReplies = channel.attr(ChannelAttributes.COMMAND_FUTURES).get();
+        // The table belongs to the event loop, so the future is registered there, ahead of the write
+        Runnable send = () -> {
+            pendingReplies.put(command.correlationId(), future);
+            if (within != null) {
+                pendingReplies.expireAfter(command.correlationId(), future, within);
+            }
+            channel.writeAndFlush(command).addListener(writeFuture -> {
+                if (!writeFuture.isSuccess()) {
+                    pendingReplies.remove(command.correlationId());
+                    logger.info("Error sending command", writeFuture.cause());
+                    future.completeExceptionally(writeFuture.cause());
+                }
+            });
+        };
+        if (pendingReplies.eventLoop().inEventLoop()) {
+            send.run();
+        } else {
+            try {
+                pendingReplies.eventLoop().execute(send);
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+        }
+        return future;
     }
 
     public static void ack(Channel channel, Command command) {
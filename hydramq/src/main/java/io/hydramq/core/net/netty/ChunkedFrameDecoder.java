@@ -0,0 +1,130 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.core.net.netty;
+
+import java.util.List;
+
+import io.hydramq.internal.util.Assert;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+
+import static io.hydramq.core.net.netty.ChunkedFrameEncoder.HEADER_LENGTH;
+import static io.hydramq.core.net.netty.ChunkedFrameEncoder.MORE_CHUNKS;
+
+/**
+ * Reads frames written by {@link ChunkedFrameEncoder}, or by a plain four byte LengthFieldPrepender.  Each chunk is
+ * bounded by maxChunkLength, so no single chunk is buffered beyond that.  The chunks of a frame are sliced out of the
+ * inbound buffer and gathered in a CompositeByteBuf, rather than copied into one contiguous frame, up to
+ * maxFrameLength.  The remaining chunks of a frame that is too long are skipped, so the stream stays usable.
+ *
+ * Not Thread Safe.
+ *
+ * @author jfulton
+ */
+public class ChunkedFrameDecoder extends ByteToMessageDecoder {
+
+    private final int maxChunkLength;
+    private final int maxFrameLength;
+    private CompositeByteBuf frame;
+    private int frameLength;
+    private long bytesToDiscard;
+    private boolean discardingFrame;
+
+    public ChunkedFrameDecoder(final int maxChunkLength, final int maxFrameLength) {
+        Assert.argumentIsTrue(maxChunkLength > 0, "maxChunkLength must be positive");
+        Assert.argumentIsTrue(maxFrameLength >= maxChunkLength, "maxFrameLength must be at least maxChunkLength");
+        this.maxChunkLength = maxChunkLength;
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    protected void decode(final ChannelHandlerContext ctx, final ByteBuf in, final List<Object> out) throws Exception {
+        if (bytesToDiscard > 0) {
+            int discarded = (int) Math.min(bytesToDiscard, in.readableBytes());
+            in.skipBytes(discarded);
+            bytesToDiscard -= discarded;
+            return;
+        }
+        if (in.readableBytes() < HEADER_LENGTH) {
+            return;
+        }
+        int header = in.getInt(in.readerIndex());
+        int length = header & ~MORE_CHUNKS;
+        boolean last = (header & MORE_CHUNKS) == 0;
+        if (length > maxChunkLength) {
+            in.skipBytes(HEADER_LENGTH);
+            bytesToDiscard = length;
+            discardFrame(last);
+            throw new TooLongFrameException("Chunk of " + length + " bytes exceeds " + maxChunkLength);
+        }
+        if (in.readableBytes() < HEADER_LENGTH + length) {
+            return;
+        }
+        in.skipBytes(HEADER_LENGTH);
+        if (discardingFrame) {
+            in.skipBytes(length);
+            discardingFrame = !last;
+            return;
+        }
+        if (frame == null && last) {
+            out.add(in.readSlice(length).retain());
+            return;
+        }
+        if ((long) frameLength + length > maxFrameLength) {
+            in.skipBytes(length);
+            long total = (long) frameLength + length;
+            discardFrame(last);
+            throw new TooLongFrameException("Frame of at least " + total + " bytes exceeds " + maxFrameLength);
+        }
+        if (frame == null) {
+            // Never consolidated, which would copy every chunk into one buffer
+            frame = ctx.alloc().compositeBuffer(Integer.MAX_VALUE);
+        }
+        frame.addComponent(in.readSlice(length).retain());
+        frameLength += length;
+        frame.writerIndex(frameLength);
+        if (last) {
+            out.add(frame);
+            frame = null;
+            frameLength = 0;
+        }
+    }
+
+    private void discardFrame(final boolean last) {
+        if (frame != null) {
+            frame.release();
+            frame = null;
+        }
+        frameLength = 0;
+        discardingFrame = !last;
+    }
+
+    @Override
+    protected void handlerRemoved0(final ChannelHandlerContext ctx) throws Exception {
+        if (frame != null) {
+            frame.release();
+            frame = null;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.core.net.netty;
+
+import java.util.List;
+
+import io.hydramq.internal.util.Assert;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+/**
+ * Prefixes frames with their four byte length, like a LengthFieldPrepender, but splits frames longer than the maximum
+ * chunk length into a run of chunks.  Every chunk but the last has the top bit of its length set.  Chunks are slices of
+ * the frame, so nothing is copied, and the chunks of a frame are written back to back.  Frames that fit in one chunk
+ * are framed exactly as before, so peers only need {@link ChunkedFrameDecoder} to receive frames that would not.
+ *
+ * @author jfulton
+ */
+public class ChunkedFrameEncoder extends MessageToMessageEncoder<ByteBuf> {
+
+    static final int MORE_CHUNKS = 0x80000000;
+    static final int HEADER_LENGTH = Integer.BYTES;
+    private final int maxChunkLength;
+
+    public ChunkedFrameEncoder(final int maxChunkLength) {
+        Assert.argumentIsTrue(maxChunkLength > 0, "maxChunkLength must be positive");
+        this.maxChunkLength = maxChunkLength;
+    }
+
+    public int maxChunkLength() {
+        return maxChunkLength;
+    }
+
+    @Override
+    protected void encode(final ChannelHandlerContext ctx, final ByteBuf frame, final List<Object> out) throws Exception {
+        chunk(ctx.alloc(), frame, maxChunkLength, out);
+    }
+
+    /**
+     * Adds the chunks of a frame to out, each a retained slice of the frame behind a header of its own.
+     */
+    static void chunk(final ByteBufAllocator alloc, final ByteBuf frame, final int maxChunkLength, final List<Object> out) {
+        do {
+            int length = Math.min(frame.readableBytes(), maxChunkLength);
+            boolean last = length == frame.readableBytes();
+            out.add(alloc.buffer(HEADER_LENGTH).writeInt(last ? length : length | MORE_CHUNKS));
+            out.add(frame.readSlice(length).retain());
+        } while (frame.isReadable());
+    }
+}
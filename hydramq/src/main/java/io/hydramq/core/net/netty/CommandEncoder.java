@@ -19,29 +19,101 @@
 
 package io.hydramq.core.net.netty;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import io.hydramq.core.net.Command;
 import io.hydramq.core.type.ConversionContext;
+import io.hydramq.internal.util.Assert;
+import io.hydramq.internal.util.Recyclable;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
 
+import static io.hydramq.core.net.netty.ChunkedFrameEncoder.HEADER_LENGTH;
+
 /**
+ * Encodes commands into a buffer sized by their converter's estimate.  When given a maximum chunk length it also frames
+ * them, as {@link ChunkedFrameEncoder} would, writing the length into room left ahead of the command rather than into
+ * a buffer of its own, so a frame that fits in one chunk is written as a single buffer.
+ *
  * @author jfulton
  */
 public class CommandEncoder extends MessageToMessageEncoder<Command> {
 
+    static final int MIN_INITIAL_CAPACITY = 64;
     private final ConversionContext conversionContext;
+    private final int maxChunkLength;
+    private final int headerLength;
 
     public CommandEncoder(final ConversionContext conversionContext) {
         this.conversionContext = conversionContext;
+        this.maxChunkLength = Integer.MAX_VALUE;
+        this.headerLength = 0;
+    }
+
+    public CommandEncoder(final ConversionContext conversionContext, final int maxChunkLength) {
+        Assert.argumentIsTrue(maxChunkLength > 0, "maxChunkLength must be positive");
+        this.conversionContext = conversionContext;
+        this.maxChunkLength = maxChunkLength;
+        this.headerLength = HEADER_LENGTH;
     }
 
     @Override
     protected void encode(final ChannelHandlerContext ctx, final Command command, final List<Object> out) throws Exception {
-        final ByteBuf buffer = ctx.alloc().buffer();
-        conversionContext.write(command, buffer);
-        out.add(buffer);
+        out.add(frame(ctx.alloc(), encode(ctx.alloc(), command)));
+    }
+
+    /**
+     * Encodes and frames a command on the calling thread, then writes it from the given context, which must be past
+     * this encoder.  Pooled commands are recycled once encoded, and must not be referenced afterwards.
+     *
+     * @return the encoded length of the command, less its framing
+     */
+    public int send(final ChannelHandlerContext ctx, final Command command) {
+        ByteBuf buffer = encode(ctx.alloc(), command);
+        int length = buffer.readableBytes() - headerLength;
+        ctx.writeAndFlush(frame(ctx.alloc(), buffer), ctx.voidPromise());
+        return length;
+    }
+
+    private ByteBuf encode(final ByteBufAllocator alloc, final Command command) {
+        ByteBuf buffer = alloc.buffer(Math.max(headerLength + conversionContext.estimateSize(command),
+                MIN_INITIAL_CAPACITY));
+        try {
+            buffer.writerIndex(headerLength);
+            conversionContext.write(command, buffer);
+        } catch (RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+        if (command instanceof Recyclable) {
+            ((Recyclable) command).recycle();
+        }
+        return buffer;
+    }
+
+    private ByteBuf frame(final ByteBufAllocator alloc, final ByteBuf buffer) {
+        if (headerLength == 0) {
+            return buffer;
+        }
+        int length = buffer.readableBytes() - headerLength;
+        if (length <= maxChunkLength) {
+            return buffer.setInt(buffer.readerIndex(), length);
+        }
+        // Chunks of a frame go out as one buffer, so frames written from other threads cannot come between them
+        List<Object> chunks = new ArrayList<>();
+        try {
+            ChunkedFrameEncoder.chunk(alloc, buffer.skipBytes(headerLength), maxChunkLength, chunks);
+        } finally {
+            buffer.release();
+        }
+        CompositeByteBuf frame = alloc.compositeBuffer(chunks.size());
+        for (Object chunk : chunks) {
+            frame.addComponent((ByteBuf) chunk);
+        }
+        return frame.writerIndex(frame.capacity());
     }
 }
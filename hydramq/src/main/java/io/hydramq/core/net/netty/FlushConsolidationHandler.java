@@ -0,0 +1,152 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.net.netty;
+
+import java.time.Duration;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.hydramq.internal.util.Assert;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Coalesces flushes, so that commands written together reach the socket in a single write.  Flushes requested while
+ * the channel is reading are held until the read batch completes, so replies to a batch of requests go out together.
+ * Other flushes are deferred to a task on the channel's event loop, which runs once the writes already queued on it
+ * have been made, or after the flush delay when one is set.  Holding more than the maximum number of flushes, losing
+ * writability, or closing the channel flushes immediately.
+ *
+ * @author jfulton
+ */
+public class FlushConsolidationHandler extends ChannelDuplexHandler {
+
+    public static final int DEFAULT_MAX_PENDING_FLUSHES = 256;
+    private final long flushDelayNanos;
+    private final int maxPendingFlushes;
+    private final Runnable flushTask = this::flushScheduled;
+    private ChannelHandlerContext ctx;
+    private boolean readInProgress;
+    private int pendingFlushes;
+    private Future<?> scheduledFlush;
+
+    public FlushConsolidationHandler() {
+        this(Duration.ZERO);
+    }
+
+    public FlushConsolidationHandler(Duration flushDelay) {
+        this(flushDelay, DEFAULT_MAX_PENDING_FLUSHES);
+    }
+
+    public FlushConsolidationHandler(Duration flushDelay, int maxPendingFlushes) {
+        Assert.argumentNotNull(flushDelay, "flushDelay");
+        Assert.argumentIsTrue(!flushDelay.isNegative(), "flushDelay must not be negative");
+        Assert.argumentIsTrue(maxPendingFlushes > 0, "maxPendingFlushes must be positive");
+        this.flushDelayNanos = flushDelay.toNanos();
+        this.maxPendingFlushes = maxPendingFlushes;
+    }
+
+    @Override
+    public void handlerAdded(final ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void flush(final ChannelHandlerContext ctx) throws Exception {
+        if (++pendingFlushes >= maxPendingFlushes) {
+            flushNow(ctx);
+        } else if (!readInProgress && scheduledFlush == null) {
+            scheduledFlush = flushDelayNanos == 0 ? ctx.executor().submit(flushTask)
+                    : ctx.executor().schedule(flushTask, flushDelayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(final ChannelHandlerContext ctx) throws Exception {
+        readInProgress = false;
+        flushIfPending(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(final ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable()) {
+            flushIfPending(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) throws Exception {
+        flushIfPending(ctx);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(final ChannelHandlerContext ctx, final ChannelPromise promise) throws Exception {
+        flushIfPending(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(final ChannelHandlerContext ctx, final ChannelPromise promise) throws Exception {
+        flushIfPending(ctx);
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(final ChannelHandlerContext ctx) throws Exception {
+        flushIfPending(ctx);
+    }
+
+    /**
+     * @return the number of flushes requested since the last one passed on
+     */
+    int pendingFlushes() {
+        return pendingFlushes;
+    }
+
+    private void flushScheduled() {
+        scheduledFlush = null;
+        flushIfPending(ctx);
+    }
+
+    private void flushIfPending(final ChannelHandlerContext ctx) {
+        if (pendingFlushes > 0) {
+            flushNow(ctx);
+        }
+    }
+
+    private void flushNow(final ChannelHandlerContext ctx) {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        pendingFlushes = 0;
+        ctx.flush();
+    }
+}
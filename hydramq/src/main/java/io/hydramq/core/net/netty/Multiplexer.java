@@ -0,0 +1,293 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.net.netty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.hydramq.exceptions.HydraRuntimeException;
+import io.hydramq.internal.util.Assert;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Carries any number of streams over one connection, each a {@link StreamChannel} with a pipeline of its own.  Every
+ * frame on the connection starts with the id of its stream, followed by bytes of the stream; a frame with no bytes
+ * closes the stream.  The client opens streams, and the server creates its end when the first frame of a stream
+ * arrives, up to a limit per connection; further streams are closed as they arrive.  Before anything else, the client
+ * sends a handshake frame, and the server echoes it back; servers that do not multiplex answer with an error instead.
+ * <p>
+ * Streams share the connection's flow control: while any stream has a backlog of bytes it is not reading, the
+ * connection is not read, and every other stream waits with it.  See {@link StreamChannel}.
+ *
+ * @author jfulton
+ */
+public class Multiplexer extends ChannelInboundHandlerAdapter {
+
+    public static final String NAME = "multiplexer";
+    // Chosen not to collide with a command type id, so that servers without multiplexing reject the handshake
+    static final int HANDSHAKE_ID = 900;
+    static final int VERSION = 1;
+    public static final int DEFAULT_MAX_STREAMS = 1024;
+    private static final Logger logger = LoggerFactory.getLogger(Multiplexer.class);
+    private final Map<Integer, StreamChannel> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger nextStreamId = new AtomicInteger(1);
+    private final CompletableFuture<Void> handshakeFuture = new CompletableFuture<>();
+    private final ChannelHandler streamInitializer;
+    private final int maxPayloadLength;
+    private final int maxStreams;
+    private volatile ChannelHandlerContext ctx;
+    private volatile boolean rejected = false;
+    private int backloggedStreams = 0;
+
+    private Multiplexer(ChannelHandler streamInitializer, int maxFrameLength, int maxStreams) {
+        Assert.argumentIsTrue(maxFrameLength > Integer.BYTES, "maxFrameLength must be greater than " + Integer.BYTES);
+        Assert.argumentIsTrue(maxStreams > 0, "maxStreams must be greater than 0");
+        this.streamInitializer = streamInitializer;
+        this.maxPayloadLength = maxFrameLength - Integer.BYTES;
+        this.maxStreams = maxStreams;
+    }
+
+    /**
+     * @param maxFrameLength the longest frame to write, stream id included
+     * @return a Multiplexer opening streams over a client connection
+     */
+    public static Multiplexer initiating(int maxFrameLength) {
+        return new Multiplexer(null, maxFrameLength, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param streamInitializer the handler each stream's pipeline starts out with, which must be sharable
+     * @param maxFrameLength the longest frame to write, stream id included
+     * @return a Multiplexer accepting streams over a server connection, once passed the client's handshake
+     */
+    public static Multiplexer accepting(ChannelHandler streamInitializer, int maxFrameLength) {
+        return accepting(streamInitializer, maxFrameLength, DEFAULT_MAX_STREAMS);
+    }
+
+    /**
+     * @param streamInitializer the handler each stream's pipeline starts out with, which must be sharable
+     * @param maxFrameLength the longest frame to write, stream id included
+     * @param maxStreams the most streams open at once, beyond which the client's streams are closed as they arrive
+     * @return a Multiplexer accepting streams over a server connection, once passed the client's handshake
+     */
+    public static Multiplexer accepting(ChannelHandler streamInitializer, int maxFrameLength, int maxStreams) {
+        Assert.argumentNotNull(streamInitializer, "streamInitializer");
+        return new Multiplexer(streamInitializer, maxFrameLength, maxStreams);
+    }
+
+    /**
+     * @return whether the frame is a client's handshake
+     */
+    public static boolean isHandshake(ByteBuf frame) {
+        return frame.readableBytes() == 2 * Integer.BYTES && frame.getInt(frame.readerIndex()) == HANDSHAKE_ID;
+    }
+
+    /**
+     * @return a future completing once the server has agreed to multiplex, exceptionally if it would not
+     */
+    public CompletableFuture<Void> handshakeFuture() {
+        return handshakeFuture;
+    }
+
+    /**
+     * @return whether the server answered the handshake with anything but its echo, as servers that do not multiplex
+     * do.  Handshakes failing as the connection is lost or reset are not rejected, and may succeed when tried again.
+     */
+    public boolean isRejected() {
+        return rejected;
+    }
+
+    public boolean isActive() {
+        return ctx != null && ctx.channel().isActive();
+    }
+
+    public int streams() {
+        return streams.size();
+    }
+
+    /**
+     * Closes the connection, and with it every stream.
+     */
+    public ChannelFuture close() {
+        return ctx.channel().close();
+    }
+
+    /**
+     * Opens a stream, with the given handler added to its pipeline.
+     *
+     * @return a future completing with the stream once it is active
+     */
+    public CompletableFuture<StreamChannel> openStream(ChannelHandler initializer) {
+        CompletableFuture<StreamChannel> future = new CompletableFuture<>();
+        if (!handshakeFuture.isDone() || handshakeFuture.isCompletedExceptionally() || !isActive()) {
+            future.completeExceptionally(new HydraRuntimeException("Not connected"));
+            return future;
+        }
+        StreamChannel stream = new StreamChannel(ctx.channel(), this, nextStreamId.getAndIncrement());
+        stream.pipeline().addLast(initializer);
+        streams.put(stream.streamId(), stream);
+        ctx.channel().eventLoop().register(stream).addListener(registration -> {
+            if (registration.isSuccess() && stream.isActive()) {
+                // Completed once channelRegistered has run the stream's initializer
+                stream.eventLoop().execute(() -> future.complete(stream));
+            } else {
+                stream.unsafe().closeForcibly();
+                future.completeExceptionally(registration.cause() != null ? registration.cause()
+                        : new HydraRuntimeException("Disconnected"));
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        if (streamInitializer == null) {
+            ctx.writeAndFlush(handshake(ctx));
+        }
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        ByteBuf frame = (ByteBuf) msg;
+        if (!handshakeFuture.isDone()) {
+            boolean handshake = isHandshake(frame);
+            frame.release();
+            if (!handshake) {
+                rejected = true;
+                handshakeFuture.completeExceptionally(new HydraRuntimeException("Multiplexing handshake rejected"));
+                throw new HydraRuntimeException("Expected a multiplexing handshake");
+            }
+            if (streamInitializer != null) {
+                ctx.writeAndFlush(handshake(ctx));
+            }
+            handshakeFuture.complete(null);
+            return;
+        }
+        int streamId = frame.readInt();
+        StreamChannel stream = streams.get(streamId);
+        if (!frame.isReadable()) {
+            frame.release();
+            if (stream != null) {
+                streams.remove(streamId);
+                stream.unsafe().close(stream.voidPromise());
+            }
+            return;
+        }
+        if (stream == null && streamInitializer != null) {
+            if (streams.size() >= maxStreams) {
+                frame.release();
+                logger.warn("Closing stream {} from {}, as {} streams are open", streamId,
+                        ctx.channel().remoteAddress(), maxStreams);
+                ctx.writeAndFlush(ctx.alloc().buffer(Integer.BYTES).writeInt(streamId));
+                return;
+            }
+            stream = new StreamChannel(ctx.channel(), this, streamId);
+            stream.pipeline().addLast(streamInitializer);
+            streams.put(streamId, stream);
+            // Registered inline, as this is the connection's event loop
+            ctx.channel().eventLoop().register(stream);
+        }
+        if (stream != null) {
+            stream.received(frame);
+        } else {
+            frame.release();
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        handshakeFuture.completeExceptionally(new HydraRuntimeException("Disconnected before multiplexing"));
+        List<StreamChannel> closing = new ArrayList<>(streams.values());
+        streams.clear();
+        closing.forEach(stream -> stream.unsafe().close(stream.voidPromise()));
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * Streams write through the connection, so are writable only while it is.
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        streams.values().forEach(stream -> stream.pipeline().fireChannelWritabilityChanged());
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        logger.error("Closing multiplexed connection to " + ctx.channel().remoteAddress(), cause);
+        ctx.close();
+    }
+
+    /**
+     * Called on the event loop.  Frames the stream's bytes, and flushes them.
+     */
+    void write(int streamId, ByteBuf bytes) {
+        if (streams.get(streamId) == null) {
+            bytes.release();
+            return;
+        }
+        while (bytes.isReadable()) {
+            int length = Math.min(bytes.readableBytes(), maxPayloadLength);
+            ByteBuf header = ctx.alloc().buffer(Integer.BYTES).writeInt(streamId);
+            ctx.write(Unpooled.wrappedBuffer(header, bytes.readSlice(length).retain()), ctx.voidPromise());
+        }
+        bytes.release();
+        ctx.flush();
+    }
+
+    /**
+     * Called on the event loop as a stream closes.  The peer is told, unless it closed the stream itself.
+     */
+    void closed(StreamChannel stream) {
+        if (streams.remove(stream.streamId(), stream) && ctx.channel().isActive()) {
+            ctx.writeAndFlush(ctx.alloc().buffer(Integer.BYTES).writeInt(stream.streamId()));
+        }
+    }
+
+    /**
+     * Called on the event loop.  The connection is read from only while no stream has a backlog, so one stream that
+     * stops reading holds up the others once its backlog builds.
+     */
+    void backlogged(boolean backlogged) {
+        backloggedStreams += backlogged ? 1 : -1;
+        ctx.channel().config().setAutoRead(backloggedStreams == 0);
+    }
+
+    private static ByteBuf handshake(ChannelHandlerContext ctx) {
+        return ctx.alloc().buffer(2 * Integer.BYTES).writeInt(HANDSHAKE_ID).writeInt(VERSION);
+    }
+}
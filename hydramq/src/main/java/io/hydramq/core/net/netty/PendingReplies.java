@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.core.net.netty;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import io.hydramq.core.net.Command;
+import io.hydramq.internal.util.Assert;
+import io.hydramq.internal.util.TimerService;
+import io.netty.channel.EventLoop;
+import io.netty.util.Timeout;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+/**
+ * The futures awaiting a reply on a channel, by correlation id.  The table is owned by the channel's event loop, and
+ * every method but {@link #size()} and {@link #expireAfter(int, CompletableFuture, Duration)} must be called from it.
+ *
+ * @author jfulton
+ */
+public class PendingReplies {
+
+    private final Int2ObjectOpenHashMap<CompletableFuture<Command>> pending = new Int2ObjectOpenHashMap<>();
+    private final EventLoop eventLoop;
+
+    public PendingReplies(EventLoop eventLoop) {
+        Assert.argumentNotNull(eventLoop, "eventLoop");
+        this.eventLoop = eventLoop;
+    }
+
+    public EventLoop eventLoop() {
+        return eventLoop;
+    }
+
+    public void put(int correlationId, CompletableFuture<Command> future) {
+        pending.put(correlationId, future);
+    }
+
+    /**
+     * @return the future awaiting the reply, or null if there is none
+     */
+    public CompletableFuture<Command> remove(int correlationId) {
+        return pending.remove(correlationId);
+    }
+
+    /**
+     * Fails every future still awaiting a reply, as when the channel closes.
+     */
+    public void failAll(Throwable cause) {
+        List<CompletableFuture<Command>> failing = new ArrayList<>(pending.values());
+        pending.clear();
+        failing.forEach(future -> future.completeExceptionally(cause));
+    }
+
+    /**
+     * Fails the future with a {@link TimeoutException}, and drops it from the table, unless its reply arrives within
+     * the duration.  The timeout is cancelled once the future completes.
+     */
+    public Timeout expireAfter(int correlationId, CompletableFuture<Command> future, Duration duration) {
+        return TimerService.shared().onTimeout(future, duration, () -> eventLoop.execute(() -> {
+            if (pending.get(correlationId) == future) {
+                pending.remove(correlationId);
+            }
+            future.completeExceptionally(new TimeoutException("Timeout after " + duration.toMillis() + "ms"));
+        }));
+    }
+
+    /**
+     * @return the number of futures awaiting a reply; only a hint when called off the event loop
+     */
+    public int size() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.net.netty;
+
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.EventLoop;
+
+/**
+ * One of the streams a {@link Multiplexer} carries over its connection.  It runs on the connection's event loop, and
+ * carries bytes like a socket would, so the pipeline of a stream is that of a connection of its own.  Bytes received
+ * wait in the stream while it is not reading; should too many wait, the connection stops reading until they are taken.
+ * Bytes written go straight to the connection, so a stream is writable only while its connection is, and is told as
+ * that changes.
+ * <p>
+ * There is no flow control per stream, so a stream that turns off auto-read, as a server does with a connection
+ * holding more writes than its window, stalls every stream of its connection once {@link #MAX_BACKLOG} buffers wait.
+ * They carry on as it reads again.  Pausing the one stream instead would mean holding whatever else the peer sends it,
+ * without bound.
+ *
+ * @author jfulton
+ */
+public class StreamChannel extends AbstractChannel {
+
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false);
+    // Buffers waiting beyond this pause the connection, until half have been taken
+    static final int MAX_BACKLOG = 64;
+    private static final int MAX_COMPONENTS = 256;
+    private final Multiplexer multiplexer;
+    private final int streamId;
+    private final ChannelConfig config = new DefaultChannelConfig(this);
+    private final Queue<ByteBuf> inbound = new ArrayDeque<>();
+    private volatile boolean open = true;
+    private boolean readPending = false;
+    private boolean backlogged = false;
+
+    StreamChannel(Channel parent, Multiplexer multiplexer, int streamId) {
+        super(parent);
+        this.multiplexer = multiplexer;
+        this.streamId = streamId;
+    }
+
+    public int streamId() {
+        return streamId;
+    }
+
+    /**
+     * Called on the event loop with bytes received for the stream.
+     */
+    void received(ByteBuf buffer) {
+        if (!open) {
+            buffer.release();
+            return;
+        }
+        inbound.add(buffer);
+        if (!backlogged && inbound.size() > MAX_BACKLOG) {
+            backlogged = true;
+            multiplexer.backlogged(true);
+        }
+        deliver();
+    }
+
+    private void deliver() {
+        if (!readPending || inbound.isEmpty()) {
+            return;
+        }
+        readPending = false;
+        do {
+            pipeline().fireChannelRead(inbound.poll());
+        } while (!inbound.isEmpty() && config.isAutoRead());
+        if (backlogged && inbound.size() <= MAX_BACKLOG / 2) {
+            backlogged = false;
+            multiplexer.backlogged(false);
+        }
+        pipeline().fireChannelReadComplete();
+    }
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new AbstractUnsafe() {
+            @Override
+            public void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+                promise.setFailure(new UnsupportedOperationException("Streams are opened by their Multiplexer"));
+            }
+        };
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return loop == parent().eventLoop();
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return parent().localAddress();
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return parent().remoteAddress();
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) throws Exception {
+        throw new UnsupportedOperationException("Streams cannot be bound");
+    }
+
+    @Override
+    protected void doDisconnect() throws Exception {
+        doClose();
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        if (open) {
+            open = false;
+            ByteBuf buffer;
+            while ((buffer = inbound.poll()) != null) {
+                buffer.release();
+            }
+            if (backlogged) {
+                backlogged = false;
+                multiplexer.backlogged(false);
+            }
+            multiplexer.closed(this);
+        }
+    }
+
+    @Override
+    protected void doBeginRead() throws Exception {
+        readPending = true;
+        deliver();
+    }
+
+    /**
+     * Whatever was written since the last flush goes out as one run of frames.
+     */
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+        CompositeByteBuf written = alloc().compositeBuffer(MAX_COMPONENTS);
+        Object msg;
+        while ((msg = in.current()) != null) {
+            ByteBuf buffer = (ByteBuf) msg;
+            int length = buffer.readableBytes();
+            written.addComponent(buffer.retain());
+            written.writerIndex(written.writerIndex() + length);
+            in.remove();
+        }
+        multiplexer.write(streamId, written);
+    }
+
+    @Override
+    protected Object filterOutboundMessage(Object msg) throws Exception {
+        if (msg instanceof ByteBuf) {
+            return msg;
+        }
+        throw new UnsupportedOperationException("Streams only carry ByteBufs, not " + msg.getClass().getSimpleName());
+    }
+
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isActive() {
+        return open && isRegistered() && parent().isActive();
+    }
+
+    @Override
+    public boolean isWritable() {
+        return super.isWritable() && parent().isWritable();
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+}
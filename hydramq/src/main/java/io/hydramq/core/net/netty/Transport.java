@@ -0,0 +1,208 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.net.netty;
+
+import java.net.SocketAddress;
+import java.util.concurrent.ThreadFactory;
+
+import io.hydramq.exceptions.HydraRuntimeException;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+
+/**
+ * The socket transports connections can run over.  Epoll, available on Linux, makes fewer copies and less garbage
+ * than NIO, lets several server channels accept on the same port, and can run over Unix domain sockets, sparing
+ * clients on the broker's host the loopback TCP stack.  {@link #preferred()} picks epoll wherever its native library
+ * loads, and NIO everywhere else.  Either can also carry in-VM connections, over Netty's local channels.
+ *
+ * @author jfulton
+ */
+public enum Transport {
+
+    EPOLL {
+        @Override
+        public boolean isAvailable() {
+            return Epoll.isAvailable();
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(final int threads) {
+            return new EpollEventLoopGroup(threads);
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(final int threads, final ThreadFactory threadFactory) {
+            return new EpollEventLoopGroup(threads, threadFactory);
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends Channel> channelClass() {
+            return EpollSocketChannel.class;
+        }
+
+        @Override
+        public boolean reusePort(final ServerBootstrap bootstrap) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            return true;
+        }
+
+        @Override
+        public boolean supportsDomainSockets() {
+            return true;
+        }
+
+        @Override
+        protected Class<? extends ServerChannel> serverDomainSocketChannelClass() {
+            return EpollServerDomainSocketChannel.class;
+        }
+
+        @Override
+        protected Class<? extends Channel> domainSocketChannelClass() {
+            return EpollDomainSocketChannel.class;
+        }
+    },
+    NIO {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(final int threads) {
+            return new NioEventLoopGroup(threads);
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(final int threads, final ThreadFactory threadFactory) {
+            return new NioEventLoopGroup(threads, threadFactory);
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends Channel> channelClass() {
+            return NioSocketChannel.class;
+        }
+
+        @Override
+        public boolean reusePort(final ServerBootstrap bootstrap) {
+            return false;
+        }
+
+        @Override
+        public boolean supportsDomainSockets() {
+            return false;
+        }
+
+        @Override
+        protected Class<? extends ServerChannel> serverDomainSocketChannelClass() {
+            throw new HydraRuntimeException(this + " transport does not support domain sockets");
+        }
+
+        @Override
+        protected Class<? extends Channel> domainSocketChannelClass() {
+            throw new HydraRuntimeException(this + " transport does not support domain sockets");
+        }
+    };
+
+    public abstract boolean isAvailable();
+
+    /**
+     * @param threads the number of event loops, or 0 for Netty's default of twice the available processors
+     */
+    public abstract EventLoopGroup newEventLoopGroup(int threads);
+
+    /**
+     * @param threads the number of event loops, or 0 for Netty's default of twice the available processors
+     * @param threadFactory the factory for the event loops' threads
+     */
+    public abstract EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory);
+
+    public abstract Class<? extends ServerChannel> serverChannelClass();
+
+    public abstract Class<? extends Channel> channelClass();
+
+    /**
+     * Lets server channels bound from the bootstrap share their port, where the transport supports it.
+     *
+     * @return whether the port can be shared
+     */
+    public abstract boolean reusePort(ServerBootstrap bootstrap);
+
+    /**
+     * @return whether channels of this transport can bind and connect to a {@link DomainSocketAddress}
+     */
+    public abstract boolean supportsDomainSockets();
+
+    protected abstract Class<? extends ServerChannel> serverDomainSocketChannelClass();
+
+    protected abstract Class<? extends Channel> domainSocketChannelClass();
+
+    /**
+     * @return the class of server channel to bind the address with, which for a domain socket path, or an in-VM
+     * {@link LocalAddress}, is not the class used for ports
+     */
+    public Class<? extends ServerChannel> serverChannelClass(final SocketAddress address) {
+        if (address instanceof LocalAddress) {
+            return LocalServerChannel.class;
+        }
+        return address instanceof DomainSocketAddress ? serverDomainSocketChannelClass() : serverChannelClass();
+    }
+
+    /**
+     * @return the class of channel to connect to the address with, which for a domain socket path, or an in-VM
+     * {@link LocalAddress}, is not the class used for ports
+     */
+    public Class<? extends Channel> channelClass(final SocketAddress address) {
+        if (address instanceof LocalAddress) {
+            return LocalChannel.class;
+        }
+        return address instanceof DomainSocketAddress ? domainSocketChannelClass() : channelClass();
+    }
+
+    public static Transport preferred() {
+        return EPOLL.isAvailable() ? EPOLL : NIO;
+    }
+}
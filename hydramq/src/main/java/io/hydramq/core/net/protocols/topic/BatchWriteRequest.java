@@ -0,0 +1,43 @@
+package io.hydramq.core.net.protocols.topic;
+
+import java.util.List;
+import java.util.Map;
+
+import io.hydramq.Message;
+import io.hydramq.PartitionId;
+import io.hydramq.core.net.Request;
+
+/**
+ * Writes messages to any number of partitions in a single request, acknowledged once for the whole batch.  Each
+ * partition's messages are appended together.
+ *
+ * @author jfulton
+ */
+public class BatchWriteRequest extends Request {
+
+    private final Map<PartitionId, List<Message>> messages;
+
+    public BatchWriteRequest(final Map<PartitionId, List<Message>> messages) {
+        this.messages = messages;
+    }
+
+    public BatchWriteRequest(final int correlationId, final Map<PartitionId, List<Message>> messages) {
+        super(correlationId);
+        this.messages = messages;
+    }
+
+    public Map<PartitionId, List<Message>> getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return the number of messages across all partitions
+     */
+    public int size() {
+        int size = 0;
+        for (List<Message> partitionMessages : messages.values()) {
+            size += partitionMessages.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,69 @@
+package io.hydramq.core.net.protocols.topic;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.hydramq.Message;
+import io.hydramq.MessageSet;
+import io.hydramq.PartitionId;
+import io.hydramq.core.type.CommandTypeConverter;
+import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.NestedConverter;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Each partition's messages are written as a MessageSet, so they are laid out column-wise and compressed as a whole
+ * when the connection has negotiated either.
+ *
+ * @author jfulton
+ */
+public class BatchWriteRequestConverter extends CommandTypeConverter<BatchWriteRequest> {
+
+    private final NestedConverter<PartitionId> partitionIdConverter = new NestedConverter<>(PartitionId.class);
+    private final NestedConverter<MessageSet> messageSetConverter = new NestedConverter<>(MessageSet.class);
+    private final NestedConverter<Message> messageConverter = new NestedConverter<>(Message.class);
+
+    public BatchWriteRequestConverter() {
+        super(103);
+    }
+
+    @Override
+    protected BatchWriteRequest readObject(ConversionContext context, int correlationId, ByteBuf buffer) {
+        int partitionCount = buffer.readInt();
+        Map<PartitionId, List<Message>> messages = new LinkedHashMap<>(partitionCount * 2);
+        for (int i = 0; i < partitionCount; i++) {
+            PartitionId partitionId = partitionIdConverter.read(context, buffer);
+            MessageSet messageSet = messageSetConverter.read(context, buffer);
+            List<Message> partitionMessages = new ArrayList<>(messageSet.size());
+            messageSet.forEach(partitionMessages::add);
+            messages.put(partitionId, partitionMessages);
+        }
+        return new BatchWriteRequest(correlationId, messages);
+    }
+
+    @Override
+    protected void writeObject(ConversionContext context, BatchWriteRequest request, ByteBuf buffer) {
+        buffer.writeInt(request.getMessages().size());
+        request.getMessages().forEach((partitionId, partitionMessages) -> {
+            MessageSet messageSet = new MessageSet(0);
+            partitionMessages.forEach(messageSet::add);
+            partitionIdConverter.write(context, partitionId, buffer);
+            messageSetConverter.write(context, messageSet, buffer);
+        });
+    }
+
+    @Override
+    protected int estimateBodySize(ConversionContext context, BatchWriteRequest request) {
+        int size = Integer.BYTES;
+        for (Map.Entry<PartitionId, List<Message>> entry : request.getMessages().entrySet()) {
+            size += partitionIdConverter.estimateSize(context, entry.getKey())
+                    + messageSetConverter.estimateSize(context, new MessageSet(0));
+            for (Message message : entry.getValue()) {
+                size += messageConverter.estimateSize(context, message);
+            }
+        }
+        return size;
+    }
+}
@@ -3,6 +3,7 @@ package io.hydramq.core.net.protocols.topic;
 import io.hydramq.PartitionId;
 import io.hydramq.core.type.CommandTypeConverter;
 import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.NestedConverter;
 import io.netty.buffer.ByteBuf;
 
 /**
@@ -10,18 +11,20 @@ import io.netty.buffer.ByteBuf;
  */
 public class PartitionIdReadRequestConverter extends CommandTypeConverter<PartitionIdReadRequest> {
 
+    private final NestedConverter<PartitionId> partitionIdConverter = new NestedConverter<>(PartitionId.class);
+
     public PartitionIdReadRequestConverter() {
         super(202);
     }
 
     @Override
     protected PartitionIdReadRequest readObject(ConversionContext context, int correlationId, ByteBuf buffer) {
-        return new PartitionIdReadRequest(correlationId, context.read(PartitionId.class, buffer), buffer.readLong(), buffer.readInt());
+        return new PartitionIdReadRequest(correlationId, partitionIdConverter.read(context, buffer), buffer.readLong(), buffer.readInt());
     }
 
     @Override
     protected void writeObject(ConversionContext context, PartitionIdReadRequest request, ByteBuf buffer) {
-        context.write(PartitionId.class, request.getPartitionId(), buffer);
+        partitionIdConverter.write(context, request.getPartitionId(), buffer);
         buffer.writeLong(request.getMessageOffset());
         buffer.writeInt(request.getMaxMessages());
     }
@@ -3,26 +3,55 @@ package io.hydramq.core.net.protocols.topic;
 import io.hydramq.Message;
 import io.hydramq.PartitionId;
 import io.hydramq.core.net.Request;
+import io.hydramq.internal.util.Recyclable;
+import io.netty.util.Recycler;
 
 /**
  * @author jfulton
  */
-public class PartitionIdWriteRequest extends Request {
+public class PartitionIdWriteRequest extends Request implements Recyclable {
 
-    private final PartitionId partitionId;
-    private final Message message;
+    private static final Recycler<PartitionIdWriteRequest> RECYCLER = new Recycler<PartitionIdWriteRequest>() {
+        @Override
+        protected PartitionIdWriteRequest newObject(final Handle handle) {
+            return new PartitionIdWriteRequest(handle);
+        }
+    };
+    private final Recycler.Handle handle;
+    private PartitionId partitionId;
+    private Message message;
 
     public PartitionIdWriteRequest(final PartitionId partitionId, final Message message) {
+        this.handle = null;
         this.partitionId = partitionId;
         this.message = message;
     }
 
     public PartitionIdWriteRequest(final int correlationId, final PartitionId partitionId, final Message message) {
         super(correlationId);
+        this.handle = null;
         this.partitionId = partitionId;
         this.message = message;
     }
 
+    private PartitionIdWriteRequest(final Recycler.Handle handle) {
+        super(0);
+        this.handle = handle;
+    }
+
+    /**
+     * @return a pooled request.  Its owner calls {@link #recycle()} once nothing can still be using the message, which
+     * also recycles the message if it is itself {@link Recyclable}.  A request that is never recycled is collected.
+     */
+    public static PartitionIdWriteRequest newInstance(final int correlationId, final PartitionId partitionId,
+                                                      final Message message) {
+        PartitionIdWriteRequest request = RECYCLER.get();
+        request.correlationId(correlationId);
+        request.partitionId = partitionId;
+        request.message = message;
+        return request;
+    }
+
     public PartitionId getPartitionId() {
         return partitionId;
     }
@@ -30,4 +59,17 @@ public class PartitionIdWriteRequest extends Request {
     public Message getMessage() {
         return message;
     }
+
+    @Override
+    public void recycle() {
+        if (handle == null) {
+            return;
+        }
+        if (message instanceof Recyclable) {
+            ((Recyclable) message).recycle();
+        }
+        partitionId = null;
+        message = null;
+        RECYCLER.recycle(this, handle);
+    }
 }
@@ -4,6 +4,7 @@ import io.hydramq.Message;
 import io.hydramq.PartitionId;
 import io.hydramq.core.type.CommandTypeConverter;
 import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.NestedConverter;
 import io.netty.buffer.ByteBuf;
 
 /**
@@ -11,18 +12,41 @@ import io.netty.buffer.ByteBuf;
  */
 public class PartitionIdWriteRequestConverter extends CommandTypeConverter<PartitionIdWriteRequest> {
 
+    private final NestedConverter<PartitionId> partitionIdConverter = new NestedConverter<>(PartitionId.class);
+    private final NestedConverter<Message> messageConverter = new NestedConverter<>(Message.class);
+    private final boolean recycling;
+
     public PartitionIdWriteRequestConverter() {
+        this(false);
+    }
+
+    /**
+     * @param recycling whether requests are read into pooled instances, which their reader must recycle
+     */
+    public PartitionIdWriteRequestConverter(boolean recycling) {
         super(102);
+        this.recycling = recycling;
     }
 
     @Override
     protected PartitionIdWriteRequest readObject(ConversionContext context, int correlationId, ByteBuf buffer) {
-        return new PartitionIdWriteRequest(correlationId, context.read(PartitionId.class, buffer), context.read(Message.class,buffer));
+        if (recycling) {
+            return PartitionIdWriteRequest.newInstance(correlationId, partitionIdConverter.read(context, buffer),
+                    messageConverter.read(context, buffer));
+        }
+        return new PartitionIdWriteRequest(correlationId, partitionIdConverter.read(context, buffer),
+                messageConverter.read(context, buffer));
     }
 
     @Override
     protected void writeObject(ConversionContext context, PartitionIdWriteRequest request, ByteBuf buffer) {
-        context.write(PartitionId.class, request.getPartitionId(), buffer);
-        context.write(Message.class, request.getMessage(), buffer);
+        partitionIdConverter.write(context, request.getPartitionId(), buffer);
+        messageConverter.write(context, request.getMessage(), buffer);
+    }
+
+    @Override
+    protected int estimateBodySize(ConversionContext context, PartitionIdWriteRequest request) {
+        return partitionIdConverter.estimateSize(context, request.getPartitionId())
+                + messageConverter.estimateSize(context, request.getMessage());
     }
 }
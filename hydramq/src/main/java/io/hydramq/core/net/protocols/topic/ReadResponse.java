@@ -2,20 +2,54 @@ package io.hydramq.core.net.protocols.topic;
 
 import io.hydramq.MessageSet;
 import io.hydramq.core.net.Response;
+import io.hydramq.internal.util.Recyclable;
+import io.netty.util.Recycler;
 
 /**
  * @author jfulton
  */
-public class ReadResponse extends Response {
+public class ReadResponse extends Response implements Recyclable {
 
-    private final MessageSet messageSet;
+    private static final Recycler<ReadResponse> RECYCLER = new Recycler<ReadResponse>() {
+        @Override
+        protected ReadResponse newObject(final Handle handle) {
+            return new ReadResponse(handle);
+        }
+    };
+    private final Recycler.Handle handle;
+    private MessageSet messageSet;
 
     public ReadResponse(int correlationId, MessageSet messageSet) {
         super(correlationId);
+        this.handle = null;
         this.messageSet = messageSet;
     }
 
+    private ReadResponse(final Recycler.Handle handle) {
+        super(0);
+        this.handle = handle;
+    }
+
+    /**
+     * @return a pooled response, recycled by whatever encodes it.  The MessageSet is not pooled, and is only
+     * dereferenced on recycling.
+     */
+    public static ReadResponse newInstance(int correlationId, MessageSet messageSet) {
+        ReadResponse response = RECYCLER.get();
+        response.correlationId(correlationId);
+        response.messageSet = messageSet;
+        return response;
+    }
+
     public MessageSet getMessageSet() {
         return messageSet;
     }
+
+    @Override
+    public void recycle() {
+        if (handle != null) {
+            messageSet = null;
+            RECYCLER.recycle(this, handle);
+        }
+    }
 }
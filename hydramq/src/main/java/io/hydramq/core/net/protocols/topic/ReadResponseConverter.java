@@ -3,6 +3,7 @@ package io.hydramq.core.net.protocols.topic;
 import io.hydramq.MessageSet;
 import io.hydramq.core.type.CommandTypeConverter;
 import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.NestedConverter;
 import io.netty.buffer.ByteBuf;
 
 /**
@@ -10,17 +11,24 @@ import io.netty.buffer.ByteBuf;
  */
 public class ReadResponseConverter extends CommandTypeConverter<ReadResponse> {
 
+    private final NestedConverter<MessageSet> messageSetConverter = new NestedConverter<>(MessageSet.class);
+
     public ReadResponseConverter() {
         super(201);
     }
 
     @Override
     protected ReadResponse readObject(ConversionContext context, int correlationId, ByteBuf buffer) {
-        return new ReadResponse(correlationId,context.read(MessageSet.class, buffer));
+        return new ReadResponse(correlationId, messageSetConverter.read(context, buffer));
     }
 
     @Override
     protected void writeObject(ConversionContext context, ReadResponse response, ByteBuf buffer) {
-        context.write(MessageSet.class, response.getMessageSet(), buffer);
+        messageSetConverter.write(context, response.getMessageSet(), buffer);
+    }
+
+    @Override
+    protected int estimateBodySize(ConversionContext context, ReadResponse response) {
+        return messageSetConverter.estimateSize(context, response.getMessageSet());
     }
 }
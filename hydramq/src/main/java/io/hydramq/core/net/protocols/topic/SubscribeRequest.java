@@ -0,0 +1,84 @@
+package io.hydramq.core.net.protocols.topic;
+
+import io.hydramq.PartitionId;
+import io.hydramq.core.net.Request;
+
+/**
+ * Asks for the messages of a partition to be pushed as they arrive, as ReadResponses correlated by the subscriptionId,
+ * while credits last.  A subscription resumed after reconnecting keeps its subscriptionId.
+ *
+ * @author jfulton
+ */
+public class SubscribeRequest extends Request {
+
+    private final int subscriptionId;
+    private final PartitionId partitionId;
+    private final long messageOffset;
+    private final int maxMessages;
+    private final int messageCredits;
+    private final long byteCredits;
+
+    /**
+     * Starts a subscription, identified from then on by the correlationId of this request.
+     */
+    public SubscribeRequest(PartitionId partitionId, long messageOffset, int maxMessages, int messageCredits,
+                            long byteCredits) {
+        this.subscriptionId = correlationId();
+        this.partitionId = partitionId;
+        this.messageOffset = messageOffset;
+        this.maxMessages = maxMessages;
+        this.messageCredits = messageCredits;
+        this.byteCredits = byteCredits;
+    }
+
+    /**
+     * Resumes a subscription, such as after reconnecting.
+     */
+    public SubscribeRequest(int subscriptionId, PartitionId partitionId, long messageOffset, int maxMessages,
+                            int messageCredits, long byteCredits) {
+        this.subscriptionId = subscriptionId;
+        this.partitionId = partitionId;
+        this.messageOffset = messageOffset;
+        this.maxMessages = maxMessages;
+        this.messageCredits = messageCredits;
+        this.byteCredits = byteCredits;
+    }
+
+    public SubscribeRequest(int correlationId, int subscriptionId, PartitionId partitionId, long messageOffset,
+                            int maxMessages, int messageCredits, long byteCredits) {
+        super(correlationId);
+        this.subscriptionId = subscriptionId;
+        this.partitionId = partitionId;
+        this.messageOffset = messageOffset;
+        this.maxMessages = maxMessages;
+        this.messageCredits = messageCredits;
+        this.byteCredits = byteCredits;
+    }
+
+    public int getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public PartitionId getPartitionId() {
+        return partitionId;
+    }
+
+    public long getMessageOffset() {
+        return messageOffset;
+    }
+
+    /**
+     * @return the most messages pushed at once
+     */
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    public int getMessageCredits() {
+        return messageCredits;
+    }
+
+    public long getByteCredits() {
+        return byteCredits;
+    }
+}
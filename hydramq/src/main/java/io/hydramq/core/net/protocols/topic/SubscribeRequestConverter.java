@@ -0,0 +1,32 @@
+package io.hydramq.core.net.protocols.topic;
+
+import io.hydramq.PartitionId;
+import io.hydramq.core.type.CommandTypeConverter;
+import io.hydramq.core.type.ConversionContext;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * @author jfulton
+ */
+public class SubscribeRequestConverter extends CommandTypeConverter<SubscribeRequest> {
+
+    public SubscribeRequestConverter() {
+        super(210);
+    }
+
+    @Override
+    protected SubscribeRequest readObject(ConversionContext context, int correlationId, ByteBuf buffer) {
+        return new SubscribeRequest(correlationId, buffer.readInt(), context.read(PartitionId.class, buffer),
+                buffer.readLong(), buffer.readInt(), buffer.readInt(), buffer.readLong());
+    }
+
+    @Override
+    protected void writeObject(ConversionContext context, SubscribeRequest request, ByteBuf buffer) {
+        buffer.writeInt(request.getSubscriptionId());
+        context.write(PartitionId.class, request.getPartitionId(), buffer);
+        buffer.writeLong(request.getMessageOffset());
+        buffer.writeInt(request.getMaxMessages());
+        buffer.writeInt(request.getMessageCredits());
+        buffer.writeLong(request.getByteCredits());
+    }
+}
@@ -0,0 +1,40 @@
+package io.hydramq.core.net.protocols.topic;
+
+import io.hydramq.core.net.Request;
+
+/**
+ * Grants a subscription further credits.  It is not replied to, so that granting costs no round trip.
+ *
+ * @author jfulton
+ */
+public class SubscriptionCredit extends Request {
+
+    private final int subscriptionId;
+    private final int messages;
+    private final long bytes;
+
+    public SubscriptionCredit(int subscriptionId, int messages, long bytes) {
+        this.subscriptionId = subscriptionId;
+        this.messages = messages;
+        this.bytes = bytes;
+    }
+
+    public SubscriptionCredit(int correlationId, int subscriptionId, int messages, long bytes) {
+        super(correlationId);
+        this.subscriptionId = subscriptionId;
+        this.messages = messages;
+        this.bytes = bytes;
+    }
+
+    public int getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public int getMessages() {
+        return messages;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,27 @@
+package io.hydramq.core.net.protocols.topic;
+
+import io.hydramq.core.type.CommandTypeConverter;
+import io.hydramq.core.type.ConversionContext;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * @author jfulton
+ */
+public class SubscriptionCreditConverter extends CommandTypeConverter<SubscriptionCredit> {
+
+    public SubscriptionCreditConverter() {
+        super(211);
+    }
+
+    @Override
+    protected SubscriptionCredit readObject(ConversionContext context, int correlationId, ByteBuf buffer) {
+        return new SubscriptionCredit(correlationId, buffer.readInt(), buffer.readInt(), buffer.readLong());
+    }
+
+    @Override
+    protected void writeObject(ConversionContext context, SubscriptionCredit credit, ByteBuf buffer) {
+        buffer.writeInt(credit.getSubscriptionId());
+        buffer.writeInt(credit.getMessages());
+        buffer.writeLong(credit.getBytes());
+    }
+}
@@ -1,9 +1,12 @@
 package io.hydramq.core.net.protocols.topic;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import io.hydramq.PartitionId;
 import io.hydramq.core.net.Handshake;
+import io.hydramq.core.type.Compression;
 import io.hydramq.listeners.PartitionFlags;
 
 /**
@@ -14,19 +17,55 @@ public class TopicHandshake extends Handshake {
     private final int version;
     private final String topicName;
     private final Map<PartitionId, PartitionFlags> partitions;
+    private final List<String> propertyKeys;
+    private final Compression compression;
+    private final int writeWindow;
 
     public TopicHandshake(final int version, final String topicName, Map<PartitionId, PartitionFlags> partitions) {
+        this(version, topicName, partitions, Collections.emptyList());
+    }
+
+    public TopicHandshake(final int version, final String topicName, Map<PartitionId, PartitionFlags> partitions,
+                          List<String> propertyKeys) {
+        this(version, topicName, partitions, propertyKeys, Compression.NONE);
+    }
+
+    public TopicHandshake(final int version, final String topicName, Map<PartitionId, PartitionFlags> partitions,
+                          List<String> propertyKeys, Compression compression) {
         super();
         this.version = version;
         this.topicName = topicName;
         this.partitions = partitions;
+        this.propertyKeys = propertyKeys;
+        this.compression = compression;
+        this.writeWindow = 0;
     }
 
     public TopicHandshake(final int correlationId, final int version, final String topicName, Map<PartitionId, PartitionFlags> partitions) {
+        this(correlationId, version, topicName, partitions, Collections.emptyList());
+    }
+
+    public TopicHandshake(final int correlationId, final int version, final String topicName,
+                          Map<PartitionId, PartitionFlags> partitions, List<String> propertyKeys) {
+        this(correlationId, version, topicName, partitions, propertyKeys, Compression.NONE);
+    }
+
+    public TopicHandshake(final int correlationId, final int version, final String topicName,
+                          Map<PartitionId, PartitionFlags> partitions, List<String> propertyKeys,
+                          Compression compression) {
+        this(correlationId, version, topicName, partitions, propertyKeys, compression, 0);
+    }
+
+    public TopicHandshake(final int correlationId, final int version, final String topicName,
+                          Map<PartitionId, PartitionFlags> partitions, List<String> propertyKeys,
+                          Compression compression, int writeWindow) {
         super(correlationId);
         this.version = version;
         this.topicName = topicName;
         this.partitions = partitions;
+        this.propertyKeys = propertyKeys;
+        this.compression = compression;
+        this.writeWindow = writeWindow;
     }
 
     public int getVersion() {
@@ -45,7 +84,46 @@ public class TopicHandshake extends Handshake {
         return partitions;
     }
 
+    /**
+     * From version 2, the MessageProperties keys proposed for the connection's key dictionary by the client, and the
+     * dictionary itself, in id order, in the server's reply.
+     */
+    public List<String> getPropertyKeys() {
+        return propertyKeys;
+    }
+
     public TopicHandshake reply(int version, Map<PartitionId, PartitionFlags> partitions) {
         return new TopicHandshake(correlationId(), version, topicName, partitions);
     }
+
+    /**
+     * From version 5, the codec the client would like MessageSets compressed with, and the codec agreed on, which may
+     * be {@link Compression#NONE}, in the server's reply.
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public TopicHandshake reply(int version, Map<PartitionId, PartitionFlags> partitions, List<String> propertyKeys) {
+        return new TopicHandshake(correlationId(), version, topicName, partitions, propertyKeys);
+    }
+
+    public TopicHandshake reply(int version, Map<PartitionId, PartitionFlags> partitions, List<String> propertyKeys,
+                                Compression compression) {
+        return new TopicHandshake(correlationId(), version, topicName, partitions, propertyKeys, compression);
+    }
+
+    /**
+     * From version 8, the number of writes the server will hold unacknowledged for the connection, in the server's
+     * reply.  0 if it does not say.
+     */
+    public int getWriteWindow() {
+        return writeWindow;
+    }
+
+    public TopicHandshake reply(int version, Map<PartitionId, PartitionFlags> partitions, List<String> propertyKeys,
+                                Compression compression, int writeWindow) {
+        return new TopicHandshake(correlationId(), version, topicName, partitions, propertyKeys, compression,
+                writeWindow);
+    }
 }
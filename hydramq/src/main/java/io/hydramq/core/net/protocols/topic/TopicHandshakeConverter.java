@@ -1,10 +1,14 @@
 package io.hydramq.core.net.protocols.topic;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import io.hydramq.PartitionId;
 import io.hydramq.core.type.CommandTypeConverter;
+import io.hydramq.core.type.Compression;
 import io.hydramq.core.type.ConversionContext;
 import io.hydramq.listeners.PartitionFlags;
 import io.netty.buffer.ByteBuf;
@@ -27,7 +31,37 @@ public class TopicHandshakeConverter extends CommandTypeConverter<TopicHandshake
         for (int i = 0; i < partitionCount; i++) {
             partitions.put(context.read(PartitionId.class, buffer), PartitionFlags.fromInt(buffer.readInt()));
         }
-        return new TopicHandshake(correlationId, version, topicName, partitions);
+        // Servers predating version 2 reply with the client's version, however high, but only ever write the version 1
+        // layout.  The version spoken is therefore the highest whose fields are actually present in the frame.
+        List<String> propertyKeys = Collections.emptyList();
+        if (version >= 2) {
+            if (buffer.isReadable()) {
+                int keyCount = buffer.readInt();
+                propertyKeys = new ArrayList<>(keyCount);
+                for (int i = 0; i < keyCount; i++) {
+                    propertyKeys.add(context.read(String.class, buffer));
+                }
+            } else {
+                version = 1;
+            }
+        }
+        Compression compression = Compression.NONE;
+        if (version >= 5) {
+            if (buffer.isReadable()) {
+                compression = Compression.fromIdOrNone(buffer.readByte());
+            } else {
+                version = 4;
+            }
+        }
+        int writeWindow = 0;
+        if (version >= 8) {
+            if (buffer.isReadable()) {
+                writeWindow = buffer.readInt();
+            } else {
+                version = 7;
+            }
+        }
+        return new TopicHandshake(correlationId, version, topicName, partitions, propertyKeys, compression, writeWindow);
     }
 
     @Override
@@ -40,5 +74,18 @@ public class TopicHandshakeConverter extends CommandTypeConverter<TopicHandshake
             context.write(PartitionId.class, partitionId, buffer);
             buffer.writeInt(flags.toInt());
         });
+        // Version 1 peers stop reading before this point, and ignore the rest of the frame
+        if (producerHandshake.getVersion() >= 2) {
+            buffer.writeInt(producerHandshake.getPropertyKeys().size());
+            for (String key : producerHandshake.getPropertyKeys()) {
+                context.write(String.class, key, buffer);
+            }
+        }
+        if (producerHandshake.getVersion() >= 5) {
+            buffer.writeByte(producerHandshake.getCompression().id());
+        }
+        if (producerHandshake.getVersion() >= 8) {
+            buffer.writeInt(producerHandshake.getWriteWindow());
+        }
     }
 }
@@ -0,0 +1,26 @@
+package io.hydramq.core.net.protocols.topic;
+
+import io.hydramq.core.net.Request;
+
+/**
+ * Ends a subscription.  Its acknowledgement follows the last ReadResponse pushed for it.
+ *
+ * @author jfulton
+ */
+public class UnsubscribeRequest extends Request {
+
+    private final int subscriptionId;
+
+    public UnsubscribeRequest(int subscriptionId) {
+        this.subscriptionId = subscriptionId;
+    }
+
+    public UnsubscribeRequest(int correlationId, int subscriptionId) {
+        super(correlationId);
+        this.subscriptionId = subscriptionId;
+    }
+
+    public int getSubscriptionId() {
+        return subscriptionId;
+    }
+}
@@ -0,0 +1,25 @@
+package io.hydramq.core.net.protocols.topic;
+
+import io.hydramq.core.type.CommandTypeConverter;
+import io.hydramq.core.type.ConversionContext;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * @author jfulton
+ */
+public class UnsubscribeRequestConverter extends CommandTypeConverter<UnsubscribeRequest> {
+
+    public UnsubscribeRequestConverter() {
+        super(212);
+    }
+
+    @Override
+    protected UnsubscribeRequest readObject(ConversionContext context, int correlationId, ByteBuf buffer) {
+        return new UnsubscribeRequest(correlationId, buffer.readInt());
+    }
+
+    @Override
+    protected void writeObject(ConversionContext context, UnsubscribeRequest request, ByteBuf buffer) {
+        buffer.writeInt(request.getSubscriptionId());
+    }
+}
@@ -46,6 +46,11 @@ public abstract class CommandTypeConverter<T extends Command> extends TypeConver
         writeObject(context, instance, buffer);
     }
 
+    @Override
+    public int estimateSize(final ConversionContext context, final T instance) {
+        return Integer.BYTES * 2 + estimateBodySize(context, instance);
+    }
+
     public int typeId() {
         return typeId;
     }
@@ -53,4 +58,11 @@ public abstract class CommandTypeConverter<T extends Command> extends TypeConver
     abstract protected T readObject(ConversionContext context, int correlationId, final ByteBuf buffer);
 
     abstract protected void writeObject(ConversionContext context, final T instance, final ByteBuf buffer);
+
+    /**
+     * @return the estimated size of what {@link #writeObject} writes, or zero for commands too small to matter
+     */
+    protected int estimateBodySize(ConversionContext context, final T instance) {
+        return 0;
+    }
 }
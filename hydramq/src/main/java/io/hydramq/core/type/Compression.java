@@ -0,0 +1,172 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.core.type;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.hydramq.exceptions.HydraRuntimeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * Codecs for compressing a MessageSet as a whole, negotiated per connection through the TopicHandshake.  Codecs are
+ * identified on the wire by {@link #id()}.
+ *
+ * @author jfulton
+ */
+public enum Compression {
+
+    NONE(0) {
+        @Override
+        public void compress(final ByteBuf source, final ByteBuf target) {
+            target.writeBytes(source);
+        }
+
+        @Override
+        public void decompress(final ByteBuf source, final int length, final ByteBuf target) {
+            target.writeBytes(source, length);
+        }
+    },
+
+    DEFLATE(1) {
+        @Override
+        public void compress(final ByteBuf source, final ByteBuf target) {
+            Deflater deflater = DEFLATERS.get();
+            deflater.reset();
+            int length = source.readableBytes();
+            if (source.hasArray()) {
+                deflater.setInput(source.array(), source.arrayOffset() + source.readerIndex(), length);
+            } else {
+                deflater.setInput(copy(source, length));
+            }
+            deflater.finish();
+            source.skipBytes(length);
+            while (!deflater.finished()) {
+                target.ensureWritable(Math.max(length / 2, MIN_WRITABLE));
+                target.writerIndex(target.writerIndex() + deflater.deflate(target.array(),
+                        target.arrayOffset() + target.writerIndex(), target.writableBytes()));
+            }
+        }
+
+        @Override
+        public void decompress(final ByteBuf source, final int length, final ByteBuf target) {
+            Inflater inflater = INFLATERS.get();
+            inflater.reset();
+            if (source.hasArray()) {
+                inflater.setInput(source.array(), source.arrayOffset() + source.readerIndex(), length);
+            } else {
+                inflater.setInput(copy(source, length));
+            }
+            source.skipBytes(length);
+            try {
+                while (!inflater.finished()) {
+                    if (!target.isWritable()) {
+                        if (target.writerIndex() == target.maxCapacity()) {
+                            throw new HydraRuntimeException(name() + " block exceeds its declared length");
+                        }
+                        target.ensureWritable(Math.min(MIN_WRITABLE, target.maxCapacity() - target.writerIndex()));
+                    }
+                    int inflated = inflater.inflate(target.array(), target.arrayOffset() + target.writerIndex(),
+                            target.writableBytes());
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new HydraRuntimeException("Truncated " + name() + " block");
+                    }
+                    target.writerIndex(target.writerIndex() + inflated);
+                }
+            } catch (DataFormatException e) {
+                throw new HydraRuntimeException("Corrupt " + name() + " block", e);
+            }
+        }
+    };
+
+    private static final int MIN_WRITABLE = 256;
+    // Deflater and Inflater hold native memory, so one of each is kept per thread rather than one per batch
+    private static final FastThreadLocal<Deflater> DEFLATERS = new FastThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater();
+        }
+    };
+    private static final FastThreadLocal<Inflater> INFLATERS = new FastThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private final int id;
+
+    Compression(final int id) {
+        this.id = id;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    /**
+     * Compresses the readable bytes of source into target, which must be a heap buffer.
+     */
+    public abstract void compress(ByteBuf source, ByteBuf target);
+
+    /**
+     * Decompresses length bytes of source into target, which must be a heap buffer.
+     */
+    public abstract void decompress(ByteBuf source, int length, ByteBuf target);
+
+    private static byte[] copy(final ByteBuf source, final int length) {
+        byte[] bytes = new byte[length];
+        source.getBytes(source.readerIndex(), bytes);
+        return bytes;
+    }
+
+    /**
+     * Looks up the codec of a compressed block, which cannot be read without it.
+     */
+    public static Compression fromId(int id) {
+        Compression compression = find(id);
+        if (compression == null) {
+            throw new HydraRuntimeException("Unknown compression " + id);
+        }
+        return compression;
+    }
+
+    /**
+     * Looks up a codec proposed during negotiation, where a newer peer may propose one this side does not know.
+     *
+     * @return the codec, or NONE if unknown
+     */
+    public static Compression fromIdOrNone(int id) {
+        Compression compression = find(id);
+        return compression != null ? compression : NONE;
+    }
+
+    private static Compression find(int id) {
+        for (Compression compression : values()) {
+            if (compression.id == id) {
+                return compression;
+            }
+        }
+        return null;
+    }
+}
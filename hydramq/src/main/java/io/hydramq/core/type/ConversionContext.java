@@ -19,9 +19,11 @@
 
 package io.hydramq.core.type;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.hydramq.CursorInfo;
 import io.hydramq.Message;
@@ -37,6 +39,8 @@ import io.hydramq.core.net.commands.CursorInfoResponse;
 import io.hydramq.core.net.commands.PartitionInfoRequest;
 import io.hydramq.core.net.commands.PartitionInfoResponse;
 import io.hydramq.core.net.commands.WriteCursorRequest;
+import io.hydramq.core.net.protocols.topic.BatchWriteRequest;
+import io.hydramq.core.net.protocols.topic.BatchWriteRequestConverter;
 import io.hydramq.core.net.protocols.topic.LockListenerNotification;
 import io.hydramq.core.net.protocols.topic.LockListenerRequest;
 import io.hydramq.core.net.protocols.topic.LockListenerRequestRequestConverter;
@@ -48,9 +52,15 @@ import io.hydramq.core.net.protocols.topic.PartitionsDiscoveredNotification;
 import io.hydramq.core.net.protocols.topic.PartitionsDiscoveredNotificationConverter;
 import io.hydramq.core.net.protocols.topic.ReadResponse;
 import io.hydramq.core.net.protocols.topic.ReadResponseConverter;
+import io.hydramq.core.net.protocols.topic.SubscribeRequest;
+import io.hydramq.core.net.protocols.topic.SubscribeRequestConverter;
+import io.hydramq.core.net.protocols.topic.SubscriptionCredit;
+import io.hydramq.core.net.protocols.topic.SubscriptionCreditConverter;
 import io.hydramq.core.net.protocols.topic.SubscriptionStatusNotificationConverter;
 import io.hydramq.core.net.protocols.topic.TopicHandshake;
 import io.hydramq.core.net.protocols.topic.TopicHandshakeConverter;
+import io.hydramq.core.net.protocols.topic.UnsubscribeRequest;
+import io.hydramq.core.net.protocols.topic.UnsubscribeRequestConverter;
 import io.hydramq.core.net.protocols.topicmanager.TopicDiscoveredNotification;
 import io.hydramq.core.net.protocols.topicmanager.TopicDiscoveredNotificationConverter;
 import io.hydramq.core.net.protocols.topicmanager.TopicManagerHandshake;
@@ -73,6 +83,7 @@ import io.hydramq.core.type.converters.StringConverter;
 import io.hydramq.core.type.converters.UUIDConverter;
 import io.hydramq.core.type.converters.WriteCursorRequestConverter;
 import io.hydramq.exceptions.HydraRuntimeException;
+import io.hydramq.internal.util.Assert;
 import io.hydramq.listeners.PartitionFlags;
 import io.netty.buffer.ByteBuf;
 
@@ -81,28 +92,126 @@ import io.netty.buffer.ByteBuf;
  */
 public class ConversionContext {
 
-    private Map<Integer, Class<?>> correlatedConverters = new HashMap<>();
+    private static final int INITIAL_COMMAND_TYPES = 1024;
+    // Command converters indexed by typeId, so dispatching an incoming command is a single array load
+    private TypeConverter<?>[] commandConverters = new TypeConverter<?>[INITIAL_COMMAND_TYPES];
     private Map<Class<?>, TypeConverter<?>> converters = new HashMap<>();
+    // Subclasses written by a registered base type's converter, resolved once
+    private final Map<Class<?>, TypeConverter<?>> inheritedConverters = new ConcurrentHashMap<>();
+    private volatile PropertyKeyDictionary keyDictionary;
+    private volatile boolean compact;
+    private volatile boolean columnar;
+    private volatile Compression compression = Compression.NONE;
+    // Bumped by every registration, so that NestedConverters resolved earlier know to resolve again
+    private volatile int registrations;
 
     public <T> ConversionContext register(Class<T> type, TypeConverter<T> converter) {
         converters.put(type, converter);
+        inheritedConverters.clear();
+        registrations++;
         if (converter instanceof CommandTypeConverter<?>) {
-            CommandTypeConverter<?> commandTypeConverter = (CommandTypeConverter) converter;
-            correlatedConverters.put(commandTypeConverter.typeId(), type);
+            int typeId = ((CommandTypeConverter<?>) converter).typeId();
+            Assert.argumentIsTrue(typeId >= 0, "typeId must not be negative");
+            if (typeId >= commandConverters.length) {
+                commandConverters = Arrays.copyOf(commandConverters, Integer.highestOneBit(typeId) << 1);
+            }
+            commandConverters[typeId] = converter;
         }
         return this;
     }
 
     private <T> TypeConverter<T> lookup(Class<T> type) {
-        if (converters.containsKey(type)) {
-            return (TypeConverter<T>) converters.get(type);
+        TypeConverter<?> converter = converters.get(type);
+        if (converter == null) {
+            converter = inheritedConverters.get(type);
+            if (converter == null) {
+                converter = lookupInherited(type);
+            }
+        }
+        return (TypeConverter<T>) converter;
+    }
+
+    private TypeConverter<?> lookupInherited(Class<?> type) {
+        // Specializations, such as lazily decoded messages, are written by their base type's converter
+        for (Class<?> parent = type.getSuperclass(); parent != null; parent = parent.getSuperclass()) {
+            TypeConverter<?> converter = converters.get(parent);
+            if (converter != null) {
+                inheritedConverters.put(type, converter);
+                return converter;
+            }
         }
         throw new HydraRuntimeException("No " + TypeConverter.class.getName() + " registered for " + type.getName());
     }
 
+    /**
+     * Sets the dictionary MessageProperties keys are encoded against, or null to spell every key out.  Both the reading
+     * and the writing side must use the same dictionary.
+     */
+    public ConversionContext keyDictionary(PropertyKeyDictionary keyDictionary) {
+        this.keyDictionary = keyDictionary;
+        return this;
+    }
+
+    public PropertyKeyDictionary keyDictionary() {
+        return keyDictionary;
+    }
+
+    /**
+     * Selects the compact encoding for messages: varint lengths and counts, zigzag varint integers, and a varint
+     * type-presence bitmap.  Applies to Message, MessageProperties and MessageSet, including the Strings and byte
+     * arrays within them; command headers and control commands keep their fixed-width encoding, so they remain
+     * readable while the two sides switch over.  Both the reading and the writing side must agree.
+     */
+    public ConversionContext compact(boolean compact) {
+        this.compact = compact;
+        return this;
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Allows MessageSets to be written column-wise, with the property schema written once per set rather than once per
+     * message.  Applies only alongside the compact encoding.  Both the reading and the writing side must agree.
+     */
+    public ConversionContext columnar(boolean columnar) {
+        this.columnar = columnar;
+        return this;
+    }
+
+    public boolean isColumnar() {
+        return columnar && compact;
+    }
+
+    /**
+     * Selects the codec MessageSets are compressed with, as a whole, when that makes them smaller.  Applies only
+     * alongside the compact encoding.  Both the reading and the writing side must agree.
+     */
+    public ConversionContext compression(Compression compression) {
+        Assert.argumentNotNull(compression, "compression");
+        this.compression = compression;
+        return this;
+    }
+
+    public Compression compression() {
+        return compact ? compression : Compression.NONE;
+    }
+
+    /**
+     * @return the converter registered for type, for converters that cooperate with the converters of their parts.
+     */
+    public <T> TypeConverter<T> converter(Class<T> type) {
+        return lookup(type);
+    }
+
+    int registrations() {
+        return registrations;
+    }
+
     private TypeConverter<?> lookup(int typeId) {
-        if (correlatedConverters.containsKey(typeId)) {
-            return converters.get(correlatedConverters.get(typeId));
+        if (readable(typeId)) {
+            return commandConverters[typeId];
         }
         throw new HydraRuntimeException("No " + CommandTypeConverter.class.getName() + " registered for typeId " + typeId);
     }
@@ -112,10 +221,12 @@ public class ConversionContext {
     }
 
     public Command read(ByteBuf buffer) {
-        if (!readable(buffer.getInt(0))) {
+        int typeId = buffer.getInt(0);
+        if (!readable(typeId)) {
             return null;
         }
-        return read(buffer.readInt(), buffer);
+        buffer.skipBytes(Integer.BYTES);
+        return (Command) commandConverters[typeId].read(this, buffer);
     }
 
     public <T> T read(Class<T> type, ByteBuf buffer) {
@@ -135,8 +246,16 @@ public class ConversionContext {
         return this;
     }
 
+    public <T> int estimateSize(Class<T> type, T instance) {
+        return lookup(type).estimateSize(this, instance);
+    }
+
+    public int estimateSize(Object instance) {
+        return lookup(instance.getClass()).estimateObjectSize(this, instance);
+    }
+
     public boolean readable(int typeId) {
-        return correlatedConverters.containsKey(typeId);
+        return typeId >= 0 && typeId < commandConverters.length && commandConverters[typeId] != null;
     }
 
     public boolean readable(ByteBuf buffer) {
@@ -144,7 +263,12 @@ public class ConversionContext {
     }
 
     public boolean writable(Object object) {
-        return converters.containsKey(object.getClass());
+        for (Class<?> type = object.getClass(); type != null; type = type.getSuperclass()) {
+            if (converters.containsKey(type)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public static ConversionContext base() {
@@ -168,10 +292,14 @@ public class ConversionContext {
                 .register(PartitionInfoResponse.class, new PartitionInfoResponseConverter())
                 .register(ReadResponse.class, new ReadResponseConverter())
                 .register(PartitionIdWriteRequest.class, new PartitionIdWriteRequestConverter())
+                .register(BatchWriteRequest.class, new BatchWriteRequestConverter())
                 .register(PartitionId.class, new PartitionIdConverter())
                 .register(PartitionFlags.Flag.class, new PartitionStateConverter())
                 .register(PartitionIdReadRequest.class, new PartitionIdReadRequestConverter())
                 .register(PartitionsDiscoveredNotification.class, new PartitionsDiscoveredNotificationConverter())
+                .register(SubscribeRequest.class, new SubscribeRequestConverter())
+                .register(SubscriptionCredit.class, new SubscriptionCreditConverter())
+                .register(UnsubscribeRequest.class, new UnsubscribeRequestConverter())
                 .register(LockListenerRequest.class, new LockListenerRequestRequestConverter())
                 .register(LockListenerNotification.class, new SubscriptionStatusNotificationConverter())
                 .register(CursorInfo.class, new CursorInfoConverter())
@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.core.type;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A converter's reference to the converter of one of its parts, such as the Message of a write request.  The part's
+ * converter is resolved once per {@link ConversionContext} and kept, rather than looked up for every field written or
+ * read.  It is resolved again when used with another context, or after its context registers another converter, so
+ * that converters may still be registered in any order and overridden.
+ *
+ * Thread Safe.
+ *
+ * @author jfulton
+ */
+public final class NestedConverter<T> {
+
+    private final Class<T> type;
+    private volatile Resolved<T> resolved;
+
+    public NestedConverter(final Class<T> type) {
+        this.type = type;
+    }
+
+    public TypeConverter<T> get(final ConversionContext context) {
+        Resolved<T> current = resolved;
+        if (current == null || current.context != context || current.registrations != context.registrations()) {
+            current = new Resolved<>(context, context.registrations(), context.converter(type));
+            resolved = current;
+        }
+        return current.converter;
+    }
+
+    public T read(final ConversionContext context, final ByteBuf buffer) {
+        return get(context).read(context, buffer);
+    }
+
+    public void write(final ConversionContext context, final T instance, final ByteBuf buffer) {
+        get(context).write(context, instance, buffer);
+    }
+
+    public int estimateSize(final ConversionContext context, final T instance) {
+        return get(context).estimateSize(context, instance);
+    }
+
+    private static final class Resolved<T> {
+
+        private final ConversionContext context;
+        private final int registrations;
+        private final TypeConverter<T> converter;
+
+        private Resolved(final ConversionContext context, final int registrations, final TypeConverter<T> converter) {
+            this.context = context;
+            this.registrations = registrations;
+            this.converter = converter;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import io.hydramq.exceptions.HydraRuntimeException;
+import io.hydramq.internal.util.Assert;
+
+/**
+ * Assigns small integer ids to MessageProperties keys, so an encoding may refer to a repeated key by id rather than
+ * spelling it out on every message.  Ids are assigned in order from 0 and never reassigned, and decoding a key by id
+ * always returns the same String instance.
+ *
+ * A dictionary either stays fixed, as when both ends of a connection agree on one during their handshake, or grows as
+ * new keys are written up to a maximum size, as for a segment on disk.  Keys that don't fit are encoded inline.
+ *
+ * Thread Safe.
+ *
+ * @author jfulton
+ */
+public class PropertyKeyDictionary {
+
+    private final int maxSize;
+    private final Consumer<String> onAdd;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] keys = new String[0];
+
+    /**
+     * Creates a fixed dictionary of the given keys.
+     */
+    public PropertyKeyDictionary(Collection<String> keys) {
+        this(keys, (int) keys.stream().distinct().count(), null);
+    }
+
+    /**
+     * Creates a dictionary that grows up to maxSize keys.  onAdd, if not null, is called with each new key before an
+     * id is assigned to it, so a persistent dictionary can record the key before anything refers to it.
+     */
+    public PropertyKeyDictionary(Collection<String> keys, int maxSize, Consumer<String> onAdd) {
+        Assert.argumentNotNull(keys, "keys");
+        Assert.argumentIsTrue(maxSize >= keys.stream().distinct().count(), "maxSize must hold the initial keys");
+        this.maxSize = maxSize;
+        this.onAdd = onAdd;
+        for (String key : keys) {
+            if (!ids.containsKey(key)) {
+                append(key);
+            }
+        }
+    }
+
+    /**
+     * @return the id of key, or -1 if key is not in this dictionary.
+     */
+    public int id(String key) {
+        Integer id = ids.get(key);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @return the id of key, adding it if the dictionary has room, or -1 if the dictionary is full.
+     */
+    public int idOrAdd(String key) {
+        int id = id(key);
+        return id >= 0 ? id : add(key);
+    }
+
+    public String key(int id) {
+        String[] snapshot = keys;
+        if (id < 0 || id >= snapshot.length) {
+            throw new HydraRuntimeException("Unknown property key id " + id);
+        }
+        return snapshot[id];
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public List<String> keys() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    private synchronized int add(String key) {
+        Integer existing = ids.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        String[] snapshot = keys;
+        if (snapshot.length >= maxSize) {
+            return -1;
+        }
+        if (onAdd != null) {
+            onAdd.accept(key);
+        }
+        return append(key);
+    }
+
+    private int append(String key) {
+        String[] snapshot = keys;
+        String[] grown = Arrays.copyOf(snapshot, snapshot.length + 1);
+        grown[snapshot.length] = key;
+        keys = grown;
+        ids.put(key, snapshot.length);
+        return snapshot.length;
+    }
+}
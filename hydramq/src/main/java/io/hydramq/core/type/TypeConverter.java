@@ -30,7 +30,23 @@ public abstract class TypeConverter<T> {
 
     public abstract void write(ConversionContext context, T instance, ByteBuf buffer);
 
+    @SuppressWarnings("unchecked")
     public void writeObject(ConversionContext context, Object instance, ByteBuf buffer) {
         write(context, (T) instance, buffer);
     }
+
+    /**
+     * Estimates how many bytes {@link #write} will take, so that encoders can allocate their buffer once.  Converters
+     * that know their encoding, such as one cached from a read, report it exactly.
+     *
+     * @return the estimated size in bytes, or zero if the converter cannot tell
+     */
+    public int estimateSize(ConversionContext context, T instance) {
+        return 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public int estimateObjectSize(ConversionContext context, Object instance) {
+        return estimateSize(context, (T) instance);
+    }
 }
@@ -44,4 +44,22 @@ public class ByteArrayConverter extends TypeConverter<byte[]> {
             buffer.writeBytes(bytes);
         }
     }
+
+    /**
+     * The compact encoding used within messages: a varint length, then the bytes.
+     */
+    public static void writeCompact(final ByteBuf buffer, final byte[] bytes) {
+        if (bytes == null) {
+            buffer.writeByte(0);
+        } else {
+            VarInts.writeUnsignedInt(buffer, bytes.length);
+            buffer.writeBytes(bytes);
+        }
+    }
+
+    public static byte[] readCompact(final ByteBuf buffer) {
+        byte[] bytes = new byte[VarInts.readUnsignedInt(buffer)];
+        buffer.readBytes(bytes);
+        return bytes;
+    }
 }
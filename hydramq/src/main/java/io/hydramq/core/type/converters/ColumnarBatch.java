@@ -0,0 +1,374 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type.converters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import io.hydramq.Message;
+import io.hydramq.MessageProperties;
+import io.hydramq.MessageSet;
+import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.PropertyKeyDictionary;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * The messages of a MessageSet, encoded column-wise (see {@link ConversionContext#columnar(boolean)}).  A schema of
+ * (type, key) columns is written once for the batch, followed by each column's values for the messages carrying it,
+ * then the bodies, recording absent (null) bodies the same way as absent values:
+ *
+ * <pre>
+ *   columnCount                      varint
+ *   columnCount x (type, key)        byte, property key as written by {@link MessagePropertiesConverter}
+ *   columnCount x column             presence (0: every message, 1: a bitmap of ceil(count / 8) bytes follows),
+ *                                    then one value per present message
+ *   body presence                    as for a column
+ *   bodyLength per present body      varint
+ *   bodies
+ * </pre>
+ *
+ * Values use the compact encoding, except that Long columns are written as zigzag deltas from the previous present
+ * value, so timestamps and sequence numbers shrink to a byte or two.  On read, the batch is copied out of the source
+ * buffer once, primitive columns are decoded up front, and Strings, byte arrays and bodies are read on access through
+ * {@link ColumnarMessage}s sharing that copy.
+ *
+ * @author jfulton
+ */
+final class ColumnarBatch {
+
+    private static final int ALL_PRESENT = 0;
+    private static final int BITMAP = 1;
+
+    private final ByteBuf buffer;
+    private final int[] types;
+    private final String[] keys;
+    // Per column, the rows carrying a value, or null if all do
+    private final BitSet[] presence;
+    // Per column and row, primitive values as MessageProperties raw bits, or the offset of a String or byte[]
+    private final long[][] values;
+    // The rows carrying a body, or null if all do
+    private final BitSet bodies;
+    private final int[] bodyOffsets;
+    private final int[] bodyLengths;
+
+    private ColumnarBatch(final ByteBuf buffer, final int[] types, final String[] keys, final BitSet[] presence,
+                          final long[][] values, final BitSet bodies, final int[] bodyOffsets,
+                          final int[] bodyLengths) {
+        this.buffer = buffer;
+        this.types = types;
+        this.keys = keys;
+        this.presence = presence;
+        this.values = values;
+        this.bodies = bodies;
+        this.bodyOffsets = bodyOffsets;
+        this.bodyLengths = bodyLengths;
+    }
+
+    static void write(final ConversionContext context, final MessagePropertiesConverter propertiesConverter,
+                      final MessageSet messageSet, final ByteBuf buffer) {
+        Message[] messages = new Message[messageSet.size()];
+        int count = 0;
+        for (Message message : messageSet) {
+            messages[count++] = message;
+        }
+        List<String> keys = new ArrayList<>();
+        List<Integer> types = new ArrayList<>();
+        for (Message message : messages) {
+            for (int type = 0; type < MessagePropertiesConverter.TYPES.length; type++) {
+                for (String key : MessagePropertiesConverter.keys(message.properties(), type)) {
+                    if (column(types, keys, type, key) < 0) {
+                        types.add(type);
+                        keys.add(key);
+                    }
+                }
+            }
+        }
+        PropertyKeyDictionary dictionary = context.keyDictionary();
+        VarInts.writeUnsignedInt(buffer, keys.size());
+        for (int column = 0; column < keys.size(); column++) {
+            buffer.writeByte(types.get(column));
+            propertiesConverter.writeKey(context, dictionary, true, keys.get(column), buffer);
+        }
+        BitSet present = new BitSet(count);
+        for (int column = 0; column < keys.size(); column++) {
+            int type = types.get(column);
+            String key = keys.get(column);
+            present.clear();
+            for (int row = 0; row < count; row++) {
+                if (has(messages[row].properties(), type, key)) {
+                    present.set(row);
+                }
+            }
+            writePresence(present, count, buffer);
+            long previous = 0;
+            for (int row = present.nextSetBit(0); row >= 0; row = present.nextSetBit(row + 1)) {
+                previous = writeValue(messages[row].properties(), type, key, previous, buffer);
+            }
+        }
+        present.clear();
+        for (int row = 0; row < count; row++) {
+            if (messages[row].body() != null) {
+                present.set(row);
+            }
+        }
+        writePresence(present, count, buffer);
+        for (int row = present.nextSetBit(0); row >= 0; row = present.nextSetBit(row + 1)) {
+            VarInts.writeUnsignedInt(buffer, messages[row].body().length);
+        }
+        for (int row = present.nextSetBit(0); row >= 0; row = present.nextSetBit(row + 1)) {
+            buffer.writeBytes(messages[row].body());
+        }
+    }
+
+    static ColumnarBatch read(final ConversionContext context, final MessagePropertiesConverter propertiesConverter,
+                              final int count, final ByteBuf source) {
+        int start = source.readerIndex();
+        PropertyKeyDictionary dictionary = context.keyDictionary();
+        int columns = VarInts.readUnsignedInt(source);
+        int[] types = new int[columns];
+        String[] keys = new String[columns];
+        for (int column = 0; column < columns; column++) {
+            types[column] = source.readByte();
+            keys[column] = propertiesConverter.readKey(context, dictionary, true, source);
+        }
+        BitSet[] presence = new BitSet[columns];
+        long[][] values = new long[columns][];
+        for (int column = 0; column < columns; column++) {
+            presence[column] = readPresence(count, source);
+            values[column] = new long[count];
+            long previous = 0;
+            for (int row = 0; row < count; row++) {
+                if (presence[column] == null || presence[column].get(row)) {
+                    previous = readValue(types[column], previous, start, source);
+                    values[column][row] = previous;
+                }
+            }
+        }
+        BitSet bodies = readPresence(count, source);
+        int[] bodyLengths = new int[count];
+        for (int row = 0; row < count; row++) {
+            if (bodies == null || bodies.get(row)) {
+                bodyLengths[row] = VarInts.readUnsignedInt(source);
+            }
+        }
+        int[] bodyOffsets = new int[count];
+        for (int row = 0; row < count; row++) {
+            bodyOffsets[row] = source.readerIndex() - start;
+            source.skipBytes(bodyLengths[row]);
+        }
+        // Copy out, as the source is typically a pooled frame released once the command is decoded
+        byte[] bytes = new byte[source.readerIndex() - start];
+        source.getBytes(start, bytes);
+        return new ColumnarBatch(Unpooled.wrappedBuffer(bytes), types, keys, presence, values, bodies, bodyOffsets,
+                                 bodyLengths);
+    }
+
+    Message message(final int row) {
+        return new ColumnarMessage(this, row);
+    }
+
+    int columns() {
+        return keys.length;
+    }
+
+    int type(final int column) {
+        return types[column];
+    }
+
+    String key(final int column) {
+        return keys[column];
+    }
+
+    int column(final int type, final String key) {
+        for (int column = 0; column < keys.length; column++) {
+            if (types[column] == type && keys[column].equals(key)) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    boolean isPresent(final int column, final int row) {
+        return presence[column] == null || presence[column].get(row);
+    }
+
+    long bits(final int column, final int row) {
+        return values[column][row];
+    }
+
+    Object value(final int column, final int row) {
+        long bits = values[column][row];
+        switch (types[column]) {
+            case 0:
+                return StringConverter.readCompact(buffer.duplicate().readerIndex((int) bits));
+            case 1:
+                return bits != 0;
+            case 2:
+                return (int) bits;
+            case 3:
+                return bits;
+            case 4:
+                return Float.intBitsToFloat((int) bits);
+            case 5:
+                return Double.longBitsToDouble(bits);
+            case 6:
+                return ByteArrayConverter.readCompact(buffer.duplicate().readerIndex((int) bits));
+            case 7:
+                return (short) bits;
+            case 8:
+                return (byte) bits;
+            default:
+                throw new IllegalArgumentException("Unknown property type " + types[column]);
+        }
+    }
+
+    byte[] body(final int row) {
+        if (bodies != null && !bodies.get(row)) {
+            return null;
+        }
+        byte[] body = new byte[bodyLengths[row]];
+        buffer.getBytes(bodyOffsets[row], body);
+        return body;
+    }
+
+    private static void writePresence(final BitSet present, final int count, final ByteBuf buffer) {
+        if (present.cardinality() == count) {
+            buffer.writeByte(ALL_PRESENT);
+        } else {
+            buffer.writeByte(BITMAP);
+            buffer.writeBytes(Arrays.copyOf(present.toByteArray(), (count + 7) / 8));
+        }
+    }
+
+    /**
+     * @return the rows present, or null if all are.
+     */
+    private static BitSet readPresence(final int count, final ByteBuf source) {
+        if (source.readByte() == BITMAP) {
+            byte[] bitmap = new byte[(count + 7) / 8];
+            source.readBytes(bitmap);
+            return BitSet.valueOf(bitmap);
+        }
+        return null;
+    }
+
+    private static int column(final List<Integer> types, final List<String> keys, final int type, final String key) {
+        for (int column = 0; column < keys.size(); column++) {
+            if (types.get(column) == type && keys.get(column).equals(key)) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean has(final MessageProperties properties, final int type, final String key) {
+        switch (type) {
+            case 0:
+                return properties.hasString(key);
+            case 1:
+                return properties.hasBoolean(key);
+            case 2:
+                return properties.hasInteger(key);
+            case 3:
+                return properties.hasLong(key);
+            case 4:
+                return properties.hasFloat(key);
+            case 5:
+                return properties.hasDouble(key);
+            case 6:
+                return properties.hasBytes(key);
+            case 7:
+                return properties.hasShort(key);
+            case 8:
+                return properties.hasByte(key);
+            default:
+                throw new IllegalArgumentException("Unknown property type " + type);
+        }
+    }
+
+    /**
+     * @return the value written, against which the next value of a Long column is delta encoded.
+     */
+    private static long writeValue(final MessageProperties properties, final int type, final String key,
+                                   final long previous, final ByteBuf buffer) {
+        switch (type) {
+            case 0:
+                StringConverter.writeCompact(buffer, properties.getString(key));
+                return 0;
+            case 1:
+                buffer.writeBoolean(properties.getBoolean(key));
+                return 0;
+            case 2:
+                VarInts.writeSignedInt(buffer, properties.getInteger(key));
+                return 0;
+            case 3:
+                long value = properties.getLong(key);
+                VarInts.writeSignedLong(buffer, value - previous);
+                return value;
+            case 4:
+                buffer.writeFloat(properties.getFloat(key));
+                return 0;
+            case 5:
+                buffer.writeDouble(properties.getDouble(key));
+                return 0;
+            case 6:
+                ByteArrayConverter.writeCompact(buffer, properties.getBytes(key));
+                return 0;
+            case 7:
+                VarInts.writeSignedInt(buffer, properties.getShort(key));
+                return 0;
+            case 8:
+                buffer.writeByte(properties.getByte(key));
+                return 0;
+            default:
+                throw new IllegalArgumentException("Unknown property type " + type);
+        }
+    }
+
+    /**
+     * @return the value as raw bits, or for Strings and byte arrays, their offset from start.
+     */
+    private static long readValue(final int type, final long previous, final int start, final ByteBuf source) {
+        switch (type) {
+            case 0:
+            case 6:
+                int offset = source.readerIndex() - start;
+                source.skipBytes(VarInts.readUnsignedInt(source));
+                return offset;
+            case 1:
+            case 8:
+                return source.readByte();
+            case 2:
+            case 7:
+                return VarInts.readSignedInt(source);
+            case 3:
+                return previous + VarInts.readSignedLong(source);
+            case 4:
+                return source.readInt();
+            case 5:
+                return source.readLong();
+            default:
+                throw new IllegalArgumentException("Unknown property type " + type);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type.converters;
+
+import io.hydramq.Message;
+
+/**
+ * A Message read from a column-wise encoded MessageSet, viewing one row of its {@link ColumnarBatch}.  The body is
+ * copied out on first access.
+ *
+ * Not Thread Safe.
+ *
+ * @author jfulton
+ */
+public class ColumnarMessage extends Message {
+
+    private final ColumnarBatch batch;
+    private final int row;
+    private byte[] body;
+
+    ColumnarMessage(final ColumnarBatch batch, final int row) {
+        super(null, new ColumnarMessageProperties(batch, row));
+        this.batch = batch;
+        this.row = row;
+    }
+
+    @Override
+    public byte[] body() {
+        if (body == null) {
+            body = batch.body(row);
+        }
+        return body;
+    }
+
+    @Override
+    public ColumnarMessageProperties properties() {
+        return (ColumnarMessageProperties) super.properties();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type.converters;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import io.hydramq.MessageProperties;
+
+/**
+ * MessageProperties viewing one row of a {@link ColumnarBatch}.  Values are read from the batch's columns as accessed;
+ * the first modification copies the row into regular storage, after which the batch is no longer consulted.
+ *
+ * Not Thread Safe.
+ *
+ * @author jfulton
+ */
+public class ColumnarMessageProperties extends MessageProperties {
+
+    private ColumnarBatch batch;
+    private final int row;
+
+    ColumnarMessageProperties(final ColumnarBatch batch, final int row) {
+        this.batch = batch;
+        this.row = row;
+    }
+
+    /**
+     * @return true once any property has been set or removed.
+     */
+    public boolean isModified() {
+        return batch == null;
+    }
+
+    @Override
+    protected <T> Set<String> getKeys(final Class<T> type) {
+        if (isModified()) {
+            return super.getKeys(type);
+        }
+        int typeId = MessagePropertiesConverter.typeOf(type);
+        Set<String> keys = null;
+        for (int column = 0; column < batch.columns(); column++) {
+            if (batch.type(column) == typeId && batch.isPresent(column, row)) {
+                if (keys == null) {
+                    keys = new LinkedHashSet<>();
+                }
+                keys.add(batch.key(column));
+            }
+        }
+        return keys != null ? keys : Collections.emptySet();
+    }
+
+    @Override
+    protected <T> boolean hasValue(final Class<T> type, final String key) {
+        if (isModified()) {
+            return super.hasValue(type, key);
+        }
+        return find(type, key) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T> T getValue(final Class<T> type, final String key) {
+        if (!isModified()) {
+            int column = find(type, key);
+            if (column >= 0) {
+                return (T) batch.value(column, row);
+            }
+        }
+        return super.getValue(type, key);
+    }
+
+    @Override
+    protected <T> void setValue(final Class<T> type, final String key, final T value) {
+        materialize();
+        super.setValue(type, key, value);
+    }
+
+    @Override
+    protected <T> void removeValue(final Class<T> type, final String key) {
+        materialize();
+        super.removeValue(type, key);
+    }
+
+    @Override
+    protected long getPrimitive(final Class<?> type, final String key) {
+        if (!isModified()) {
+            int column = find(type, key);
+            if (column >= 0) {
+                return batch.bits(column, row);
+            }
+        }
+        return super.getPrimitive(type, key);
+    }
+
+    @Override
+    protected long getPrimitive(final Class<?> type, final String key, final long defaultValue) {
+        if (!isModified()) {
+            int column = find(type, key);
+            return column >= 0 ? batch.bits(column, row) : defaultValue;
+        }
+        return super.getPrimitive(type, key, defaultValue);
+    }
+
+    @Override
+    protected void setPrimitive(final Class<?> type, final String key, final long value) {
+        materialize();
+        super.setPrimitive(type, key, value);
+    }
+
+    private int find(final Class<?> type, final String key) {
+        int column = batch.column(MessagePropertiesConverter.typeOf(type), key);
+        return column >= 0 && batch.isPresent(column, row) ? column : -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void materialize() {
+        if (isModified()) {
+            return;
+        }
+        ColumnarBatch source = batch;
+        batch = null;
+        for (int column = 0; column < source.columns(); column++) {
+            if (source.isPresent(column, row)) {
+                super.setValue((Class<Object>) MessagePropertiesConverter.TYPES[source.type(column)],
+                        source.key(column), source.value(column, row));
+            }
+        }
+    }
+}
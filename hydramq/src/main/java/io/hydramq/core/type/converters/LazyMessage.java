@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type.converters;
+
+import io.hydramq.Message;
+import io.hydramq.internal.util.Recyclable;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A flyweight Message over its encoded bytes, as produced by {@link MessageConverter}.  The body is copied out on first
+ * access, and properties are decoded individually as they are read.  While unmodified, the message is re-encoded by
+ * copying its original bytes.
+ *
+ * Messages read by a recycling {@link MessageConverter} hold their bytes in a pooled buffer, which {@link #recycle()}
+ * or {@link #release()} releases; they must not be used afterwards.
+ *
+ * Not Thread Safe.
+ *
+ * @author jfulton
+ */
+public class LazyMessage extends Message implements Recyclable {
+
+    private final ByteBuf encoded;
+    private final int bodyOffset;
+    private final int bodyLength;
+    private final boolean pooled;
+    private boolean released;
+    private byte[] body;
+
+    LazyMessage(final ByteBuf encoded, final int bodyOffset, final int bodyLength,
+                final LazyMessageProperties properties) {
+        this(encoded, bodyOffset, bodyLength, properties, false);
+    }
+
+    LazyMessage(final ByteBuf encoded, final int bodyOffset, final int bodyLength,
+                final LazyMessageProperties properties, final boolean pooled) {
+        super(null, properties);
+        this.encoded = encoded;
+        this.bodyOffset = bodyOffset;
+        this.bodyLength = bodyLength;
+        this.pooled = pooled;
+    }
+
+    @Override
+    public byte[] body() {
+        if (body == null) {
+            byte[] bytes = new byte[bodyLength];
+            encoded.getBytes(bodyOffset, bytes);
+            body = bytes;
+        }
+        return body;
+    }
+
+    @Override
+    public LazyMessageProperties properties() {
+        return (LazyMessageProperties) super.properties();
+    }
+
+    public boolean isModified() {
+        return properties().isModified();
+    }
+
+    /**
+     * @return the original encoded message, or null if modified.
+     */
+    public ByteBuf encoded() {
+        return isModified() ? null : encoded.duplicate();
+    }
+
+    @Override
+    public void recycle() {
+        if (pooled && !released) {
+            released = true;
+            properties().index().recycle();
+            encoded.release();
+        }
+    }
+
+    /**
+     * Releases the pooled buffer like {@link #recycle()}, but leaves the property index to the collector rather than
+     * returning it to its pool, for messages that something else may still hold, such as those of a failed write.
+     */
+    public void release() {
+        if (pooled && !released) {
+            released = true;
+            encoded.release();
+        }
+    }
+}
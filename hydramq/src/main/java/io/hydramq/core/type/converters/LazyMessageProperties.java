@@ -0,0 +1,288 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type.converters;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import io.hydramq.MessageProperties;
+import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.PropertyKeyDictionary;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * MessageProperties read directly from their encoded form.  Properties are located through a {@link PropertyIndex} and
+ * decoded only when accessed.  The first modification decodes everything into regular storage, after which the
+ * encoded bytes are dropped; until then, {@link #encoded()} allows the block to be re-written by copying.
+ *
+ * Not Thread Safe.
+ *
+ * @author jfulton
+ */
+public class LazyMessageProperties extends MessageProperties {
+
+    private final ConversionContext context;
+    private final PropertyKeyDictionary dictionary;
+    private final boolean compact;
+    private final MessagePropertiesConverter converter;
+    private final PropertyIndex index;
+    private final int offset;
+    private final int length;
+    private ByteBuf encoded;
+    private Object[] values;
+
+    LazyMessageProperties(final ConversionContext context, final PropertyKeyDictionary dictionary,
+                          final boolean compact, final MessagePropertiesConverter converter, final ByteBuf encoded,
+                          final int offset, final int length, final PropertyIndex index) {
+        this.context = context;
+        this.dictionary = dictionary;
+        this.compact = compact;
+        this.converter = converter;
+        this.encoded = encoded;
+        this.offset = offset;
+        this.length = length;
+        this.index = index;
+    }
+
+    /**
+     * @return true once any property has been set or removed, after which the original encoding no longer applies.
+     */
+    public boolean isModified() {
+        return encoded == null;
+    }
+
+    /**
+     * @return the original encoded properties block, or null if modified.
+     */
+    public ByteBuf encoded() {
+        return encoded == null ? null : encoded.slice(offset, length);
+    }
+
+    /**
+     * @return the dictionary the keys were encoded against, or null if they were spelled out.
+     */
+    PropertyKeyDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return true if the block uses the compact encoding.
+     */
+    boolean isCompact() {
+        return compact;
+    }
+
+    ByteBuf buffer() {
+        return encoded;
+    }
+
+    PropertyIndex index() {
+        return index;
+    }
+
+    int offset() {
+        return offset;
+    }
+
+    int length() {
+        return length;
+    }
+
+    @Override
+    protected <T> Set<String> getKeys(final Class<T> type) {
+        if (isModified()) {
+            return super.getKeys(type);
+        }
+        int typeId = MessagePropertiesConverter.typeOf(type);
+        Set<String> keys = null;
+        for (int entry = 0; entry < index.size(); entry++) {
+            if (index.type(entry) == typeId) {
+                if (keys == null) {
+                    keys = new LinkedHashSet<>();
+                }
+                keys.add(converter.readKey(context, dictionary, compact, encoded, index.keyOffset(entry)));
+            }
+        }
+        return keys != null ? new DecodedKeySet(type, keys) : Collections.emptySet();
+    }
+
+    @Override
+    protected <T> boolean hasValue(final Class<T> type, final String key) {
+        if (isModified()) {
+            return super.hasValue(type, key);
+        }
+        return find(type, key) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T> T getValue(final Class<T> type, final String key) {
+        if (!isModified()) {
+            int entry = find(type, key);
+            if (entry >= 0) {
+                return (T) value(entry);
+            }
+        }
+        return super.getValue(type, key);
+    }
+
+    @Override
+    protected <T> void setValue(final Class<T> type, final String key, final T value) {
+        materialize();
+        super.setValue(type, key, value);
+    }
+
+    @Override
+    protected <T> void removeValue(final Class<T> type, final String key) {
+        materialize();
+        super.removeValue(type, key);
+    }
+
+    @Override
+    protected long getPrimitive(final Class<?> type, final String key) {
+        if (!isModified()) {
+            int entry = find(type, key);
+            if (entry >= 0) {
+                return converter.readBits(compact, encoded, index.type(entry), index.valueOffset(entry));
+            }
+        }
+        return super.getPrimitive(type, key);
+    }
+
+    @Override
+    protected long getPrimitive(final Class<?> type, final String key, final long defaultValue) {
+        if (!isModified()) {
+            int entry = find(type, key);
+            return entry >= 0 ? converter.readBits(compact, encoded, index.type(entry), index.valueOffset(entry)) : defaultValue;
+        }
+        return super.getPrimitive(type, key, defaultValue);
+    }
+
+    @Override
+    protected void setPrimitive(final Class<?> type, final String key, final long value) {
+        materialize();
+        super.setPrimitive(type, key, value);
+    }
+
+    private int find(final Class<?> type, final String key) {
+        if (key == null) {
+            return -1;
+        }
+        int typeId = MessagePropertiesConverter.typeOf(type);
+        for (int entry = 0; entry < index.size(); entry++) {
+            if (index.type(entry) == typeId
+                    && converter.keyMatches(context, dictionary, compact, encoded, index.keyOffset(entry), key)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private Object value(final int entry) {
+        if (values == null) {
+            values = new Object[index.size()];
+        }
+        if (values[entry] == null) {
+            values[entry] = converter.readValue(context, compact, encoded, index.type(entry), index.valueOffset(entry));
+        }
+        return values[entry];
+    }
+
+    @SuppressWarnings("unchecked")
+    private void materialize() {
+        if (isModified()) {
+            return;
+        }
+        String[] keys = new String[index.size()];
+        Object[] decoded = new Object[index.size()];
+        for (int entry = 0; entry < index.size(); entry++) {
+            keys[entry] = converter.readKey(context, dictionary, compact, encoded, index.keyOffset(entry));
+            decoded[entry] = value(entry);
+        }
+        encoded = null;
+        values = null;
+        for (int entry = 0; entry < keys.length; entry++) {
+            super.setValue((Class<Object>) MessagePropertiesConverter.TYPES[index.type(entry)], keys[entry],
+                    decoded[entry]);
+        }
+    }
+
+    /**
+     * The keys of one type, decoded from the index when requested.  Removing a key removes its property, which
+     * materializes the properties like any other modification.
+     */
+    private class DecodedKeySet extends AbstractSet<String> {
+
+        private final Class<?> type;
+        private final Set<String> keys;
+
+        private DecodedKeySet(final Class<?> type, final Set<String> keys) {
+            this.type = type;
+            this.keys = keys;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            Iterator<String> iterator = keys.iterator();
+            return new Iterator<String>() {
+                private String last;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    last = iterator.next();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    iterator.remove();
+                    removeValue(type, last);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return keys.size();
+        }
+
+        @Override
+        public boolean contains(final Object key) {
+            return keys.contains(key);
+        }
+
+        @Override
+        public boolean remove(final Object key) {
+            if (keys.remove(key)) {
+                removeValue(type, (String) key);
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -22,24 +22,116 @@ package io.hydramq.core.type.converters;
 import io.hydramq.Message;
 import io.hydramq.MessageProperties;
 import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.NestedConverter;
+import io.hydramq.core.type.PropertyKeyDictionary;
 import io.hydramq.core.type.TypeConverter;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
 
 /**
+ * Messages are read as {@link LazyMessage}s by default: the encoded message is copied out of the source buffer in one
+ * piece, and properties and body are decoded only when accessed.  Unmodified lazy messages are written back by
+ * copying their original bytes, so messages that are merely relayed (routed, split, stored) are never fully decoded.
+ *
+ * A recycling converter copies into pooled buffers and pooled property indexes instead, for hot paths that own each
+ * message they read and hand it back through {@link LazyMessage#recycle()} once done with it.
+ *
  * @author jfulton
  */
 public class MessageConverter extends TypeConverter<Message> {
 
+    private final NestedConverter<MessageProperties> propertiesConverter =
+            new NestedConverter<>(MessageProperties.class);
+    private final NestedConverter<byte[]> bodyConverter = new NestedConverter<>(byte[].class);
+    private final boolean lazy;
+    private final boolean recycling;
+
+    public MessageConverter() {
+        this(true);
+    }
+
+    public MessageConverter(boolean lazy) {
+        this(lazy, false);
+    }
+
+    public MessageConverter(boolean lazy, boolean recycling) {
+        this.lazy = lazy;
+        this.recycling = recycling;
+    }
+
     @Override
     public Message read(final ConversionContext context, final ByteBuf buffer) {
-        MessageProperties properties = context.read(MessageProperties.class, buffer);
-        byte[] body = context.read(byte[].class, buffer);
-        return new Message(body, properties);
+        TypeConverter<MessageProperties> properties = propertiesConverter.get(context);
+        if (lazy && properties instanceof MessagePropertiesConverter
+                && bodyConverter.get(context) instanceof ByteArrayConverter) {
+            return readLazily(context, (MessagePropertiesConverter) properties, buffer);
+        }
+        MessageProperties decoded = properties.read(context, buffer);
+        byte[] body = context.isCompact() ? ByteArrayConverter.readCompact(buffer)
+                                          : bodyConverter.read(context, buffer);
+        return new Message(body, decoded);
+    }
+
+    private Message readLazily(final ConversionContext context, final MessagePropertiesConverter propertiesConverter,
+                               final ByteBuf buffer) {
+        int start = buffer.readerIndex();
+        PropertyKeyDictionary dictionary = context.keyDictionary();
+        boolean compact = context.isCompact();
+        PropertyIndex index = propertiesConverter.index(dictionary, compact, buffer,
+                recycling ? PropertyIndex.newInstance() : new PropertyIndex());
+        int propertiesLength = buffer.readerIndex() - start;
+        int bodyLengthSize = compact ? VarInts.sizeAt(buffer, buffer.readerIndex()) : Integer.BYTES;
+        int bodyLength = compact ? VarInts.readUnsignedInt(buffer) : buffer.readInt();
+        buffer.skipBytes(bodyLength);
+        // Copy out, as the source is typically a pooled frame released once the command is decoded
+        int length = buffer.readerIndex() - start;
+        ByteBuf encoded;
+        if (recycling) {
+            encoded = PooledByteBufAllocator.DEFAULT.heapBuffer(length, length);
+            encoded.writeBytes(buffer, start, length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.getBytes(start, bytes);
+            encoded = Unpooled.wrappedBuffer(bytes);
+        }
+        index.rebase(start);
+        LazyMessageProperties properties = new LazyMessageProperties(context, dictionary, compact,
+                propertiesConverter, encoded, 0, propertiesLength, index);
+        return new LazyMessage(encoded, propertiesLength + bodyLengthSize, bodyLength, properties, recycling);
     }
 
     @Override
     public void write(final ConversionContext context, final Message message, final ByteBuf buffer) {
-        context.write(MessageProperties.class, message.properties(), buffer);
-        context.write(byte[].class, message.body(), buffer);
+        if (isEncoded(context, message)) {
+            buffer.writeBytes(((LazyMessage) message).encoded());
+            return;
+        }
+        propertiesConverter.write(context, message.properties(), buffer);
+        if (context.isCompact()) {
+            ByteArrayConverter.writeCompact(buffer, message.body());
+        } else {
+            bodyConverter.write(context, message.body(), buffer);
+        }
+    }
+
+    @Override
+    public int estimateSize(final ConversionContext context, final Message message) {
+        if (isEncoded(context, message)) {
+            return ((LazyMessage) message).encoded().readableBytes();
+        }
+        return propertiesConverter.estimateSize(context, message.properties())
+                + Integer.BYTES + (message.body() == null ? 0 : message.body().length);
+    }
+
+    /**
+     * @return whether the message was read with the encoding this context would write, so it can be copied as is
+     */
+    private boolean isEncoded(final ConversionContext context, final Message message) {
+        return message instanceof LazyMessage && !((LazyMessage) message).isModified()
+                && ((LazyMessage) message).properties().dictionary() == context.keyDictionary()
+                && ((LazyMessage) message).properties().isCompact() == context.isCompact()
+                && propertiesConverter.get(context) instanceof MessagePropertiesConverter
+                && bodyConverter.get(context) instanceof ByteArrayConverter;
     }
 }
@@ -19,12 +19,21 @@
 
 package io.hydramq.core.type.converters;
 
+import java.util.Set;
+
 import io.hydramq.MessageProperties;
 import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.NestedConverter;
+import io.hydramq.core.type.PropertyKeyDictionary;
 import io.hydramq.core.type.TypeConverter;
 import io.netty.buffer.ByteBuf;
 
 /**
+ * Properties are written as a bitmap of the property types present, followed for each present type by a count and
+ * its (key, value) entries.  In the standard encoding the bitmap and counts are ints and values are fixed width.  In
+ * the compact encoding (see {@link ConversionContext#compact(boolean)}) the bitmap and counts are varints, Integer,
+ * Long and Short values are zigzag varints, and Strings and byte arrays carry varint lengths.
+ *
  * @author jfulton
  */
 public class MessagePropertiesConverter extends TypeConverter<MessageProperties> {
@@ -39,71 +48,50 @@ public class MessagePropertiesConverter extends TypeConverter<MessageProperties>
     private static final int HAS_SHORT_PROPERTIES = 1 << 7;
     private static final int HAS_BYTE_PROPERTIES = 1 << 8;
 
+    /**
+     * Property types, ordered to match their presence flag bits.
+     */
+    static final Class<?>[] TYPES = {String.class, Boolean.class, Integer.class, Long.class, Float.class, Double.class,
+            byte[].class, Short.class, Byte.class};
+    // Values of these types are written by whichever converters the context registers, unless compact
+    private final NestedConverter<String> stringConverter = new NestedConverter<>(String.class);
+    private final NestedConverter<byte[]> bytesConverter = new NestedConverter<>(byte[].class);
+
     @Override
     public MessageProperties read(final ConversionContext context, final ByteBuf buffer) {
-        MessageProperties properties = new MessageProperties();
-        int flags = buffer.readInt();
-        if ((flags & HAS_STRING_PROPERTIES) == HAS_STRING_PROPERTIES) {
-            int count = buffer.readInt();
-            for (int i = 0; i < count; i++) {
-                properties.setString(context.read(String.class, buffer), context.read(String.class, buffer));
-            }
-        }
-        if ((flags & HAS_BOOLEAN_PROPERTIES) == HAS_BOOLEAN_PROPERTIES) {
-            int count = buffer.readInt();
-            for (int i = 0; i < count; i++) {
-                properties.setBoolean(context.read(String.class, buffer), buffer.readBoolean());
-            }
-        }
-        if ((flags & HAS_INTEGER_PROPERTIES) == HAS_INTEGER_PROPERTIES) {
-            int count = buffer.readInt();
-            for (int i = 0; i < count; i++) {
-                properties.setInteger(context.read(String.class, buffer), buffer.readInt());
-            }
-        }
-        if ((flags & HAS_LONG_PROPERTIES) == HAS_LONG_PROPERTIES) {
-            int count = buffer.readInt();
-            for (int i = 0; i < count; i++) {
-                properties.setLong(context.read(String.class, buffer), buffer.readLong());
-            }
-        }
-        if ((flags & HAS_FLOAT_PROPERTIES) == HAS_FLOAT_PROPERTIES) {
-            int count = buffer.readInt();
-            for (int i = 0; i < count; i++) {
-                properties.setFloat(context.read(String.class, buffer), buffer.readFloat());
-            }
-        }
-        if ((flags & HAS_DOUBLE_PROPERTIES) == HAS_DOUBLE_PROPERTIES) {
-            int count = buffer.readInt();
-            for (int i = 0; i < count; i++) {
-                properties.setDouble(context.read(String.class, buffer), buffer.readDouble());
+        MessageProperties properties = newProperties();
+        PropertyKeyDictionary dictionary = context.keyDictionary();
+        boolean compact = context.isCompact();
+        int flags = readCount(compact, buffer);
+        for (int type = 0; type < TYPES.length; type++) {
+            if ((flags & (1 << type)) != 0) {
+                int count = readCount(compact, buffer);
+                for (int i = 0; i < count; i++) {
+                    readEntry(context, compact, properties, type, readKey(context, dictionary, compact, buffer), buffer);
+                }
             }
         }
-        if ((flags & HAS_BYTES_PROPERTIES) == HAS_BYTES_PROPERTIES) {
-            int count = buffer.readInt();
-            for (int i = 0; i < count; i++) {
-                properties.setBytes(context.read(String.class, buffer), context.read(byte[].class, buffer));
-            }
-        }
-        if ((flags & HAS_SHORT_PROPERTIES) == HAS_SHORT_PROPERTIES) {
-            int count = buffer.readInt();
-            for (int i = 0; i < count; i++) {
-                properties.setShort(context.read(String.class, buffer), buffer.readShort());
-            }
-        }
-        if ((flags & HAS_BYTE_PROPERTIES) == HAS_BYTE_PROPERTIES) {
-            int count = buffer.readInt();
-            for (int i = 0; i < count; i++) {
-                properties.setByte(context.read(String.class, buffer), buffer.readByte());
-            }
-        }
-
-
         return properties;
     }
 
+    protected MessageProperties newProperties() {
+        return new MessageProperties();
+    }
+
     @Override
     public void write(final ConversionContext context, final MessageProperties properties, final ByteBuf buffer) {
+        PropertyKeyDictionary dictionary = context.keyDictionary();
+        boolean compact = context.isCompact();
+        if (properties instanceof LazyMessageProperties && !((LazyMessageProperties) properties).isModified()
+                && ((LazyMessageProperties) properties).isCompact() == compact) {
+            LazyMessageProperties lazyProperties = (LazyMessageProperties) properties;
+            if (lazyProperties.dictionary() == dictionary) {
+                buffer.writeBytes(lazyProperties.encoded());
+            } else {
+                transcode(context, lazyProperties, dictionary, buffer);
+            }
+            return;
+        }
         int flags = 0;
         if (properties.getStringKeys().size() > 0) {
             flags = flags | HAS_STRING_PROPERTIES;
@@ -132,69 +120,404 @@ public class MessagePropertiesConverter extends TypeConverter<MessageProperties>
         if (properties.getByteKeys().size() > 0) {
             flags = flags | HAS_BYTE_PROPERTIES;
         }
-        buffer.writeInt(flags);
-        if (properties.getStringKeys().size() > 0) {
-            buffer.writeInt(properties.getStringKeys().size());
-            for (String key : properties.getStringKeys()) {
-                context.write(String.class, key, buffer);
-                context.write(String.class, properties.getString(key), buffer);
+        writeCount(compact, flags, buffer);
+        for (int type = 0; type < TYPES.length; type++) {
+            if ((flags & (1 << type)) != 0) {
+                Set<String> keys = keys(properties, type);
+                writeCount(compact, keys.size(), buffer);
+                for (String key : keys) {
+                    writeKey(context, dictionary, compact, key, buffer);
+                    writeEntry(context, compact, properties, type, key, buffer);
+                }
             }
         }
-        if (properties.getBooleanKeys().size() > 0) {
-            buffer.writeInt(properties.getBooleanKeys().size());
-            for (String key : properties.getBooleanKeys()) {
-                context.write(String.class, key, buffer);
-                buffer.writeBoolean(properties.getBoolean(key));
+    }
+
+    @Override
+    public int estimateSize(final ConversionContext context, final MessageProperties properties) {
+        if (properties instanceof LazyMessageProperties && !((LazyMessageProperties) properties).isModified()
+                && ((LazyMessageProperties) properties).isCompact() == context.isCompact()
+                && ((LazyMessageProperties) properties).dictionary() == context.keyDictionary()) {
+            return ((LazyMessageProperties) properties).encoded().readableBytes();
+        }
+        // Sized as if nothing were compacted, so a buffer of this size need not grow
+        int size = Integer.BYTES;
+        for (int type = 0; type < TYPES.length; type++) {
+            Set<String> keys = keys(properties, type);
+            if (keys.size() > 0) {
+                size += Integer.BYTES;
+                for (String key : keys) {
+                    size += Integer.BYTES + key.length() + estimateEntrySize(properties, type, key);
+                }
             }
         }
-        if (properties.getIntegerKeys().size() > 0) {
-            buffer.writeInt(properties.getIntegerKeys().size());
-            for (String key : properties.getIntegerKeys()) {
-                context.write(String.class, key, buffer);
-                buffer.writeInt(properties.getInteger(key));
+        return size;
+    }
+
+    private static int estimateEntrySize(final MessageProperties properties, final int type, final String key) {
+        switch (type) {
+            case 0:
+                return Integer.BYTES + properties.getString(key).length();
+            case 6:
+                return Integer.BYTES + properties.getBytes(key).length;
+            default:
+                return Long.BYTES;
+        }
+    }
+
+    static Set<String> keys(final MessageProperties properties, final int type) {
+        switch (type) {
+            case 0:
+                return properties.getStringKeys();
+            case 1:
+                return properties.getBooleanKeys();
+            case 2:
+                return properties.getIntegerKeys();
+            case 3:
+                return properties.getLongKeys();
+            case 4:
+                return properties.getFloatKeys();
+            case 5:
+                return properties.getDoubleKeys();
+            case 6:
+                return properties.getBytesKeys();
+            case 7:
+                return properties.getShortKeys();
+            case 8:
+                return properties.getByteKeys();
+            default:
+                throw new IllegalArgumentException("Unknown property type " + type);
+        }
+    }
+
+    private void writeEntry(final ConversionContext context, final boolean compact, final MessageProperties properties,
+                            final int type, final String key, final ByteBuf buffer) {
+        switch (type) {
+            case 0:
+                if (compact) {
+                    StringConverter.writeCompact(buffer, properties.getString(key));
+                } else {
+                    stringConverter.write(context, properties.getString(key), buffer);
+                }
+                break;
+            case 1:
+                buffer.writeBoolean(properties.getBoolean(key));
+                break;
+            case 2:
+                if (compact) {
+                    VarInts.writeSignedInt(buffer, properties.getInteger(key));
+                } else {
+                    buffer.writeInt(properties.getInteger(key));
+                }
+                break;
+            case 3:
+                if (compact) {
+                    VarInts.writeSignedLong(buffer, properties.getLong(key));
+                } else {
+                    buffer.writeLong(properties.getLong(key));
+                }
+                break;
+            case 4:
+                buffer.writeFloat(properties.getFloat(key));
+                break;
+            case 5:
+                buffer.writeDouble(properties.getDouble(key));
+                break;
+            case 6:
+                if (compact) {
+                    ByteArrayConverter.writeCompact(buffer, properties.getBytes(key));
+                } else {
+                    bytesConverter.write(context, properties.getBytes(key), buffer);
+                }
+                break;
+            case 7:
+                if (compact) {
+                    VarInts.writeSignedInt(buffer, properties.getShort(key));
+                } else {
+                    buffer.writeShort(properties.getShort(key));
+                }
+                break;
+            case 8:
+                buffer.writeByte(properties.getByte(key));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown property type " + type);
+        }
+    }
+
+    private void readEntry(final ConversionContext context, final boolean compact, final MessageProperties properties,
+                           final int type, final String key, final ByteBuf buffer) {
+        switch (type) {
+            case 0:
+                properties.setString(key,
+                        compact ? StringConverter.readCompact(buffer) : stringConverter.read(context, buffer));
+                break;
+            case 1:
+                properties.setBoolean(key, buffer.readBoolean());
+                break;
+            case 2:
+                properties.setInteger(key, compact ? VarInts.readSignedInt(buffer) : buffer.readInt());
+                break;
+            case 3:
+                properties.setLong(key, compact ? VarInts.readSignedLong(buffer) : buffer.readLong());
+                break;
+            case 4:
+                properties.setFloat(key, buffer.readFloat());
+                break;
+            case 5:
+                properties.setDouble(key, buffer.readDouble());
+                break;
+            case 6:
+                properties.setBytes(key,
+                        compact ? ByteArrayConverter.readCompact(buffer) : bytesConverter.read(context, buffer));
+                break;
+            case 7:
+                properties.setShort(key, compact ? (short) VarInts.readSignedInt(buffer) : buffer.readShort());
+                break;
+            case 8:
+                properties.setByte(key, buffer.readByte());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown property type " + type);
+        }
+    }
+
+    private static void writeCount(final boolean compact, final int count, final ByteBuf buffer) {
+        if (compact) {
+            VarInts.writeUnsignedInt(buffer, count);
+        } else {
+            buffer.writeInt(count);
+        }
+    }
+
+    private static int readCount(final boolean compact, final ByteBuf buffer) {
+        return compact ? VarInts.readUnsignedInt(buffer) : buffer.readInt();
+    }
+
+    private static int getCount(final boolean compact, final ByteBuf buffer, final int index) {
+        return compact ? VarInts.getUnsignedInt(buffer, index) : buffer.getInt(index);
+    }
+
+    private static int sizeOfCount(final boolean compact, final ByteBuf buffer, final int index) {
+        return compact ? VarInts.sizeAt(buffer, index) : Integer.BYTES;
+    }
+
+    /**
+     * Scans an encoded properties block, recording where each key and value starts without decoding either.  The
+     * buffer's readerIndex is left at the end of the block.
+     */
+    PropertyIndex index(final PropertyKeyDictionary dictionary, final boolean compact, final ByteBuf buffer) {
+        return index(dictionary, compact, buffer, new PropertyIndex());
+    }
+
+    PropertyIndex index(final PropertyKeyDictionary dictionary, final boolean compact, final ByteBuf buffer,
+                        final PropertyIndex index) {
+        int flags = readCount(compact, buffer);
+        for (int type = 0; type < TYPES.length; type++) {
+            if ((flags & (1 << type)) != 0) {
+                int count = readCount(compact, buffer);
+                for (int i = 0; i < count; i++) {
+                    int keyOffset = buffer.readerIndex();
+                    skipKey(dictionary, compact, buffer);
+                    index.add(type, keyOffset, buffer.readerIndex());
+                    skipValue(compact, type, buffer);
+                }
             }
         }
-        if (properties.getLongKeys().size() > 0) {
-            buffer.writeInt(properties.getLongKeys().size());
-            for (String key : properties.getLongKeys()) {
-                context.write(String.class, key, buffer);
-                buffer.writeLong(properties.getLong(key));
+        return index;
+    }
+
+    /**
+     * Writes an unmodified lazy properties block against a different dictionary, in the same encoding.  Only keys are
+     * re-encoded; values are copied as they are.
+     */
+    private void transcode(final ConversionContext context, final LazyMessageProperties properties,
+                           final PropertyKeyDictionary dictionary, final ByteBuf buffer) {
+        ByteBuf encoded = properties.buffer();
+        PropertyIndex index = properties.index();
+        boolean compact = properties.isCompact();
+        int flags = getCount(compact, encoded, properties.offset());
+        writeCount(compact, flags, buffer);
+        int entry = 0;
+        for (int type = 0; type < TYPES.length; type++) {
+            if ((flags & (1 << type)) != 0) {
+                int count = 0;
+                while (entry + count < index.size() && index.type(entry + count) == type) {
+                    count++;
+                }
+                writeCount(compact, count, buffer);
+                for (int end = entry + count; entry < end; entry++) {
+                    writeKey(context, dictionary, compact,
+                            readKey(context, properties.dictionary(), compact, encoded, index.keyOffset(entry)), buffer);
+                    buffer.writeBytes(encoded, index.valueOffset(entry),
+                            valueLength(compact, type, encoded, index.valueOffset(entry)));
+                }
             }
         }
-        if (properties.getFloatKeys().size() > 0) {
-            buffer.writeInt(properties.getFloatKeys().size());
-            for (String key : properties.getFloatKeys()) {
-                context.write(String.class, key, buffer);
-                buffer.writeFloat(properties.getFloat(key));
+    }
+
+    /**
+     * Without a dictionary, keys are written as Strings.  With one, keys are written as a varint of their id plus one,
+     * or as 0 followed by the String for keys outside the dictionary.
+     */
+    void writeKey(final ConversionContext context, final PropertyKeyDictionary dictionary, final boolean compact,
+                  final String key, final ByteBuf buffer) {
+        if (dictionary != null) {
+            int id = dictionary.idOrAdd(key);
+            if (id >= 0) {
+                VarInts.writeUnsignedInt(buffer, id + 1);
+                return;
             }
+            buffer.writeByte(0);
         }
-        if (properties.getDoubleKeys().size() > 0) {
-            buffer.writeInt(properties.getDoubleKeys().size());
-            for (String key : properties.getDoubleKeys()) {
-                context.write(String.class, key, buffer);
-                buffer.writeDouble(properties.getDouble(key));
+        if (compact) {
+            StringConverter.writeCompact(buffer, key);
+        } else {
+            stringConverter.write(context, key, buffer);
+        }
+    }
+
+    String readKey(final ConversionContext context, final PropertyKeyDictionary dictionary, final boolean compact,
+                   final ByteBuf buffer) {
+        if (dictionary != null) {
+            int id = VarInts.readUnsignedInt(buffer);
+            if (id > 0) {
+                return dictionary.key(id - 1);
             }
         }
-        if (properties.getBytesKeys().size() > 0) {
-            buffer.writeInt(properties.getBytesKeys().size());
-            for (String key : properties.getBytesKeys()) {
-                context.write(String.class, key, buffer);
-                context.write(byte[].class, properties.getBytes(key), buffer);
+        return compact ? StringConverter.readCompact(buffer) : stringConverter.read(context, buffer);
+    }
+
+    private void skipKey(final PropertyKeyDictionary dictionary, final boolean compact, final ByteBuf buffer) {
+        if (dictionary == null || VarInts.readUnsignedInt(buffer) == 0) {
+            buffer.skipBytes(readCount(compact, buffer));
+        }
+    }
+
+    static int typeOf(Class<?> type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i] == type) {
+                return i;
             }
         }
-        if (properties.getShortKeys().size() > 0) {
-            buffer.writeInt(properties.getShortKeys().size());
-            for (String key : properties.getShortKeys()) {
-                context.write(String.class, key, buffer);
-                buffer.writeShort(properties.getShort(key));
+        return -1;
+    }
+
+    /**
+     * Compares an encoded key against a candidate without decoding it.  Dictionary keys are compared by id, and inline
+     * ASCII keys, by far the common case otherwise, byte for byte.
+     */
+    boolean keyMatches(final ConversionContext context, final PropertyKeyDictionary dictionary, final boolean compact,
+                       final ByteBuf encoded, final int keyOffset, final String key) {
+        int stringOffset = keyOffset;
+        if (dictionary != null) {
+            int id = VarInts.getUnsignedInt(encoded, keyOffset);
+            if (id > 0) {
+                return dictionary.key(id - 1).equals(key);
             }
+            stringOffset++;
         }
-        if (properties.getByteKeys().size() > 0) {
-            buffer.writeInt(properties.getByteKeys().size());
-            for (String key : properties.getByteKeys()) {
-                context.write(String.class, key, buffer);
-                buffer.writeByte(properties.getByte(key));
+        int length = getCount(compact, encoded, stringOffset);
+        if (length != key.length()) {
+            // Multi-byte characters may still match a longer encoding
+            return length > key.length() && readKey(context, dictionary, compact, encoded, keyOffset).equals(key);
+        }
+        int start = stringOffset + sizeOfCount(compact, encoded, stringOffset);
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c >= 0x80) {
+                return readKey(context, dictionary, compact, encoded, keyOffset).equals(key);
+            }
+            if (encoded.getByte(start + i) != c) {
+                return false;
             }
         }
+        return true;
+    }
+
+    String readKey(final ConversionContext context, final PropertyKeyDictionary dictionary, final boolean compact,
+                   final ByteBuf encoded, final int keyOffset) {
+        return readKey(context, dictionary, compact, encoded.duplicate().readerIndex(keyOffset));
+    }
+
+    Object readValue(final ConversionContext context, final boolean compact, final ByteBuf encoded, final int type,
+                     final int valueOffset) {
+        switch (type) {
+            case 0:
+                ByteBuf string = encoded.duplicate().readerIndex(valueOffset);
+                return compact ? StringConverter.readCompact(string) : stringConverter.read(context, string);
+            case 1:
+                return encoded.getBoolean(valueOffset);
+            case 2:
+                return compact ? VarInts.getSignedInt(encoded, valueOffset) : encoded.getInt(valueOffset);
+            case 3:
+                return compact ? VarInts.getSignedLong(encoded, valueOffset) : encoded.getLong(valueOffset);
+            case 4:
+                return encoded.getFloat(valueOffset);
+            case 5:
+                return encoded.getDouble(valueOffset);
+            case 6:
+                ByteBuf bytes = encoded.duplicate().readerIndex(valueOffset);
+                return compact ? ByteArrayConverter.readCompact(bytes) : bytesConverter.read(context, bytes);
+            case 7:
+                return compact ? (short) VarInts.getSignedInt(encoded, valueOffset) : encoded.getShort(valueOffset);
+            case 8:
+                return encoded.getByte(valueOffset);
+            default:
+                throw new IllegalArgumentException("Unknown property type " + type);
+        }
+    }
+
+    /**
+     * Reads a primitive value as the raw long bits used by {@link MessageProperties} storage.
+     */
+    long readBits(final boolean compact, final ByteBuf encoded, final int type, final int valueOffset) {
+        switch (type) {
+            case 1:
+                return encoded.getBoolean(valueOffset) ? 1L : 0L;
+            case 2:
+            case 7:
+                if (compact) {
+                    return VarInts.getSignedInt(encoded, valueOffset);
+                }
+                return type == 2 ? encoded.getInt(valueOffset) : encoded.getShort(valueOffset);
+            case 3:
+                return compact ? VarInts.getSignedLong(encoded, valueOffset) : encoded.getLong(valueOffset);
+            case 4:
+                return encoded.getInt(valueOffset);
+            case 5:
+                return encoded.getLong(valueOffset);
+            case 8:
+                return encoded.getByte(valueOffset);
+            default:
+                throw new IllegalArgumentException("Property type " + type + " is not primitive");
+        }
+    }
+
+    private void skipValue(final boolean compact, final int type, final ByteBuf buffer) {
+        buffer.skipBytes(valueLength(compact, type, buffer, buffer.readerIndex()));
+    }
+
+    private int valueLength(final boolean compact, final int type, final ByteBuf encoded, final int valueOffset) {
+        switch (type) {
+            case 0:
+            case 6:
+                return sizeOfCount(compact, encoded, valueOffset) + getCount(compact, encoded, valueOffset);
+            case 1:
+            case 8:
+                return Byte.BYTES;
+            case 2:
+                return compact ? VarInts.sizeAt(encoded, valueOffset) : Integer.BYTES;
+            case 3:
+                return compact ? VarInts.sizeAt(encoded, valueOffset) : Long.BYTES;
+            case 4:
+                return Float.BYTES;
+            case 5:
+                return Double.BYTES;
+            case 7:
+                return compact ? VarInts.sizeAt(encoded, valueOffset) : Short.BYTES;
+            default:
+                throw new IllegalArgumentException("Unknown property type " + type);
+        }
     }
 }
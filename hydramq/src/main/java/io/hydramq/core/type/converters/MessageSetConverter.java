@@ -20,30 +20,165 @@
 package io.hydramq.core.type.converters;
 
 import io.hydramq.Message;
+import io.hydramq.MessageProperties;
 import io.hydramq.MessageSet;
+import io.hydramq.core.type.Compression;
 import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.NestedConverter;
 import io.hydramq.core.type.TypeConverter;
+import io.hydramq.exceptions.HydraRuntimeException;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 
 /**
+ * With {@link ConversionContext#columnar(boolean)}, the count is followed by a layout byte: sets of at least two
+ * messages are written column-wise as a {@link ColumnarBatch}, and read back as {@link ColumnarMessage}s.  Otherwise,
+ * messages are written one after another.
+ *
+ * With {@link ConversionContext#compression(Compression)}, the count is followed by a codec byte.  Unless it is
+ * {@link Compression#NONE}, the varint lengths of the messages before and after compression come next, then the
+ * compressed messages, layout byte included.  Sets are compressed as a whole, so repetition across messages is found.
+ * Neither length is trusted on read: sets are limited to {@link #MAX_DECOMPRESSED_LENGTH}, and are inflated into a
+ * buffer grown as they decompress, capped at the declared length.
+ *
  * @author jfulton
  */
 public class MessageSetConverter extends TypeConverter<MessageSet> {
 
+    /**
+     * The largest frame any transport accepts, which no set can legitimately decompress beyond.
+     */
+    public static final int MAX_DECOMPRESSED_LENGTH = 64 * 1024 * 1024;
+
+    private static final int ROWS = 0;
+    private static final int COLUMNS = 1;
+    private static final int MIN_COLUMNAR_MESSAGES = 2;
+    private static final int MIN_COMPRESSED_MESSAGES = 2;
+    private final NestedConverter<Message> messageConverter = new NestedConverter<>(Message.class);
+    private final NestedConverter<MessageProperties> propertiesConverter =
+            new NestedConverter<>(MessageProperties.class);
+
     @Override
     public MessageSet read(ConversionContext context, ByteBuf buffer) {
-        MessageSet messageSet = new MessageSet(buffer.readLong());
-        int messageCount = buffer.readInt();
-        for (int i = 0; i < messageCount; i++) {
-            messageSet.add(context.read(Message.class, buffer));
+        boolean compact = context.isCompact();
+        MessageSet messageSet = new MessageSet(compact ? VarInts.readSignedLong(buffer) : buffer.readLong());
+        int messageCount = compact ? VarInts.readUnsignedInt(buffer) : buffer.readInt();
+        if (context.compression() != Compression.NONE) {
+            Compression compression = Compression.fromId(buffer.readByte());
+            if (compression != Compression.NONE) {
+                int length = VarInts.readUnsignedInt(buffer);
+                int compressedLength = VarInts.readUnsignedInt(buffer);
+                if (length < 0 || length > MAX_DECOMPRESSED_LENGTH) {
+                    throw new HydraRuntimeException("Compressed message set declares " + (length & 0xFFFFFFFFL)
+                            + " bytes, exceeding " + MAX_DECOMPRESSED_LENGTH);
+                }
+                if (compressedLength < 0 || compressedLength > buffer.readableBytes()) {
+                    throw new HydraRuntimeException("Truncated compressed message set: "
+                            + (compressedLength & 0xFFFFFFFFL) + " bytes declared, " + buffer.readableBytes()
+                            + " available");
+                }
+                // Messages are copied out as they are read, so the decompressed set need not outlive this call
+                ByteBuf decompressed = PooledByteBufAllocator.DEFAULT.heapBuffer(
+                        (int) Math.min(length, 4L * compressedLength), length);
+                try {
+                    compression.decompress(buffer, compressedLength, decompressed);
+                    readMessages(context, messageSet, messageCount, decompressed);
+                } finally {
+                    decompressed.release();
+                }
+                return messageSet;
+            }
         }
+        readMessages(context, messageSet, messageCount, buffer);
         return messageSet;
     }
 
+    private void readMessages(ConversionContext context, MessageSet messageSet, int messageCount, ByteBuf buffer) {
+        if (context.isColumnar() && buffer.readByte() == COLUMNS) {
+            ColumnarBatch batch = ColumnarBatch.read(context,
+                    (MessagePropertiesConverter) propertiesConverter.get(context), messageCount, buffer);
+            for (int i = 0; i < messageCount; i++) {
+                messageSet.add(batch.message(i));
+            }
+            return;
+        }
+        TypeConverter<Message> messages = messageConverter.get(context);
+        for (int i = 0; i < messageCount; i++) {
+            messageSet.add(messages.read(context, buffer));
+        }
+    }
+
     @Override
     public void write(ConversionContext context, MessageSet messageSet, ByteBuf buffer) {
-        buffer.writeLong(messageSet.startOffset());
-        buffer.writeInt(messageSet.size());
-        messageSet.forEach(message -> context.write(Message.class, message, buffer));
+        if (context.isCompact()) {
+            VarInts.writeSignedLong(buffer, messageSet.startOffset());
+            VarInts.writeUnsignedInt(buffer, messageSet.size());
+        } else {
+            buffer.writeLong(messageSet.startOffset());
+            buffer.writeInt(messageSet.size());
+        }
+        Compression compression = context.compression();
+        if (compression != Compression.NONE) {
+            if (messageSet.size() >= MIN_COMPRESSED_MESSAGES) {
+                ByteBuf messages = PooledByteBufAllocator.DEFAULT.heapBuffer();
+                ByteBuf compressed = PooledByteBufAllocator.DEFAULT.heapBuffer();
+                try {
+                    writeMessages(context, messageSet, messages);
+                    int length = messages.readableBytes();
+                    compression.compress(messages.duplicate(), compressed);
+                    // Sets that do not shrink are sent as they are, sparing the reader the work
+                    if (compressed.readableBytes() < length) {
+                        buffer.writeByte(compression.id());
+                        VarInts.writeUnsignedInt(buffer, length);
+                        VarInts.writeUnsignedInt(buffer, compressed.readableBytes());
+                        buffer.writeBytes(compressed);
+                    } else {
+                        buffer.writeByte(Compression.NONE.id());
+                        buffer.writeBytes(messages);
+                    }
+                } finally {
+                    messages.release();
+                    compressed.release();
+                }
+                return;
+            }
+            buffer.writeByte(Compression.NONE.id());
+        }
+        writeMessages(context, messageSet, buffer);
+    }
+
+    /**
+     * Sized as if the set went uncompressed and row by row, which it at worst does.
+     */
+    @Override
+    public int estimateSize(ConversionContext context, MessageSet messageSet) {
+        int size = Long.BYTES + Integer.BYTES;
+        if (context.compression() != Compression.NONE) {
+            size++;
+        }
+        if (context.isColumnar()) {
+            size++;
+        }
+        TypeConverter<Message> messages = messageConverter.get(context);
+        for (Message message : messageSet) {
+            size += messages.estimateSize(context, message);
+        }
+        return size;
+    }
+
+    private void writeMessages(ConversionContext context, MessageSet messageSet, ByteBuf buffer) {
+        if (context.isColumnar()) {
+            TypeConverter<MessageProperties> properties = propertiesConverter.get(context);
+            if (messageSet.size() >= MIN_COLUMNAR_MESSAGES && properties instanceof MessagePropertiesConverter) {
+                buffer.writeByte(COLUMNS);
+                ColumnarBatch.write(context, (MessagePropertiesConverter) properties, messageSet, buffer);
+                return;
+            }
+            buffer.writeByte(ROWS);
+        }
+        TypeConverter<Message> messages = messageConverter.get(context);
+        for (Message message : messageSet) {
+            messages.write(context, message, buffer);
+        }
     }
 }
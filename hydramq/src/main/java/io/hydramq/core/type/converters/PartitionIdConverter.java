@@ -41,4 +41,9 @@ public class PartitionIdConverter extends TypeConverter<PartitionId> {
         buffer.writeLong(instance.getUUID().getMostSignificantBits())
                 .writeLong(instance.getUUID().getLeastSignificantBits());
     }
+
+    @Override
+    public int estimateSize(ConversionContext context, PartitionId instance) {
+        return Long.BYTES * 2;
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type.converters;
+
+import java.util.Arrays;
+
+import io.netty.util.Recycler;
+
+/**
+ * An offset table over an encoded properties block.  For each property it records the type, and where the key and
+ * value begin, so individual properties can be found and decoded on demand.
+ *
+ * @author jfulton
+ */
+class PropertyIndex {
+
+    private static final Recycler<PropertyIndex> RECYCLER = new Recycler<PropertyIndex>() {
+        @Override
+        protected PropertyIndex newObject(final Handle handle) {
+            return new PropertyIndex(handle);
+        }
+    };
+    private final Recycler.Handle handle;
+    private int size = 0;
+    private byte[] types = new byte[8];
+    private int[] keyOffsets = new int[8];
+    private int[] valueOffsets = new int[8];
+
+    PropertyIndex() {
+        this(null);
+    }
+
+    private PropertyIndex(final Recycler.Handle handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * @return a pooled, empty index, which keeps the arrays it has grown across uses.
+     */
+    static PropertyIndex newInstance() {
+        return RECYCLER.get();
+    }
+
+    void recycle() {
+        if (handle != null) {
+            size = 0;
+            RECYCLER.recycle(this, handle);
+        }
+    }
+
+    void add(int type, int keyOffset, int valueOffset) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            keyOffsets = Arrays.copyOf(keyOffsets, size * 2);
+            valueOffsets = Arrays.copyOf(valueOffsets, size * 2);
+        }
+        types[size] = (byte) type;
+        keyOffsets[size] = keyOffset;
+        valueOffsets[size] = valueOffset;
+        size++;
+    }
+
+    /**
+     * Shifts all offsets, for when the indexed bytes are copied out of the buffer they were scanned in.
+     */
+    void rebase(int base) {
+        for (int i = 0; i < size; i++) {
+            keyOffsets[i] -= base;
+            valueOffsets[i] -= base;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int type(int entry) {
+        return types[entry];
+    }
+
+    int keyOffset(int entry) {
+        return keyOffsets[entry];
+    }
+
+    int valueOffset(int entry) {
+        return valueOffsets[entry];
+    }
+}
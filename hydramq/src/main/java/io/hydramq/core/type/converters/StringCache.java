@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type.converters;
+
+import java.util.Arrays;
+
+import io.hydramq.internal.util.Assert;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A bounded, direct-mapped cache of decoded Strings, keyed by a hash of their encoded bytes.  A hit returns the
+ * previously decoded instance after comparing bytes in place, so repeated short strings decode without allocating.
+ * A miss replaces whatever occupied the slot.  Strings longer than maxLength bypass the cache.
+ *
+ * Entries are immutable and published through a plain array, so readers race benignly: at worst a recently cached
+ * String is decoded again.
+ *
+ * Thread Safe.
+ *
+ * @author jfulton
+ */
+public class StringCache {
+
+    private final Entry[] entries;
+    private final int mask;
+    private final int maxLength;
+
+    /**
+     * @param size      the number of slots, a power of two.
+     * @param maxLength the longest encoding, in bytes, that is cached.
+     */
+    public StringCache(int size, int maxLength) {
+        Assert.argumentIsTrue(size > 0 && Integer.bitCount(size) == 1, "size must be a power of two");
+        Assert.argumentIsTrue(maxLength >= 0, "maxLength must not be negative");
+        this.entries = new Entry[size];
+        this.mask = size - 1;
+        this.maxLength = maxLength;
+    }
+
+    public String get(ByteBuf buffer, int index, int length) {
+        if (length > maxLength) {
+            return Utf8.decode(buffer, index, length);
+        }
+        int hash = hash(buffer, index, length);
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        Entry entry = entries[slot];
+        if (entry != null && entry.hash == hash && entry.matches(buffer, index, length)) {
+            return entry.value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.getBytes(index, bytes);
+        String value = Utf8.decode(buffer, index, length);
+        entries[slot] = new Entry(hash, bytes, value);
+        return value;
+    }
+
+    public void clear() {
+        Arrays.fill(entries, null);
+    }
+
+    private static int hash(ByteBuf buffer, int index, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer.getByte(index + i);
+        }
+        return hash;
+    }
+
+    private static final class Entry {
+
+        private final int hash;
+        private final byte[] bytes;
+        private final String value;
+
+        private Entry(final int hash, final byte[] bytes, final String value) {
+            this.hash = hash;
+            this.bytes = bytes;
+            this.value = value;
+        }
+
+        private boolean matches(ByteBuf buffer, int index, int length) {
+            if (bytes.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != buffer.getByte(index + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -22,25 +22,36 @@ package io.hydramq.core.type.converters;
 import io.hydramq.core.type.ConversionContext;
 import io.hydramq.core.type.TypeConverter;
 import io.netty.buffer.ByteBuf;
-import io.netty.util.CharsetUtil;
 
 /**
+ * Strings are encoded straight into the buffer, and short strings decoded through a shared cache; see {@link Utf8}.
+ *
  * @author jfulton
  */
 public class StringConverter extends TypeConverter<String> {
 
     @Override
     public String read(final ConversionContext context, final ByteBuf buffer) {
-        int size = buffer.readInt();
-        String value = buffer.toString(buffer.readerIndex(), size, CharsetUtil.UTF_8);
-        buffer.skipBytes(size);
-        return value;
+        return Utf8.read(buffer, buffer.readInt());
     }
 
     @Override
     public void write(final ConversionContext context, final String instance, final ByteBuf buffer) {
-        byte[] bytes = instance.getBytes(CharsetUtil.UTF_8);
-        buffer.writeInt(bytes.length);
-        buffer.writeBytes(bytes);
+        int length = Utf8.length(instance);
+        buffer.writeInt(length);
+        Utf8.write(buffer, instance, length);
+    }
+
+    /**
+     * The compact encoding used within messages: a varint length, then UTF-8 bytes.
+     */
+    public static void writeCompact(final ByteBuf buffer, final String instance) {
+        int length = Utf8.length(instance);
+        VarInts.writeUnsignedInt(buffer, length);
+        Utf8.write(buffer, instance, length);
+    }
+
+    public static String readCompact(final ByteBuf buffer) {
+        return Utf8.read(buffer, VarInts.readUnsignedInt(buffer));
     }
 }
@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type.converters;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+/**
+ * UTF-8 written straight into a ByteBuf, without the intermediate byte[] of {@link String#getBytes}, and read through a
+ * shared {@link StringCache} so that short, repeated strings such as property keys decode without allocating.  As with
+ * String.getBytes, unpaired surrogates are written as '?'.
+ *
+ * @author jfulton
+ */
+public final class Utf8 {
+
+    private static final StringCache cache = new StringCache(1024, 32);
+
+    private Utf8() {
+    }
+
+    /**
+     * @return the number of bytes value encodes to.
+     */
+    public static int length(CharSequence value) {
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes++;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    // Four bytes for the pair
+                    bytes += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes value, which must encode to exactly length bytes as given by {@link #length(CharSequence)}.
+     */
+    public static void write(ByteBuf buffer, CharSequence value, int length) {
+        buffer.ensureWritable(length);
+        int index = buffer.writerIndex();
+        int chars = value.length();
+        if (length == chars && buffer.hasArray()) {
+            // Single byte characters only, by far the common case, written without per-byte bounds checks
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset() + index;
+            for (int i = 0; i < chars; i++) {
+                char c = value.charAt(i);
+                array[offset + i] = c < 0x80 ? (byte) c : (byte) '?';
+            }
+            buffer.writerIndex(index + length);
+            return;
+        }
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.setByte(index++, c);
+            } else if (c < 0x800) {
+                buffer.setByte(index++, 0xC0 | (c >> 6));
+                buffer.setByte(index++, 0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer.setByte(index++, 0xF0 | (codePoint >> 18));
+                    buffer.setByte(index++, 0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer.setByte(index++, 0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer.setByte(index++, 0x80 | (codePoint & 0x3F));
+                } else {
+                    buffer.setByte(index++, '?');
+                }
+            } else {
+                buffer.setByte(index++, 0xE0 | (c >> 12));
+                buffer.setByte(index++, 0x80 | ((c >> 6) & 0x3F));
+                buffer.setByte(index++, 0x80 | (c & 0x3F));
+            }
+        }
+        buffer.writerIndex(index);
+    }
+
+    /**
+     * Reads length bytes as a String, advancing the readerIndex.
+     */
+    public static String read(ByteBuf buffer, int length) {
+        String value = cache.get(buffer, buffer.readerIndex(), length);
+        buffer.skipBytes(length);
+        return value;
+    }
+
+    /**
+     * Decodes without consulting the cache, for strings unlikely to repeat.
+     */
+    public static String decode(ByteBuf buffer, int index, int length) {
+        return buffer.toString(index, length, CharsetUtil.UTF_8);
+    }
+}
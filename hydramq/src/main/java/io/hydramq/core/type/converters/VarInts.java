@@ -0,0 +1,159 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type.converters;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Unsigned LEB128 varints: seven bits per byte, least significant group first, with the high bit set on every byte
+ * but the last.  Values below 128 take a single byte.  Signed values are zigzag encoded first, mapping 0, -1, 1, -2...
+ * onto 0, 1, 2, 3..., so that small negative values stay small too.
+ *
+ * @author jfulton
+ */
+public final class VarInts {
+
+    private VarInts() {
+    }
+
+    public static void writeUnsignedInt(ByteBuf buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer.writeByte(value);
+    }
+
+    public static int readUnsignedInt(ByteBuf buffer) {
+        int value = getUnsignedInt(buffer, buffer.readerIndex());
+        buffer.skipBytes(sizeOfUnsignedInt(value));
+        return value;
+    }
+
+    /**
+     * Reads a varint at an absolute index, without moving the readerIndex.
+     */
+    public static int getUnsignedInt(ByteBuf buffer, int index) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.getByte(index++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public static int sizeOfUnsignedInt(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    public static void writeUnsignedLong(ByteBuf buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer.writeByte((int) value);
+    }
+
+    public static long readUnsignedLong(ByteBuf buffer) {
+        long value = getUnsignedLong(buffer, buffer.readerIndex());
+        buffer.skipBytes(sizeOfUnsignedLong(value));
+        return value;
+    }
+
+    public static long getUnsignedLong(ByteBuf buffer, int index) {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buffer.getByte(index++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public static int sizeOfUnsignedLong(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    public static void writeSignedInt(ByteBuf buffer, int value) {
+        writeUnsignedInt(buffer, zigzag(value));
+    }
+
+    public static int readSignedInt(ByteBuf buffer) {
+        return unzigzag(readUnsignedInt(buffer));
+    }
+
+    public static int getSignedInt(ByteBuf buffer, int index) {
+        return unzigzag(getUnsignedInt(buffer, index));
+    }
+
+    public static void writeSignedLong(ByteBuf buffer, long value) {
+        writeUnsignedLong(buffer, zigzag(value));
+    }
+
+    public static long readSignedLong(ByteBuf buffer) {
+        return unzigzag(readUnsignedLong(buffer));
+    }
+
+    public static long getSignedLong(ByteBuf buffer, int index) {
+        return unzigzag(getUnsignedLong(buffer, index));
+    }
+
+    /**
+     * @return the number of bytes taken by the varint at index, whatever its width.
+     */
+    public static int sizeAt(ByteBuf buffer, int index) {
+        int size = 1;
+        while (buffer.getByte(index++) < 0) {
+            size++;
+        }
+        return size;
+    }
+
+    public static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
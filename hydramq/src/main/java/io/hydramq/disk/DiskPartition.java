@@ -27,12 +27,16 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -44,9 +48,10 @@ import io.hydramq.Segment;
 import io.hydramq.SegmentationStrategy;
 import io.hydramq.SegmentedPartition;
 import io.hydramq.exceptions.HydraRuntimeException;
-import io.hydramq.internal.util.AsyncUtils;
+import io.hydramq.internal.util.TimerService;
 import io.hydramq.listeners.MessageIOListener;
 import io.hydramq.listeners.PartitionFlags;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import it.unimi.dsi.fastutil.longs.Long2ObjectAVLTreeMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectSortedMap;
 import it.unimi.dsi.fastutil.longs.LongBidirectionalIterator;
@@ -63,6 +68,9 @@ public class DiskPartition implements SegmentedPartition {
     public static final String SEGMENTS_DIRECTORY_NAME = "segments";
     public static final String NOWRITE = "nowrite";
     public static final String NOREAD = "noread";
+    // Expired reads are answered here rather than on the timer's thread, which would otherwise run whatever follows
+    private static final ExecutorService readExpiries = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new DefaultThreadFactory("hydra-read-expiry", true));
     private final Path partitionDirectory;
     private final Path segmentsDirectory;
     private final DiskSegmentBuilder diskSegmentBuilder;
@@ -136,30 +144,54 @@ public class DiskPartition implements SegmentedPartition {
         return future;
     }
 
+    /**
+     * Appends messages as one write per segment they span, which is usually one.
+     */
     @Override
     public CompletableFuture<Void> write(List<Message> messages) {
-        throw new UnsupportedOperationException("Unimplemented");
+        assertNotClosed();
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            writeMessages(messages);
+            future.complete(null);
+        } catch (HydraRuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
     }
 
     @Override
     public CompletableFuture<Void> write(final MessageSet messageSet) {
-        throw new UnsupportedOperationException("Unimplemented");
+        List<Message> messages = new ArrayList<>(messageSet.size());
+        messageSet.forEach(messages::add);
+        return write(messages);
     }
 
     private void writeMessage(Message message) throws HydraRuntimeException {
         try {
             lock.writeLock().lock();
-            long writeSegmentKey = getSegmentForMessageOffset(currentSegmentOffset + currentSegment.size());
-            if (writeSegmentKey < currentSegmentOffset + currentSegment.size()) {
-                writeSegmentKey = currentSegmentOffset;
+            rollSegment();
+            currentSegment.write(message);
+            if (delayedReadRequests.size() > 0) {
+                handlePendingReads();
             }
-            if (!segments.containsKey(writeSegmentKey)) {
-                currentSegment = diskSegmentBuilder.build(segmentsDirectory.resolve(SegmentUtils.getSegmentName(writeSegmentKey)));
-                segments.put(writeSegmentKey, currentSegment);
-                currentSegmentOffset = writeSegmentKey;
-                trimToMaxSegments();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void writeMessages(List<Message> messages) throws HydraRuntimeException {
+        try {
+            lock.writeLock().lock();
+            int maxMessages = segmentationStrategy.maxMessages();
+            int written = 0;
+            while (written < messages.size()) {
+                rollSegment();
+                long nextOffset = currentSegmentOffset + currentSegment.size();
+                int count = (int) Math.min(maxMessages - nextOffset % maxMessages, messages.size() - written);
+                currentSegment.write(messages.subList(written, written + count));
+                written += count;
             }
-            currentSegment.write(message);
             if (delayedReadRequests.size() > 0) {
                 handlePendingReads();
             }
@@ -168,6 +200,22 @@ public class DiskPartition implements SegmentedPartition {
         }
     }
 
+    /**
+     * Starts a new segment if the next message offset begins one.  Must be called holding the write lock.
+     */
+    private void rollSegment() {
+        long writeSegmentKey = getSegmentForMessageOffset(currentSegmentOffset + currentSegment.size());
+        if (writeSegmentKey < currentSegmentOffset + currentSegment.size()) {
+            writeSegmentKey = currentSegmentOffset;
+        }
+        if (!segments.containsKey(writeSegmentKey)) {
+            currentSegment = diskSegmentBuilder.build(segmentsDirectory.resolve(SegmentUtils.getSegmentName(writeSegmentKey)));
+            segments.put(writeSegmentKey, currentSegment);
+            currentSegmentOffset = writeSegmentKey;
+            trimToMaxSegments();
+        }
+    }
+
     @Override
     public CompletableFuture<MessageSet> read(long messageOffset, int maxMessages, Duration timeout) {
         assertNotClosed();
@@ -181,7 +229,16 @@ public class DiskPartition implements SegmentedPartition {
                     if (messageSet.startOffset() >= tail()) {
                         ReadRequest readRequest = new ReadRequest(messageSet.startOffset(), maxMessages, responseFuture);
                         delayedReadRequests.put(responseFuture, readRequest);
-                        return AsyncUtils.within(responseFuture, timeout, messageSet);
+                        MessageSet emptySet = messageSet;
+                        TimerService.shared().onTimeout(responseFuture, timeout,
+                                () -> readExpiries.execute(() -> expireRead(responseFuture, emptySet)));
+                        // Readers giving up on a read, as one reading ahead does when it seeks, cancel it
+                        responseFuture.whenComplete((messages, throwable) -> {
+                            if (responseFuture.isCancelled()) {
+                                dropRead(responseFuture);
+                            }
+                        });
+                        return responseFuture;
                     } else {
                         // In the case where the tail has moved since initial read, read again eagerly
                         messageSet = read(messageSet.startOffset(), maxMessages);
@@ -274,6 +331,23 @@ public class DiskPartition implements SegmentedPartition {
         }
     }
 
+    /**
+     * Answers a delayed read that saw no writes in time with the empty set, and drops it.
+     */
+    private void expireRead(CompletableFuture<MessageSet> responseFuture, MessageSet emptySet) {
+        responseFuture.complete(emptySet);
+        dropRead(responseFuture);
+    }
+
+    private void dropRead(CompletableFuture<MessageSet> responseFuture) {
+        try {
+            lock.writeLock().lock();
+            delayedReadRequests.remove(responseFuture);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     private void handlePendingReads() {
         Map<CompletableFuture<MessageSet>, ReadRequest> delayedReadRequestsCopy = null;
         try {
@@ -286,6 +360,10 @@ public class DiskPartition implements SegmentedPartition {
         }
         if (delayedReadRequestsCopy != null) {
             for (ReadRequest readRequest : delayedReadRequestsCopy.values()) {
+                if (readRequest.getFuture().isDone()) {
+                    // Cancelled, or expired, since being copied
+                    continue;
+                }
                 try {
                     MessageSet messageSet = read(readRequest.getMessageOffset(), readRequest.getMaxMessages());
                     readRequest.getFuture().complete(messageSet);
@@ -342,6 +420,19 @@ public class DiskPartition implements SegmentedPartition {
         return segments.size();
     }
 
+    /**
+     * @return the MessageProperties keys in the dictionary of the segment currently being written.
+     */
+    Collection<String> propertyKeys() {
+        try {
+            lock.readLock().lock();
+            return currentSegment instanceof DiskSegment ? ((DiskSegment) currentSegment).propertyKeys()
+                                                         : Collections.emptyList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     PartitionFlags flags() {
         EnumSet<PartitionFlags.Flag> flagSet = EnumSet.noneOf(PartitionFlags.Flag.class);
         if (readable()) {
@@ -365,6 +456,18 @@ public class DiskPartition implements SegmentedPartition {
         return !getState(NOREAD);
     }
 
+    /**
+     * @return the number of reads waiting at the tail for messages to be written
+     */
+    int delayedReads() {
+        try {
+            lock.readLock().lock();
+            return delayedReadRequests.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     boolean readable(boolean readable) {
         return setState(NOREAD, readable);
     }
@@ -24,6 +24,7 @@ import java.nio.file.Path;
 import io.hydramq.CursorManager;
 import io.hydramq.DefaultSegmentationStrategy;
 import io.hydramq.SegmentationStrategy;
+import io.hydramq.disk.flushing.FlushScheduler;
 import io.hydramq.exceptions.HydraRuntimeException;
 
 /**
@@ -67,6 +68,11 @@ public class DiskPartitionBuilder {
         return this;
     }
 
+    public DiskPartitionBuilder flushScheduler(FlushScheduler flushScheduler) {
+        this.diskSegmentBuilder.flushScheduler(flushScheduler);
+        return this;
+    }
+
     public DiskPartition build(Path partitionDirectory) throws HydraRuntimeException {
         return new DiskPartition(partitionDirectory, diskSegmentBuilder, segmentationStrategy, segmentArchiveStrategy,
                 segmentArchiver);
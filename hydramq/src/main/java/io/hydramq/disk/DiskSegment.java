@@ -19,6 +19,7 @@
 
 package io.hydramq.disk;
 
+import java.io.Flushable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
@@ -26,14 +27,20 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import io.hydramq.Message;
 import io.hydramq.MessageProperties;
 import io.hydramq.MessageSet;
 import io.hydramq.Segment;
 import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.PropertyKeyDictionary;
 import io.hydramq.core.type.converters.MessageConverter;
 import io.hydramq.core.type.converters.MessagePropertiesConverter;
+import io.hydramq.disk.flushing.FlushScheduler;
 import io.hydramq.disk.flushing.FlushStrategy;
 import io.hydramq.disk.flushing.IntervalThresholdFlushStrategy;
 import io.hydramq.exceptions.HydraRuntimeException;
@@ -43,22 +50,35 @@ import io.hydramq.listeners.MessageIOListener;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
 
 /**
  * @author jfulton
  */
 // TODO: Make this class thread safe(ish), with performance testing?
-public class DiskSegment implements Segment {
+public class DiskSegment implements Segment, Flushable {
 
     public static final int INDEX_ENTRY_SIZE = 12;
+    public static final int MAX_PROPERTY_KEYS = 4096;
+    /**
+     * Segment formats, recorded in segment.format.  Segments predating the file are told apart by whether they have a
+     * key dictionary.
+     */
+    public static final int FORMAT_PLAIN = 1;
+    public static final int FORMAT_KEY_DICTIONARY = 2;
+    public static final int FORMAT_COMPACT = 3;
+    public static final int CURRENT_FORMAT = FORMAT_COMPACT;
+    private int format;
     private int size = 0;
     private final Path segmentDirectory;
     private final FlushStrategy flushStrategy;
+    private final FlushScheduler.Registration flushRegistration;
     private static PooledByteBufAllocator allocator = new PooledByteBufAllocator();
     private ByteBuffer indexWriteBuffer = ByteBuffer.allocateDirect(INDEX_ENTRY_SIZE);
     private ByteBuffer indexReadBuffer = ByteBuffer.allocateDirect(INDEX_ENTRY_SIZE);
     private FileChannel index;
     private FileChannel data;
+    private FileChannel keys;
     private ConversionContext conversionContext = ConversionContext.base()
                                                                    .register(Message.class, new MessageConverter())
                                                                    .register(MessageProperties.class,
@@ -69,6 +89,19 @@ public class DiskSegment implements Segment {
     }
 
     public DiskSegment(final Path segmentDirectory, final FlushStrategy flushStrategy) throws HydraRuntimeException {
+        this(segmentDirectory, flushStrategy, null);
+    }
+
+    /**
+     * Creates a segment whose fsyncs are coordinated by a store-wide {@link FlushScheduler}, rather than decided on
+     * each write by its own {@link FlushStrategy}.
+     */
+    public DiskSegment(final Path segmentDirectory, final FlushScheduler flushScheduler) throws HydraRuntimeException {
+        this(segmentDirectory, null, flushScheduler);
+    }
+
+    private DiskSegment(final Path segmentDirectory, final FlushStrategy flushStrategy,
+                        final FlushScheduler flushScheduler) throws HydraRuntimeException {
         this.segmentDirectory = segmentDirectory;
         try {
             Files.createDirectories(this.segmentDirectory);
@@ -87,11 +120,132 @@ public class DiskSegment implements Segment {
             throw Throwables.propagate(e);
         }
         this.flushStrategy = flushStrategy;
+        openFormat();
+        if (format >= FORMAT_KEY_DICTIONARY) {
+            openKeyDictionary();
+        }
+        conversionContext.compact(format >= FORMAT_COMPACT);
         try {
             this.size = (int) (index.position() / INDEX_ENTRY_SIZE);
         } catch (IOException e) {
             throw new HydraRuntimeException("Error creating segment", e);
         }
+        this.flushRegistration = flushScheduler != null ? flushScheduler.register(partitionName(segmentDirectory), this) : null;
+    }
+
+    /**
+     * New segments are written in the current format, recorded before any data is.  Existing segments keep the format
+     * they were written in.
+     */
+    private void openFormat() {
+        Path formatPath = segmentDirectory.resolve("segment.format");
+        try {
+            if (Files.exists(formatPath)) {
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(formatPath));
+                this.format = buffer.remaining() == Integer.BYTES ? buffer.getInt() : -1;
+                if (format < FORMAT_PLAIN || format > CURRENT_FORMAT) {
+                    throw new HydraRuntimeException("Unsupported format for segment " + segmentDirectory);
+                }
+            } else if (data.size() > 0) {
+                this.format = Files.exists(segmentDirectory.resolve("segment.keys")) ? FORMAT_KEY_DICTIONARY : FORMAT_PLAIN;
+            } else {
+                this.format = CURRENT_FORMAT;
+                try (FileChannel channel = FileChannel.open(formatPath, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES).putInt(format);
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(true);
+                }
+            }
+        } catch (IOException e) {
+            throw new HydraRuntimeException("Error opening format for segment " + segmentDirectory, e);
+        }
+    }
+
+    /**
+     * @return the format this segment is written in.
+     */
+    public int format() {
+        return format;
+    }
+
+    /**
+     * MessageProperties keys are written as ids into a per-segment dictionary, persisted alongside the data as a list
+     * of length-prefixed UTF-8 keys in id order.  Segments written before dictionaries existed have data but no key
+     * file, and keep spelling their keys out.
+     */
+    private void openKeyDictionary() {
+        Path keysPath = segmentDirectory.resolve("segment.keys");
+        try {
+            this.keys = FileChannel.open(keysPath, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE);
+            List<String> existingKeys = new ArrayList<>();
+            ByteBuffer length = ByteBuffer.allocate(4);
+            long position = 0;
+            while (keys.read(length, position) == 4) {
+                length.flip();
+                ByteBuffer key = ByteBuffer.allocate(length.getInt());
+                if (keys.read(key, position + 4) != key.capacity()) {
+                    break;
+                }
+                existingKeys.add(new String(key.array(), CharsetUtil.UTF_8));
+                position += 4 + key.capacity();
+                length.clear();
+            }
+            // Drop any key torn by a crash mid-append; no record can refer to it
+            keys.truncate(position);
+            keys.position(position);
+            conversionContext.keyDictionary(new PropertyKeyDictionary(existingKeys, MAX_PROPERTY_KEYS, this::appendKey));
+        } catch (IOException e) {
+            throw new HydraRuntimeException("Error opening key dictionary for segment " + segmentDirectory, e);
+        }
+    }
+
+    /**
+     * Keys are forced as they are added, so a record can never reach the disk ahead of the key it refers to.  Each
+     * segment sees few distinct keys, so this costs a handful of syncs per segment.
+     */
+    private void appendKey(String key) {
+        byte[] bytes = key.getBytes(CharsetUtil.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.length);
+        buffer.putInt(bytes.length).put(bytes).flip();
+        try {
+            while (buffer.hasRemaining()) {
+                keys.write(buffer);
+            }
+            keys.force(true);
+        } catch (IOException e) {
+            throw new HydraRuntimeException("Error writing key dictionary for segment " + segmentDirectory, e);
+        }
+    }
+
+    /**
+     * @return the MessageProperties keys in this segment's dictionary.
+     */
+    public Collection<String> propertyKeys() {
+        PropertyKeyDictionary dictionary = conversionContext.keyDictionary();
+        return dictionary != null ? dictionary.keys() : Collections.emptyList();
+    }
+
+    /**
+     * @return the name of the segment's partition qualified by its topic, as partitions of different topics may share
+     * a name, laid out as topic/partitions/partition/segments/segment
+     */
+    private static String partitionName(Path segmentDirectory) {
+        Path segmentsDirectory = segmentDirectory.toAbsolutePath().getParent();
+        Path partitionDirectory = segmentsDirectory != null ? segmentsDirectory.getParent() : null;
+        if (partitionDirectory == null || partitionDirectory.getFileName() == null) {
+            return segmentDirectory.getFileName().toString();
+        }
+        Path partitionsDirectory = partitionDirectory.getParent();
+        Path topicDirectory = partitionsDirectory != null ? partitionsDirectory.getParent() : null;
+        if (topicDirectory == null || topicDirectory.getFileName() == null) {
+            return partitionDirectory.getFileName().toString();
+        }
+        return topicDirectory.getFileName() + "." + partitionDirectory.getFileName();
     }
 
     @Override
@@ -162,7 +316,7 @@ public class DiskSegment implements Segment {
             conversionContext.write(message, buffer);
             int messageSize = buffer.readableBytes() - 4;
             buffer.setInt(0, messageSize);
-            boolean shouldFlush = flushStrategy.requiresFlush(buffer.readableBytes());
+            boolean shouldFlush = flushStrategy != null && flushStrategy.requiresFlush(buffer.readableBytes());
             indexWriteBuffer.clear();
             indexWriteBuffer.putInt((int) data.size());
             indexWriteBuffer.putLong(Clock.systemUTC().millis());
@@ -176,8 +330,9 @@ public class DiskSegment implements Segment {
             }
             buffer.release();
             if (shouldFlush) {
-                data.force(true);
-                index.force(true);
+                flush();
+            } else if (flushRegistration != null) {
+                flushRegistration.dirty();
             }
             size += 1;
             if (messageIOListener != null) {
@@ -193,9 +348,72 @@ public class DiskSegment implements Segment {
         write(message, null);
     }
 
+    /**
+     * Appends messages with a single write to the data file, and another to the index.
+     */
+    public void write(List<Message> messages, MessageIOListener messageIOListener) throws HydraRuntimeException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        ByteBuf buffer = allocator.directBuffer();
+        ByteBuf indexBuffer = allocator.directBuffer(messages.size() * INDEX_ENTRY_SIZE);
+        try {
+            long dataOffset = data.size();
+            long timestamp = Clock.systemUTC().millis();
+            for (Message message : messages) {
+                int recordOffset = buffer.writerIndex();
+                buffer.writeInt(0);
+                conversionContext.write(message, buffer);
+                buffer.setInt(recordOffset, buffer.writerIndex() - recordOffset - 4);
+                indexBuffer.writeInt((int) (dataOffset + recordOffset));
+                indexBuffer.writeLong(timestamp);
+            }
+            boolean shouldFlush = flushStrategy != null && flushStrategy.requiresFlush(buffer.readableBytes());
+            ByteBuffer nioBuffer = buffer.nioBuffer();
+            while (nioBuffer.hasRemaining()) {
+                data.write(nioBuffer);
+            }
+            ByteBuffer nioIndexBuffer = indexBuffer.nioBuffer();
+            while (nioIndexBuffer.hasRemaining()) {
+                index.write(nioIndexBuffer);
+            }
+            if (shouldFlush) {
+                flush();
+            } else if (flushRegistration != null) {
+                flushRegistration.dirty();
+            }
+            size += messages.size();
+            if (messageIOListener != null) {
+                messageIOListener.onMessage(messages.size(), buffer.readableBytes() - 4 * messages.size());
+            }
+        } catch (IOException ex) {
+            throw new HydraRuntimeException("Error writing messages to segment " + segmentDirectory.toString());
+        } finally {
+            buffer.release();
+            indexBuffer.release();
+        }
+    }
+
+    @Override
+    public void write(List<Message> messages) throws HydraRuntimeException {
+        write(messages, null);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        data.force(true);
+        index.force(true);
+    }
+
     @Override
     public void close() throws IOException {
+        if (flushRegistration != null) {
+            flushRegistration.close();
+        }
         this.data.close();
         this.index.close();
+        if (this.keys != null) {
+            this.keys.close();
+        }
     }
 }
@@ -23,6 +23,7 @@ import java.nio.file.Path;
 import java.util.function.Supplier;
 
 import io.hydramq.Segment;
+import io.hydramq.disk.flushing.FlushScheduler;
 import io.hydramq.disk.flushing.FlushStrategies;
 import io.hydramq.disk.flushing.FlushStrategy;
 import io.hydramq.exceptions.HydraRuntimeException;
@@ -33,6 +34,7 @@ import io.hydramq.exceptions.HydraRuntimeException;
 public class DiskSegmentBuilder {
 
     private Supplier<FlushStrategy> flushStrategy;
+    private FlushScheduler flushScheduler;
 
     public DiskSegmentBuilder() {
         this.flushStrategy = FlushStrategies::everySecond;
@@ -43,7 +45,18 @@ public class DiskSegmentBuilder {
         return this;
     }
 
+    /**
+     * Hands fsync decisions for built segments to a store-wide scheduler.  When set, the flushStrategy is ignored.
+     */
+    public DiskSegmentBuilder flushScheduler(FlushScheduler flushScheduler) {
+        this.flushScheduler = flushScheduler;
+        return this;
+    }
+
     public Segment build(Path segmentDirectory) throws HydraRuntimeException {
+        if (flushScheduler != null) {
+            return new DiskSegment(segmentDirectory, flushScheduler);
+        }
         return new DiskSegment(segmentDirectory, flushStrategy.get());
     }
 }
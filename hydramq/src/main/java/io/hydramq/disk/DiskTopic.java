@@ -27,9 +27,11 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -202,6 +204,18 @@ public class DiskTopic extends AbstractTopic implements Topic, TopicInternal {
         return partition(partitionNumber).partitionInfo();
     }
 
+    @Override
+    public Collection<String> propertyKeys() {
+        Set<String> keys = new LinkedHashSet<>();
+        try {
+            lock.readLock().lock();
+            partitions.values().forEach(partition -> keys.addAll(partition.propertyKeys()));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return keys;
+    }
+
     public SortedSet<PartitionId> partitionIds() {
         SortedSet<PartitionId> results = new TreeSet<>();
         try {
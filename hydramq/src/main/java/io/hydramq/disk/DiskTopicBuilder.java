@@ -22,6 +22,7 @@ package io.hydramq.disk;
 import java.nio.file.Path;
 
 import io.hydramq.Topic;
+import io.hydramq.disk.flushing.FlushScheduler;
 import io.hydramq.exceptions.HydraRuntimeException;
 
 /**
@@ -47,6 +48,11 @@ public class DiskTopicBuilder {
         return this;
     }
 
+    public DiskTopicBuilder flushScheduler(FlushScheduler flushScheduler) {
+        this.diskPartitionBuilder.flushScheduler(flushScheduler);
+        return this;
+    }
+
     public Topic build(Path topicDirectory) throws HydraRuntimeException {
         return new DiskTopic(topicDirectory.getFileName().toString(), topicDirectory, diskPartitionBuilder, partitioningStrategy);
     }
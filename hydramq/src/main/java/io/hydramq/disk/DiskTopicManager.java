@@ -36,6 +36,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import io.hydramq.Topic;
 import io.hydramq.TopicManager;
+import io.hydramq.disk.flushing.FlushScheduler;
 import io.hydramq.exceptions.HydraRuntimeException;
 import io.hydramq.internal.apis.TopicManagerInternal;
 import io.hydramq.internal.util.Assert;
@@ -53,14 +54,25 @@ public class DiskTopicManager implements TopicManager, TopicManagerInternal {
 
     private final DiskTopicBuilder diskTopicBuilder;
     private final TopicCreationStrategy topicCreationStrategy;
+    private final FlushScheduler flushScheduler;
     private ReadWriteLock lock = new ReentrantReadWriteLock();
     private Set<DiscoverTopicsListener> topicsDiscoveredListeners = new HashSet<>();
 
     public DiskTopicManager(final Path storeDirectory, final DiskTopicBuilder diskTopicBuilder,
                             final TopicCreationStrategy topicCreationStrategy) throws HydraRuntimeException {
+        this(storeDirectory, diskTopicBuilder, topicCreationStrategy, null);
+    }
+
+    public DiskTopicManager(final Path storeDirectory, final DiskTopicBuilder diskTopicBuilder,
+                            final TopicCreationStrategy topicCreationStrategy, final FlushScheduler flushScheduler)
+            throws HydraRuntimeException {
         this.storeDirectory = storeDirectory;
         this.diskTopicBuilder = diskTopicBuilder;
         this.topicCreationStrategy = topicCreationStrategy;
+        this.flushScheduler = flushScheduler;
+        if (flushScheduler != null) {
+            diskTopicBuilder.flushScheduler(flushScheduler);
+        }
         try {
             Files.createDirectories(storeDirectory);
         } catch (IOException e) {
@@ -168,6 +180,9 @@ public class DiskTopicManager implements TopicManager, TopicManagerInternal {
         for (Topic topic : topics.values()) {
             topic.close();
         }
+        if (flushScheduler != null) {
+            flushScheduler.close();
+        }
     }
 
     public void loadTopics(final Path baseDirectory, final Map<String, Topic> topics) throws HydraRuntimeException {
@@ -22,6 +22,7 @@ package io.hydramq.disk;
 import java.nio.file.Path;
 
 import io.hydramq.TopicManager;
+import io.hydramq.disk.flushing.FlushScheduler;
 import io.hydramq.exceptions.HydraRuntimeException;
 
 /**
@@ -31,6 +32,7 @@ public class DiskTopicManagerBuilder {
 
     private DiskTopicBuilder diskTopicBuilder;
     private TopicCreationStrategy topicCreationStrategy;
+    private FlushScheduler flushScheduler;
 
     public DiskTopicManagerBuilder() {
         diskTopicBuilder = new DiskTopicBuilder();
@@ -47,7 +49,16 @@ public class DiskTopicManagerBuilder {
         return this;
     }
 
+    /**
+     * Coordinates fsyncs for every segment of the built store through a single scheduler, which the store closes along
+     * with itself.
+     */
+    public DiskTopicManagerBuilder flushScheduler(FlushScheduler flushScheduler) {
+        this.flushScheduler = flushScheduler;
+        return this;
+    }
+
     public TopicManager build(Path messageStoreDirectory) throws HydraRuntimeException {
-        return new DiskTopicManager(messageStoreDirectory, diskTopicBuilder, topicCreationStrategy);
+        return new DiskTopicManager(messageStoreDirectory, diskTopicBuilder, topicCreationStrategy, flushScheduler);
     }
 }
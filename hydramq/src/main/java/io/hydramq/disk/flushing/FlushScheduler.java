@@ -0,0 +1,314 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.disk.flushing;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongUnaryOperator;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.hydramq.internal.util.Assert;
+import io.hydramq.monitoring.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Schedules fsyncs for every segment of a store, in place of each segment consulting its own {@link FlushStrategy}.
+ * Segments report themselves dirty after each write, and are forced once their oldest unflushed write reaches that
+ * segment's flush delay.  Each registration draws a fixed delay between half and all of the interval, so segments
+ * dirtied together (e.g. by a batch spanning partitions) still spread their fsyncs across the interval rather than
+ * bunching up on one tick, while no write waits longer than the interval.  A fixed pool of flush threads bounds how
+ * many fsyncs are in flight at once.
+ *
+ * The age of the oldest unflushed write of each partition is published as a durabilityLag gauge.
+ *
+ * Thread Safe.
+ *
+ * @author jfulton
+ */
+public class FlushScheduler implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlushScheduler.class);
+    private static final int TICKS_PER_INTERVAL = 20;
+    private static final AtomicInteger schedulerCount = new AtomicInteger();
+    private static final AtomicLong registrationCount = new AtomicLong();
+    private static final Comparator<Registration> DEADLINE_ORDER =
+            Comparator.comparingLong((Registration registration) -> registration.deadline)
+                      .thenComparingLong(registration -> registration.sequence);
+    static final LongUnaryOperator JITTERED_DELAYS =
+            interval -> interval - ThreadLocalRandom.current().nextLong(interval / 2 + 1);
+    private final long intervalMillis;
+    private final Clock clock;
+    private final MetricRegistry metricRegistry;
+    private final Timer fsyncs;
+    private final ScheduledExecutorService ticker;
+    private final ExecutorService flushers;
+    private final LongUnaryOperator delays;
+    // Ordered by deadline.  A registration's deadline is only set while it is out of the queue.
+    private final NavigableSet<Registration> dirtyQueue = new ConcurrentSkipListSet<>(DEADLINE_ORDER);
+    private final Map<String, Set<Registration>> registrations = new ConcurrentHashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    public FlushScheduler() {
+        this(Duration.ofMillis(1000), 4);
+    }
+
+    public FlushScheduler(Duration interval, int maxConcurrentFlushes) {
+        this(interval, maxConcurrentFlushes, Metrics.regisry, Clock.systemUTC());
+    }
+
+    public FlushScheduler(Duration interval, int maxConcurrentFlushes, MetricRegistry metricRegistry, Clock clock) {
+        this(interval, maxConcurrentFlushes, metricRegistry, clock, "hydra-flush-" + schedulerCount.incrementAndGet());
+    }
+
+    private FlushScheduler(Duration interval, int maxConcurrentFlushes, MetricRegistry metricRegistry, Clock clock,
+            String threadPrefix) {
+        this(interval, metricRegistry, clock,
+                Executors.newSingleThreadScheduledExecutor(daemonThreads(threadPrefix + "-ticker")),
+                flushers(maxConcurrentFlushes, threadPrefix), JITTERED_DELAYS);
+    }
+
+    /**
+     * @param ticker runs {@link #tick()} twenty times per interval, or null to leave ticking to the caller
+     * @param delays maps the interval to the flush delay of each new registration
+     */
+    FlushScheduler(Duration interval, MetricRegistry metricRegistry, Clock clock, ScheduledExecutorService ticker,
+            ExecutorService flushers, LongUnaryOperator delays) {
+        Assert.argumentNotNull(interval, "interval");
+        Assert.argumentIsTrue(interval.toMillis() > 0, "interval must be at least 1ms");
+        this.intervalMillis = interval.toMillis();
+        this.clock = clock;
+        this.metricRegistry = metricRegistry;
+        this.fsyncs = metricRegistry.timer(name(FlushScheduler.class, "fsyncs"));
+        this.ticker = ticker;
+        this.flushers = flushers;
+        this.delays = delays;
+        if (ticker != null) {
+            long tickMillis = Math.max(1, intervalMillis / TICKS_PER_INTERVAL);
+            ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Registers a flush target.  Targets that share a name, such as the segments of a single partition, are reported
+     * under a single durabilityLag gauge.
+     */
+    public Registration register(String name, Flushable target) {
+        Assert.argumentNotNull(name, "name");
+        Assert.argumentNotNull(target, "target");
+        Registration registration = new Registration(name, target);
+        registrations.compute(name, (key, existing) -> {
+            if (existing == null) {
+                existing = ConcurrentHashMap.newKeySet();
+                String gaugeName = lagGaugeName(key);
+                metricRegistry.remove(gaugeName);
+                metricRegistry.register(gaugeName, (Gauge<Long>) () -> lagMillis(key));
+            }
+            existing.add(registration);
+            return existing;
+        });
+        return registration;
+    }
+
+    /**
+     * @return the age, in milliseconds, of the oldest write not yet forced to disk for targets registered as name.
+     */
+    public long lagMillis(String name) {
+        Set<Registration> named = registrations.get(name);
+        long lag = 0;
+        if (named != null) {
+            for (Registration registration : named) {
+                lag = Math.max(lag, registration.lagMillis());
+            }
+        }
+        return lag;
+    }
+
+    public int pendingFlushes() {
+        return dirtyQueue.size();
+    }
+
+    void tick() {
+        try {
+            long now = clock.millis();
+            for (Registration registration : dirtyQueue) {
+                if (registration.deadline > now) {
+                    break;
+                }
+                if (dirtyQueue.remove(registration)) {
+                    flushers.execute(registration::flush);
+                }
+            }
+        } catch (Exception ex) {
+            logger.error("Error scheduling flushes", ex);
+        }
+    }
+
+    private void unregister(Registration registration) {
+        dirtyQueue.remove(registration);
+        registrations.computeIfPresent(registration.name, (key, existing) -> {
+            existing.remove(registration);
+            if (existing.isEmpty()) {
+                metricRegistry.remove(lagGaugeName(key));
+                return null;
+            }
+            return existing;
+        });
+    }
+
+    private static String lagGaugeName(String name) {
+        return name(FlushScheduler.class, "durabilityLag", name);
+    }
+
+    private static ExecutorService flushers(int maxConcurrentFlushes, String threadPrefix) {
+        Assert.argumentIsTrue(maxConcurrentFlushes > 0, "maxConcurrentFlushes must be greater than 0");
+        return Executors.newFixedThreadPool(maxConcurrentFlushes, daemonThreads(threadPrefix));
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Stops scheduling, and synchronously flushes everything still dirty.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed.compareAndSet(false, true)) {
+            if (ticker != null) {
+                ticker.shutdownNow();
+            }
+            Registration registration;
+            while ((registration = dirtyQueue.pollFirst()) != null) {
+                registration.flush();
+            }
+            flushers.shutdown();
+            try {
+                flushers.awaitTermination(intervalMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public final class Registration implements Closeable {
+
+        private final String name;
+        private final Flushable target;
+        private final long sequence = registrationCount.incrementAndGet();
+        private final long delayMillis = delays.applyAsLong(intervalMillis);
+        private final AtomicBoolean queued = new AtomicBoolean(false);
+        private volatile long dirtySince;
+        private volatile long deadline;
+        private boolean unregistered = false;
+
+        private Registration(final String name, final Flushable target) {
+            this.name = name;
+            this.target = target;
+        }
+
+        /**
+         * Marks the target as holding writes that have not yet been forced to disk.  Cheap enough to call after every
+         * write; only the first call since the last flush enqueues the target.
+         */
+        public void dirty() {
+            if (queued.compareAndSet(false, true)) {
+                dirtySince = clock.millis();
+                if (closed.get()) {
+                    flush();
+                } else {
+                    enqueue(dirtySince);
+                }
+            }
+        }
+
+        public long lagMillis() {
+            return queued.get() ? Math.max(0, clock.millis() - dirtySince) : 0;
+        }
+
+        private void enqueue(long from) {
+            deadline = from + delayMillis;
+            dirtyQueue.add(this);
+        }
+
+        private synchronized void flush() {
+            if (unregistered || !queued.get()) {
+                return;
+            }
+            // Writes landing after this point will re-queue the target, and are at worst flushed twice
+            queued.set(false);
+            Timer.Context context = fsyncs.time();
+            try {
+                target.flush();
+            } catch (IOException e) {
+                logger.error("Error flushing " + name, e);
+                // Retried one delay from now, in deadline order.  The original dirtySince is retained, so the
+                // reported lag keeps growing until a flush succeeds.
+                if (queued.compareAndSet(false, true) && !closed.get()) {
+                    enqueue(clock.millis());
+                }
+            } finally {
+                context.stop();
+            }
+        }
+
+        /**
+         * Flushes any outstanding writes and stops tracking the target.  Must be called before the target's underlying
+         * files are closed.
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (!unregistered) {
+                if (queued.compareAndSet(true, false)) {
+                    target.flush();
+                }
+                unregistered = true;
+                unregister(this);
+            }
+        }
+    }
+}
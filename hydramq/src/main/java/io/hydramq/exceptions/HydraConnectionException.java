@@ -19,15 +19,15 @@
 
 package io.hydramq.exceptions;
 
-import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 
 /**
  * @author jfulton
  */
 public class HydraConnectionException extends HydraRuntimeException {
-    private final InetSocketAddress endpoint;
+    private final SocketAddress endpoint;
 
-    public HydraConnectionException(InetSocketAddress endpoint, Throwable cause) {
+    public HydraConnectionException(SocketAddress endpoint, Throwable cause) {
         super(cause);
         this.endpoint = endpoint;
     }
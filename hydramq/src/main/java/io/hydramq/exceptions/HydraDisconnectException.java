@@ -19,16 +19,16 @@
 
 package io.hydramq.exceptions;
 
-import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 
 /**
  * @author jfulton
  */
 public class HydraDisconnectException extends HydraRuntimeException {
 
-    private InetSocketAddress endpoint;
+    private SocketAddress endpoint;
 
-    public HydraDisconnectException(InetSocketAddress endpoint) {
+    public HydraDisconnectException(SocketAddress endpoint) {
         this.endpoint = endpoint;
     }
 
@@ -19,6 +19,8 @@
 
 package io.hydramq.internal.apis;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 import io.hydramq.PartitionId;
@@ -32,4 +34,11 @@ import io.hydramq.listeners.PartitionListener;
 public interface TopicInternal {
 
     void discoverPartitions(PartitionListener listener, Listen listen, Map<PartitionId, PartitionFlags> knownPartitionStates);
+
+    /**
+     * @return MessageProperties keys commonly written to this topic, offered to connections for their key dictionary.
+     */
+    default Collection<String> propertyKeys() {
+        return Collections.emptyList();
+    }
 }
@@ -21,44 +21,45 @@ package io.hydramq.internal.util;
 
 import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.function.Function;
-
-import com.codahale.metrics.InstrumentedThreadFactory;
-import com.codahale.metrics.MetricRegistry;
 
 /**
+ * Timeout helpers over the {@link TimerService#shared() shared timer service}.
+ *
  * @author jfulton
  */
 public class AsyncUtils {
 
+    /**
+     * @return a future failing with a {@link TimeoutException} after the duration
+     */
     public static <T> CompletableFuture<T> failAfter(Duration duration) {
         final CompletableFuture<T> promise = new CompletableFuture<>();
         final TimeoutException ex = new TimeoutException("Timeout after " + duration.toMillis() + "ms");
-        scheduler.schedule(() -> promise.completeExceptionally(ex), duration.toMillis(), TimeUnit.MILLISECONDS);
+        TimerService.shared().schedule(() -> promise.completeExceptionally(ex), duration);
         return promise;
     }
 
+    /**
+     * @return a future completing with the value after the duration
+     */
     public static <T> CompletableFuture<T> returnAfter(Duration duration, T value) {
         final CompletableFuture<T> promise = new CompletableFuture<>();
-        scheduler.schedule(() -> promise.complete(value), duration.toMillis(), TimeUnit.MILLISECONDS);
+        TimerService.shared().schedule(() -> promise.complete(value), duration);
         return promise;
     }
 
+    /**
+     * @see TimerService#within(CompletableFuture, Duration)
+     */
     public static <T> CompletableFuture<T> within(CompletableFuture<T> future, Duration duration) {
-        final CompletableFuture<T> timeout = failAfter(duration);
-        return future.applyToEither(timeout, Function.identity());
+        return TimerService.shared().within(future, duration);
     }
 
+    /**
+     * @see TimerService#within(CompletableFuture, Duration, Object)
+     */
     public static <T> CompletableFuture<T> within(CompletableFuture<T> future, Duration duration, T defaultValue) {
-        final CompletableFuture<T> timeout = returnAfter(duration, defaultValue);
-        return future.applyToEither(timeout, Function.identity());
+        return TimerService.shared().within(future, duration, defaultValue);
     }
-
-    private static final ScheduledExecutorService scheduler =
-            Executors.newScheduledThreadPool(1, new InstrumentedThreadFactory(Executors.defaultThreadFactory(),
-                    new MetricRegistry()));
 }
@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.internal.util;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Runs tasks after a delay on a hashed wheel, where scheduling and cancelling are both O(1) and a cancelled task is
+ * dropped from the wheel rather than left queued until it falls due.  Tasks run on the wheel's single thread, so they
+ * should be short, handing anything longer to an executor of their own.
+ *
+ * @author jfulton
+ */
+public class TimerService implements Closeable {
+
+    private static final TimerService shared = new TimerService("hydra-timer", Duration.ofMillis(10));
+    private final HashedWheelTimer timer;
+
+    /**
+     * @param name the name of the wheel's thread, a daemon
+     * @param tick how often the wheel checks for due tasks, and so how late a task may run
+     */
+    public TimerService(String name, Duration tick) {
+        Assert.argumentNotNull(name, "name");
+        Assert.argumentIsTrue(tick.toMillis() > 0, "tick must be at least 1ms");
+        this.timer = new HashedWheelTimer(new DefaultThreadFactory(name, true), tick.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the timer service shared by the timeout helpers
+     */
+    public static TimerService shared() {
+        return shared;
+    }
+
+    public Timeout schedule(Runnable task, Duration delay) {
+        return timer.newTimeout(timeout -> task.run(), delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the task if the future has not completed within the duration.  The timer is cancelled once it does.
+     */
+    public Timeout onTimeout(CompletableFuture<?> future, Duration duration, Runnable task) {
+        Timeout timeout = schedule(task, duration);
+        future.whenComplete((result, throwable) -> timeout.cancel());
+        return timeout;
+    }
+
+    /**
+     * @return a future completing as the given one does, or failing with a {@link TimeoutException} if it has not
+     * completed within the duration
+     */
+    public <T> CompletableFuture<T> within(CompletableFuture<T> future, Duration duration) {
+        CompletableFuture<T> timeout = new CompletableFuture<>();
+        onTimeout(future, duration, () -> timeout.completeExceptionally(
+                new TimeoutException("Timeout after " + duration.toMillis() + "ms")));
+        return future.applyToEither(timeout, Function.identity());
+    }
+
+    /**
+     * @return a future completing as the given one does, or with the default value if it has not completed within the
+     * duration
+     */
+    public <T> CompletableFuture<T> within(CompletableFuture<T> future, Duration duration, T defaultValue) {
+        CompletableFuture<T> timeout = new CompletableFuture<>();
+        onTimeout(future, duration, () -> timeout.complete(defaultValue));
+        return future.applyToEither(timeout, Function.identity());
+    }
+
+    /**
+     * Stops the wheel, dropping any tasks not yet run.
+     */
+    @Override
+    public void close() {
+        timer.stop();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.network;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.hydramq.MessageSet;
+import io.hydramq.PartitionId;
+import io.hydramq.Subscription;
+import io.hydramq.core.PuntException;
+import io.hydramq.core.net.Error;
+import io.hydramq.core.net.protocols.topic.SubscribeRequest;
+import io.hydramq.core.net.protocols.topic.SubscriptionCredit;
+import io.hydramq.core.net.protocols.topic.UnsubscribeRequest;
+import io.hydramq.listeners.MessageSetConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A subscription the server pushes MessageSets to, as ReadResponses carrying the subscription's id.  They are taken on
+ * the event loop in the order they arrive, and handed to the consumer one at a time on a thread of their own.  The
+ * messages of each MessageSet are granted back once it is consumed, keeping the window of messages in flight constant;
+ * byte credits are only granted explicitly.
+ *
+ * @author jfulton
+ */
+class NetworkSubscription implements Subscription {
+
+    private static final Logger logger = LoggerFactory.getLogger(NetworkSubscription.class);
+    private static ExecutorService executorService = Executors.newCachedThreadPool();
+    private final NetworkTopic topic;
+    private final int subscriptionId;
+    private final PartitionId partitionId;
+    private final int maxMessages;
+    private final int messageCredits;
+    private final long byteCredits;
+    private final MessageSetConsumer messageSetConsumer;
+    private final CompletableFuture<Void> closeFuture = new CompletableFuture<>();
+    private CompletableFuture<Void> delivery = CompletableFuture.completedFuture(null);
+    private long receivedOffset;
+    private volatile long nextOffset;
+    private int undelivered = 0;
+    private volatile boolean cancelled = false;
+
+    NetworkSubscription(NetworkTopic topic, SubscribeRequest request, MessageSetConsumer messageSetConsumer) {
+        this.topic = topic;
+        this.subscriptionId = request.getSubscriptionId();
+        this.partitionId = request.getPartitionId();
+        this.maxMessages = request.getMaxMessages();
+        this.messageCredits = request.getMessageCredits();
+        this.byteCredits = request.getByteCredits();
+        this.receivedOffset = request.getMessageOffset();
+        this.nextOffset = request.getMessageOffset();
+        this.messageSetConsumer = messageSetConsumer;
+    }
+
+    int getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    /**
+     * Subscribes again from the offset following the last MessageSet received, granting the initial window less the
+     * messages still waiting to be consumed.
+     */
+    synchronized SubscribeRequest resubscribeRequest() {
+        return new SubscribeRequest(subscriptionId, partitionId, receivedOffset, maxMessages,
+                Math.max(messageCredits - undelivered, 0), byteCredits);
+    }
+
+    /**
+     * Called on the event loop, in the order MessageSets were pushed.
+     */
+    synchronized void onMessageSet(MessageSet messageSet) {
+        if (cancelled) {
+            return;
+        }
+        receivedOffset = messageSet.nextOffset();
+        undelivered += messageSet.size();
+        delivery = delivery.thenRunAsync(() -> deliver(messageSet), executorService);
+    }
+
+    private void deliver(MessageSet messageSet) {
+        if (!cancelled) {
+            try {
+                messageSetConsumer.consume(partitionId, messageSet);
+            } catch (Exception ex) {
+                logger.error("Error consuming messages for partition " + partitionId, ex);
+            }
+            nextOffset = messageSet.nextOffset();
+        }
+        synchronized (this) {
+            undelivered -= messageSet.size();
+        }
+        if (!cancelled) {
+            topic.grant(new SubscriptionCredit(subscriptionId, messageSet.size(), 0));
+        }
+    }
+
+    void onError(Error error) {
+        cancelled = true;
+        topic.removeSubscription(this);
+        closeFuture.completeExceptionally(new PuntException("Subscription failed with error code " + error.code()));
+    }
+
+    /**
+     * Ends the subscription without telling the server, such as when the topic is closed.
+     */
+    void abandon() {
+        cancelled = true;
+        afterDelivery().thenRun(() -> closeFuture.complete(null));
+    }
+
+    private synchronized CompletableFuture<Void> afterDelivery() {
+        return delivery;
+    }
+
+    @Override
+    public PartitionId getPartitionId() {
+        return partitionId;
+    }
+
+    @Override
+    public long nextOffset() {
+        return nextOffset;
+    }
+
+    @Override
+    public void grant(final int messages, final long bytes) {
+        topic.grant(new SubscriptionCredit(subscriptionId, messages, bytes));
+    }
+
+    @Override
+    public CompletableFuture<Void> cancel() {
+        if (!cancelled) {
+            cancelled = true;
+            // The acknowledgement follows the last MessageSet pushed, which is then already queued for delivery
+            topic.unsubscribe(new UnsubscribeRequest(subscriptionId)).whenComplete((aVoid, throwable) -> {
+                topic.removeSubscription(this);
+                afterDelivery().thenRun(() -> closeFuture.complete(null));
+            });
+        }
+        return closeFuture;
+    }
+
+    @Override
+    public CompletableFuture<Void> closeFuture() {
+        return closeFuture;
+    }
+}
@@ -19,7 +19,10 @@
 
 package io.hydramq.network;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -31,6 +34,7 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -39,11 +43,13 @@ import io.hydramq.Message;
 import io.hydramq.MessageSet;
 import io.hydramq.PartitionId;
 import io.hydramq.PartitionInfo;
+import io.hydramq.Subscription;
 import io.hydramq.Topic;
 import io.hydramq.core.PuntException;
 import io.hydramq.core.net.Acknowledgement;
 import io.hydramq.core.net.Command;
 import io.hydramq.core.net.Error;
+import io.hydramq.core.net.Response;
 import io.hydramq.core.net.commands.CursorInfoRequest;
 import io.hydramq.core.net.commands.CursorInfoResponse;
 import io.hydramq.core.net.commands.PartitionInfoRequest;
@@ -51,32 +57,43 @@ import io.hydramq.core.net.commands.PartitionInfoResponse;
 import io.hydramq.core.net.commands.WriteCursorRequest;
 import io.hydramq.core.net.netty.ChannelAttributes;
 import io.hydramq.core.net.netty.ChannelUtils;
+import io.hydramq.core.net.netty.ChunkedFrameDecoder;
 import io.hydramq.core.net.netty.CommandDecoder;
 import io.hydramq.core.net.netty.CommandEncoder;
+import io.hydramq.core.net.netty.FlushConsolidationHandler;
+import io.hydramq.core.net.protocols.topic.BatchWriteRequest;
 import io.hydramq.core.net.protocols.topic.LockListenerNotification;
 import io.hydramq.core.net.protocols.topic.LockListenerRequest;
 import io.hydramq.core.net.protocols.topic.PartitionIdReadRequest;
 import io.hydramq.core.net.protocols.topic.PartitionIdWriteRequest;
 import io.hydramq.core.net.protocols.topic.PartitionsDiscoveredNotification;
 import io.hydramq.core.net.protocols.topic.ReadResponse;
+import io.hydramq.core.net.protocols.topic.SubscribeRequest;
+import io.hydramq.core.net.protocols.topic.SubscriptionCredit;
 import io.hydramq.core.net.protocols.topic.TopicHandshake;
+import io.hydramq.core.net.protocols.topic.UnsubscribeRequest;
+import io.hydramq.core.type.Compression;
 import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.PropertyKeyDictionary;
 import io.hydramq.exceptions.HydraRuntimeException;
 import io.hydramq.internal.apis.TopicInternal;
 import io.hydramq.internal.util.Assert;
 import io.hydramq.listeners.Listen;
+import io.hydramq.listeners.MessageSetConsumer;
 import io.hydramq.listeners.PartitionFlags;
 import io.hydramq.listeners.PartitionListener;
 import io.hydramq.network.client.AbstractConnection;
+import io.hydramq.network.client.MultiplexedConnection;
+import io.hydramq.network.client.OverflowPolicy;
 import io.hydramq.network.client.RequestResponseHandler;
+import io.hydramq.readers.PollingSubscription;
 import io.hydramq.subscriptions.LockListener;
 import io.hydramq.subscriptions.LockState;
 import io.hydramq.topics.TopicWrapper;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.channel.local.LocalChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -88,30 +105,149 @@ import static io.hydramq.listeners.Listen.REMOVE;
 public class NetworkTopic extends AbstractConnection implements Topic, TopicInternal {
 
     private static final Logger logger = LoggerFactory.getLogger(NetworkTopic.class);
-    private static final int MAX_VERSION_SUPPORTED = 1;
+    private static final int MAX_VERSION_SUPPORTED = 8;
     public static final int MAX_FRAME_LENGTH = 1024 * 1024;
+    // Longer frames are sent as chunks of at most MAX_FRAME_LENGTH, and reassembled up to this length
+    public static final int MAX_CHUNKED_FRAME_LENGTH = 64 * 1024 * 1024;
+    public static final int DEFAULT_MAX_IN_FLIGHT_WRITES = 1024;
+    public static final int DEFAULT_MAX_QUEUED_WRITES = 16 * 1024;
     private int version = 0;
     private final SortedMap<PartitionId, PartitionFlags> partitions = new TreeMap<>();
     private final String topicName;
     protected ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     private Set<PartitionListener> partitionListeners = new HashSet<>();
     private Map<UUID, LockListener> subscriptions = new HashMap<>();
+    private final Map<Integer, NetworkSubscription> partitionSubscriptions = new ConcurrentHashMap<>();
     private AtomicInteger acquired = new AtomicInteger();
     private AtomicInteger released = new AtomicInteger();
+    private volatile List<String> propertyKeys = new ArrayList<>();
+    private volatile Compression compression = Compression.NONE;
+    private volatile Duration flushDelay = Duration.ZERO;
+    private volatile int maxInFlightWrites = DEFAULT_MAX_IN_FLIGHT_WRITES;
+    private final WriteWindow writeWindow = new WriteWindow(DEFAULT_MAX_IN_FLIGHT_WRITES, DEFAULT_MAX_QUEUED_WRITES);
 
     public NetworkTopic(final String topicName) {
+        this(topicName, null);
+    }
 
+    /**
+     * @param multiplexedConnection the connection to share with other topics, or null to connect a socket of its own
+     */
+    public NetworkTopic(final String topicName, final MultiplexedConnection multiplexedConnection) {
+        super(multiplexedConnection);
         this.topicName = topicName;
+        closeFuture().thenRun(() -> partitionSubscriptions.values().forEach(NetworkSubscription::abandon));
+    }
+
+    /**
+     * Proposes MessageProperties keys for the key dictionary negotiated on the next connection.  Keys in the dictionary
+     * are sent as small ids rather than spelled out on every message.  Once connected, the negotiated dictionary,
+     * which may hold further keys offered by the server, is proposed again on reconnect.
+     */
+    public NetworkTopic propertyKeys(Collection<String> propertyKeys) {
+        Assert.argumentNotNull(propertyKeys, "propertyKeys");
+        this.propertyKeys = new ArrayList<>(propertyKeys);
+        return this;
+    }
+
+    public List<String> getPropertyKeys() {
+        return propertyKeys;
+    }
+
+    /**
+     * Asks for MessageSets to be compressed with the given codec from the next connection on, for links where
+     * bandwidth is scarcer than CPU.  Servers predating compression send MessageSets uncompressed.
+     */
+    public NetworkTopic compression(Compression compression) {
+        Assert.argumentNotNull(compression, "compression");
+        this.compression = compression;
+        return this;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Holds flushes for up to the given delay from the next connection on, so that requests written close together
+     * share a socket write.  By default, requests written before the event loop next gets to flushing share one.
+     */
+    public NetworkTopic flushDelay(Duration flushDelay) {
+        Assert.argumentNotNull(flushDelay, "flushDelay");
+        this.flushDelay = flushDelay;
+        return this;
+    }
+
+    public Duration getFlushDelay() {
+        return flushDelay;
+    }
+
+    /**
+     * Caps the writes awaiting acknowledgement from the next connection on.  Servers advertising a smaller window,
+     * from version 8 on, get that instead.
+     */
+    public NetworkTopic maxInFlightWrites(int maxInFlightWrites) {
+        Assert.argumentIsTrue(maxInFlightWrites > 0, "maxInFlightWrites must be greater than 0");
+        this.maxInFlightWrites = maxInFlightWrites;
+        return this;
+    }
+
+    public int getMaxInFlightWrites() {
+        return maxInFlightWrites;
+    }
+
+    /**
+     * Sets how many writes may wait for the window to open before further writes fail.  With 0, writes fail as soon
+     * as the window is full.
+     */
+    public NetworkTopic maxQueuedWrites(int maxQueuedWrites) {
+        writeWindow.maxQueued(maxQueuedWrites);
+        return this;
+    }
+
+    /**
+     * Sets how many requests issued while disconnected are held for the next connection.
+     */
+    public NetworkTopic maxBufferedRequests(int maxBufferedRequests) {
+        reconnectBuffer().maxBuffered(maxBufferedRequests);
+        return this;
+    }
+
+    /**
+     * Sets what happens to requests issued while disconnected once {@link #maxBufferedRequests(int)} are held.
+     */
+    public NetworkTopic overflowPolicy(OverflowPolicy overflowPolicy) {
+        reconnectBuffer().overflowPolicy(overflowPolicy);
+        return this;
+    }
+
+    /**
+     * @return the number of writes that may await acknowledgement on the current connection
+     */
+    public int getWriteWindow() {
+        return writeWindow.limit();
     }
 
     @Override
     protected CompletableFuture<Void> handshake() {
-        return ChannelUtils.sendForReply(channel(), new TopicHandshake(MAX_VERSION_SUPPORTED, getName(), new HashMap<>()))
+        return ChannelUtils.sendForReply(channel(),
+                new TopicHandshake(MAX_VERSION_SUPPORTED, getName(), new HashMap<>(), propertyKeys, compression))
                 .thenCompose(command -> {
                     CompletableFuture<Void> f = new CompletableFuture<>();
                     if (command instanceof TopicHandshake) {
                         // TODO: remove code duplication in onCommand
                         TopicHandshake handshake = (TopicHandshake) command;
+                        version = handshake.getVersion();
+                        // Nothing carrying messages is sent or received until the handshake completes
+                        ConversionContext conversionContext = channel().attr(ChannelAttributes.CONVERSION_CONTEXT).get();
+                        if (version >= 2) {
+                            conversionContext.keyDictionary(new PropertyKeyDictionary(handshake.getPropertyKeys()));
+                            propertyKeys = handshake.getPropertyKeys();
+                        }
+                        conversionContext.compact(version >= 3).columnar(version >= 4)
+                                         .compression(version >= 5 ? handshake.getCompression() : Compression.NONE);
+                        int advertisedWindow = version >= 8 ? handshake.getWriteWindow() : 0;
+                        writeWindow.limit(advertisedWindow > 0 ? Math.min(advertisedWindow, maxInFlightWrites) : maxInFlightWrites);
                         List<PartitionListener> listeners = new ArrayList<>();
                         Map<PartitionId, PartitionFlags> changes = new HashMap<>();
                         try {
@@ -145,6 +281,10 @@ public class NetworkTopic extends AbstractConnection implements Topic, TopicInte
                         listeners.forEach(listener -> {
                             changes.forEach(listener::onPartitionDiscovered);
                         });
+                        // Subscriptions outlive the connection, picking up where the last one left off
+                        partitionSubscriptions.values().forEach(subscription -> {
+                            subscribed(subscription, ChannelUtils.sendForReply(channel(), subscription.resubscribeRequest()));
+                        });
                     } else if (command instanceof Error) {
                         f.completeExceptionally(new PuntException((Error) command));
                     }
@@ -228,10 +368,14 @@ public class NetworkTopic extends AbstractConnection implements Topic, TopicInte
             @Override
             protected void initChannel(final Channel ch) throws Exception {
                 ConversionContext conversionContext = ConversionContext.topicProtocol();
-                ch.pipeline().addLast("frameDecoder", new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, 4, 0, 4));
-                ch.pipeline().addLast("commandDecoder", new CommandDecoder(conversionContext));
-                ch.pipeline().addLast("frameEncoder", new LengthFieldPrepender(4));
-                ch.pipeline().addLast("commandEncoder", new CommandEncoder(conversionContext));
+                ch.attr(ChannelAttributes.CONVERSION_CONTEXT).set(conversionContext);
+                ch.pipeline().addLast("flushConsolidation", new FlushConsolidationHandler(flushDelay));
+                // In-VM channels hand commands across as they are
+                if (!(ch instanceof LocalChannel)) {
+                    ch.pipeline().addLast("frameDecoder", new ChunkedFrameDecoder(MAX_FRAME_LENGTH, MAX_CHUNKED_FRAME_LENGTH));
+                    ch.pipeline().addLast("commandDecoder", new CommandDecoder(conversionContext));
+                    ch.pipeline().addLast("commandEncoder", new CommandEncoder(conversionContext, MAX_FRAME_LENGTH));
+                }
                 ch.pipeline().addLast("logic", new RequestResponseHandler(NetworkTopic.this));
             }
         };
@@ -244,9 +388,44 @@ public class NetworkTopic extends AbstractConnection implements Topic, TopicInte
 
     @Override
     public CompletableFuture<Void> write(PartitionId partitionId, Message message) {
-        blockForConnection();
+        return whenConnected(() -> writeMessage(partitionId, message));
+    }
+
+    private CompletableFuture<Void> writeMessage(PartitionId partitionId, Message message) {
         PartitionIdWriteRequest command = new PartitionIdWriteRequest(partitionId, message);
-        CompletableFuture<Command> replyFuture = ChannelUtils.sendForReply(channel(), command);
+        return writeWindow.submit(() -> acknowledged(ChannelUtils.sendForReply(channel(), command)));
+    }
+
+    @Override
+    public CompletableFuture<Void> write(PartitionId partitionId, MessageSet messageSet) {
+        List<Message> messages = new ArrayList<>(messageSet.size());
+        messageSet.forEach(messages::add);
+        return write(Collections.singletonMap(partitionId, messages));
+    }
+
+    /**
+     * Sends the whole batch as one request, acknowledged once, with each partition's messages appended together.  The
+     * batch takes a single place in the write window.
+     */
+    @Override
+    public CompletableFuture<Void> write(Map<PartitionId, List<Message>> messageBatch) {
+        return whenConnected(() -> {
+            if (version < 6) {
+                // Servers predating batch writes take a request per message
+                List<CompletableFuture<Void>> futures = new ArrayList<>();
+                messageBatch.forEach((partitionId, messages) -> {
+                    for (Message message : messages) {
+                        futures.add(writeMessage(partitionId, message));
+                    }
+                });
+                return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+            }
+            BatchWriteRequest command = new BatchWriteRequest(messageBatch);
+            return writeWindow.submit(() -> acknowledged(ChannelUtils.sendForReply(channel(), command)));
+        });
+    }
+
+    private CompletableFuture<Void> acknowledged(CompletableFuture<Command> replyFuture) {
         return replyFuture.thenCompose(reply -> {
             CompletableFuture<Void> f = new CompletableFuture<>();
             if (reply instanceof Error) {
@@ -258,21 +437,10 @@ public class NetworkTopic extends AbstractConnection implements Topic, TopicInte
         });
     }
 
-    @Override
-    public CompletableFuture<Void> write(PartitionId partitionId, MessageSet messageSet) {
-        throw new UnsupportedOperationException("Not implemented");
-    }
-
-    @Override
-    public CompletableFuture<Void> write(Map<PartitionId, List<Message>> messageBatch) {
-        throw new UnsupportedOperationException("Not implemented");
-    }
-
     @Override
     public CompletableFuture<MessageSet> read(PartitionId partitionId, long messageOffset, int maxMessages) {
-        blockForConnection();
         PartitionIdReadRequest readRequest = new PartitionIdReadRequest(partitionId, messageOffset, maxMessages);
-        CompletableFuture<Command> replyFuture = ChannelUtils.sendForReply(channel(), readRequest);
+        CompletableFuture<Command> replyFuture = whenConnected(() -> ChannelUtils.sendForReply(channel(), readRequest));
         return replyFuture.thenCompose(reply -> {
             CompletableFuture<MessageSet> f = new CompletableFuture<>();
             if (reply instanceof Error) {
@@ -286,6 +454,96 @@ public class NetworkTopic extends AbstractConnection implements Topic, TopicInte
         });
     }
 
+    /**
+     * Has the server push MessageSets as they are written, with a window of four MessageSets' worth of messages in
+     * flight, and no limit on their bytes.
+     */
+    @Override
+    public Subscription subscribe(PartitionId partitionId, long messageOffset, int maxMessages,
+                                  MessageSetConsumer messageSetConsumer) {
+        return subscribe(partitionId, messageOffset, maxMessages, maxMessages * 4, Long.MAX_VALUE, messageSetConsumer);
+    }
+
+    /**
+     * Has the server push MessageSets as they are written, for as long as the given credits last.  Messages are granted
+     * back as they are consumed; bytes, as counted in encoded ReadResponses, only through
+     * {@link Subscription#grant(int, long)}.  Long.MAX_VALUE bytes is taken as no limit.  Servers predating
+     * subscriptions are polled instead.
+     *
+     * Subscriptions made while disconnected are sent with the next handshake, without waiting.  The exception is a
+     * subscription made before this topic has first connected, which waits for that connection: whether the server
+     * pushes is only known from its handshake, and deferring the choice behind the returned Subscription is out of
+     * scope here.
+     */
+    public Subscription subscribe(PartitionId partitionId, long messageOffset, int maxMessages, int messageCredits,
+                                  long byteCredits, MessageSetConsumer messageSetConsumer) {
+        Assert.argumentNotNull(partitionId, "partitionId");
+        Assert.argumentIsTrue(maxMessages > 0, "maxMessages must be greater than 0");
+        Assert.argumentIsTrue(messageCredits >= 0, "messageCredits must not be negative");
+        Assert.argumentIsTrue(byteCredits >= 0, "byteCredits must not be negative");
+        Assert.argumentNotNull(messageSetConsumer, "messageSetConsumer");
+        if (version == 0) {
+            // Whether the server pushes is only known once first connected
+            blockForConnection();
+        }
+        if (version < 7) {
+            return new PollingSubscription(this, partitionId, messageOffset, maxMessages, messageSetConsumer);
+        }
+        SubscribeRequest request = new SubscribeRequest(partitionId, messageOffset, maxMessages, messageCredits, byteCredits);
+        NetworkSubscription subscription = new NetworkSubscription(this, request, messageSetConsumer);
+        // Registered first, as pushes may follow hard on the acknowledgement
+        partitionSubscriptions.put(subscription.getSubscriptionId(), subscription);
+        if (isConnected()) {
+            subscribed(subscription, ChannelUtils.sendForReply(channel(), request));
+        }
+        // Otherwise subscribed as part of the next handshake
+        return subscription;
+    }
+
+    private void subscribed(NetworkSubscription subscription, CompletableFuture<Command> replyFuture) {
+        replyFuture.whenComplete((reply, throwable) -> {
+            if (reply instanceof Error) {
+                subscription.onError((Error) reply);
+            } else if (throwable != null) {
+                // Disconnected before being acknowledged, and subscribed again on reconnect
+                logger.debug("Subscription {} not acknowledged", subscription.getSubscriptionId(), throwable);
+            }
+        });
+    }
+
+    void grant(SubscriptionCredit credit) {
+        if (isConnected()) {
+            ChannelUtils.send(channel(), credit);
+        }
+    }
+
+    CompletableFuture<Command> unsubscribe(UnsubscribeRequest request) {
+        if (!isConnected()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return ChannelUtils.sendForReply(channel(), request);
+    }
+
+    void removeSubscription(NetworkSubscription subscription) {
+        partitionSubscriptions.remove(subscription.getSubscriptionId(), subscription);
+    }
+
+    @Override
+    protected boolean onPush(final ChannelHandlerContext ctx, final Response response) {
+        NetworkSubscription subscription = partitionSubscriptions.get(response.correlationId());
+        if (subscription == null) {
+            return false;
+        }
+        if (response instanceof ReadResponse) {
+            subscription.onMessageSet(((ReadResponse) response).getMessageSet());
+        } else if (response instanceof Error) {
+            subscription.onError((Error) response);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
     @Override
     public void discoverPartitions(PartitionListener listener) {
         discoverPartitions(listener, Listen.ONCE);
@@ -339,9 +597,8 @@ public class NetworkTopic extends AbstractConnection implements Topic, TopicInte
 
     @Override
     public CompletableFuture<PartitionInfo> partitionInfo(PartitionId partitionId) {
-        blockForConnection();
         PartitionInfoRequest request = new PartitionInfoRequest(partitionId);
-        CompletableFuture<Command> replyFuture = ChannelUtils.sendForReply(channel(), request);
+        CompletableFuture<Command> replyFuture = whenConnected(() -> ChannelUtils.sendForReply(channel(), request));
         return replyFuture.thenCompose(reply -> {
             CompletableFuture<PartitionInfo> f = new CompletableFuture<>();
             if (reply instanceof Error) {
@@ -369,61 +626,52 @@ public class NetworkTopic extends AbstractConnection implements Topic, TopicInte
 
     @Override
     public void acquirePartitionLocks(String lockGroup, LockListener lockListener) {
-        blockForConnection();
-        UUID subscriptionKey = UUID.randomUUID();
-        subscriptions.put(subscriptionKey, lockListener);
-        LockListenerRequest request = new LockListenerRequest(subscriptionKey, lockGroup, true);
-        ChannelUtils.sendForReply(channel(), request).thenAccept(command -> {
-            logger.debug("Registered!");
-        }).exceptionally(throwable -> {
-            logger.error("Punting", throwable);
-            return null;
-        });
+        acquirePartitionLocks(lockGroup, lockListener, Listen.CONTINUOUSLY);
     }
 
+    /**
+     * Registers or removes the listener without waiting for a connection.  Requests made while disconnected are
+     * buffered, and sent once reconnected, as other requests are.
+     */
     @Override
     public void acquirePartitionLocks(String lockGroup, LockListener lockListener, Listen listen) {
-        blockForConnection();
         if (listen == REMOVE) {
+            List<UUID> removed = new ArrayList<>();
             try {
                 lock.writeLock().lock();
-                subscriptions.forEach((key, subscription1) -> {
-                    if (subscription1 == lockListener) {
-                        LockListenerRequest request = new LockListenerRequest(key, lockGroup, false);
-                        ChannelUtils.sendForReply(channel(), request).thenAccept(command -> {
-                            logger.debug("Unregistered!");
-                        }).exceptionally(throwable -> {
-                            logger.error("Punting", throwable);
-                            return null;
-                        });
-                        subscriptions.remove(key);
+                subscriptions.forEach((key, subscription) -> {
+                    if (subscription == lockListener) {
+                        removed.add(key);
                     }
                 });
+                removed.forEach(subscriptions::remove);
             } finally {
                 lock.writeLock().unlock();
             }
+            removed.forEach(key -> sendLockListenerRequest(new LockListenerRequest(key, lockGroup, false)));
         } else {
             UUID subscriptionKey = UUID.randomUUID();
             subscriptions.put(subscriptionKey, lockListener);
-            LockListenerRequest request = new LockListenerRequest(subscriptionKey, lockGroup, true);
-            ChannelUtils.sendForReply(channel(), request).thenAccept(command -> {
-                if (command instanceof Acknowledgement) {
-                    logger.debug("Registered!");
-                } else {
-                    logger.error("Something is wrong!");
-                }
-            }).exceptionally(throwable -> {
-                logger.error("Punting", throwable);
-                return null;
-            });
+            sendLockListenerRequest(new LockListenerRequest(subscriptionKey, lockGroup, true));
         }
     }
 
+    private void sendLockListenerRequest(LockListenerRequest request) {
+        whenConnected(() -> ChannelUtils.sendForReply(channel(), request)).whenComplete((command, throwable) -> {
+            if (throwable != null) {
+                logger.error("Punting", throwable);
+            } else if (command instanceof Acknowledgement) {
+                logger.debug(request.isRegistering() ? "Registered!" : "Unregistered!");
+            } else {
+                logger.error("Something is wrong!");
+            }
+        });
+    }
+
     @Override
     public CompletableFuture<CursorInfo> cursor(PartitionId partitionId, String cursorName) {
-        blockForConnection();
         CursorInfoRequest request = new CursorInfoRequest(partitionId, cursorName);
-        CompletableFuture<Command> replyFuture = ChannelUtils.sendForReply(channel(), request);
+        CompletableFuture<Command> replyFuture = whenConnected(() -> ChannelUtils.sendForReply(channel(), request));
         return replyFuture.thenCompose(reply -> {
             CompletableFuture<CursorInfo> f = new CompletableFuture<>();
             if (reply instanceof Error) {
@@ -439,9 +687,8 @@ public class NetworkTopic extends AbstractConnection implements Topic, TopicInte
 
     @Override
     public CompletableFuture<Void> cursor(PartitionId partitionId, String cursorName, long messageOffset) {
-        blockForConnection();
         WriteCursorRequest request = new WriteCursorRequest(partitionId, cursorName, messageOffset);
-        CompletableFuture<Command> replyFuture = ChannelUtils.sendForReply(channel(), request);
+        CompletableFuture<Command> replyFuture = whenConnected(() -> ChannelUtils.sendForReply(channel(), request));
         return replyFuture.thenCompose(reply -> {
             CompletableFuture<Void> f = new CompletableFuture<>();
             if (reply instanceof Error) {
@@ -19,6 +19,7 @@
 
 package io.hydramq.network;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -35,8 +36,10 @@ import io.hydramq.core.PuntException;
 import io.hydramq.core.net.Command;
 import io.hydramq.core.net.Error;
 import io.hydramq.core.net.netty.ChannelUtils;
+import io.hydramq.core.net.netty.ChunkedFrameDecoder;
 import io.hydramq.core.net.netty.CommandDecoder;
 import io.hydramq.core.net.netty.CommandEncoder;
+import io.hydramq.core.net.netty.FlushConsolidationHandler;
 import io.hydramq.core.net.protocols.topicmanager.TopicDiscoveredNotification;
 import io.hydramq.core.net.protocols.topicmanager.TopicManagerHandshake;
 import io.hydramq.core.type.ConversionContext;
@@ -47,13 +50,13 @@ import io.hydramq.listeners.DiscoverTopicsListener;
 import io.hydramq.listeners.Listen;
 import io.hydramq.listeners.TopicStateListener;
 import io.hydramq.network.client.AbstractConnection;
+import io.hydramq.network.client.MultiplexedConnection;
 import io.hydramq.network.client.RequestResponseHandler;
 import io.hydramq.topics.NonClosingTopicWrapper;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.channel.local.LocalChannel;
 
 import static io.hydramq.listeners.Listen.CONTINUOUSLY;
 import static io.hydramq.listeners.Listen.ONCE;
@@ -64,28 +67,67 @@ import static io.hydramq.listeners.Listen.ONCE;
 public class NetworkTopicManager extends AbstractConnection implements TopicManager, TopicManagerInternal {
 
     private static final int MAX_VERSION_SUPPORTED = 1;
-    public static final int MAX_FRAME_LENGTH = 1024 * 1024; // TODO: Review.  Also, determine what happens / handle when this is exceeded.
+    public static final int MAX_FRAME_LENGTH = 1024 * 1024;
+    // Longer frames are sent as chunks of at most MAX_FRAME_LENGTH, and reassembled up to this length
+    public static final int MAX_CHUNKED_FRAME_LENGTH = 64 * 1024 * 1024;
     private int version = 0;
     private ReadWriteLock lock = new ReentrantReadWriteLock();
     private Set<String> discoveredTopics = new HashSet<>();
     private ConcurrentHashMap<String, Topic> topics = new ConcurrentHashMap<>();
     private Set<DiscoverTopicsListener> discoverTopicsListeners = new HashSet<>();
-    private SimpleConnectionManager connectionManager = new SimpleConnectionManager(getEndpoint());
+    private final MultiplexedConnection multiplexedConnection;
+    private SimpleConnectionManager connectionManager;
 
+    /**
+     * Topics, and the manager itself, share a single socket to the server, where it supports multiplexing.
+     */
     public NetworkTopicManager() {
+        this(new MultiplexedConnection());
+    }
+
+    private NetworkTopicManager(MultiplexedConnection multiplexedConnection) {
+        super(multiplexedConnection);
+        this.multiplexedConnection = multiplexedConnection;
     }
 
     @Override
     public Topic topic(String topicName) throws HydraRuntimeException {
         return new NonClosingTopicWrapper(
                 topics.computeIfAbsent(topicName.toLowerCase(), s -> {
-                    NetworkTopic topic = new NetworkTopic(topicName);
+                    NetworkTopic topic = new NetworkTopic(topicName, multiplexedConnection);
                     topic.connect(getEndpoint()).join();
-                    connectionManager.manage(topic);
+                    connectionManager().manage(topic);
                     return topic;
                 }));
     }
 
+    private synchronized SimpleConnectionManager connectionManager() {
+        // The endpoint is only known once connected
+        if (connectionManager == null) {
+            connectionManager = new SimpleConnectionManager(getEndpoint());
+        }
+        return connectionManager;
+    }
+
+    /**
+     * @return the number of sockets open to the server, which stays at one however many topics are in use
+     */
+    public int sockets() {
+        return multiplexedConnection.sockets();
+    }
+
+    /**
+     * Closes every topic handed out, along with the shared socket.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Topic topic : topics.values()) {
+            topic.close();
+        }
+        super.close();
+        multiplexedConnection.close();
+    }
+
     @Override
     public void discoverTopics(DiscoverTopicsListener listener) {
         discoverTopics(listener, ONCE);
@@ -206,10 +248,13 @@ public class NetworkTopicManager extends AbstractConnection implements TopicMana
             @Override
             protected void initChannel(Channel ch) throws Exception {
                 ConversionContext conversionContext = ConversionContext.topicManagerProtocol();
-                ch.pipeline().addLast("frameDecoder", new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, 4, 0, 4));
-                ch.pipeline().addLast("commandDecoder", new CommandDecoder(conversionContext));
-                ch.pipeline().addLast("frameEncoder", new LengthFieldPrepender(4));
-                ch.pipeline().addLast("commandEncoder", new CommandEncoder(conversionContext));
+                ch.pipeline().addLast("flushConsolidation", new FlushConsolidationHandler());
+                // In-VM channels hand commands across as they are
+                if (!(ch instanceof LocalChannel)) {
+                    ch.pipeline().addLast("frameDecoder", new ChunkedFrameDecoder(MAX_FRAME_LENGTH, MAX_CHUNKED_FRAME_LENGTH));
+                    ch.pipeline().addLast("commandDecoder", new CommandDecoder(conversionContext));
+                    ch.pipeline().addLast("commandEncoder", new CommandEncoder(conversionContext, MAX_FRAME_LENGTH));
+                }
                 ch.pipeline().addLast("logic", new RequestResponseHandler(NetworkTopicManager.this));
             }
         };
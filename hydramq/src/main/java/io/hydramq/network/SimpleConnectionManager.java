@@ -19,7 +19,7 @@
 
 package io.hydramq.network;
 
-import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Executors;
@@ -42,9 +42,9 @@ public class SimpleConnectionManager implements ConnectionManager {
     private static final Logger logger = LoggerFactory.getLogger(SimpleConnectionManager.class);
     private ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
     private Map<Connection,ReconnectStrategy> connections = new HashMap<>();
-    private InetSocketAddress endpoint;
+    private SocketAddress endpoint;
 
-    public SimpleConnectionManager(final InetSocketAddress endpoint) {
+    public SimpleConnectionManager(final SocketAddress endpoint) {
         this.endpoint = endpoint;
     }
 
@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.network;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import io.hydramq.exceptions.HydraRuntimeException;
+import io.hydramq.internal.util.Assert;
+
+/**
+ * Bounds the writes awaiting acknowledgement.  Writes beyond the window wait in a queue, started in order as earlier
+ * writes complete, and writes beyond the queue fail straight away, so that a server falling behind slows writers down
+ * rather than filling memory on either side.
+ *
+ * @author jfulton
+ */
+class WriteWindow {
+
+    private final Deque<QueuedWrite> queued = new ArrayDeque<>();
+    private int limit;
+    private int maxQueued;
+    private int inFlight = 0;
+    private boolean draining = false;
+
+    WriteWindow(int limit, int maxQueued) {
+        limit(limit);
+        maxQueued(maxQueued);
+    }
+
+    void limit(int limit) {
+        Assert.argumentIsTrue(limit > 0, "limit must be greater than 0");
+        synchronized (this) {
+            this.limit = limit;
+        }
+        drain();
+    }
+
+    synchronized int limit() {
+        return limit;
+    }
+
+    synchronized void maxQueued(int maxQueued) {
+        Assert.argumentIsTrue(maxQueued >= 0, "maxQueued must not be negative");
+        this.maxQueued = maxQueued;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized int queued() {
+        return queued.size();
+    }
+
+    /**
+     * Starts the write once the window allows.
+     */
+    CompletableFuture<Void> submit(Supplier<CompletableFuture<Void>> write) {
+        synchronized (this) {
+            if (inFlight >= limit || !queued.isEmpty()) {
+                if (queued.size() >= maxQueued) {
+                    CompletableFuture<Void> rejected = new CompletableFuture<>();
+                    rejected.completeExceptionally(new HydraRuntimeException("Write window exhausted, with " + inFlight
+                            + " writes in flight and " + queued.size() + " queued"));
+                    return rejected;
+                }
+                QueuedWrite queuedWrite = new QueuedWrite(write);
+                queued.add(queuedWrite);
+                return queuedWrite.future;
+            }
+            inFlight++;
+        }
+        return start(write);
+    }
+
+    private CompletableFuture<Void> start(Supplier<CompletableFuture<Void>> write) {
+        CompletableFuture<Void> future;
+        try {
+            future = write.get();
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((aVoid, throwable) -> release());
+        return future;
+    }
+
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    /**
+     * Writes completing as they are started, such as on a closed channel, release their slot within the loop rather
+     * than recursing into it.
+     */
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            QueuedWrite next;
+            synchronized (this) {
+                if (inFlight >= limit || queued.isEmpty()) {
+                    draining = false;
+                    return;
+                }
+                next = queued.poll();
+                inFlight++;
+            }
+            start(next.write).whenComplete((aVoid, throwable) -> {
+                if (throwable == null) {
+                    next.future.complete(null);
+                } else {
+                    next.future.completeExceptionally(throwable);
+                }
+            });
+        }
+    }
+
+    private static class QueuedWrite {
+
+        private final Supplier<CompletableFuture<Void>> write;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private QueuedWrite(Supplier<CompletableFuture<Void>> write) {
+            this.write = write;
+        }
+    }
+}
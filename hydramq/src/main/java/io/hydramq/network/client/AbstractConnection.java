@@ -21,19 +21,23 @@ package io.hydramq.network.client;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 import io.hydramq.core.net.Command;
+import io.hydramq.core.net.Response;
 import io.hydramq.core.net.netty.ChannelAttributes;
+import io.hydramq.core.net.netty.PendingReplies;
+import io.hydramq.core.net.netty.Transport;
 import io.hydramq.exceptions.HydraConnectionException;
 import io.hydramq.exceptions.HydraDisconnectException;
 import io.hydramq.exceptions.HydraRuntimeException;
@@ -48,8 +52,9 @@ import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,23 +66,50 @@ import static io.hydramq.listeners.Listen.ONCE;
 public abstract class AbstractConnection implements Connection {
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractConnection.class);
+    public static final int DEFAULT_MAX_BUFFERED_REQUESTS = 16 * 1024;
     private Lock connectionLock = new ReentrantLock();
     private Condition connectedCondition = connectionLock.newCondition();
     private AtomicBoolean connecting = new AtomicBoolean(false);
-    private EventLoopGroup eventLoopGroup = new NioEventLoopGroup();
+    private static EventLoopGroup sharedEventLoopGroup;
+    private final MultiplexedConnection multiplexedConnection;
     private volatile Channel channel;
     private Bootstrap bootstrap;
-    private InetSocketAddress endpoint;
+    private SocketAddress endpoint;
     private CompletableFuture<Void> closeFuture = new CompletableFuture<>();
     private Map<ConnectionStateListener, Listen> disconnectionListeners = new HashMap<>();
+    private final ReconnectBuffer reconnectBuffer = new ReconnectBuffer(DEFAULT_MAX_BUFFERED_REQUESTS, OverflowPolicy.FAIL);
 
     public AbstractConnection() {
+        this(null);
+    }
+
+    /**
+     * @param multiplexedConnection the connection to run over a stream of, or null to connect a socket of its own
+     */
+    protected AbstractConnection(MultiplexedConnection multiplexedConnection) {
+        this.multiplexedConnection = multiplexedConnection;
         this.bootstrap = new Bootstrap();
-        bootstrap.group(eventLoopGroup).channel(NioSocketChannel.class).handler(channelInitializer());
+        bootstrap.group(sharedEventLoopGroup()).channel(Transport.preferred().channelClass()).handler(channelInitializer());
     }
 
+    /**
+     * The event loops every client connection runs on, started on first use.  Its threads are daemons, so that
+     * connections left open do not keep the JVM running.
+     */
+    public static synchronized EventLoopGroup sharedEventLoopGroup() {
+        if (sharedEventLoopGroup == null) {
+            sharedEventLoopGroup = Transport.preferred().newEventLoopGroup(0, new DefaultThreadFactory("hydra-client", true));
+        }
+        return sharedEventLoopGroup;
+    }
+
+    /**
+     * @param endpoint the server's host and port; for a server on the same host, the path of its
+     * {@link DomainSocketAddress domain socket}, which needs the epoll transport; or for a server in the same VM,
+     * its {@link LocalAddress}
+     */
     @Override
-    public CompletableFuture<Void> connect(final InetSocketAddress endpoint) {
+    public CompletableFuture<Void> connect(final SocketAddress endpoint) {
         Assert.argumentNotNull(endpoint, "endpoint");
         final CompletableFuture<Void> connectFuture = new CompletableFuture<>();
 
@@ -89,11 +121,14 @@ public abstract class AbstractConnection implements Connection {
 
         this.endpoint = endpoint;
 
-        final ChannelFuture bootstrapConnect = bootstrap().connect(endpoint);
-        channel = bootstrapConnect.channel();
-        channel.attr(ChannelAttributes.COMMAND_FUTURES).set(new ConcurrentHashMap<>());
-        bootstrapConnect.addListener(f -> {
-            if (f.isSuccess()) {
+        openChannel(endpoint).whenComplete((openedChannel, cause) -> {
+            if (cause == null && closeFuture().isDone()) {
+                openedChannel.close();
+                cause = new HydraRuntimeException("Closed");
+            }
+            if (cause == null) {
+                channel = openedChannel;
+                channel.attr(ChannelAttributes.COMMAND_FUTURES).set(new PendingReplies(channel.eventLoop()));
                 handshake().whenComplete((aVoid, throwable) -> {
                     List<ConnectionStateListener> handshakeListeners = new ArrayList<>();
                     try {
@@ -107,14 +142,14 @@ public abstract class AbstractConnection implements Connection {
                                 handshakeListeners.addAll(toNotify());
                             });
                         } else { // We successfully connected, and handshake was also successful.
-                            channel().closeFuture().addListener(closeFuture -> { // Register disconnect future.  Disconnect can happen for any reason.
+                            Channel connected = channel();
+                            connected.closeFuture().addListener(closeFuture -> { // Register disconnect future.  Disconnect can happen for any reason.
                                 List<ConnectionStateListener> closeListeners = new ArrayList<>();
+                                reconnectBuffer.pause();
                                 try {
                                     connectionLock.lock();
-                                    // Clean up pending futures.
-                                    for (CompletableFuture<Command> pendingResponse : channel().attr(ChannelAttributes.COMMAND_FUTURES).get().values()) {
-                                        pendingResponse.completeExceptionally(new HydraDisconnectException(endpoint));
-                                    }
+                                    // Clean up pending futures.  Close listeners run on the channel's event loop.
+                                    connected.attr(ChannelAttributes.COMMAND_FUTURES).get().failAll(new HydraDisconnectException(endpoint));
                                     closeListeners.addAll(toNotify());
                                 } finally {
                                     connectionLock.unlock();
@@ -130,6 +165,9 @@ public abstract class AbstractConnection implements Connection {
                     } finally {
                         connectionLock.unlock();
                     }
+                    if (throwable == null) {
+                        reconnectBuffer.open();
+                    }
                     handshakeListeners.forEach(disconnectionListener -> disconnectionListener.onStateChanged(this, ConnectionState.DISCONNECTED));
                 });
             } else {
@@ -137,7 +175,7 @@ public abstract class AbstractConnection implements Connection {
                 try {
                     connectionLock.lock();
                     connecting.set(false);
-                    connectFuture.completeExceptionally(new HydraConnectionException(endpoint, f.cause()));
+                    connectFuture.completeExceptionally(new HydraConnectionException(endpoint, cause));
                     connectFailureListeners.addAll(toNotify());
                 } finally {
                     connectionLock.unlock();
@@ -163,6 +201,10 @@ public abstract class AbstractConnection implements Connection {
     @Override
     public CompletableFuture<Void> disconnect() {
         CompletableFuture<Void> future = new CompletableFuture<>();
+        if (channel() == null) {
+            future.complete(null);
+            return future;
+        }
         channel().close().addListener(new ChannelFutureListener() {
             @Override
             public void operationComplete(final ChannelFuture closeFuture) throws Exception {
@@ -229,23 +271,93 @@ public abstract class AbstractConnection implements Connection {
     public void close() throws IOException {
         try {
             closeFuture().complete(null);
-            channel().close().await();
+            reconnectBuffer.failAll(new HydraRuntimeException("Closed"));
+            // A channel still being opened is closed as soon as it is
+            if (channel() != null) {
+                channel().close().await();
+            }
         } catch (InterruptedException e) {
             throw new HydraRuntimeException(e);
         }
     }
 
-    public InetSocketAddress getEndpoint() {
+    public SocketAddress getEndpoint() {
         if (endpoint == null) {
             throw new HydraRuntimeException("Not connected");
         }
         return endpoint;
     }
 
+    /**
+     * Opens the channel the connection runs over, with the pipeline of {@link #channelInitializer()}: a stream of the
+     * multiplexed connection, if there is one, and otherwise a socket of its own.
+     *
+     * @return a future completing with the channel once it is active
+     */
+    protected CompletableFuture<Channel> openChannel(SocketAddress endpoint) {
+        // In-VM channels are as cheap as streams, and carry commands rather than the bytes a multiplexer frames
+        if (multiplexedConnection != null && !(endpoint instanceof LocalAddress)) {
+            return multiplexedConnection.open(endpoint, channelInitializer());
+        }
+        CompletableFuture<Channel> future = new CompletableFuture<>();
+        Bootstrap bootstrap = bootstrap();
+        if (!(endpoint instanceof InetSocketAddress)) {
+            // A bootstrap makes one class of channel, and socket paths and in-VM addresses need others than ports do
+            Transport transport = Transport.preferred();
+            if (endpoint instanceof DomainSocketAddress && !transport.supportsDomainSockets()) {
+                future.completeExceptionally(new HydraRuntimeException(transport + " transport does not support domain sockets"));
+                return future;
+            }
+            bootstrap = new Bootstrap().group(sharedEventLoopGroup()).channel(transport.channelClass(endpoint))
+                                       .handler(channelInitializer());
+        }
+        bootstrap.connect(endpoint).addListener((ChannelFuture f) -> {
+            if (f.isSuccess()) {
+                future.complete(f.channel());
+            } else {
+                future.completeExceptionally(f.cause());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Sends the request now if connected, and otherwise buffers it, to be sent in order once reconnected, rather than
+     * parking the caller.  Requests beyond the buffer are handled as its {@link OverflowPolicy} says.
+     *
+     * @param request sends the request on {@link #channel()}, returning its reply
+     */
+    protected <T> CompletableFuture<T> whenConnected(Supplier<CompletableFuture<T>> request) {
+        if (closeFuture().isDone()) {
+            CompletableFuture<T> closed = new CompletableFuture<>();
+            closed.completeExceptionally(new HydraRuntimeException("Closed"));
+            return closed;
+        }
+        if (!isConnected()) {
+            // The channel may have gone inactive ahead of its close listeners
+            reconnectBuffer.pause();
+        }
+        return reconnectBuffer.submit(request);
+    }
+
+    protected ReconnectBuffer reconnectBuffer() {
+        return reconnectBuffer;
+    }
+
     protected abstract CompletableFuture<Void> handshake();
 
     protected abstract void onCommand(ChannelHandlerContext ctx, Command command);
 
+    /**
+     * Offers a response no request is waiting for, such as one pushed by the server, on the event loop so that
+     * pushes are seen in the order they arrive.  Must not block.
+     *
+     * @return whether the response was taken
+     */
+    protected boolean onPush(ChannelHandlerContext ctx, Response response) {
+        return false;
+    }
+
     protected Bootstrap bootstrap() {
         return bootstrap;
     }
@@ -20,7 +20,7 @@
 package io.hydramq.network.client;
 
 import java.io.Closeable;
-import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.util.concurrent.CompletableFuture;
 
 import io.hydramq.ClosingAware;
@@ -32,7 +32,7 @@ import io.hydramq.network.ConnectionStateListener;
  */
 public interface Connection extends Closeable, ClosingAware {
 
-    CompletableFuture<Void> connect(InetSocketAddress address);
+    CompletableFuture<Void> connect(SocketAddress address);
 
     CompletableFuture<Void> disconnect();
 
@@ -0,0 +1,193 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.network.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.hydramq.core.net.netty.ChunkedFrameDecoder;
+import io.hydramq.core.net.netty.ChunkedFrameEncoder;
+import io.hydramq.core.net.netty.FlushConsolidationHandler;
+import io.hydramq.core.net.netty.Multiplexer;
+import io.hydramq.core.net.netty.Transport;
+import io.hydramq.exceptions.HydraRuntimeException;
+import io.hydramq.internal.util.Assert;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lets connections to the same server share a socket, each running over a stream of its own, so that the sockets,
+ * and the handshakes opening them, do not multiply with the number of topics.  The socket is opened with the first
+ * stream, and again with the first stream after it is lost.  Servers that do not multiplex get a socket per
+ * connection, as usual, once they have rejected the handshake.  Handshakes failing otherwise, as a server restarts
+ * say, only fail the streams waiting on them, and the next stream tries to multiplex again.
+ *
+ * @author jfulton
+ */
+public class MultiplexedConnection implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MultiplexedConnection.class);
+    public static final int MAX_FRAME_LENGTH = 1024 * 1024;
+    // Longer frames are sent as chunks of at most MAX_FRAME_LENGTH, and reassembled up to this length
+    public static final int MAX_CHUNKED_FRAME_LENGTH = 64 * 1024 * 1024;
+    private final Transport transport;
+    private final EventLoopGroup eventLoopGroup;
+    private final Map<SocketAddress, CompletableFuture<Multiplexer>> multiplexers = new HashMap<>();
+    private final Set<SocketAddress> unsupported = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+
+    public MultiplexedConnection() {
+        this(Transport.preferred(), AbstractConnection.sharedEventLoopGroup());
+    }
+
+    public MultiplexedConnection(Transport transport, EventLoopGroup eventLoopGroup) {
+        Assert.argumentNotNull(transport, "transport");
+        Assert.argumentNotNull(eventLoopGroup, "eventLoopGroup");
+        this.transport = transport;
+        this.eventLoopGroup = eventLoopGroup;
+    }
+
+    /**
+     * Opens a channel to the endpoint, with the given handler added to its pipeline.
+     *
+     * @return a future completing with the channel once it is active
+     */
+    public CompletableFuture<Channel> open(SocketAddress endpoint, ChannelHandler initializer) {
+        Assert.argumentNotNull(endpoint, "endpoint");
+        Assert.argumentNotNull(initializer, "initializer");
+        if (endpoint instanceof DomainSocketAddress && !transport.supportsDomainSockets()) {
+            CompletableFuture<Channel> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new HydraRuntimeException(transport + " transport does not support domain sockets"));
+            return failed;
+        }
+        if (unsupported.contains(endpoint)) {
+            return connect(endpoint, initializer);
+        }
+        return multiplexer(endpoint).handle((multiplexer, throwable) -> {
+            if (throwable == null) {
+                return multiplexer.openStream(initializer).<Channel>thenApply(stream -> stream);
+            } else if (unsupported.contains(endpoint)) {
+                return connect(endpoint, initializer);
+            } else {
+                CompletableFuture<Channel> failed = new CompletableFuture<>();
+                failed.completeExceptionally(throwable);
+                return failed;
+            }
+        }).thenCompose(channelFuture -> channelFuture);
+    }
+
+    /**
+     * @return the number of sockets open
+     */
+    public synchronized int sockets() {
+        int sockets = 0;
+        for (CompletableFuture<Multiplexer> future : multiplexers.values()) {
+            if (future.isDone() && !future.isCompletedExceptionally() && future.join().isActive()) {
+                sockets++;
+            }
+        }
+        return sockets;
+    }
+
+    private synchronized CompletableFuture<Multiplexer> multiplexer(SocketAddress endpoint) {
+        if (closed) {
+            CompletableFuture<Multiplexer> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new HydraRuntimeException("Closed"));
+            return failed;
+        }
+        CompletableFuture<Multiplexer> existing = multiplexers.get(endpoint);
+        if (existing != null && (!existing.isDone() || (!existing.isCompletedExceptionally() && existing.join().isActive()))) {
+            return existing;
+        }
+        CompletableFuture<Multiplexer> future = new CompletableFuture<>();
+        multiplexers.put(endpoint, future);
+        Multiplexer multiplexer = Multiplexer.initiating(MAX_FRAME_LENGTH);
+        new Bootstrap().group(eventLoopGroup).channel(transport.channelClass(endpoint)).handler(new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(final Channel ch) throws Exception {
+                ch.pipeline().addLast("flushConsolidation", new FlushConsolidationHandler());
+                ch.pipeline().addLast("frameDecoder", new ChunkedFrameDecoder(MAX_FRAME_LENGTH, MAX_CHUNKED_FRAME_LENGTH));
+                ch.pipeline().addLast("frameEncoder", new ChunkedFrameEncoder(MAX_FRAME_LENGTH));
+                ch.pipeline().addLast(Multiplexer.NAME, multiplexer);
+            }
+        }).connect(endpoint).addListener((ChannelFuture connectFuture) -> {
+            if (!connectFuture.isSuccess()) {
+                future.completeExceptionally(connectFuture.cause());
+                return;
+            }
+            multiplexer.handshakeFuture().whenComplete((aVoid, throwable) -> {
+                if (throwable == null) {
+                    future.complete(multiplexer);
+                } else {
+                    if (multiplexer.isRejected()) {
+                        logger.info("{} does not multiplex, connecting a socket per connection", endpoint);
+                        unsupported.add(endpoint);
+                    }
+                    future.completeExceptionally(throwable);
+                }
+            });
+        });
+        return future;
+    }
+
+    private CompletableFuture<Channel> connect(SocketAddress endpoint, ChannelHandler initializer) {
+        CompletableFuture<Channel> future = new CompletableFuture<>();
+        new Bootstrap().group(eventLoopGroup).channel(transport.channelClass(endpoint)).handler(initializer).connect(endpoint)
+                       .addListener((ChannelFuture connectFuture) -> {
+                           if (connectFuture.isSuccess()) {
+                               future.complete(connectFuture.channel());
+                           } else {
+                               future.completeExceptionally(connectFuture.cause());
+                           }
+                       });
+        return future;
+    }
+
+    /**
+     * Closes the shared sockets, and with them every stream.
+     */
+    @Override
+    public void close() throws IOException {
+        List<CompletableFuture<Multiplexer>> closing;
+        synchronized (this) {
+            closed = true;
+            closing = new ArrayList<>(multiplexers.values());
+            multiplexers.clear();
+        }
+        for (CompletableFuture<Multiplexer> future : closing) {
+            future.thenAccept(Multiplexer::close);
+        }
+    }
+}
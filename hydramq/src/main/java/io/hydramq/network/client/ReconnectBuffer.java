@@ -0,0 +1,193 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.network.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import io.hydramq.exceptions.HydraRuntimeException;
+import io.hydramq.internal.util.Assert;
+
+/**
+ * Holds requests issued while a connection is down, so that callers are not parked waiting for it to come back.  The
+ * requests are replayed in the order they were issued once it does, ahead of any issued during the replay.
+ *
+ * @author jfulton
+ */
+public class ReconnectBuffer {
+
+    private final Deque<BufferedRequest<?>> buffered = new ArrayDeque<>();
+    private int maxBuffered;
+    private OverflowPolicy overflowPolicy;
+    private boolean open = false;
+    private boolean replaying = false;
+
+    public ReconnectBuffer(int maxBuffered, OverflowPolicy overflowPolicy) {
+        maxBuffered(maxBuffered);
+        overflowPolicy(overflowPolicy);
+    }
+
+    public synchronized ReconnectBuffer maxBuffered(int maxBuffered) {
+        Assert.argumentIsTrue(maxBuffered >= 0, "maxBuffered must not be negative");
+        this.maxBuffered = maxBuffered;
+        notifyAll();
+        return this;
+    }
+
+    public synchronized int maxBuffered() {
+        return maxBuffered;
+    }
+
+    public synchronized ReconnectBuffer overflowPolicy(OverflowPolicy overflowPolicy) {
+        Assert.argumentNotNull(overflowPolicy, "overflowPolicy");
+        this.overflowPolicy = overflowPolicy;
+        notifyAll();
+        return this;
+    }
+
+    public synchronized OverflowPolicy overflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public synchronized int buffered() {
+        return buffered.size();
+    }
+
+    /**
+     * Sends the request now if the connection is up, and otherwise once it is.
+     *
+     * @param request sends the request, returning its reply
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> request) {
+        synchronized (this) {
+            if (!open || replaying) {
+                while (buffered.size() >= maxBuffered && overflowPolicy == OverflowPolicy.BLOCK && (!open || replaying)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return failed(new HydraRuntimeException("Interrupted waiting for the connection", e));
+                    }
+                }
+                if (!open || replaying) {
+                    if (buffered.size() >= maxBuffered) {
+                        if (overflowPolicy != OverflowPolicy.DROP_OLDEST || buffered.isEmpty()) {
+                            return failed(new HydraRuntimeException("Disconnected, with " + buffered.size()
+                                    + " requests already buffered"));
+                        }
+                        buffered.poll().future.completeExceptionally(
+                                new HydraRuntimeException("Dropped from the reconnect buffer by a newer request"));
+                    }
+                    BufferedRequest<T> bufferedRequest = new BufferedRequest<>(request);
+                    buffered.add(bufferedRequest);
+                    return bufferedRequest.future;
+                }
+            }
+        }
+        return send(request);
+    }
+
+    /**
+     * Replays the buffered requests, then sends requests straight away.  Called once the connection is up.
+     */
+    public void open() {
+        synchronized (this) {
+            if (open) {
+                return;
+            }
+            open = true;
+            replaying = true;
+            notifyAll();
+        }
+        while (true) {
+            BufferedRequest<?> next;
+            synchronized (this) {
+                // Disconnected again mid-replay, leaving the rest for the next connection
+                if (buffered.isEmpty() || !open) {
+                    replaying = false;
+                    notifyAll();
+                    return;
+                }
+                next = buffered.poll();
+                notifyAll();
+            }
+            next.replay();
+        }
+    }
+
+    /**
+     * Buffers requests from here on.  Called once the connection is lost.
+     */
+    public synchronized void pause() {
+        open = false;
+    }
+
+    /**
+     * Fails every buffered request, as when the connection is closed for good.
+     */
+    public void failAll(Throwable cause) {
+        List<BufferedRequest<?>> failing;
+        synchronized (this) {
+            failing = new ArrayList<>(buffered);
+            buffered.clear();
+            notifyAll();
+        }
+        failing.forEach(bufferedRequest -> bufferedRequest.future.completeExceptionally(cause));
+    }
+
+    private static <T> CompletableFuture<T> send(Supplier<CompletableFuture<T>> request) {
+        try {
+            return request.get();
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable cause) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    private static class BufferedRequest<T> {
+
+        private final Supplier<CompletableFuture<T>> request;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private BufferedRequest(Supplier<CompletableFuture<T>> request) {
+            this.request = request;
+        }
+
+        private void replay() {
+            send(request).whenComplete((result, throwable) -> {
+                if (throwable == null) {
+                    future.complete(result);
+                } else {
+                    future.completeExceptionally(throwable);
+                }
+            });
+        }
+    }
+}
@@ -51,6 +51,8 @@ public class RequestResponseHandler extends SimpleChannelInboundHandler<Command>
             CompletableFuture<Command> future = ctx.channel().attr(ChannelAttributes.COMMAND_FUTURES).get().remove(command.correlationId());
             if (future != null) {
                 executorService.execute(() -> future.complete(command));
+            } else if (command instanceof Response && connection.onPush(ctx, (Response) command)) {
+                // Taken in arrival order by whatever the server is pushing to
             } else {
                 throw new HydraRuntimeException("Unexpected Response " + command + ". correlationId: " + command.correlationId());
             }
@@ -20,11 +20,14 @@
 package io.hydramq.network.server;
 
 import io.hydramq.core.net.Command;
+import io.hydramq.core.net.netty.ChannelAttributes;
+import io.hydramq.core.net.netty.CommandEncoder;
 import io.hydramq.core.type.ConversionContext;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.local.LocalChannel;
 
 /**
  * @author jfulton
@@ -39,6 +42,19 @@ public abstract class BaseProtocolHandler extends ChannelDuplexHandler implement
         return conversionContext;
     }
 
+    @Override
+    public ConversionContext newConversionContext() {
+        return initializeConversionContext();
+    }
+
+    /**
+     * @return the ConversionContext of the connection, which may carry state negotiated during its handshake.
+     */
+    public ConversionContext getConversionContext(final ChannelHandlerContext ctx) {
+        ConversionContext channelContext = ctx.channel().attr(ChannelAttributes.CONVERSION_CONTEXT).get();
+        return channelContext != null ? channelContext : conversionContext;
+    }
+
     protected abstract ConversionContext initializeConversionContext();
 
     @Override
@@ -50,7 +66,7 @@ public abstract class BaseProtocolHandler extends ChannelDuplexHandler implement
     public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
         if (msg instanceof ByteBuf) {
             ByteBuf buffer = (ByteBuf) msg;
-            Command command = getConversionContext().read((ByteBuf) msg);
+            Command command = getConversionContext(ctx).read((ByteBuf) msg);
             buffer.release();
             onCommand(ctx, command);
         } else if (msg instanceof Command) {
@@ -58,10 +74,24 @@ public abstract class BaseProtocolHandler extends ChannelDuplexHandler implement
         }
     }
 
-    public void send(final ChannelHandlerContext ctx, final Command command) {
-        ByteBuf buffer = ctx.alloc().buffer();
-        conversionContext.write(command, buffer);
-        ctx.writeAndFlush(buffer, ctx.voidPromise());
+    /**
+     * Encodes and sends a command.  Pooled commands are recycled once encoded, and must not be referenced afterwards.
+     *
+     * @return the encoded length of the command
+     */
+    public int send(final ChannelHandlerContext ctx, final Command command) {
+        if (ctx.channel() instanceof LocalChannel) {
+            // In-VM connections take the command itself, which is then the reader's, so it is neither encoded nor
+            // recycled.  Its estimated size stands in for the encoded one.
+            int length = getConversionContext(ctx).estimateSize(command);
+            ctx.writeAndFlush(command, ctx.voidPromise());
+            return length;
+        }
+        CommandEncoder encoder = ctx.channel().attr(ChannelAttributes.COMMAND_ENCODER).get();
+        if (encoder == null) {
+            encoder = new CommandEncoder(getConversionContext(ctx));
+        }
+        return encoder.send(ctx, command);
     }
 
     public abstract void onCommand(ChannelHandlerContext ctx, Command command) throws Exception;
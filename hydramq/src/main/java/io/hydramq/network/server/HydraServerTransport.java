@@ -19,23 +19,33 @@
 
 package io.hydramq.network.server;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import io.hydramq.core.net.netty.ChannelAttributes;
+import io.hydramq.core.net.netty.ChunkedFrameDecoder;
+import io.hydramq.core.net.netty.ChunkedFrameEncoder;
+import io.hydramq.core.net.netty.PendingReplies;
+import io.hydramq.core.net.netty.FlushConsolidationHandler;
+import io.hydramq.core.net.netty.Transport;
+import io.hydramq.exceptions.HydraRuntimeException;
+import io.hydramq.internal.util.Assert;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.unix.DomainSocketAddress;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
-import io.netty.util.concurrent.EventExecutorGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,11 +56,17 @@ public class HydraServerTransport {
 
     private static final Logger logger = LoggerFactory.getLogger(HydraServerTransport.class);
     public static final int MAX_FRAME_LENGTH = 1024 * 1024;
+    // Longer frames are sent as chunks of at most MAX_FRAME_LENGTH, and reassembled up to this length
+    public static final int MAX_CHUNKED_FRAME_LENGTH = 64 * 1024 * 1024;
     private ProtocolSelector protocolSelector;
-    private EventLoopGroup boss = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors());
-    private EventExecutorGroup worker = new DefaultEventExecutorGroup(5);
-    private Channel channel;
+    private Transport transport = Transport.preferred();
+    private int acceptors = 1;
+    private EventLoopGroup boss;
+    private List<Channel> channels = new ArrayList<>();
     private boolean verbose = false;
+    private Duration flushDelay = Duration.ZERO;
+    private Path socketPath;
+    private String localName;
     private final int port;
 
     public HydraServerTransport(final ProtocolSelector protocolSelector, int port) {
@@ -58,42 +74,182 @@ public class HydraServerTransport {
         this.port = port;
     }
 
+    /**
+     * Holds replies written outside of a read for up to the given delay, so that replies completing close together
+     * share a socket write.  Replies to a batch of reads always share one.  Applies to connections accepted after.
+     */
+    public HydraServerTransport flushDelay(Duration flushDelay) {
+        Assert.argumentNotNull(flushDelay, "flushDelay");
+        this.flushDelay = flushDelay;
+        return this;
+    }
+
+    /**
+     * Selects the socket transport, which defaults to epoll where available and NIO elsewhere.
+     */
+    public HydraServerTransport transport(Transport transport) {
+        Assert.argumentNotNull(transport, "transport");
+        Assert.argumentIsTrue(transport.isAvailable(), transport + " transport is not available");
+        this.transport = transport;
+        return this;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Binds the port this many times, so that connections are accepted by as many threads.  Needs a transport that
+     * can share ports, such as epoll; others bind once.
+     */
+    public HydraServerTransport acceptors(int acceptors) {
+        Assert.argumentIsTrue(acceptors > 0, "acceptors must be positive");
+        this.acceptors = acceptors;
+        return this;
+    }
+
+    /**
+     * Also accepts in-VM connections at the given {@link LocalAddress} name, for clients embedding the server.  Their
+     * commands, and the messages in them, are handed across by reference rather than encoded, so each reply is the
+     * reader's alone: messages read are decoded afresh for every read.  As when writing to the server's topics
+     * directly, a message written must not be modified until its write completes.
+     */
+    public HydraServerTransport local(String localName) {
+        Assert.argumentNotNull(localName, "localName");
+        this.localName = localName;
+        return this;
+    }
+
+    /**
+     * Also accepts connections on a Unix domain socket at the given path, so that clients on the same host can skip
+     * the loopback TCP stack.  They speak the same protocols as over the port.  Needs the epoll transport.  A socket
+     * left at the path by a server that did not shut down cleanly is replaced.
+     */
+    public HydraServerTransport domainSocket(Path socketPath) {
+        Assert.argumentNotNull(socketPath, "socketPath");
+        this.socketPath = socketPath;
+        return this;
+    }
+
     public CompletableFuture<Integer> start() {
         CompletableFuture<Integer> future = new CompletableFuture<>();
         try {
+            // Checked before anything is bound, so that a misconfigured server fails without holding its port
+            if (socketPath != null) {
+                checkDomainSocket();
+            }
+            boss = transport.newEventLoopGroup(Runtime.getRuntime().availableProcessors());
             ServerBootstrap bootstrap = new ServerBootstrap();
             bootstrap.group(boss);
-            bootstrap.channel(NioServerSocketChannel.class);
-            bootstrap.childHandler(new ChannelInitializer<Channel>() {
+            bootstrap.channel(transport.serverChannelClass());
+            int bindings = 1;
+            if (acceptors > 1) {
+                if (transport.reusePort(bootstrap)) {
+                    bindings = acceptors;
+                } else {
+                    logger.warn("{} transport cannot share ports, accepting on a single channel", transport);
+                }
+            }
+            ChannelInitializer<Channel> connectionInitializer = new ChannelInitializer<Channel>() {
                 @Override
                 protected void initChannel(final Channel ch) throws Exception {
-                    ch.attr(ChannelAttributes.COMMAND_FUTURES).set(new ConcurrentHashMap<>());
-                    ch.pipeline().addLast("frameDecoder", new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, 4, 0, 4));
-                    ch.pipeline().addLast("frameEncoder", new LengthFieldPrepender(4));
+                    ch.attr(ChannelAttributes.COMMAND_FUTURES).set(new PendingReplies(ch.eventLoop()));
+                    ch.pipeline().addLast("flushConsolidation", new FlushConsolidationHandler(flushDelay));
+                    ch.pipeline().addLast("frameDecoder", new ChunkedFrameDecoder(MAX_FRAME_LENGTH, MAX_CHUNKED_FRAME_LENGTH));
+                    ch.pipeline().addLast("frameEncoder", new ChunkedFrameEncoder(MAX_FRAME_LENGTH));
                     if (verbose) {
                         ch.pipeline().addLast(new LoggingHandler(HydraServerTransport.class, LogLevel.INFO));
                     }
                     ch.pipeline().addLast(ProtocolSelector.NAME, protocolSelector);
                 }
-            });
-            channel = bootstrap.bind(port).sync().channel();
-            future.complete(((InetSocketAddress)channel.localAddress()).getPort());
-        } catch (InterruptedException ex) {
+            };
+            // Streams of a multiplexed connection are set up as connections of their own
+            protocolSelector.multiplexing(connectionInitializer, MAX_FRAME_LENGTH);
+            bootstrap.childHandler(connectionInitializer);
+            Channel channel = bootstrap.bind(port).sync().channel();
+            channels.add(channel);
+            // An ephemeral port is only known once bound, and the other acceptors must share it
+            int boundPort = ((InetSocketAddress) channel.localAddress()).getPort();
+            for (int i = 1; i < bindings; i++) {
+                channels.add(bootstrap.bind(boundPort).sync().channel());
+            }
+            logger.info("Accepting on port {} with {} {} channel(s)", boundPort, bindings, transport);
+            if (socketPath != null) {
+                bindDomainSocket(connectionInitializer);
+            }
+            if (localName != null) {
+                bindLocal();
+            }
+            future.complete(boundPort);
+        } catch (InterruptedException | IOException | RuntimeException ex) {
+            // Whatever did bind is released before the failure is reported, so that a later start can bind it again.
+            // Closed sockets are only let go once their event loop next runs, so the loops are awaited as well.
+            for (Channel channel : channels) {
+                channel.close().awaitUninterruptibly();
+            }
+            channels.clear();
+            if (boss != null) {
+                boss.shutdownGracefully(0, 0, TimeUnit.SECONDS).awaitUninterruptibly();
+            }
             future.completeExceptionally(ex);
         }
         return future;
     }
 
+    private void checkDomainSocket() {
+        if (!transport.supportsDomainSockets()) {
+            throw new HydraRuntimeException(transport + " transport does not support domain sockets");
+        }
+        if (Files.isDirectory(socketPath) || Files.isRegularFile(socketPath)) {
+            throw new HydraRuntimeException("Not replacing " + socketPath + " with a domain socket");
+        }
+    }
+
+    private void bindDomainSocket(ChannelHandler connectionInitializer) throws InterruptedException, IOException {
+        Files.deleteIfExists(socketPath);
+        DomainSocketAddress address = new DomainSocketAddress(socketPath.toFile());
+        channels.add(new ServerBootstrap().group(boss)
+                                          .channel(transport.serverChannelClass(address))
+                                          .childHandler(connectionInitializer)
+                                          .bind(address).sync().channel());
+        logger.info("Accepting on domain socket {}", socketPath);
+    }
+
+    private void bindLocal() throws InterruptedException {
+        // In-VM connections carry commands themselves, so there are no frames to select a protocol from or write
+        ChannelInitializer<Channel> localInitializer = new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(final Channel ch) throws Exception {
+                ch.attr(ChannelAttributes.COMMAND_FUTURES).set(new PendingReplies(ch.eventLoop()));
+                ch.pipeline().addLast("flushConsolidation", new FlushConsolidationHandler(flushDelay));
+                ch.pipeline().addLast(ProtocolSelector.NAME, protocolSelector);
+            }
+        };
+        LocalAddress address = new LocalAddress(localName);
+        channels.add(new ServerBootstrap().group(boss)
+                                          .channel(transport.serverChannelClass(address))
+                                          .childHandler(localInitializer)
+                                          .bind(address).sync().channel());
+        logger.info("Accepting in-VM connections at {}", address);
+    }
+
     public CompletableFuture<Void> stop() {
         CompletableFuture<Void> future = new CompletableFuture<>();
         try {
             // TODO: more robust shutdown
-            channel.close().sync();
-            worker.shutdownGracefully().sync();
-            boss.shutdownGracefully().sync();
+            for (Channel channel : channels) {
+                channel.close().sync();
+            }
+            channels.clear();
+            if (socketPath != null) {
+                Files.deleteIfExists(socketPath);
+            }
+            if (boss != null) {
+                boss.shutdownGracefully().sync();
+            }
             logger.info("Shut down");
             future.complete(null);
-        } catch (InterruptedException e) {
+        } catch (InterruptedException | IOException e) {
             logger.error("Error shutting down", e);
             future.completeExceptionally(e);
         }
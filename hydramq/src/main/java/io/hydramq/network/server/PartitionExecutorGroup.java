@@ -0,0 +1,92 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.network.server;
+
+import java.util.concurrent.TimeUnit;
+
+import io.hydramq.PartitionId;
+import io.hydramq.internal.util.Assert;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+
+/**
+ * Single threaded executors that partition operations run on, away from the event loops, so that a slow flush or a
+ * read of a cold segment only holds up the partitions sharing its executor.  Each partition is pinned to one
+ * executor, so its operations run in the order they arrive.
+ *
+ * @author jfulton
+ */
+public class PartitionExecutorGroup implements AutoCloseable {
+
+    private static final PartitionExecutorGroup INLINE = new PartitionExecutorGroup(ImmediateEventExecutor.INSTANCE);
+    private final EventExecutorGroup group;
+    private final EventExecutor[] executors;
+
+    public PartitionExecutorGroup() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public PartitionExecutorGroup(int threads) {
+        Assert.argumentIsTrue(threads > 0, "threads must be positive");
+        group = new DefaultEventExecutorGroup(threads, new DefaultThreadFactory("hydra-partition"));
+        executors = new EventExecutor[threads];
+        int i = 0;
+        for (EventExecutor executor : group) {
+            executors[i++] = executor;
+        }
+    }
+
+    private PartitionExecutorGroup(EventExecutor executor) {
+        group = executor;
+        executors = new EventExecutor[] {executor};
+    }
+
+    /**
+     * @return a group running operations on the calling thread
+     */
+    public static PartitionExecutorGroup inline() {
+        return INLINE;
+    }
+
+    public EventExecutor executor(PartitionId partitionId) {
+        int hash = partitionId.hashCode();
+        // Spread the high bits, as UUID hashes of time based ids vary mostly there
+        hash ^= hash >>> 16;
+        return executors[(hash & Integer.MAX_VALUE) % executors.length];
+    }
+
+    public int size() {
+        return executors.length;
+    }
+
+    /**
+     * Runs the operations already submitted, then stops the executors.
+     */
+    @Override
+    public void close() {
+        if (this == INLINE) {
+            return;
+        }
+        group.shutdownGracefully(0, 5, TimeUnit.SECONDS).awaitUninterruptibly();
+    }
+}
@@ -19,6 +19,7 @@
 
 package io.hydramq.network.server;
 
+import io.hydramq.core.net.Command;
 import io.hydramq.core.type.ConversionContext;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler;
@@ -30,5 +31,19 @@ public interface ProtocolHandler extends ChannelHandler {
 
     ConversionContext getConversionContext();
 
+    /**
+     * @return a ConversionContext for a single connection, for protocols that negotiate per-connection encoding state.
+     */
+    default ConversionContext newConversionContext() {
+        return getConversionContext();
+    }
+
     boolean accept(ByteBuf buffer);
+
+    /**
+     * @return whether the protocol takes the first command of an in-VM connection, which carries commands themselves
+     */
+    default boolean accept(Command command) {
+        return getConversionContext().writable(command);
+    }
 }
@@ -22,12 +22,19 @@ package io.hydramq.network.server;
 import java.util.ArrayList;
 import java.util.List;
 
+import io.hydramq.core.net.Command;
 import io.hydramq.core.net.Error;
+import io.hydramq.core.net.netty.ChannelAttributes;
+import io.hydramq.core.net.netty.ChunkedFrameEncoder;
 import io.hydramq.core.net.netty.CommandDecoder;
 import io.hydramq.core.net.netty.CommandEncoder;
 import io.hydramq.core.net.netty.CompletableFutureHandler;
+import io.hydramq.core.net.netty.Multiplexer;
+import io.hydramq.core.type.ConversionContext;
+import io.hydramq.internal.util.Assert;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
@@ -44,28 +51,90 @@ public class ProtocolSelector extends ChannelInboundHandlerAdapter {
     private static final Logger logger = LoggerFactory.getLogger(ProtocolSelector.class);
     private List<ProtocolHandler> protocols = new ArrayList<>();
     private CompletableFutureHandler completableFutureHandler = new CompletableFutureHandler();
+    private ChannelHandler streamInitializer;
+    private int maxFrameLength;
 
     public void addProtocol(ProtocolHandler protocolHandler) {
         protocols.add(protocolHandler);
     }
 
+    /**
+     * Accepts connections carrying several streams, each selecting a protocol of its own.
+     *
+     * @param streamInitializer the sharable handler each stream's pipeline starts out with, as a connection's would
+     * @param maxFrameLength the longest frame to write to the connection
+     */
+    public void multiplexing(ChannelHandler streamInitializer, int maxFrameLength) {
+        Assert.argumentNotNull(streamInitializer, "streamInitializer");
+        this.streamInitializer = streamInitializer;
+        this.maxFrameLength = maxFrameLength;
+    }
+
     @Override
     public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
+        if (msg instanceof Command) {
+            selectByCommand(ctx, (Command) msg);
+            return;
+        }
         ByteBuf buffer = (ByteBuf)msg;
+        if (streamInitializer != null && Multiplexer.isHandshake(buffer)) {
+            logger.info("Multiplexing streams");
+            ctx.pipeline().addAfter(ctx.name(), Multiplexer.NAME, Multiplexer.accepting(streamInitializer, maxFrameLength));
+            ctx.pipeline().remove(this);
+            ctx.fireChannelRead(msg);
+            return;
+        }
         for (ProtocolHandler protocolHandler : protocols) {
             if (protocolHandler.accept(buffer)) {
                 logger.info("Loading {} protocol handler", protocolHandler);
-                ctx.pipeline().addLast("commandEncoder", new CommandEncoder(protocolHandler.getConversionContext()));
-                ctx.pipeline().addLast("commandDecoder", new CommandDecoder(protocolHandler.getConversionContext()));
-                ctx.pipeline().addLast("protocol", protocolHandler);
-                ctx.pipeline().addLast("responseHandler", completableFutureHandler);
-                ctx.pipeline().remove(this);
-                ctx.pipeline().fireChannelActive();
-                ctx.fireChannelRead(msg);
+                ConversionContext conversionContext = protocolHandler.newConversionContext();
+                ctx.channel().attr(ChannelAttributes.CONVERSION_CONTEXT).set(conversionContext);
+                ChunkedFrameEncoder frameEncoder = ctx.pipeline().get(ChunkedFrameEncoder.class);
+                CommandEncoder commandEncoder;
+                if (frameEncoder != null) {
+                    // Commands are framed as they are encoded, sparing a buffer per frame for the length
+                    commandEncoder = new CommandEncoder(conversionContext, frameEncoder.maxChunkLength());
+                    ctx.pipeline().replace(frameEncoder, "commandEncoder", commandEncoder);
+                } else {
+                    commandEncoder = new CommandEncoder(conversionContext);
+                    ctx.pipeline().addLast("commandEncoder", commandEncoder);
+                }
+                ctx.channel().attr(ChannelAttributes.COMMAND_ENCODER).set(commandEncoder);
+                ctx.pipeline().addLast("commandDecoder", new CommandDecoder(conversionContext));
+                addProtocol(ctx, protocolHandler, msg);
                 return;
             }
         }
         logger.error("No acceptable protocols found to handle client with protocol id of " + buffer.getInt(0));
-        ctx.writeAndFlush(new Error(buffer.getInt(1), 5)).addListener(ChannelFutureListener.CLOSE);
+        // No protocol is selected to encode the Error, so it is encoded here, and only framed on its way out
+        ByteBuf error = ctx.alloc().buffer();
+        ConversionContext.base().write(new Error(buffer.getInt(1), 5), error);
+        buffer.release();
+        ctx.writeAndFlush(error).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    /**
+     * Picks the protocol of an in-VM connection, whose commands are handed across as they are, so that there is
+     * nothing to encode or decode.
+     */
+    private void selectByCommand(final ChannelHandlerContext ctx, final Command command) {
+        for (ProtocolHandler protocolHandler : protocols) {
+            if (protocolHandler.accept(command)) {
+                logger.info("Loading {} protocol handler for in-VM connection", protocolHandler);
+                ctx.channel().attr(ChannelAttributes.CONVERSION_CONTEXT).set(protocolHandler.newConversionContext());
+                addProtocol(ctx, protocolHandler, command);
+                return;
+            }
+        }
+        logger.error("No acceptable protocols found to handle client command {}", command);
+        ctx.close();
+    }
+
+    private void addProtocol(final ChannelHandlerContext ctx, final ProtocolHandler protocolHandler, final Object msg) {
+        ctx.pipeline().addLast("protocol", protocolHandler);
+        ctx.pipeline().addLast("responseHandler", completableFutureHandler);
+        ctx.pipeline().remove(this);
+        ctx.pipeline().fireChannelActive();
+        ctx.fireChannelRead(msg);
     }
 }
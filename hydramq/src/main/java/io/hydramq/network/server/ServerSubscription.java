@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.network.server;
+
+import io.hydramq.MessageSet;
+import io.hydramq.PartitionId;
+import io.hydramq.Topic;
+import io.hydramq.core.net.Error;
+import io.hydramq.core.net.protocols.topic.ReadResponse;
+import io.hydramq.core.net.protocols.topic.SubscribeRequest;
+import io.hydramq.exceptions.HydraRuntimeException;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.EventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pushes the messages of a partition down a connection as ReadResponses, for as long as the client's credits last.
+ * Reads run one at a time on the partition's executor.  A read finding nothing new waits for messages to arrive, and is
+ * simply made again if none do, so an idle subscription costs no traffic.  Credits are spent in messages, and in the
+ * encoded bytes of the responses; a response may overdraw the byte credits, which are otherwise a hard limit.  No read
+ * is started while the connection is not writable, so responses do not pile up in its outbound buffer.
+ *
+ * @author jfulton
+ */
+class ServerSubscription {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServerSubscription.class);
+    private final BaseProtocolHandler protocol;
+    private final ChannelHandlerContext ctx;
+    private final Topic topic;
+    private final EventExecutor executor;
+    private final int subscriptionId;
+    private final PartitionId partitionId;
+    private final int maxMessages;
+    private long messageOffset;
+    private long messageCredits;
+    private long byteCredits;
+    private boolean reading = false;
+    private boolean cancelled = false;
+
+    ServerSubscription(BaseProtocolHandler protocol, ChannelHandlerContext ctx, Topic topic, EventExecutor executor,
+                       SubscribeRequest request) {
+        this.protocol = protocol;
+        this.ctx = ctx;
+        this.topic = topic;
+        this.executor = executor;
+        this.subscriptionId = request.getSubscriptionId();
+        this.partitionId = request.getPartitionId();
+        this.maxMessages = request.getMaxMessages();
+        this.messageOffset = request.getMessageOffset();
+        this.messageCredits = request.getMessageCredits();
+        this.byteCredits = request.getByteCredits();
+    }
+
+    EventExecutor executor() {
+        return executor;
+    }
+
+    void start() {
+        pump();
+    }
+
+    void grant(int messages, long bytes) {
+        synchronized (this) {
+            messageCredits += messages;
+            byteCredits = byteCredits > Long.MAX_VALUE - bytes ? Long.MAX_VALUE : byteCredits + bytes;
+        }
+        pump();
+    }
+
+    /**
+     * Called as the connection becomes writable again.
+     */
+    void resume() {
+        pump();
+    }
+
+    /**
+     * Nothing further is pushed once this returns.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+    }
+
+    private void pump() {
+        synchronized (this) {
+            if (reading || cancelled || messageCredits <= 0 || byteCredits <= 0 || !ctx.channel().isWritable()) {
+                return;
+            }
+            reading = true;
+        }
+        executor.execute(this::read);
+    }
+
+    private void read() {
+        int max;
+        long offset;
+        synchronized (this) {
+            max = (int) Math.min(maxMessages, messageCredits);
+            offset = messageOffset;
+        }
+        try {
+            topic.read(partitionId, offset, max).whenComplete(this::onRead);
+        } catch (HydraRuntimeException e) {
+            onRead(null, e);
+        }
+    }
+
+    private void onRead(MessageSet messageSet, Throwable throwable) {
+        synchronized (this) {
+            reading = false;
+            if (cancelled) {
+                return;
+            }
+            if (throwable != null) {
+                logger.warn("Error reading messages for subscription " + subscriptionId, throwable);
+                cancelled = true;
+                protocol.send(ctx, new Error(subscriptionId, 0)); // TODO: better error translation
+                return;
+            }
+            messageOffset = messageSet.nextOffset();
+            if (messageSet.size() > 0) {
+                messageCredits -= messageSet.size();
+                int bytes = protocol.send(ctx, ReadResponse.newInstance(subscriptionId, messageSet));
+                if (byteCredits != Long.MAX_VALUE) {
+                    byteCredits -= bytes;
+                }
+            }
+        }
+        pump();
+    }
+}
@@ -19,12 +19,22 @@
 
 package io.hydramq.network.server;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import com.codahale.metrics.Meter;
+import io.hydramq.Message;
 import io.hydramq.PartitionId;
 import io.hydramq.Topic;
 import io.hydramq.TopicManager;
@@ -36,28 +46,41 @@ import io.hydramq.core.net.commands.PartitionInfoRequest;
 import io.hydramq.core.net.commands.WriteCursorRequest;
 import io.hydramq.core.net.netty.ChannelAttributes;
 import io.hydramq.core.net.netty.ChannelUtils;
+import io.hydramq.core.net.netty.StreamChannel;
+import io.hydramq.core.net.protocols.topic.BatchWriteRequest;
 import io.hydramq.core.net.protocols.topic.LockListenerRequest;
 import io.hydramq.core.net.protocols.topic.NetworkLockListener;
 import io.hydramq.core.net.protocols.topic.PartitionIdReadRequest;
 import io.hydramq.core.net.protocols.topic.PartitionIdWriteRequest;
+import io.hydramq.core.net.protocols.topic.PartitionIdWriteRequestConverter;
 import io.hydramq.core.net.protocols.topic.PartitionsDiscoveredNotification;
 import io.hydramq.core.net.protocols.topic.ReadResponse;
+import io.hydramq.core.net.protocols.topic.SubscribeRequest;
+import io.hydramq.core.net.protocols.topic.SubscriptionCredit;
 import io.hydramq.core.net.protocols.topic.TopicHandshake;
+import io.hydramq.core.net.protocols.topic.UnsubscribeRequest;
+import io.hydramq.core.type.Compression;
 import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.PropertyKeyDictionary;
+import io.hydramq.core.type.converters.LazyMessage;
+import io.hydramq.core.type.converters.MessageConverter;
 import io.hydramq.exceptions.HydraRuntimeException;
 import io.hydramq.internal.apis.TopicInternal;
+import io.hydramq.internal.util.Assert;
+import io.hydramq.internal.util.Recyclable;
 import io.hydramq.listeners.PartitionFlags;
 import io.hydramq.monitoring.Metrics;
 import io.hydramq.subscriptions.LockListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static io.hydramq.core.net.netty.ChannelAttributes.LOCK_LISTENERS;
 import static io.hydramq.listeners.Listen.CONTINUOUSLY;
 import static io.hydramq.listeners.Listen.REMOVE;
-import static java.lang.Math.max;
+import static java.lang.Math.min;
 
 /**
  * @author jfulton
@@ -65,15 +88,45 @@ import static java.lang.Math.max;
 public class TopicProtocol extends BaseProtocolHandler {
 
     private final AttributeKey<Topic> TOPIC_KEY = AttributeKey.valueOf("topicProtocol");
+    private final AttributeKey<Map<Integer, ServerSubscription>> SUBSCRIPTIONS_KEY =
+            AttributeKey.valueOf("topicProtocolSubscriptions");
     private Meter messageTotal = Metrics.regisry.meter("messageTotal");
     private Meter messageWrites = Metrics.regisry.meter("messageWrites");
     private Meter messageReads = Metrics.regisry.meter("messageReads");
     private static final Logger logger = LoggerFactory.getLogger(TopicProtocol.class);
-    private static final int maxVersion = 1;
+    private static final int maxVersion = 8;
+    private static final int MAX_PROPERTY_KEYS = 1024;
+    public static final int DEFAULT_WRITE_WINDOW = 1024;
+    private final AttributeKey<AtomicInteger> IN_FLIGHT_WRITES_KEY = AttributeKey.valueOf("topicProtocolInFlightWrites");
     private TopicManager topicManager;
+    private final PartitionExecutorGroup partitionExecutors;
+    private volatile int writeWindow = DEFAULT_WRITE_WINDOW;
 
     public TopicProtocol(final TopicManager topicManager) {
+        this(topicManager, PartitionExecutorGroup.inline());
+    }
+
+    /**
+     * Partition operations run on the executor their partition is pinned to, rather than the connection's event loop.
+     */
+    public TopicProtocol(final TopicManager topicManager, final PartitionExecutorGroup partitionExecutors) {
+        Assert.argumentNotNull(partitionExecutors, "partitionExecutors");
         this.topicManager = topicManager;
+        this.partitionExecutors = partitionExecutors;
+    }
+
+    /**
+     * Sets the number of writes each connection may have unacknowledged, advertised to clients from version 8 on.  A
+     * connection exceeding it, such as one from an older client, is not read from again until half have completed.
+     */
+    public TopicProtocol writeWindow(int writeWindow) {
+        Assert.argumentIsTrue(writeWindow > 0, "writeWindow must be greater than 0");
+        this.writeWindow = writeWindow;
+        return this;
+    }
+
+    public int getWriteWindow() {
+        return writeWindow;
     }
 
     public void onCommand(ChannelHandlerContext ctx, Command command) {
@@ -84,7 +137,18 @@ public class TopicProtocol extends BaseProtocolHandler {
             Map<PartitionId, PartitionFlags> knownStates = new HashMap<>();
             topic.discoverPartitions(knownStates::put);
 
-            TopicHandshake reply = handshake.reply(max(handshake.getVersion(), maxVersion), knownStates);
+            int version = min(handshake.getVersion(), maxVersion);
+            List<String> propertyKeys = Collections.emptyList();
+            if (version >= 2) {
+                propertyKeys = negotiatePropertyKeys(handshake, topic);
+                getConversionContext(ctx).keyDictionary(new PropertyKeyDictionary(propertyKeys));
+            }
+            // Version 3 adds the compact message encoding, version 4 column-wise message sets, version 5
+            // compressed message sets, using whichever codec the client asks for, version 6 batch writes, version 7
+            // subscriptions, and version 8 the write window
+            Compression compression = version >= 5 ? handshake.getCompression() : Compression.NONE;
+            getConversionContext(ctx).compact(version >= 3).columnar(version >= 4).compression(compression);
+            TopicHandshake reply = handshake.reply(version, knownStates, propertyKeys, compression, writeWindow);
             send(ctx, reply);
 
             ctx.channel().attr(ChannelAttributes.DISCOVER_PARTITIONS_LISTENER)
@@ -96,54 +160,39 @@ public class TopicProtocol extends BaseProtocolHandler {
             }
         } else if (command instanceof PartitionIdWriteRequest) {
             PartitionIdWriteRequest writeRequest = (PartitionIdWriteRequest) command;
-            messageWrites.mark();
-            messageTotal.mark();
-            try {
-                getTopic(ctx).write(writeRequest.getPartitionId(), writeRequest.getMessage())
-                        // TODO: Convert these to just send as commands, and let the pipeline take care of it
-                        .thenAccept(aVoid -> send(ctx, Acknowledgement.replyTo(writeRequest)))
-                        .exceptionally(throwable -> {
-                            send(ctx, new Error(writeRequest.correlationId(), 0)); // TODO: better error translation
-                            return null;
-                        });
-            } catch (HydraRuntimeException e) {
-                logger.error("Error writing messages", e);
-                send(ctx, new Error(writeRequest.correlationId(), 0));  // TODO: better error translation
-            }
+            writeReceived(ctx);
+            partitionExecutors.executor(writeRequest.getPartitionId()).execute(() -> write(ctx, writeRequest));
+        } else if (command instanceof BatchWriteRequest) {
+            writeReceived(ctx);
+            write(ctx, (BatchWriteRequest) command);
         } else if (command instanceof PartitionIdReadRequest) {
             PartitionIdReadRequest readRequest = (PartitionIdReadRequest) command;
-            try {
-                getTopic(ctx).read(readRequest.getPartitionId(), readRequest.getMessageOffset(),
-                        readRequest.getMaxMessages())
-                        .thenAccept(messages -> {
-                            if (messages.size() > 0) {
-                                messageReads.mark(messages.size());
-                                messageTotal.mark(messages.size());
-                            }
-                            send(ctx, new ReadResponse(readRequest.correlationId(), messages));
-                        })
-                        .exceptionally(throwable -> {
-                            logger.warn("Error reading messages", throwable);
-                            send(ctx, new Error(readRequest.correlationId(), 0)); // TODO: better error translation
-                            return null;
-                        });
-            } catch (HydraRuntimeException e) {
-                logger.error("Error reading messages", e);
-                send(ctx, new Error(readRequest.correlationId(), 0)); // TODO: better error translation
+            partitionExecutors.executor(readRequest.getPartitionId()).execute(() -> read(ctx, readRequest));
+        } else if (command instanceof SubscribeRequest) {
+            SubscribeRequest request = (SubscribeRequest) command;
+            EventExecutor executor = partitionExecutors.executor(request.getPartitionId());
+            executor.execute(() -> subscribe(ctx, executor, request));
+        } else if (command instanceof SubscriptionCredit) {
+            SubscriptionCredit credit = (SubscriptionCredit) command;
+            ServerSubscription subscription = ctx.channel().attr(SUBSCRIPTIONS_KEY).get().get(credit.getSubscriptionId());
+            if (subscription != null) {
+                subscription.grant(credit.getMessages(), credit.getBytes());
             }
-        } else if (command instanceof PartitionInfoRequest) {
-            PartitionInfoRequest request = (PartitionInfoRequest) command;
-            try {
-                getTopic(ctx).partitionInfo(request.getPartitionId()).thenAccept(partitionInfo -> {
-                    send(ctx, request.reply(partitionInfo));
-                }).exceptionally(throwable -> {
-                    send(ctx, new Error(request.correlationId(), 0));
-                    return null;
+        } else if (command instanceof UnsubscribeRequest) {
+            UnsubscribeRequest request = (UnsubscribeRequest) command;
+            ServerSubscription subscription = ctx.channel().attr(SUBSCRIPTIONS_KEY).get().remove(request.getSubscriptionId());
+            if (subscription != null) {
+                // Acknowledged from the executor pushing the subscription's messages, so the acknowledgement follows them
+                subscription.executor().execute(() -> {
+                    subscription.cancel();
+                    send(ctx, Acknowledgement.newInstance(request.correlationId()));
                 });
-            } catch (HydraRuntimeException e) {
-                logger.error("Error reading PartitionInfo", e);
-                send(ctx, new Error(request.correlationId(), 0)); // TODO: better error translation
+            } else {
+                send(ctx, Acknowledgement.newInstance(request.correlationId()));
             }
+        } else if (command instanceof PartitionInfoRequest) {
+            PartitionInfoRequest request = (PartitionInfoRequest) command;
+            partitionExecutors.executor(request.getPartitionId()).execute(() -> partitionInfo(ctx, request));
         } else if (command instanceof LockListenerRequest) {
             LockListenerRequest request = (LockListenerRequest) command;
             try {
@@ -165,33 +214,10 @@ public class TopicProtocol extends BaseProtocolHandler {
             }
         } else if (command instanceof CursorInfoRequest) {
             CursorInfoRequest request = (CursorInfoRequest) command;
-
-            try {
-                getTopic(ctx).cursor(request.getPartitionId(), request.getCursorName()).thenAccept(cursorInfo -> {
-                    send(ctx, request.reply(cursorInfo));
-                }).exceptionally(throwable -> {
-                    send(ctx, new Error(request.correlationId(), 0));
-                    return null;
-                });
-            } catch (HydraRuntimeException e) {
-                logger.error("Error reading PartitionInfo", e);
-                send(ctx, new Error(request.correlationId(), 0)); // TODO: better error translation
-            }
-
+            partitionExecutors.executor(request.getPartitionId()).execute(() -> cursorInfo(ctx, request));
         } else if (command instanceof WriteCursorRequest) {
             WriteCursorRequest request = (WriteCursorRequest) command;
-            try {
-                getTopic(ctx).cursor(request.getPartitionId(), request.getCursorName(), request.getOffset()).thenAccept(aVoid -> {
-                    send(ctx, Acknowledgement.replyTo(request));
-                }).exceptionally(throwable -> {
-                    send(ctx, new Error(request.correlationId(), 0));
-                    return null;
-                });
-            } catch (HydraRuntimeException e) {
-                logger.error("Error writing Cursor", e);
-                send(ctx, new Error(request.correlationId(), 0)); // TODO: better error translation
-            }
-            // TODO: should all command handlers simply throw and let the sync handle it?
+            partitionExecutors.executor(request.getPartitionId()).execute(() -> writeCursor(ctx, request));
         } else {
             ctx.fireChannelRead(command);
         }
@@ -200,6 +226,8 @@ public class TopicProtocol extends BaseProtocolHandler {
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         ctx.channel().attr(LOCK_LISTENERS).set(new ConcurrentHashMap<>());
+        ctx.channel().attr(SUBSCRIPTIONS_KEY).set(new ConcurrentHashMap<>());
+        ctx.channel().attr(IN_FLIGHT_WRITES_KEY).set(new AtomicInteger());
     }
 
     @Override
@@ -207,6 +235,9 @@ public class TopicProtocol extends BaseProtocolHandler {
         // Remove installed partition listeners
         getTopic(ctx).discoverPartitions(ctx.channel().attr(ChannelAttributes.DISCOVER_PARTITIONS_LISTENER).get(), REMOVE);
 
+        // Stop pushing messages
+        ctx.channel().attr(SUBSCRIPTIONS_KEY).get().values().forEach(ServerSubscription::cancel);
+
         // Remove installed subscriptions
         Map<UUID, NetworkLockListener> lockListeners = ctx.channel().attr(LOCK_LISTENERS).get();
         lockListeners.forEach((uuid, networkLockListener) -> {
@@ -215,9 +246,218 @@ public class TopicProtocol extends BaseProtocolHandler {
         });
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            ctx.channel().attr(SUBSCRIPTIONS_KEY).get().values().forEach(ServerSubscription::resume);
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    private void write(ChannelHandlerContext ctx, PartitionIdWriteRequest writeRequest) {
+        messageWrites.mark();
+        messageTotal.mark();
+        try {
+            getTopic(ctx).write(writeRequest.getPartitionId(), writeRequest.getMessage())
+                    // TODO: Convert these to just send as commands, and let the pipeline take care of it
+                    .whenComplete((aVoid, throwable) -> {
+                        if (throwable == null) {
+                            send(ctx, Acknowledgement.newInstance(writeRequest.correlationId()));
+                            // The topic is done with the message once the write succeeds.  A failed write, such as a
+                            // timed out write to a remote topic, may still hold it, so only its buffer is released.
+                            writeRequest.recycle();
+                        } else {
+                            send(ctx, new Error(writeRequest.correlationId(), 0)); // TODO: better error translation
+                            release(writeRequest.getMessage());
+                        }
+                        writeCompleted(ctx);
+                    });
+        } catch (HydraRuntimeException e) {
+            logger.error("Error writing messages", e);
+            send(ctx, new Error(writeRequest.correlationId(), 0));  // TODO: better error translation
+            release(writeRequest.getMessage());
+            writeCompleted(ctx);
+        }
+    }
+
+    /**
+     * Splits the batch by executor, writes each slice on its partitions' executor, and acknowledges once all are done.
+     */
+    private void write(ChannelHandlerContext ctx, BatchWriteRequest writeRequest) {
+        messageWrites.mark(writeRequest.size());
+        messageTotal.mark(writeRequest.size());
+        Map<EventExecutor, Map<PartitionId, List<Message>>> slices = new HashMap<>();
+        writeRequest.getMessages().forEach((partitionId, messages) ->
+                slices.computeIfAbsent(partitionExecutors.executor(partitionId), executor -> new LinkedHashMap<>())
+                      .put(partitionId, messages));
+        List<CompletableFuture<Void>> futures = new ArrayList<>(slices.size());
+        slices.forEach((executor, slice) -> {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            futures.add(future);
+            executor.execute(() -> {
+                try {
+                    getTopic(ctx).write(slice).whenComplete((aVoid, throwable) -> {
+                        if (throwable == null) {
+                            future.complete(null);
+                        } else {
+                            future.completeExceptionally(throwable);
+                        }
+                    });
+                } catch (HydraRuntimeException e) {
+                    logger.error("Error writing messages", e);
+                    future.completeExceptionally(e);
+                }
+            });
+        });
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                .whenComplete((aVoid, throwable) -> {
+                    if (throwable == null) {
+                        send(ctx, Acknowledgement.newInstance(writeRequest.correlationId()));
+                        recycle(writeRequest);
+                    } else {
+                        send(ctx, new Error(writeRequest.correlationId(), 0)); // TODO: better error translation
+                        // As above, only the buffers of a failed write's messages are released
+                        writeRequest.getMessages().values()
+                                    .forEach(messages -> messages.forEach(TopicProtocol::release));
+                    }
+                    writeCompleted(ctx);
+                });
+    }
+
+    /**
+     * Called on the event loop.  Stops reading from a connection holding more writes than its window, so that
+     * requests wait in socket buffers, and then the client, rather than in partition queues.  A stream of a multiplexed
+     * connection stopping soon holds up the connection's other streams as well; see {@link StreamChannel}.
+     */
+    private void writeReceived(ChannelHandlerContext ctx) {
+        AtomicInteger inFlight = ctx.channel().attr(IN_FLIGHT_WRITES_KEY).get();
+        if (inFlight.incrementAndGet() > writeWindow) {
+            ctx.channel().config().setAutoRead(false);
+            // Completions seeing reading still on may have drained the writes meanwhile
+            updateAutoRead(ctx);
+        }
+    }
+
+    private void writeCompleted(ChannelHandlerContext ctx) {
+        ctx.channel().attr(IN_FLIGHT_WRITES_KEY).get().decrementAndGet();
+        if (!ctx.channel().config().isAutoRead()) {
+            ctx.channel().eventLoop().execute(() -> updateAutoRead(ctx));
+        }
+    }
+
+    private void updateAutoRead(ChannelHandlerContext ctx) {
+        if (!ctx.channel().config().isAutoRead() && ctx.channel().attr(IN_FLIGHT_WRITES_KEY).get().get() <= writeWindow / 2) {
+            ctx.channel().config().setAutoRead(true);
+        }
+    }
+
+    private void read(ChannelHandlerContext ctx, PartitionIdReadRequest readRequest) {
+        try {
+            getTopic(ctx).read(readRequest.getPartitionId(), readRequest.getMessageOffset(),
+                    readRequest.getMaxMessages())
+                    .thenAccept(messages -> {
+                        if (messages.size() > 0) {
+                            messageReads.mark(messages.size());
+                            messageTotal.mark(messages.size());
+                        }
+                        send(ctx, ReadResponse.newInstance(readRequest.correlationId(), messages));
+                    })
+                    .exceptionally(throwable -> {
+                        logger.warn("Error reading messages", throwable);
+                        send(ctx, new Error(readRequest.correlationId(), 0)); // TODO: better error translation
+                        return null;
+                    });
+        } catch (HydraRuntimeException e) {
+            logger.error("Error reading messages", e);
+            send(ctx, new Error(readRequest.correlationId(), 0)); // TODO: better error translation
+        }
+    }
+
+    private void subscribe(ChannelHandlerContext ctx, EventExecutor executor, SubscribeRequest request) {
+        ServerSubscription subscription = new ServerSubscription(this, ctx, getTopic(ctx), executor, request);
+        ServerSubscription replaced = ctx.channel().attr(SUBSCRIPTIONS_KEY).get().put(request.getSubscriptionId(), subscription);
+        if (replaced != null) {
+            replaced.cancel();
+        }
+        send(ctx, Acknowledgement.newInstance(request.correlationId()));
+        subscription.start();
+    }
+
+    private void partitionInfo(ChannelHandlerContext ctx, PartitionInfoRequest request) {
+        try {
+            getTopic(ctx).partitionInfo(request.getPartitionId()).thenAccept(partitionInfo -> {
+                send(ctx, request.reply(partitionInfo));
+            }).exceptionally(throwable -> {
+                send(ctx, new Error(request.correlationId(), 0));
+                return null;
+            });
+        } catch (HydraRuntimeException e) {
+            logger.error("Error reading PartitionInfo", e);
+            send(ctx, new Error(request.correlationId(), 0)); // TODO: better error translation
+        }
+    }
+
+    private void cursorInfo(ChannelHandlerContext ctx, CursorInfoRequest request) {
+        try {
+            getTopic(ctx).cursor(request.getPartitionId(), request.getCursorName()).thenAccept(cursorInfo -> {
+                send(ctx, request.reply(cursorInfo));
+            }).exceptionally(throwable -> {
+                send(ctx, new Error(request.correlationId(), 0));
+                return null;
+            });
+        } catch (HydraRuntimeException e) {
+            logger.error("Error reading PartitionInfo", e);
+            send(ctx, new Error(request.correlationId(), 0)); // TODO: better error translation
+        }
+    }
+
+    private void writeCursor(ChannelHandlerContext ctx, WriteCursorRequest request) {
+        try {
+            getTopic(ctx).cursor(request.getPartitionId(), request.getCursorName(), request.getOffset()).thenAccept(aVoid -> {
+                send(ctx, Acknowledgement.newInstance(request.correlationId()));
+            }).exceptionally(throwable -> {
+                send(ctx, new Error(request.correlationId(), 0));
+                return null;
+            });
+        } catch (HydraRuntimeException e) {
+            logger.error("Error writing Cursor", e);
+            send(ctx, new Error(request.correlationId(), 0)); // TODO: better error translation
+        }
+        // TODO: should all command handlers simply throw and let the sync handle it?
+    }
+
+    private static void recycle(BatchWriteRequest writeRequest) {
+        writeRequest.getMessages().values().forEach(messages -> messages.forEach(message -> {
+            if (message instanceof Recyclable) {
+                ((Recyclable) message).recycle();
+            }
+        }));
+    }
+
+    private static void release(Message message) {
+        if (message instanceof LazyMessage) {
+            ((LazyMessage) message).release();
+        }
+    }
+
+    /**
+     * The connection's key dictionary holds the keys proposed by the client, followed by those the topic already
+     * sees written, up to a fixed size.
+     */
+    private List<String> negotiatePropertyKeys(TopicHandshake handshake, Topic topic) {
+        Set<String> keys = new LinkedHashSet<>(handshake.getPropertyKeys());
+        if (topic instanceof TopicInternal) {
+            keys.addAll(((TopicInternal) topic).propertyKeys());
+        }
+        return keys.stream().limit(MAX_PROPERTY_KEYS).collect(Collectors.toList());
+    }
+
     @Override
     protected ConversionContext initializeConversionContext() {
-        return ConversionContext.topicProtocol();
+        // Write requests and their messages are pooled, and recycled once the write succeeds, or released if it fails
+        return ConversionContext.topicProtocol()
+                .register(Message.class, new MessageConverter(true, true))
+                .register(PartitionIdWriteRequest.class, new PartitionIdWriteRequestConverter(true));
     }
 
     private Topic getTopic(ChannelHandlerContext ctx) {
@@ -24,11 +24,9 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
 
 import io.hydramq.PartitionId;
-import io.hydramq.ReaderControl;
 import io.hydramq.Topic;
 import io.hydramq.TopicReader;
 import io.hydramq.TopicWriter;
-import io.hydramq.exceptions.HydraRuntimeException;
 import io.hydramq.listeners.MessageConsumer;
 import io.hydramq.listeners.MessageSetConsumer;
 import org.slf4j.Logger;
@@ -75,22 +73,10 @@ public abstract class AbstractTopicReader implements TopicReader {
     }
 
     private void start(PartitionId partitionId, MessageSetConsumer messageSetConsumer) {
-        executorService.submit(() -> {
-
-            ReaderControl control = new ReaderControl();
-            AtomicLong messageOffset = new AtomicLong(startOffset());
-            while (!control.isCancelled() && !topic.closeFuture().isDone()) {
-                topic.read(partitionId, messageOffset.get(), maxMessages())
-                        .thenAccept(messageSet -> {
-                            messageOffset.set(messageSet.nextOffset());
-                            if (messageSet.size() > 0) {
-                                messageSetConsumer.consume(partitionId, messageSet);
-                            }
-                        }).exceptionally(throwable -> {
-                    // TODO: do better
-                    throw new HydraRuntimeException("Reading failed on partition " + partitionId);
-                }).join();
-            }
+        topic.subscribe(partitionId, startOffset(), maxMessages(), messageSetConsumer).closeFuture().exceptionally(throwable -> {
+            // TODO: do better
+            logger.error("Reading failed on partition " + partitionId, throwable);
+            return null;
         });
     }
 }
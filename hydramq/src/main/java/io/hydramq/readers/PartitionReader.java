@@ -19,14 +19,12 @@
 
 package io.hydramq.readers;
 
-import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import io.hydramq.PartitionId;
+import io.hydramq.Subscription;
 import io.hydramq.Topic;
 import io.hydramq.listeners.MessageConsumer;
 import io.hydramq.listeners.MessageSetConsumer;
@@ -44,11 +42,10 @@ public class PartitionReader {
     private final PartitionId partitionId;
     private final AtomicLong messageOffset;
     private int maxMessages = 100;
-    private Duration timeout = Duration.ofMillis(5000);
     private final MessageSetConsumer messageSetConsumer;
-    private static ExecutorService executorService = Executors.newCachedThreadPool();
     private volatile CompletableFuture<Void> startFuture;
     private volatile CompletableFuture<Void> stopFuture;
+    private Subscription subscription;
     private AtomicBoolean started = new AtomicBoolean(false);
 
     public PartitionReader(Topic topic, PartitionId partitionId, long startOffset, MessageSetConsumer messageSetConsumer) {
@@ -70,46 +67,32 @@ public class PartitionReader {
 
     public synchronized CompletableFuture<Void> start() {
         if (started.compareAndSet(false, true)) {
-            startFuture = new CompletableFuture<>();
-            run();
+            subscription = topic.subscribe(partitionId, messageOffset.get(), maxMessages, messageSetConsumer);
+            subscription.closeFuture().exceptionally(throwable -> {
+                logger.error("Error processing messageSet", throwable);
+                return null;
+            });
+            startFuture = CompletableFuture.completedFuture(null);
         }
         // return an already existing future, that may or may not be started.
         return startFuture;
     }
 
+    /**
+     * Stops reading, resuming from the offset following the last MessageSet consumed when next started.
+     */
     public synchronized CompletableFuture<Void> stop() {
         if (started.compareAndSet(true, false)) {
-            stopFuture = new CompletableFuture<>();
+            Subscription stopping = subscription;
+            subscription = null;
+            startFuture = null;
+            stopFuture = stopping.cancel().handle((aVoid, throwable) -> {
+                messageOffset.set(stopping.nextOffset());
+                return null;
+            });
             return stopFuture;
         } else {
             return CompletableFuture.completedFuture(null);
         }
     }
-
-    private void run() {
-        executorService.execute(() -> {
-            // TODO: handle topic close
-            try {
-                while (started.get()) {
-                    topic.read(partitionId, messageOffset.get(), maxMessages)
-                            .thenAccept(messageSet -> {
-                                messageOffset.set(messageSet.nextOffset());
-                                if (messageSet.size() > 0) {
-                                    messageSetConsumer.consume(partitionId, messageSet);
-                                }
-                            }).exceptionally(throwable -> {
-                        logger.error("Error processing messageSet", throwable);
-                        return null;
-                    }).join();
-                }
-                stopFuture.complete(null);
-                stopFuture = null;
-                started.set(false);
-                startFuture = null;
-            } catch (Exception ex) {
-                logger.error("Error!", ex);
-            }
-        });
-        startFuture.complete(null);
-    }
 }
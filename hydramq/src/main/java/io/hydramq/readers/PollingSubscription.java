@@ -0,0 +1,326 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.readers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.hydramq.MessageSet;
+import io.hydramq.PartitionId;
+import io.hydramq.Subscription;
+import io.hydramq.Topic;
+import io.hydramq.internal.util.Assert;
+import io.hydramq.internal.util.TimerService;
+import io.hydramq.listeners.MessageSetConsumer;
+import org.slf4j.Logger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A subscription for topics that cannot push messages, reading MessageSets and handing them to the consumer in order,
+ * one at a time.  Up to maxInFlightReads reads of consecutive offset ranges are kept outstanding, so that a partition
+ * is not read at one MessageSet per round trip.  Replies are delivered by offset, whatever order they arrive in, and a
+ * short read, whether at the tail or before a gap, discards the ranges read ahead of it.  The reads of discarded ranges
+ * are cancelled, as are those outstanding once the subscription is, so that topics able to drop a cancelled read,
+ * such as a long poll parked at the tail, need not answer it.
+ * <p>
+ * The number of reads outstanding adapts: to one while reads come back short, and otherwise to as many as cover a
+ * round trip at the rate the consumer takes MessageSets.  Reads are only made as MessageSets are consumed, so there is
+ * nothing to grant.  Failed reads are logged and retried while the topic is open.
+ *
+ * @author jfulton
+ */
+public class PollingSubscription implements Subscription {
+
+    private static final Logger logger = getLogger(PollingSubscription.class);
+    public static final int DEFAULT_MAX_IN_FLIGHT_READS = 8;
+    private static final Duration RETRY_DELAY = Duration.ofMillis(100);
+    private static final double SMOOTHING = 0.2;
+    private static ExecutorService executorService = Executors.newCachedThreadPool();
+    private final Topic topic;
+    private final PartitionId partitionId;
+    private final int maxMessages;
+    private final int maxInFlightReads;
+    private final MessageSetConsumer messageSetConsumer;
+    private final AtomicLong messageOffset;
+    private final CompletableFuture<Void> closeFuture = new CompletableFuture<>();
+    private volatile boolean cancelled = false;
+    // Replies not yet delivered, by the offset they were read from
+    private final TreeMap<Long, Read> arrived = new TreeMap<>();
+    // Reads of the current generation not yet replied to, by the offset they read from
+    private final Map<Long, CompletableFuture<MessageSet>> outstanding = new HashMap<>();
+    private long readOffset;
+    // Reads outstanding in the current generation; those read ahead of a short read are no longer counted
+    private int inFlight = 0;
+    private int window = 1;
+    private int generation = 0;
+    private boolean running = false;
+    private boolean retryPending = false;
+    private double roundTripNanos = 0;
+    private double consumeNanos = 0;
+
+    public PollingSubscription(Topic topic, PartitionId partitionId, long messageOffset, int maxMessages,
+                               MessageSetConsumer messageSetConsumer) {
+        this(topic, partitionId, messageOffset, maxMessages, DEFAULT_MAX_IN_FLIGHT_READS, messageSetConsumer);
+    }
+
+    public PollingSubscription(Topic topic, PartitionId partitionId, long messageOffset, int maxMessages,
+                               int maxInFlightReads, MessageSetConsumer messageSetConsumer) {
+        Assert.argumentNotNull(topic, "topic");
+        Assert.argumentNotNull(partitionId, "partitionId");
+        Assert.argumentIsTrue(maxMessages > 0, "maxMessages must be greater than 0");
+        Assert.argumentIsTrue(maxInFlightReads > 0, "maxInFlightReads must be greater than 0");
+        Assert.argumentNotNull(messageSetConsumer, "messageSetConsumer");
+        this.topic = topic;
+        this.partitionId = partitionId;
+        this.messageOffset = new AtomicLong(messageOffset);
+        this.readOffset = messageOffset;
+        this.maxMessages = maxMessages;
+        this.maxInFlightReads = maxInFlightReads;
+        this.messageSetConsumer = messageSetConsumer;
+        schedule();
+    }
+
+    private synchronized void schedule() {
+        if (!running) {
+            running = true;
+            executorService.execute(this::run);
+        }
+    }
+
+    /**
+     * Delivers what has arrived in order, and tops up the reads outstanding, until there is nothing left to do.  Only
+     * ever running once at a time, so replies completing as they are read are picked up by the loop rather than
+     * recursing into it.
+     */
+    private void run() {
+        while (true) {
+            Read next = null;
+            List<Long> offsets = new ArrayList<>();
+            int readGeneration;
+            List<CompletableFuture<MessageSet>> abandoned = null;
+            synchronized (this) {
+                if (cancelled || topic.closeFuture().isDone()) {
+                    arrived.clear();
+                    abandoned = abandonReads();
+                }
+            }
+            if (abandoned != null) {
+                // Reads still outstanding, such as long polls at the tail, are cancelled before the subscription
+                // reports itself closed; any completing regardless are dropped
+                abandoned.forEach(read -> read.cancel(false));
+                synchronized (this) {
+                    running = false;
+                }
+                closeFuture.complete(null);
+                return;
+            }
+            synchronized (this) {
+                Map.Entry<Long, Read> first = arrived.firstEntry();
+                if (first != null && first.getKey() == messageOffset.get()) {
+                    next = arrived.pollFirstEntry().getValue();
+                } else {
+                    while (!retryPending && inFlight + arrived.size() < window) {
+                        offsets.add(readOffset);
+                        readOffset += maxMessages;
+                        inFlight++;
+                    }
+                    if (offsets.isEmpty()) {
+                        running = false;
+                        return;
+                    }
+                }
+                readGeneration = generation;
+            }
+            if (next != null) {
+                deliver(next);
+            } else {
+                offsets.forEach(offset -> read(offset, readGeneration));
+            }
+        }
+    }
+
+    private void read(long offset, int readGeneration) {
+        long started = System.nanoTime();
+        CompletableFuture<MessageSet> readFuture;
+        try {
+            readFuture = topic.read(partitionId, offset, maxMessages);
+        } catch (RuntimeException e) {
+            readFuture = new CompletableFuture<>();
+            readFuture.completeExceptionally(e);
+        }
+        readFuture.whenComplete((messageSet, throwable) -> {
+            synchronized (this) {
+                // Replies to reads made ahead of a short read are dropped
+                if (readGeneration == generation && !cancelled) {
+                    inFlight--;
+                    outstanding.remove(offset);
+                    arrived.put(offset, new Read(offset, messageSet, throwable, System.nanoTime() - started));
+                }
+            }
+            schedule();
+        });
+        boolean abandoned = false;
+        synchronized (this) {
+            if (readGeneration != generation || cancelled) {
+                abandoned = true;
+            } else if (!readFuture.isDone()) {
+                outstanding.put(offset, readFuture);
+            }
+        }
+        if (abandoned) {
+            // Discarded while being made
+            readFuture.cancel(false);
+        }
+    }
+
+    private void deliver(Read read) {
+        if (read.throwable != null) {
+            logger.error("Error reading partition " + partitionId, read.throwable);
+            List<CompletableFuture<MessageSet>> abandoned;
+            synchronized (this) {
+                abandoned = readAgainFrom(messageOffset.get());
+                retryPending = true;
+            }
+            abandoned.forEach(abandonedRead -> abandonedRead.cancel(false));
+            TimerService.shared().schedule(() -> {
+                synchronized (this) {
+                    retryPending = false;
+                }
+                schedule();
+            }, RETRY_DELAY);
+            return;
+        }
+        MessageSet messageSet = read.messageSet;
+        messageOffset.set(messageSet.nextOffset());
+        if (messageSet.size() > 0 && !cancelled) {
+            long started = System.nanoTime();
+            try {
+                messageSetConsumer.consume(partitionId, messageSet);
+            } catch (Exception ex) {
+                logger.error("Error consuming partition " + partitionId, ex);
+            }
+            synchronized (this) {
+                consumeNanos = smoothed(consumeNanos, System.nanoTime() - started);
+            }
+        }
+        List<CompletableFuture<MessageSet>> abandoned = null;
+        synchronized (this) {
+            roundTripNanos = smoothed(roundTripNanos, read.roundTripNanos);
+            if (messageSet.nextOffset() != read.offset + maxMessages) {
+                abandoned = readAgainFrom(messageSet.nextOffset());
+            } else if (consumeNanos > 0) {
+                window = (int) Math.max(1, Math.min(maxInFlightReads, Math.ceil(roundTripNanos / consumeNanos) + 1));
+            } else {
+                window = Math.min(maxInFlightReads, window + 1);
+            }
+        }
+        if (abandoned != null) {
+            abandoned.forEach(abandonedRead -> abandonedRead.cancel(false));
+        }
+    }
+
+    /**
+     * Drops the replies read ahead, and reads on from the given offset one MessageSet at a time.  Reads still
+     * outstanding complete unseen, without holding back the reads that replace them.  Must be called holding the
+     * monitor.
+     *
+     * @return the reads still outstanding, for the caller to cancel once it has let go of the monitor
+     */
+    private List<CompletableFuture<MessageSet>> readAgainFrom(long offset) {
+        generation++;
+        inFlight = 0;
+        arrived.clear();
+        readOffset = offset;
+        window = 1;
+        return abandonReads();
+    }
+
+    /**
+     * Must be called holding the monitor.  The reads returned are cancelled without it, as topics may complete reads
+     * holding locks of their own, which cancelling could then take in the opposite order.
+     */
+    private List<CompletableFuture<MessageSet>> abandonReads() {
+        List<CompletableFuture<MessageSet>> abandoned = new ArrayList<>(outstanding.values());
+        outstanding.clear();
+        return abandoned;
+    }
+
+    private static double smoothed(double average, long sample) {
+        return average == 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+
+    /**
+     * @return the number of reads currently kept outstanding
+     */
+    public synchronized int window() {
+        return window;
+    }
+
+    @Override
+    public PartitionId getPartitionId() {
+        return partitionId;
+    }
+
+    @Override
+    public long nextOffset() {
+        return messageOffset.get();
+    }
+
+    @Override
+    public void grant(final int messages, final long bytes) {
+        // Reads are only made as MessageSets are consumed
+    }
+
+    @Override
+    public CompletableFuture<Void> cancel() {
+        cancelled = true;
+        schedule();
+        return closeFuture;
+    }
+
+    @Override
+    public CompletableFuture<Void> closeFuture() {
+        return closeFuture;
+    }
+
+    private static class Read {
+
+        private final long offset;
+        private final MessageSet messageSet;
+        private final Throwable throwable;
+        private final long roundTripNanos;
+
+        private Read(long offset, MessageSet messageSet, Throwable throwable, long roundTripNanos) {
+            this.offset = offset;
+            this.messageSet = messageSet;
+            this.throwable = throwable;
+            this.roundTripNanos = roundTripNanos;
+        }
+    }
+}
@@ -38,12 +38,14 @@ import io.hydramq.Message;
 import io.hydramq.MessageSet;
 import io.hydramq.PartitionId;
 import io.hydramq.PartitionInfo;
+import io.hydramq.Subscription;
 import io.hydramq.Topic;
 import io.hydramq.common.AbstractTopic;
 import io.hydramq.exceptions.HydraRuntimeException;
 import io.hydramq.internal.apis.TopicInternal;
 import io.hydramq.internal.util.Assert;
 import io.hydramq.listeners.Listen;
+import io.hydramq.listeners.MessageSetConsumer;
 import io.hydramq.listeners.PartitionFlags;
 import io.hydramq.listeners.PartitionListener;
 import io.hydramq.subscriptions.LockListener;
@@ -169,12 +171,40 @@ public class CompositeTopic extends AbstractTopic implements Topic, TopicInterna
 
     @Override
     public CompletableFuture<Void> write(PartitionId partitionId, MessageSet messageSet) {
-        throw new UnsupportedOperationException("Not implemented");
+        Topic topic = null;
+        try {
+            lock.readLock().lock();
+            if (partitionIdMappings.containsKey(partitionId)) {
+                topic = partitionIdMappings.get(partitionId).getTopic();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (topic != null) {
+            return topic.write(partitionId, messageSet);
+        }
+        throw new HydraRuntimeException("Invalid partitionId: " + partitionId);
     }
 
     @Override
     public CompletableFuture<Void> write(Map<PartitionId, List<Message>> messageBatch) {
-        throw new UnsupportedOperationException("Not implemented");
+        // Each owning topic gets its share of the batch as a single write
+        Map<Topic, Map<PartitionId, List<Message>>> batches = new HashMap<>();
+        try {
+            lock.readLock().lock();
+            messageBatch.forEach((partitionId, messages) -> {
+                PartitionIdData data = partitionIdMappings.get(partitionId);
+                if (data == null) {
+                    throw new HydraRuntimeException("Invalid partitionId: " + partitionId);
+                }
+                batches.computeIfAbsent(data.getTopic(), topic -> new HashMap<>()).put(partitionId, messages);
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(batches.size());
+        batches.forEach((topic, batch) -> futures.add(topic.write(batch)));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
     }
 
     @Override
@@ -195,6 +225,25 @@ public class CompositeTopic extends AbstractTopic implements Topic, TopicInterna
         throw new HydraRuntimeException("Invalid partitionId: " + partitionId);
     }
 
+    @Override
+    public Subscription subscribe(PartitionId partitionId, long messageOffset, int maxMessages,
+                                  MessageSetConsumer messageSetConsumer) {
+        Topic topic = null;
+        try {
+            lock.readLock().lock();
+            if (partitionIdMappings.containsKey(partitionId)) {
+                topic = partitionIdMappings.get(partitionId).getTopic();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (topic != null) {
+            return topic.subscribe(partitionId, messageOffset, maxMessages, messageSetConsumer);
+        }
+
+        throw new HydraRuntimeException("Invalid partitionId: " + partitionId);
+    }
+
 
     @Override
     public void discoverPartitions(PartitionListener listener) {
@@ -30,10 +30,12 @@ import io.hydramq.Message;
 import io.hydramq.MessageSet;
 import io.hydramq.PartitionId;
 import io.hydramq.PartitionInfo;
+import io.hydramq.Subscription;
 import io.hydramq.Topic;
 import io.hydramq.common.AbstractTopic;
 import io.hydramq.exceptions.HydraRuntimeException;
 import io.hydramq.listeners.Listen;
+import io.hydramq.listeners.MessageSetConsumer;
 import io.hydramq.listeners.PartitionListener;
 import io.hydramq.subscriptions.LockListener;
 
@@ -60,12 +62,12 @@ public class TopicWrapper extends AbstractTopic implements Topic {
 
     @Override
     public CompletableFuture<Void> write(PartitionId partitionId, MessageSet messageSet) {
-        throw new UnsupportedOperationException("Not implemented");
+        return wrapped.write(partitionId, messageSet);
     }
 
     @Override
     public CompletableFuture<Void> write(Map<PartitionId, List<Message>> messageBatch) {
-        throw new UnsupportedOperationException("Not implemented");
+        return wrapped.write(messageBatch);
     }
 
     @Override
@@ -73,6 +75,12 @@ public class TopicWrapper extends AbstractTopic implements Topic {
         return wrapped.read(partitionId, messageOffset, maxMessages);
     }
 
+    @Override
+    public Subscription subscribe(PartitionId partitionId, long messageOffset, int maxMessages,
+                                  MessageSetConsumer messageSetConsumer) {
+        return wrapped.subscribe(partitionId, messageOffset, maxMessages, messageSetConsumer);
+    }
+
     @Override
     public void discoverPartitions(PartitionListener listener) {
         wrapped.discoverPartitions(listener);
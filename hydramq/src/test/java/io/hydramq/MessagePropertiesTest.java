@@ -19,6 +19,7 @@
 
 package io.hydramq;
 
+import java.util.Iterator;
 import java.util.Set;
 
 import io.hydramq.client.RetryProperties;
@@ -31,8 +32,6 @@ import static org.hamcrest.Matchers.*;
 /**
  * @author jfulton
  */
-
-// TODO: handle null keys
 @SuppressWarnings("Duplicates")
 public class MessagePropertiesTest {
 
@@ -109,6 +108,106 @@ public class MessagePropertiesTest {
         assertKeysSize(properties, 0);
     }
 
+    @Test
+    public void testManyProperties() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            properties.setInteger("key" + i, i).setString("key" + i, "value" + i);
+        }
+        for (int i = 0; i < 100; i += 2) {
+            properties.removeInteger("key" + i);
+        }
+        assertThat(properties.getIntegerKeys().size(), is(50));
+        assertThat(properties.getStringKeys().size(), is(100));
+        for (int i = 0; i < 100; i++) {
+            assertThat(properties.hasInteger("key" + i), is(i % 2 == 1));
+            assertThat(properties.getString("key" + i), is("value" + i));
+        }
+        properties.setInteger("key1", -1);
+        assertThat(properties.getInteger("key1"), is(-1));
+        assertThat(properties.getIntegerKeys().size(), is(50));
+    }
+
+    @Test
+    public void testPrimitiveExtremes() throws Exception {
+        properties.setLong("long", Long.MIN_VALUE)
+                .setInteger("int", Integer.MIN_VALUE)
+                .setShort("short", Short.MIN_VALUE)
+                .setByte("byte", Byte.MIN_VALUE)
+                .setFloat("float", -0.0f)
+                .setDouble("double", Double.NaN);
+        assertThat(properties.getLong("long"), is(Long.MIN_VALUE));
+        assertThat(properties.getInteger("int"), is(Integer.MIN_VALUE));
+        assertThat(properties.getShort("short"), is(Short.MIN_VALUE));
+        assertThat(properties.getByte("byte"), is(Byte.MIN_VALUE));
+        assertThat(Float.floatToRawIntBits(properties.getFloat("float")), is(Float.floatToRawIntBits(-0.0f)));
+        assertThat(Double.isNaN(properties.getDouble("double")), is(true));
+        assertThat(properties.getDouble("missing", 2.5), is(2.5));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNullKeyIsRejected() throws Exception {
+        properties.setString((String) null, "value");
+    }
+
+    @Test
+    public void testNullKeyIsMissing() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            properties.setInteger("key" + i, i);
+        }
+        assertThat(properties.hasInteger((String) null), is(false));
+        assertThat(properties.getInteger((String) null, -1), is(-1));
+        assertThat(properties.getIntegerKeys().contains(null), is(false));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNullPrimitiveValueIsRejected() throws Exception {
+        properties.setValue(Integer.class, "key", null);
+    }
+
+    @Test
+    public void testNullStringValueIsStored() throws Exception {
+        properties.setString("key", null);
+        assertThat(properties.hasString("key"), is(true));
+        assertThat(properties.getString("key"), nullValue());
+        assertThat(properties.getString("key", "default"), nullValue());
+    }
+
+    @Test
+    public void testKeySetRemovesProperties() throws Exception {
+        properties.setInteger("one", 1).setInteger("two", 2).setLong("one", 1L);
+        Set<String> keys = properties.getIntegerKeys();
+        assertThat(keys.remove("one"), is(true));
+        assertThat(keys.remove("one"), is(false));
+        assertThat(properties.hasInteger("one"), is(false));
+        assertThat(properties.hasLong("one"), is(true));
+        assertThat(keys, contains("two"));
+    }
+
+    @Test
+    public void testKeySetIteratorRemovesProperties() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            properties.setInteger("key" + i, i).setString("key" + i, "value" + i);
+        }
+        Iterator<String> keys = properties.getIntegerKeys().iterator();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (properties.getInteger(key) % 2 == 0) {
+                keys.remove();
+            }
+        }
+        assertThat(properties.getIntegerKeys().size(), is(10));
+        for (int i = 0; i < 20; i++) {
+            assertThat(properties.hasInteger("key" + i), is(i % 2 != 0));
+            assertThat(properties.getString("key" + i), is("value" + i));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testKeySetIteratorRemoveRequiresNext() throws Exception {
+        properties.setInteger("key", 1);
+        properties.getIntegerKeys().iterator().remove();
+    }
+
     public static void assertEquivalent(MessageProperties input, MessageProperties output) {
         assertKeysSize(output.getStringKeys(), input.getStringKeys().size());
         for (String key : input.getStringKeys()) {
@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import io.hydramq.Message;
+import io.hydramq.MessageSet;
+import io.hydramq.PartitionId;
+import io.hydramq.core.net.Acknowledgement;
+import io.hydramq.core.net.protocols.topic.PartitionIdWriteRequest;
+import io.hydramq.core.net.protocols.topic.ReadResponse;
+import io.hydramq.core.type.ConversionContext;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures command dispatch and nested converter resolution through the topic protocol's ConversionContext: a bare
+ * acknowledgement, a single message write request, and a read response carrying 32 messages.  Run with main(), from
+ * the test classpath.
+ *
+ * @author jfulton
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionContextBenchmark {
+
+    private ConversionContext context;
+    private ByteBuf encodedAcknowledgement;
+    private ByteBuf encodedWriteRequest;
+    private ByteBuf encodedReadResponse;
+    private ReadResponse readResponse;
+    private ByteBuf buffer;
+
+    @Setup
+    public void setUp() {
+        context = ConversionContext.topicProtocol();
+        MessageSet messageSet = new MessageSet(1000);
+        for (int i = 0; i < 32; i++) {
+            messageSet.add(message(i));
+        }
+        readResponse = new ReadResponse(1, messageSet);
+        encodedAcknowledgement = encode(Acknowledgement.replyTo(1));
+        encodedWriteRequest = encode(new PartitionIdWriteRequest(1, PartitionId.create(), message(0)));
+        encodedReadResponse = encode(readResponse);
+        buffer = Unpooled.buffer(64 * 1024);
+    }
+
+    @Benchmark
+    public Object decodeAcknowledgement() {
+        return context.read(encodedAcknowledgement.duplicate());
+    }
+
+    @Benchmark
+    public Object decodeWriteRequest() {
+        return context.read(encodedWriteRequest.duplicate());
+    }
+
+    @Benchmark
+    public Object decodeReadResponse() {
+        return context.read(encodedReadResponse.duplicate());
+    }
+
+    @Benchmark
+    public ByteBuf encodeReadResponse() {
+        buffer.clear();
+        context.write(readResponse, buffer);
+        return buffer;
+    }
+
+    private ByteBuf encode(Object command) {
+        ByteBuf encoded = Unpooled.buffer();
+        context.write(command, encoded);
+        return encoded;
+    }
+
+    private static Message message(int i) {
+        return Message.withBodyAsString("Hello World!")
+                      .withString("firstName", "Jimmie")
+                      .withInteger("messageNumber", i)
+                      .withLong("timestamp", 1234567890123L)
+                      .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ConversionContextBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.benchmarks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.hydramq.MessageProperties;
+import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.converters.MessagePropertiesConverter;
+import io.hydramq.exceptions.HydraRuntimeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the compact MessageProperties storage against the original map-of-maps storage, for a message carrying 8
+ * headers.  Run with main(), from the test classpath.
+ *
+ * @author jfulton
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessagePropertiesBenchmark {
+
+    @Param({"compact", "map"})
+    private String storage;
+    private ConversionContext context;
+    private MessageProperties properties;
+    private ByteBuf encoded;
+    private ByteBuf buffer;
+
+    @Setup
+    public void setUp() {
+        MessagePropertiesConverter converter = storage.equals("map") ? new MessagePropertiesConverter() {
+            @Override
+            protected MessageProperties newProperties() {
+                return new MapMessageProperties();
+            }
+        } : new MessagePropertiesConverter();
+        context = ConversionContext.base().register(MessageProperties.class, converter);
+        properties = populate(newProperties());
+        encoded = Unpooled.buffer();
+        context.write(MessageProperties.class, properties, encoded);
+        buffer = Unpooled.buffer(encoded.readableBytes());
+    }
+
+    @Benchmark
+    public MessageProperties set() {
+        return populate(newProperties());
+    }
+
+    @Benchmark
+    public void get(Blackhole blackhole) {
+        blackhole.consume(properties.getString("correlationId"));
+        blackhole.consume(properties.getString("replyTo"));
+        blackhole.consume(properties.getString("contentType"));
+        blackhole.consume(properties.getLong("timestamp"));
+        blackhole.consume(properties.getLong("expires"));
+        blackhole.consume(properties.getInteger("attempt"));
+        blackhole.consume(properties.getInteger("priority"));
+        blackhole.consume(properties.getBoolean("redelivered"));
+    }
+
+    @Benchmark
+    public ByteBuf encode() {
+        buffer.clear();
+        context.write(MessageProperties.class, properties, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public MessageProperties decode() {
+        return context.read(MessageProperties.class, encoded.duplicate());
+    }
+
+    private MessageProperties newProperties() {
+        return storage.equals("map") ? new MapMessageProperties() : new MessageProperties();
+    }
+
+    private static MessageProperties populate(MessageProperties properties) {
+        return properties.setString("correlationId", "5f0c6a0e-2b1d-4a7e-9a51-3c2f1e7d8b90")
+                         .setString("replyTo", "replies")
+                         .setString("contentType", "application/json")
+                         .setLong("timestamp", 1463000000000L)
+                         .setLong("expires", 1463000060000L)
+                         .setInteger("attempt", 1)
+                         .setInteger("priority", 4)
+                         .setBoolean("redelivered", false);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(MessagePropertiesBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * The original storage, one HashMap of boxed values per property type.
+     */
+    @SuppressWarnings("unchecked")
+    private static class MapMessageProperties extends MessageProperties {
+
+        private Map<Class<?>, Map<String, Object>> propertyMaps = new HashMap<>();
+
+        @Override
+        protected <T> Set<String> getKeys(Class<T> type) {
+            if (propertyMaps.containsKey(type)) {
+                return propertyMaps.get(type).keySet();
+            } else {
+                return Collections.emptySet();
+            }
+        }
+
+        @Override
+        protected <T> boolean hasValue(Class<T> type, String key) {
+            return propertyMaps.containsKey(type) && propertyMaps.get(type).containsKey(key);
+        }
+
+        @Override
+        protected <T> T getValue(Class<T> type, String key) {
+            if (propertyMaps.containsKey(type) && propertyMaps.get(type).containsKey(key)) {
+                return (T) propertyMaps.get(type).get(key);
+            }
+            throw new HydraRuntimeException("Missing " + type.getSimpleName() + " property with key '" + key + "'");
+        }
+
+        @Override
+        protected <T> void setValue(Class<T> type, String key, T value) {
+            propertyMaps.computeIfAbsent(type, aClass -> new HashMap<>()).put(key, value);
+        }
+
+        @Override
+        protected <T> void removeValue(Class<T> type, String key) {
+            if (hasValue(type, key)) {
+                propertyMaps.get(type).remove(key);
+            }
+        }
+
+        @Override
+        protected long getPrimitive(Class<?> type, String key) {
+            return bits(getValue(type, key));
+        }
+
+        @Override
+        protected long getPrimitive(Class<?> type, String key, long defaultValue) {
+            return hasValue(type, key) ? getPrimitive(type, key) : defaultValue;
+        }
+
+        @Override
+        protected void setPrimitive(Class<?> type, String key, long value) {
+            setValue((Class<Object>) type, key, box(type, value));
+        }
+
+        private static long bits(Object value) {
+            if (value instanceof Boolean) {
+                return (Boolean) value ? 1L : 0L;
+            } else if (value instanceof Float) {
+                return Float.floatToRawIntBits((Float) value);
+            } else if (value instanceof Double) {
+                return Double.doubleToRawLongBits((Double) value);
+            }
+            return ((Number) value).longValue();
+        }
+
+        private static Object box(Class<?> type, long bits) {
+            if (type == Boolean.class) {
+                return bits != 0;
+            } else if (type == Integer.class) {
+                return (int) bits;
+            } else if (type == Long.class) {
+                return bits;
+            }
+            throw new HydraRuntimeException("Unsupported property type " + type.getName());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.core.net.netty;
+
+import java.util.Random;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.codec.TooLongFrameException;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.testng.Assert.fail;
+
+/**
+ * @author jfulton
+ */
+public class ChunkedFrameCodecTest {
+
+    private static final int MAX_CHUNK_LENGTH = 1024;
+    private static final int MAX_FRAME_LENGTH = 8 * 1024;
+
+    @Test
+    public void testShortFramesMatchLengthPrefixedFrames() throws Exception {
+        ByteBuf chunked = encode(frame(100));
+        EmbeddedChannel prepender = new EmbeddedChannel(new LengthFieldPrepender(4));
+        prepender.writeOutbound(frame(100));
+        assertThat(chunked, is(drain(prepender)));
+    }
+
+    @Test
+    public void testLongFramesAreChunkedAndReassembled() throws Exception {
+        ByteBuf encoded = encode(frame(MAX_CHUNK_LENGTH * 3 + 10));
+        assertThat(encoded.readableBytes(), is(MAX_CHUNK_LENGTH * 3 + 10 + 4 * 4));
+        assertThat(encoded.getInt(0), is(MAX_CHUNK_LENGTH | ChunkedFrameEncoder.MORE_CHUNKS));
+
+        EmbeddedChannel decoder = decoder();
+        // Delivered in small pieces, so chunks straddle reads
+        while (encoded.isReadable()) {
+            decoder.writeInbound(encoded.readBytes(Math.min(300, encoded.readableBytes())));
+        }
+        ByteBuf output = (ByteBuf) decoder.readInbound();
+        assertThat(output, instanceOf(CompositeByteBuf.class));
+        assertThat(((CompositeByteBuf) output).numComponents(), is(4));
+        assertThat(output, is(frame(MAX_CHUNK_LENGTH * 3 + 10)));
+        assertThat(decoder.readInbound(), nullValue());
+        output.release();
+    }
+
+    @Test
+    public void testSingleChunkFramesAreNotComposite() throws Exception {
+        EmbeddedChannel decoder = decoder();
+        decoder.writeInbound(encode(frame(MAX_CHUNK_LENGTH)));
+        ByteBuf output = (ByteBuf) decoder.readInbound();
+        assertThat(output, not(instanceOf(CompositeByteBuf.class)));
+        assertThat(output, is(frame(MAX_CHUNK_LENGTH)));
+    }
+
+    @Test
+    public void testTooLongFrameIsSkipped() throws Exception {
+        EmbeddedChannel decoder = decoder();
+        try {
+            decoder.writeInbound(encode(frame(MAX_FRAME_LENGTH + 1)));
+            fail(TooLongFrameException.class.getSimpleName() + " expected");
+        } catch (DecoderException e) {
+            assertThat(e, instanceOf(TooLongFrameException.class));
+        }
+        decoder.writeInbound(encode(frame(MAX_CHUNK_LENGTH * 2)));
+        assertThat(decoder.readInbound(), is((Object) frame(MAX_CHUNK_LENGTH * 2)));
+    }
+
+    @Test
+    public void testTooLongChunkIsSkipped() throws Exception {
+        EmbeddedChannel decoder = decoder();
+        ByteBuf oversized = Unpooled.buffer().writeInt(MAX_CHUNK_LENGTH + 1).writeBytes(frame(MAX_CHUNK_LENGTH + 1));
+        try {
+            decoder.writeInbound(oversized);
+            fail(TooLongFrameException.class.getSimpleName() + " expected");
+        } catch (DecoderException e) {
+            assertThat(e, instanceOf(TooLongFrameException.class));
+        }
+        decoder.writeInbound(encode(frame(10)));
+        assertThat(decoder.readInbound(), is((Object) frame(10)));
+    }
+
+    private EmbeddedChannel decoder() {
+        return new EmbeddedChannel(new ChunkedFrameDecoder(MAX_CHUNK_LENGTH, MAX_FRAME_LENGTH));
+    }
+
+    private ByteBuf encode(ByteBuf frame) {
+        EmbeddedChannel encoder = new EmbeddedChannel(new ChunkedFrameEncoder(MAX_CHUNK_LENGTH));
+        encoder.writeOutbound(frame);
+        return drain(encoder);
+    }
+
+    private ByteBuf drain(EmbeddedChannel channel) {
+        ByteBuf encoded = Unpooled.buffer();
+        for (Object buffer = channel.readOutbound(); buffer != null; buffer = channel.readOutbound()) {
+            encoded.writeBytes((ByteBuf) buffer);
+            ((ByteBuf) buffer).release();
+        }
+        return encoded;
+    }
+
+    private ByteBuf frame(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return Unpooled.wrappedBuffer(bytes);
+    }
+}
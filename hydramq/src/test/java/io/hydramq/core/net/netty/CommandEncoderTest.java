@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.net.netty;
+
+import io.hydramq.Message;
+import io.hydramq.MessageSet;
+import io.hydramq.core.net.protocols.topic.ReadResponse;
+import io.hydramq.core.type.ConversionContext;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class CommandEncoderTest {
+
+    private static final int MAX_CHUNK_LENGTH = 1024;
+
+    @Test
+    public void testFramesMatchChunkedFrameEncoder() throws Exception {
+        ConversionContext conversionContext = ConversionContext.topicProtocol();
+        EmbeddedChannel framing = new EmbeddedChannel(new CommandEncoder(conversionContext, MAX_CHUNK_LENGTH));
+        framing.writeOutbound(response(10, 20));
+        ByteBuf frame = (ByteBuf) framing.readOutbound();
+        assertThat(framing.readOutbound(), nullValue());
+
+        EmbeddedChannel separate = new EmbeddedChannel(new ChunkedFrameEncoder(MAX_CHUNK_LENGTH),
+                new CommandEncoder(conversionContext));
+        separate.writeOutbound(response(10, 20));
+        assertThat(frame, is(drain(separate)));
+        frame.release();
+    }
+
+    @Test
+    public void testEncodedMessagesAreSizedExactly() throws Exception {
+        ConversionContext conversionContext = ConversionContext.topicProtocol();
+        // Read back, so the messages carry their encoding
+        ByteBuf encoded = Unpooled.buffer();
+        conversionContext.write(response(50, 100), encoded);
+        ReadResponse response = (ReadResponse) conversionContext.read(encoded);
+
+        int estimate = conversionContext.estimateSize(response);
+        EmbeddedChannel channel = new EmbeddedChannel(new CommandEncoder(conversionContext, Integer.MAX_VALUE));
+        channel.writeOutbound(response);
+        ByteBuf frame = (ByteBuf) channel.readOutbound();
+        assertThat(frame.readableBytes(), is(ChunkedFrameEncoder.HEADER_LENGTH + estimate));
+        assertThat(frame.capacity(), is(frame.readableBytes()));
+        assertThat(frame.getInt(0), is(estimate));
+        frame.release();
+    }
+
+    @Test
+    public void testMessagesWithoutBodiesAreEncoded() throws Exception {
+        ConversionContext conversionContext = ConversionContext.topicProtocol();
+        ReadResponse response = new ReadResponse(42, new MessageSet(0).add(new Message(null)));
+        EmbeddedChannel channel = new EmbeddedChannel(new CommandEncoder(conversionContext, Integer.MAX_VALUE));
+        channel.writeOutbound(response);
+        ByteBuf frame = (ByteBuf) channel.readOutbound();
+        assertThat(frame.readableBytes(), greaterThan(ChunkedFrameEncoder.HEADER_LENGTH));
+        frame.release();
+    }
+
+    @Test
+    public void testLongCommandsAreChunked() throws Exception {
+        ConversionContext conversionContext = ConversionContext.topicProtocol();
+        EmbeddedChannel framing = new EmbeddedChannel(new CommandEncoder(conversionContext, MAX_CHUNK_LENGTH));
+        framing.writeOutbound(response(20, 200));
+        ByteBuf frame = (ByteBuf) framing.readOutbound();
+        assertThat(framing.readOutbound(), nullValue());
+        assertThat(frame.getInt(0), is(MAX_CHUNK_LENGTH | ChunkedFrameEncoder.MORE_CHUNKS));
+
+        EmbeddedChannel decoder = new EmbeddedChannel(new ChunkedFrameDecoder(MAX_CHUNK_LENGTH, 64 * 1024));
+        decoder.writeInbound(frame);
+        ByteBuf decoded = (ByteBuf) decoder.readInbound();
+        ByteBuf expected = Unpooled.buffer();
+        conversionContext.write(response(20, 200), expected);
+        assertThat(decoded, is(expected));
+        decoded.release();
+    }
+
+    private ReadResponse response(int messageCount, int bodyLength) {
+        MessageSet messageSet = new MessageSet(100);
+        for (int i = 0; i < messageCount; i++) {
+            messageSet.add(Message.withBody(new byte[bodyLength]).withInteger("index", i).withString("key", "value").build());
+        }
+        return new ReadResponse(42, messageSet);
+    }
+
+    private ByteBuf drain(EmbeddedChannel channel) {
+        ByteBuf encoded = Unpooled.buffer();
+        for (Object buffer = channel.readOutbound(); buffer != null; buffer = channel.readOutbound()) {
+            encoded.writeBytes((ByteBuf) buffer);
+            ((ByteBuf) buffer).release();
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.net.netty;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class FlushConsolidationHandlerTest {
+
+    @Test
+    public void testFlushesAreCoalescedUntilTheEventLoopRuns() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        EmbeddedChannel channel = new EmbeddedChannel(flushCounter(flushes), new FlushConsolidationHandler());
+        for (int i = 0; i < 3; i++) {
+            channel.writeAndFlush(i);
+        }
+        assertThat(flushes.get(), is(0));
+        channel.runPendingTasks();
+        assertThat(flushes.get(), is(1));
+        assertThat(channel.outboundMessages().size(), is(3));
+        channel.finish();
+    }
+
+    @Test
+    public void testRepliesToAReadBatchShareOneFlush() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        EmbeddedChannel channel = new EmbeddedChannel(flushCounter(flushes), new FlushConsolidationHandler(),
+                new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
+                        ctx.writeAndFlush(msg);
+                    }
+                });
+        channel.writeInbound(1, 2, 3);
+        assertThat(flushes.get(), is(1));
+        assertThat(channel.outboundMessages().size(), is(3));
+        channel.runPendingTasks();
+        assertThat(flushes.get(), is(1));
+        channel.finish();
+    }
+
+    @Test
+    public void testMaxPendingFlushesFlushesImmediately() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        EmbeddedChannel channel = new EmbeddedChannel(flushCounter(flushes),
+                new FlushConsolidationHandler(Duration.ZERO, 2));
+        channel.writeAndFlush(1);
+        assertThat(flushes.get(), is(0));
+        channel.writeAndFlush(2);
+        assertThat(flushes.get(), is(1));
+        channel.runPendingTasks();
+        assertThat(flushes.get(), is(1));
+        channel.finish();
+    }
+
+    @Test
+    public void testFlushDelay() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        EmbeddedChannel channel = new EmbeddedChannel(flushCounter(flushes),
+                new FlushConsolidationHandler(Duration.ofMillis(50)));
+        channel.writeAndFlush(1);
+        channel.runPendingTasks();
+        assertThat(flushes.get(), is(0));
+        Thread.sleep(100);
+        channel.runScheduledPendingTasks();
+        assertThat(flushes.get(), is(1));
+        channel.finish();
+    }
+
+    @Test
+    public void testCloseFlushesPendingWrites() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        EmbeddedChannel channel = new EmbeddedChannel(flushCounter(flushes),
+                new FlushConsolidationHandler(Duration.ofMillis(60_000)));
+        channel.writeAndFlush(1);
+        channel.close();
+        assertThat(flushes.get(), is(1));
+        assertThat(channel.outboundMessages().size(), is(1));
+    }
+
+    private ChannelOutboundHandlerAdapter flushCounter(AtomicInteger flushes) {
+        return new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void flush(final ChannelHandlerContext ctx) throws Exception {
+                flushes.incrementAndGet();
+                ctx.flush();
+            }
+        };
+    }
+}
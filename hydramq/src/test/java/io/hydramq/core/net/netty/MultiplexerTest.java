@@ -0,0 +1,177 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.core.net.netty;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.hydramq.core.net.Error;
+import io.hydramq.core.type.ConversionContext;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class MultiplexerTest {
+
+    @Test
+    public void testStreamsBeyondTheLimitAreClosed() throws Exception {
+        StreamRecorder recorder = new StreamRecorder();
+        Multiplexer multiplexer = Multiplexer.accepting(recorder, 1024, 2);
+        EmbeddedChannel channel = accepted(multiplexer);
+        for (int streamId = 1; streamId <= 3; streamId++) {
+            channel.writeInbound(frame(streamId, "hello"));
+        }
+        assertThat(multiplexer.streams(), is(2));
+        assertThat(recorder.streams.size(), is(2));
+        ByteBuf closing = (ByteBuf) channel.readOutbound();
+        assertThat(closing.readableBytes(), is(Integer.BYTES));
+        assertThat(closing.readInt(), is(3));
+        closing.release();
+
+        // Once a stream closes, another may open
+        channel.writeInbound(Unpooled.buffer().writeInt(1));
+        channel.writeInbound(frame(3, "hello"));
+        assertThat(multiplexer.streams(), is(2));
+        assertThat(channel.readOutbound(), nullValue());
+        channel.finish();
+    }
+
+    @Test
+    public void testStreamsFollowTheWritabilityOfTheConnection() throws Exception {
+        StreamRecorder recorder = new StreamRecorder();
+        EmbeddedChannel channel = accepted(Multiplexer.accepting(recorder, 1024));
+        channel.config().setWriteBufferLowWaterMark(8);
+        channel.config().setWriteBufferHighWaterMark(16);
+        channel.writeInbound(frame(1, "hello"));
+        Channel stream = recorder.streams.get(0);
+        assertThat(stream.isWritable(), is(true));
+
+        // Held in the connection's outbound buffer until flushed
+        channel.write(Unpooled.wrappedBuffer(new byte[64]));
+        assertThat(channel.isWritable(), is(false));
+        assertThat(stream.isWritable(), is(false));
+        assertThat(recorder.writabilityChanges.get(), is(1));
+
+        channel.flush();
+        assertThat(stream.isWritable(), is(true));
+        assertThat(recorder.writabilityChanges.get(), is(2));
+        channel.finish();
+    }
+
+    @Test
+    public void testHandshakesAnsweredOtherwiseAreRejected() throws Exception {
+        Multiplexer multiplexer = Multiplexer.initiating(1024);
+        EmbeddedChannel channel = new EmbeddedChannel(multiplexer);
+        ((ByteBuf) channel.readOutbound()).release();
+        ByteBuf error = Unpooled.buffer();
+        ConversionContext.base().write(new Error(0, 5), error);
+        channel.writeInbound(error);
+        assertThat(multiplexer.handshakeFuture().isCompletedExceptionally(), is(true));
+        assertThat(multiplexer.isRejected(), is(true));
+        assertThat(channel.isOpen(), is(false));
+    }
+
+    @Test
+    public void testHandshakesCutShortAreNotRejected() throws Exception {
+        Multiplexer multiplexer = Multiplexer.initiating(1024);
+        EmbeddedChannel channel = new EmbeddedChannel(multiplexer);
+        ((ByteBuf) channel.readOutbound()).release();
+        channel.close();
+        assertThat(multiplexer.handshakeFuture().isCompletedExceptionally(), is(true));
+        assertThat(multiplexer.isRejected(), is(false));
+    }
+
+    @Test
+    public void testAStreamNotReadingHoldsUpTheConnection() throws Exception {
+        StreamRecorder recorder = new StreamRecorder();
+        EmbeddedChannel channel = accepted(Multiplexer.accepting(recorder, 1024));
+        channel.writeInbound(frame(1, "hello"));
+        channel.writeInbound(frame(2, "hello"));
+        Channel paused = recorder.streams.get(0);
+        paused.config().setAutoRead(false);
+        // The read asked for before pausing is still served
+        channel.writeInbound(frame(1, "hello"));
+        assertThat(recorder.reads.get(), is(3));
+        for (int i = 0; i < StreamChannel.MAX_BACKLOG; i++) {
+            channel.writeInbound(frame(1, "hello"));
+        }
+        assertThat(channel.config().isAutoRead(), is(true));
+
+        // One more, and the connection stops reading, for the other stream as well
+        channel.writeInbound(frame(1, "hello"));
+        assertThat(channel.config().isAutoRead(), is(false));
+        assertThat(recorder.reads.get(), is(3));
+
+        paused.config().setAutoRead(true);
+        assertThat(recorder.reads.get(), is(StreamChannel.MAX_BACKLOG + 4));
+        assertThat(channel.config().isAutoRead(), is(true));
+        channel.finish();
+    }
+
+    private EmbeddedChannel accepted(Multiplexer multiplexer) {
+        EmbeddedChannel channel = new EmbeddedChannel(multiplexer);
+        channel.writeInbound(Unpooled.buffer().writeInt(Multiplexer.HANDSHAKE_ID).writeInt(Multiplexer.VERSION));
+        ((ByteBuf) channel.readOutbound()).release();
+        return channel;
+    }
+
+    private ByteBuf frame(int streamId, String payload) {
+        return Unpooled.buffer().writeInt(streamId).writeBytes(payload.getBytes());
+    }
+
+    @ChannelHandler.Sharable
+    private static class StreamRecorder extends ChannelInboundHandlerAdapter {
+
+        private final List<Channel> streams = new CopyOnWriteArrayList<>();
+        private final AtomicInteger writabilityChanges = new AtomicInteger();
+        private final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
+            streams.add(ctx.channel());
+            super.channelRegistered(ctx);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            reads.incrementAndGet();
+            super.channelRead(ctx, msg);
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            writabilityChanges.incrementAndGet();
+            super.channelWritabilityChanged(ctx);
+        }
+    }
+}
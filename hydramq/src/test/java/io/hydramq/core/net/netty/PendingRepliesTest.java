@@ -0,0 +1,105 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.core.net.netty;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import io.hydramq.core.net.Acknowledgement;
+import io.hydramq.core.net.Command;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.Timeout;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class PendingRepliesTest {
+
+    @Test
+    public void testReplyCompletesPendingFuture() throws Exception {
+        EmbeddedChannel channel = channel();
+        Acknowledgement request = Acknowledgement.replyTo(42);
+        CompletableFuture<Command> future = ChannelUtils.sendForReply(channel, request);
+        assertThat(pendingReplies(channel).size(), is(1));
+        channel.writeInbound(Acknowledgement.replyTo(request));
+        assertThat(future.isDone(), is(true));
+        assertThat(future.join().correlationId(), is(42));
+        assertThat(pendingReplies(channel).size(), is(0));
+        channel.finish();
+    }
+
+    @Test
+    public void testUnansweredRequestTimesOut() throws Exception {
+        EmbeddedChannel channel = channel();
+        CompletableFuture<Command> future = ChannelUtils.sendForReply(channel, Acknowledgement.replyTo(7), Duration.ofMillis(50));
+        Thread.sleep(250);
+        channel.runPendingTasks();
+        assertThat(future.isCompletedExceptionally(), is(true));
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(TimeoutException.class));
+        }
+        assertThat(pendingReplies(channel).size(), is(0));
+        channel.finish();
+    }
+
+    @Test
+    public void testTimeoutIsCancelledByReply() throws Exception {
+        EmbeddedChannel channel = channel();
+        CompletableFuture<Command> future = new CompletableFuture<>();
+        pendingReplies(channel).put(9, future);
+        Timeout timeout = pendingReplies(channel).expireAfter(9, future, Duration.ofSeconds(60));
+        assertThat(timeout.isCancelled(), is(false));
+        channel.writeInbound(Acknowledgement.replyTo(9));
+        assertThat(timeout.isCancelled(), is(true));
+        channel.finish();
+    }
+
+    @Test
+    public void testFailAllCompletesEveryFuture() throws Exception {
+        PendingReplies pendingReplies = new PendingReplies(channel().eventLoop());
+        CompletableFuture<Command> first = new CompletableFuture<>();
+        CompletableFuture<Command> second = new CompletableFuture<>();
+        pendingReplies.put(1, first);
+        pendingReplies.put(2, second);
+        pendingReplies.failAll(new IllegalStateException("closed"));
+        assertThat(first.isCompletedExceptionally(), is(true));
+        assertThat(second.isCompletedExceptionally(), is(true));
+        assertThat(pendingReplies.size(), is(0));
+    }
+
+    private EmbeddedChannel channel() {
+        EmbeddedChannel channel = new EmbeddedChannel(new CompletableFutureHandler());
+        channel.attr(ChannelAttributes.COMMAND_FUTURES).set(new PendingReplies(channel.eventLoop()));
+        return channel;
+    }
+
+    private PendingReplies pendingReplies(EmbeddedChannel channel) {
+        return channel.attr(ChannelAttributes.COMMAND_FUTURES).get();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.net.netty;
+
+import java.net.InetSocketAddress;
+
+import io.hydramq.exceptions.HydraRuntimeException;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.testng.Assert.fail;
+
+/**
+ * @author jfulton
+ */
+public class TransportTest {
+
+    @Test
+    public void testPreferredTransportFallsBackToNio() throws Exception {
+        assertThat(Transport.NIO.isAvailable(), is(true));
+        assertThat(Transport.preferred(), is(Epoll.isAvailable() ? Transport.EPOLL : Transport.NIO));
+        assertThat(Transport.preferred().isAvailable(), is(true));
+    }
+
+    @Test
+    public void testDomainSocketsNeedEpoll() throws Exception {
+        DomainSocketAddress address = new DomainSocketAddress("/tmp/hydramq.sock");
+        assertThat(Transport.EPOLL.supportsDomainSockets(), is(true));
+        assertThat(Transport.EPOLL.channelClass(address), equalTo((Object) EpollDomainSocketChannel.class));
+        assertThat(Transport.EPOLL.channelClass(new InetSocketAddress(0)), equalTo((Object) EpollSocketChannel.class));
+        assertThat(Transport.NIO.supportsDomainSockets(), is(false));
+        try {
+            Transport.NIO.channelClass(address);
+            fail(HydraRuntimeException.class.getSimpleName() + " expected");
+        } catch (HydraRuntimeException e) {
+            assertThat(e.getMessage(), containsString("domain sockets"));
+        }
+    }
+}
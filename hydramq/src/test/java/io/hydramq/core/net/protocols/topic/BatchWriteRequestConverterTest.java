@@ -0,0 +1,50 @@
+package io.hydramq.core.net.protocols.topic;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.hydramq.Message;
+import io.hydramq.PartitionId;
+import io.hydramq.core.type.ConversionContext;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class BatchWriteRequestConverterTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Map<PartitionId, List<Message>> batch = new LinkedHashMap<>();
+        for (int partition = 0; partition < 3; partition++) {
+            List<Message> messages = new ArrayList<>();
+            for (int i = 0; i < partition + 1; i++) {
+                messages.add(Message.withBodyAsString("Hello").withInteger("messageNumber", i).build());
+            }
+            batch.put(PartitionId.create(), messages);
+        }
+        ConversionContext context = ConversionContext.topicProtocol();
+        ByteBuf buffer = Unpooled.buffer();
+        context.write(new BatchWriteRequest(5, batch), buffer);
+        BatchWriteRequest request = (BatchWriteRequest) context.read(buffer);
+        assertThat(request.correlationId(), is(5));
+        assertThat(request.size(), is(6));
+        assertThat(request.getMessages().keySet(), contains(batch.keySet().toArray()));
+        for (Map.Entry<PartitionId, List<Message>> entry : batch.entrySet()) {
+            List<Message> messages = request.getMessages().get(entry.getKey());
+            assertThat(messages.size(), is(entry.getValue().size()));
+            for (int i = 0; i < messages.size(); i++) {
+                assertThat(messages.get(i).getInteger("messageNumber"), is(i));
+                assertThat(messages.get(i).bodyAsString(), is("Hello"));
+            }
+        }
+        assertThat(buffer.readableBytes(), is(0));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.core.net.protocols.topic;
+
+import io.hydramq.Message;
+import io.hydramq.PartitionId;
+import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.converters.LazyMessage;
+import io.hydramq.core.type.converters.MessageConverter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class PartitionIdWriteRequestTest {
+
+    @Test
+    public void testPooledRequestIsReusedOnceRecycled() throws Exception {
+        PartitionId partitionId = PartitionId.create();
+        PartitionIdWriteRequest request = PartitionIdWriteRequest.newInstance(1, partitionId, Message.empty().build());
+        assertThat(request.correlationId(), is(1));
+        assertThat(request.getPartitionId(), is(partitionId));
+        request.recycle();
+        assertThat(request.getPartitionId(), nullValue());
+        assertThat(request.getMessage(), nullValue());
+        PartitionIdWriteRequest reused = PartitionIdWriteRequest.newInstance(2, partitionId, Message.empty().build());
+        assertThat(reused, sameInstance(request));
+        assertThat(reused.correlationId(), is(2));
+        assertThat(reused.getMessage(), notNullValue());
+        reused.recycle();
+    }
+
+    @Test
+    public void testUnpooledRequestIsUnaffectedByRecycling() throws Exception {
+        PartitionId partitionId = PartitionId.create();
+        Message message = Message.empty().build();
+        PartitionIdWriteRequest request = new PartitionIdWriteRequest(1, partitionId, message);
+        request.recycle();
+        assertThat(request.getPartitionId(), is(partitionId));
+        assertThat(request.getMessage(), sameInstance(message));
+    }
+
+    @Test
+    public void testRecyclingConverterReadsPooledRequests() throws Exception {
+        ConversionContext context = ConversionContext.topicProtocol()
+                .register(Message.class, new MessageConverter(true, true))
+                .register(PartitionIdWriteRequest.class, new PartitionIdWriteRequestConverter(true));
+        ByteBuf buffer = Unpooled.buffer();
+        ConversionContext.topicProtocol().write(new PartitionIdWriteRequest(7, PartitionId.create(),
+                Message.withBodyAsString("Hello").withString("firstName", "Jimmie").build()), buffer);
+        PartitionIdWriteRequest request = (PartitionIdWriteRequest) context.read(buffer);
+        assertThat(request.correlationId(), is(7));
+        assertThat(request.getMessage().getString("firstName"), is("Jimmie"));
+        ByteBuf encoded = ((LazyMessage) request.getMessage()).encoded();
+        request.recycle();
+        assertThat(encoded.refCnt(), is(0));
+    }
+}
@@ -0,0 +1,62 @@
+package io.hydramq.core.net.protocols.topic;
+
+import io.hydramq.PartitionId;
+import io.hydramq.core.type.ConversionContext;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class SubscriptionConvertersTest {
+
+    private final ConversionContext context = ConversionContext.topicProtocol();
+
+    @Test
+    public void testSubscribeRequestRoundTrip() throws Exception {
+        PartitionId partitionId = PartitionId.create();
+        ByteBuf buffer = Unpooled.buffer();
+        context.write(new SubscribeRequest(5, 3, partitionId, 1024L, 100, 400, Long.MAX_VALUE), buffer);
+        SubscribeRequest request = (SubscribeRequest) context.read(buffer);
+        assertThat(request.correlationId(), is(5));
+        assertThat(request.getSubscriptionId(), is(3));
+        assertThat(request.getPartitionId(), is(partitionId));
+        assertThat(request.getMessageOffset(), is(1024L));
+        assertThat(request.getMaxMessages(), is(100));
+        assertThat(request.getMessageCredits(), is(400));
+        assertThat(request.getByteCredits(), is(Long.MAX_VALUE));
+        assertThat(buffer.readableBytes(), is(0));
+    }
+
+    @Test
+    public void testNewSubscriptionIsIdentifiedByItsRequest() throws Exception {
+        SubscribeRequest request = new SubscribeRequest(PartitionId.create(), 0, 100, 400, Long.MAX_VALUE);
+        assertThat(request.getSubscriptionId(), is(request.correlationId()));
+    }
+
+    @Test
+    public void testSubscriptionCreditRoundTrip() throws Exception {
+        ByteBuf buffer = Unpooled.buffer();
+        context.write(new SubscriptionCredit(5, 3, 100, 65536L), buffer);
+        SubscriptionCredit credit = (SubscriptionCredit) context.read(buffer);
+        assertThat(credit.correlationId(), is(5));
+        assertThat(credit.getSubscriptionId(), is(3));
+        assertThat(credit.getMessages(), is(100));
+        assertThat(credit.getBytes(), is(65536L));
+        assertThat(buffer.readableBytes(), is(0));
+    }
+
+    @Test
+    public void testUnsubscribeRequestRoundTrip() throws Exception {
+        ByteBuf buffer = Unpooled.buffer();
+        context.write(new UnsubscribeRequest(5, 3), buffer);
+        UnsubscribeRequest request = (UnsubscribeRequest) context.read(buffer);
+        assertThat(request.correlationId(), is(5));
+        assertThat(request.getSubscriptionId(), is(3));
+        assertThat(buffer.readableBytes(), is(0));
+    }
+}
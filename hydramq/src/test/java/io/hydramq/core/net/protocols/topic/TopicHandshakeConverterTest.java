@@ -0,0 +1,89 @@
+package io.hydramq.core.net.protocols.topic;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+
+import io.hydramq.PartitionId;
+import io.hydramq.core.type.Compression;
+import io.hydramq.core.type.ConversionContext;
+import io.hydramq.listeners.PartitionFlags;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class TopicHandshakeConverterTest {
+
+    private final ConversionContext context = ConversionContext.topicProtocol();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        PartitionId partitionId = PartitionId.create();
+        Map<PartitionId, PartitionFlags> partitions =
+                Collections.singletonMap(partitionId, new PartitionFlags(EnumSet.of(PartitionFlags.Flag.WRITE)));
+        ByteBuf buffer = Unpooled.buffer();
+        context.write(new TopicHandshake(5, 8, "topic", partitions, Arrays.asList("firstName", "age"),
+                Compression.DEFLATE, 64), buffer);
+        TopicHandshake handshake = (TopicHandshake) context.read(buffer);
+        assertThat(handshake.correlationId(), is(5));
+        assertThat(handshake.getVersion(), is(8));
+        assertThat(handshake.getTopicName(), is("topic"));
+        assertThat(handshake.getPartitions(), is(partitions));
+        assertThat(handshake.getPropertyKeys(), contains("firstName", "age"));
+        assertThat(handshake.getCompression(), is(Compression.DEFLATE));
+        assertThat(handshake.getWriteWindow(), is(64));
+        assertThat(buffer.readableBytes(), is(0));
+    }
+
+    @Test
+    public void testVersionOneLayoutIsReadAsVersionOne() throws Exception {
+        // As replied by servers predating version 2, which echo the client's version but write only these fields
+        PartitionId partitionId = PartitionId.create();
+        ByteBuf buffer = Unpooled.buffer();
+        buffer.writeInt(100);
+        buffer.writeInt(5);
+        buffer.writeInt(8);
+        context.write(String.class, "topic", buffer);
+        buffer.writeInt(1);
+        context.write(PartitionId.class, partitionId, buffer);
+        buffer.writeInt(0);
+
+        TopicHandshake handshake = (TopicHandshake) context.read(buffer);
+        assertThat(handshake.getVersion(), is(1));
+        assertThat(handshake.getTopicName(), is("topic"));
+        assertThat(handshake.getPartitions().keySet(), contains(partitionId));
+        assertThat(handshake.getPropertyKeys(), is(empty()));
+        assertThat(handshake.getCompression(), is(Compression.NONE));
+        assertThat(handshake.getWriteWindow(), is(0));
+    }
+
+    @Test
+    public void testUnknownCompressionIsNegotiatedAsNone() throws Exception {
+        ByteBuf buffer = Unpooled.buffer();
+        context.write(new TopicHandshake(5, 8, "topic", Collections.emptyMap(), Collections.emptyList(),
+                Compression.DEFLATE, 64), buffer);
+        buffer.setByte(buffer.writerIndex() - Integer.BYTES - 1, 99);
+        TopicHandshake handshake = (TopicHandshake) context.read(buffer);
+        assertThat(handshake.getCompression(), is(Compression.NONE));
+        assertThat(handshake.getWriteWindow(), is(64));
+    }
+
+    @Test
+    public void testVersionIsLimitedToTheFieldsPresent() throws Exception {
+        ByteBuf buffer = Unpooled.buffer();
+        context.write(new TopicHandshake(5, 5, "topic", Collections.emptyMap(), Collections.emptyList(),
+                Compression.DEFLATE, 0), buffer);
+        buffer.setInt(Integer.BYTES * 2, 8);
+        TopicHandshake handshake = (TopicHandshake) context.read(buffer);
+        assertThat(handshake.getVersion(), is(7));
+        assertThat(handshake.getCompression(), is(Compression.DEFLATE));
+        assertThat(handshake.getWriteWindow(), is(0));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.core.type;
+
+import io.hydramq.exceptions.HydraRuntimeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class CompressionTest {
+
+    @Test
+    public void testDeflateRoundTripFromDirectBuffer() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("message-").append(i % 7).append(';');
+        }
+        ByteBuf source = Unpooled.directBuffer().writeBytes(text.toString().getBytes(CharsetUtil.UTF_8));
+        int length = source.readableBytes();
+        ByteBuf compressed = Unpooled.buffer();
+        Compression.DEFLATE.compress(source, compressed);
+        assertThat(source.isReadable(), is(false));
+        assertThat(compressed.readableBytes(), lessThan(length / 10));
+
+        ByteBuf framed = Unpooled.directBuffer().writeBytes(compressed).writeByte(42);
+        ByteBuf decompressed = Unpooled.buffer(length);
+        Compression.DEFLATE.decompress(framed, framed.readableBytes() - 1, decompressed);
+        assertThat(decompressed.toString(CharsetUtil.UTF_8), is(text.toString()));
+        assertThat(framed.readByte(), is((byte) 42));
+    }
+
+    @Test(expectedExceptions = HydraRuntimeException.class)
+    public void testCorruptBlock() throws Exception {
+        ByteBuf garbage = Unpooled.wrappedBuffer(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        Compression.DEFLATE.decompress(garbage, garbage.readableBytes(), Unpooled.buffer());
+    }
+
+    @Test(expectedExceptions = HydraRuntimeException.class)
+    public void testTruncatedBlock() throws Exception {
+        ByteBuf compressed = Unpooled.buffer();
+        Compression.DEFLATE.compress(Unpooled.wrappedBuffer(new byte[1024]), compressed);
+        Compression.DEFLATE.decompress(compressed, compressed.readableBytes() - 4, Unpooled.buffer());
+    }
+
+    @Test(expectedExceptions = HydraRuntimeException.class)
+    public void testBlockLargerThanDeclared() throws Exception {
+        ByteBuf compressed = Unpooled.buffer();
+        Compression.DEFLATE.compress(Unpooled.wrappedBuffer(new byte[1024]), compressed);
+        Compression.DEFLATE.decompress(compressed, compressed.readableBytes(), Unpooled.buffer(512, 512));
+    }
+
+    @Test
+    public void testFromId() throws Exception {
+        for (Compression compression : Compression.values()) {
+            assertThat(Compression.fromId(compression.id()), is(compression));
+            assertThat(Compression.fromIdOrNone(compression.id()), is(compression));
+        }
+    }
+
+    @Test(expectedExceptions = HydraRuntimeException.class)
+    public void testFromUnknownId() throws Exception {
+        Compression.fromId(99);
+    }
+
+    @Test
+    public void testFromUnknownIdOrNone() throws Exception {
+        assertThat(Compression.fromIdOrNone(99), is(Compression.NONE));
+    }
+}
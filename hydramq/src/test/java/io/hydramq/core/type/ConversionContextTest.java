@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type;
+
+import io.hydramq.Message;
+import io.hydramq.core.net.Acknowledgement;
+import io.hydramq.core.net.Command;
+import io.hydramq.core.net.protocols.topic.ReadResponse;
+import io.hydramq.core.type.converters.LazyMessage;
+import io.hydramq.core.type.converters.MessageConverter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class ConversionContextTest {
+
+    @Test
+    public void testCommandsAreDispatchedByTypeId() throws Exception {
+        ConversionContext context = ConversionContext.topicProtocol();
+        ByteBuf buffer = Unpooled.buffer();
+        context.write(Acknowledgement.replyTo(42), buffer);
+        Command command = context.read(buffer);
+        assertThat(command, instanceOf(Acknowledgement.class));
+        assertThat(command.correlationId(), is(42));
+        assertThat(context.readable(CommandType.ACK.id()), is(true));
+    }
+
+    @Test
+    public void testUnknownTypeIdsAreNotReadable() throws Exception {
+        ConversionContext context = ConversionContext.topicProtocol();
+        assertThat(context.readable(-1), is(false));
+        assertThat(context.readable(999), is(false));
+        assertThat(context.readable(Integer.MAX_VALUE), is(false));
+        ByteBuf buffer = Unpooled.buffer().writeInt(999).writeInt(1);
+        assertThat(context.read(buffer), nullValue());
+        assertThat(buffer.readerIndex(), is(0));
+    }
+
+    @Test
+    public void testLargeTypeIdsAreRegistered() throws Exception {
+        ConversionContext context = ConversionContext.base().register(Large.class, new LargeConverter());
+        ByteBuf buffer = Unpooled.buffer();
+        context.write(new Large(7), buffer);
+        assertThat(context.read(buffer).correlationId(), is(7));
+        assertThat(context.readable(CommandType.ACK.id()), is(true));
+    }
+
+    @Test
+    public void testSubclassesAreWrittenByBaseConverter() throws Exception {
+        ConversionContext context = ConversionContext.topicProtocol();
+        ByteBuf buffer = Unpooled.buffer();
+        context.write(Message.withBodyAsString("Hello").build(), buffer);
+        Message lazy = context.read(Message.class, buffer);
+        assertThat(lazy, instanceOf(LazyMessage.class));
+        assertThat(context.writable(lazy), is(true));
+        assertThat(context.converter(LazyMessage.class), instanceOf(MessageConverter.class));
+        assertThat(context.writable(new Object()), is(false));
+        assertThat(context.writable(new ReadResponse(1, null)), is(true));
+    }
+
+    private static class Large extends Command {
+
+        Large(final int correlationId) {
+            super(correlationId);
+        }
+    }
+
+    private static class LargeConverter extends CommandTypeConverter<Large> {
+
+        LargeConverter() {
+            super(5000);
+        }
+
+        @Override
+        protected Large readObject(final ConversionContext context, final int correlationId, final ByteBuf buffer) {
+            return new Large(correlationId);
+        }
+
+        @Override
+        protected void writeObject(final ConversionContext context, final Large instance, final ByteBuf buffer) {
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.core.type;
+
+import io.hydramq.core.type.converters.StringConverter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class NestedConverterTest {
+
+    @Test
+    public void testConverterIsResolvedOnce() throws Exception {
+        ConversionContext context = ConversionContext.base();
+        NestedConverter<String> strings = new NestedConverter<>(String.class);
+        TypeConverter<String> converter = strings.get(context);
+        assertThat(converter, sameInstance(context.converter(String.class)));
+        assertThat(strings.get(context), sameInstance(converter));
+
+        ByteBuf buffer = Unpooled.buffer();
+        strings.write(context, "value", buffer);
+        assertThat(strings.estimateSize(context, "value"), is(converter.estimateSize(context, "value")));
+        assertThat(strings.read(context, buffer), is("value"));
+    }
+
+    @Test
+    public void testConverterIsResolvedAgainAfterRegistration() throws Exception {
+        ConversionContext context = ConversionContext.base();
+        NestedConverter<String> strings = new NestedConverter<>(String.class);
+        strings.get(context);
+        StringConverter replacement = new StringConverter();
+        context.register(String.class, replacement);
+        assertThat(strings.get(context), sameInstance(replacement));
+    }
+
+    @Test
+    public void testConverterIsResolvedPerContext() throws Exception {
+        ConversionContext first = ConversionContext.base();
+        ConversionContext second = ConversionContext.base();
+        NestedConverter<String> strings = new NestedConverter<>(String.class);
+        assertThat(strings.get(first), sameInstance(first.converter(String.class)));
+        assertThat(strings.get(second), sameInstance(second.converter(String.class)));
+        assertThat(strings.get(first), sameInstance(first.converter(String.class)));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class PropertyKeyDictionaryTest {
+
+    @Test
+    public void testFixedDictionary() throws Exception {
+        PropertyKeyDictionary dictionary = new PropertyKeyDictionary(Arrays.asList("a", "b", "a"));
+        assertThat(dictionary.size(), is(2));
+        assertThat(dictionary.id("a"), is(0));
+        assertThat(dictionary.id("b"), is(1));
+        assertThat(dictionary.idOrAdd("c"), is(-1));
+        assertThat(dictionary.key(1), is("b"));
+        assertThat(dictionary.keys(), contains("a", "b"));
+    }
+
+    @Test
+    public void testGrowableDictionaryReportsAdditions() throws Exception {
+        List<String> added = new ArrayList<>();
+        PropertyKeyDictionary dictionary = new PropertyKeyDictionary(Arrays.asList("a"), 3, added::add);
+        assertThat(dictionary.idOrAdd("b"), is(1));
+        assertThat(dictionary.idOrAdd("b"), is(1));
+        assertThat(dictionary.idOrAdd("c"), is(2));
+        assertThat(dictionary.idOrAdd("d"), is(-1));
+        assertThat(added, contains("b", "c"));
+    }
+
+    @Test
+    public void testDecodedKeysAreCanonical() throws Exception {
+        PropertyKeyDictionary dictionary = new PropertyKeyDictionary(Arrays.asList(new String("key")));
+        assertThat(dictionary.key(0), sameInstance(dictionary.key(0)));
+    }
+}
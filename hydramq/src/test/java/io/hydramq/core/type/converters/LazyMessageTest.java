@@ -0,0 +1,250 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type.converters;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+import io.hydramq.Message;
+import io.hydramq.MessageProperties;
+import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.PropertyKeyDictionary;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class LazyMessageTest {
+
+    private ConversionContext context;
+
+    @BeforeMethod
+    public void setUp() {
+        context = ConversionContext.base()
+                .register(Message.class, new MessageConverter())
+                .register(MessageProperties.class, new MessagePropertiesConverter());
+    }
+
+    @Test
+    public void testPropertiesAreReadFromEncodedForm() throws Exception {
+        Message output = roundTrip(message());
+        assertThat(output, instanceOf(LazyMessage.class));
+        assertThat(output.bodyAsString(), is("Hello World!"));
+        assertThat(output.getString("firstName"), is("Jimmie"));
+        assertThat(output.getString("city"), is("Zürich"));
+        assertThat(output.getString("naïve"), is("yes"));
+        assertThat(output.getInteger("age"), is(40));
+        assertThat(output.getLong("timestamp"), is(1234567890123L));
+        assertThat(output.getBytes("payload"), is(new byte[]{1, 2, 3}));
+        assertThat(output.hasString("age"), is(false));
+        assertThat(output.getString("missing", "default"), is("default"));
+        assertThat(output.getStringKeys(), containsInAnyOrder("firstName", "city", "naïve"));
+        assertThat(((LazyMessage) output).isModified(), is(false));
+    }
+
+    @Test
+    public void testUnmodifiedMessageIsCopiedVerbatim() throws Exception {
+        ByteBuf original = Unpooled.buffer();
+        context.write(message(), original);
+        Message output = context.read(Message.class, original.duplicate());
+        ByteBuf rewritten = Unpooled.buffer();
+        context.write(output, rewritten);
+        assertThat(rewritten, is(original));
+    }
+
+    @Test
+    public void testModifiedMessageIsReEncoded() throws Exception {
+        LazyMessage output = (LazyMessage) roundTrip(message());
+        output.setString("firstName", "James");
+        output.removeInteger("age");
+        assertThat(output.isModified(), is(true));
+        assertThat(output.encoded(), nullValue());
+        Message reread = roundTrip(output);
+        assertThat(reread.getString("firstName"), is("James"));
+        assertThat(reread.getString("city"), is("Zürich"));
+        assertThat(reread.hasInteger("age"), is(false));
+        assertThat(reread.getLong("timestamp"), is(1234567890123L));
+        assertThat(reread.bodyAsString(), is("Hello World!"));
+    }
+
+    @Test
+    public void testKeySetRemovesProperties() throws Exception {
+        LazyMessage output = (LazyMessage) roundTrip(message());
+        Set<String> keys = output.getStringKeys();
+        assertThat(keys.remove("city"), is(true));
+        assertThat(output.isModified(), is(true));
+        assertThat(output.hasString("city"), is(false));
+        Iterator<String> iterator = keys.iterator();
+        iterator.next();
+        iterator.remove();
+        assertThat(output.getStringKeys().size(), is(1));
+        assertThat(roundTrip(output).getStringKeys(), is(keys));
+    }
+
+    @Test
+    public void testEagerConverter() throws Exception {
+        context.register(Message.class, new MessageConverter(false));
+        Message output = roundTrip(message());
+        assertThat(output, not(instanceOf(LazyMessage.class)));
+        assertThat(output.getString("firstName"), is("Jimmie"));
+    }
+
+    @Test
+    public void testKeysAreEncodedAgainstDictionary() throws Exception {
+        context.keyDictionary(new PropertyKeyDictionary(Arrays.asList("firstName", "age", "timestamp")));
+        ByteBuf encoded = Unpooled.buffer();
+        context.write(message(), encoded);
+        ByteBuf plain = Unpooled.buffer();
+        ConversionContext.base()
+                         .register(Message.class, new MessageConverter())
+                         .register(MessageProperties.class, new MessagePropertiesConverter())
+                         .write(message(), plain);
+        assertThat(encoded.readableBytes(), lessThan(plain.readableBytes()));
+
+        Message output = context.read(Message.class, encoded);
+        assertThat(output.getString("firstName"), is("Jimmie"));
+        assertThat(output.getString("city"), is("Zürich"));
+        assertThat(output.getInteger("age"), is(40));
+        assertThat(output.getStringKeys(), hasItem(sameInstance(context.keyDictionary().key(0))));
+    }
+
+    @Test
+    public void testMessagesAreTranscodedBetweenDictionaries() throws Exception {
+        context.keyDictionary(new PropertyKeyDictionary(Arrays.asList("firstName", "age")));
+        Message output = roundTrip(message());
+        ConversionContext other = ConversionContext.base()
+                                                   .register(Message.class, new MessageConverter())
+                                                   .register(MessageProperties.class, new MessagePropertiesConverter())
+                                                   .keyDictionary(new PropertyKeyDictionary(Arrays.asList("city")));
+        ByteBuf buffer = Unpooled.buffer();
+        other.write(output, buffer);
+        Message transcoded = other.read(Message.class, buffer);
+        assertThat(((LazyMessage) output).isModified(), is(false));
+        assertThat(transcoded.getString("firstName"), is("Jimmie"));
+        assertThat(transcoded.getString("city"), is("Zürich"));
+        assertThat(transcoded.getInteger("age"), is(40));
+        assertThat(transcoded.getLong("timestamp"), is(1234567890123L));
+        assertThat(transcoded.getBytes("payload"), is(new byte[]{1, 2, 3}));
+        assertThat(transcoded.bodyAsString(), is("Hello World!"));
+    }
+
+    @Test
+    public void testCompactEncoding() throws Exception {
+        ByteBuf plain = Unpooled.buffer();
+        context.write(message(), plain);
+        context.compact(true);
+        Message input = Message.withBodyAsString("Hello World!").withLong("timestamp", -1234567890123L)
+                               .withInteger("delta", -1).withShort("short", Short.MIN_VALUE).build();
+        LazyMessage output = (LazyMessage) roundTrip(input);
+        assertThat(output.getLong("timestamp"), is(-1234567890123L));
+        assertThat(output.getInteger("delta"), is(-1));
+        assertThat(output.getShort("short"), is(Short.MIN_VALUE));
+        assertThat(output.bodyAsString(), is("Hello World!"));
+        ByteBuf compact = Unpooled.buffer();
+        context.write(message(), compact);
+        assertThat(compact.readableBytes(), lessThan(plain.readableBytes()));
+    }
+
+    @Test
+    public void testMessagesAreReEncodedBetweenEncodings() throws Exception {
+        context.compact(true).keyDictionary(new PropertyKeyDictionary(Arrays.asList("firstName", "age")));
+        Message output = roundTrip(message());
+        ConversionContext plain = ConversionContext.base()
+                                                   .register(Message.class, new MessageConverter())
+                                                   .register(MessageProperties.class, new MessagePropertiesConverter());
+        ByteBuf buffer = Unpooled.buffer();
+        plain.write(output, buffer);
+        Message reencoded = plain.read(Message.class, buffer);
+        assertThat(((LazyMessage) output).isModified(), is(false));
+        assertThat(reencoded.getString("firstName"), is("Jimmie"));
+        assertThat(reencoded.getString("city"), is("Zürich"));
+        assertThat(reencoded.getInteger("age"), is(40));
+        assertThat(reencoded.getLong("timestamp"), is(1234567890123L));
+        assertThat(reencoded.getBytes("payload"), is(new byte[]{1, 2, 3}));
+        assertThat(reencoded.bodyAsString(), is("Hello World!"));
+    }
+
+    @Test
+    public void testRecycledMessageReleasesPooledBuffer() throws Exception {
+        ConversionContext recycling = ConversionContext.base()
+                .register(Message.class, new MessageConverter(true, true))
+                .register(MessageProperties.class, new MessagePropertiesConverter());
+        ByteBuf buffer = Unpooled.buffer();
+        recycling.write(message(), buffer);
+        LazyMessage output = (LazyMessage) recycling.read(Message.class, buffer);
+        assertThat(output.getString("city"), is("Zürich"));
+        assertThat(output.bodyAsString(), is("Hello World!"));
+        ByteBuf encoded = output.encoded();
+        assertThat(encoded.refCnt(), is(1));
+        output.recycle();
+        assertThat(encoded.refCnt(), is(0));
+        output.recycle();
+        assertThat(encoded.refCnt(), is(0));
+    }
+
+    @Test
+    public void testReleasedMessageReleasesPooledBufferOnce() throws Exception {
+        ConversionContext recycling = ConversionContext.base()
+                .register(Message.class, new MessageConverter(true, true))
+                .register(MessageProperties.class, new MessagePropertiesConverter());
+        ByteBuf buffer = Unpooled.buffer();
+        recycling.write(message(), buffer);
+        LazyMessage output = (LazyMessage) recycling.read(Message.class, buffer);
+        ByteBuf encoded = output.encoded();
+        output.release();
+        assertThat(encoded.refCnt(), is(0));
+        output.release();
+        output.recycle();
+        assertThat(encoded.refCnt(), is(0));
+    }
+
+    @Test
+    public void testRecyclingUnpooledMessageHasNoEffect() throws Exception {
+        LazyMessage output = (LazyMessage) roundTrip(message());
+        output.recycle();
+        assertThat(output.encoded().refCnt(), is(1));
+        assertThat(output.getString("firstName"), is("Jimmie"));
+    }
+
+    private Message roundTrip(Message input) {
+        ByteBuf buffer = Unpooled.buffer();
+        context.write(input, buffer);
+        return context.read(Message.class, buffer);
+    }
+
+    private Message message() {
+        return Message.withBody("Hello World!".getBytes(CharsetUtil.UTF_8))
+                .withString("firstName", "Jimmie")
+                .withString("city", "Zürich")
+                .withString("naïve", "yes")
+                .withInteger("age", 40)
+                .withLong("timestamp", 1234567890123L)
+                .withBytes("payload", new byte[]{1, 2, 3})
+                .build();
+    }
+}
@@ -69,6 +69,26 @@ public class MessagePropertiesConverterTest {
         assertEquivalent(input, output);
     }
 
+    @Test
+    public void testCompactWithValues() throws Exception {
+        conversions.compact(true);
+        MessageProperties input = example().setInteger("negative", Integer.MIN_VALUE)
+                                           .setLong("max", Long.MAX_VALUE)
+                                           .setLong("min", Long.MIN_VALUE)
+                                           .setShort("negativeShort", (short) -13)
+                                           .setBytes("empty", new byte[0]);
+        assertEquivalent(input, marshall(input));
+    }
+
+    @Test
+    public void testCompactIsSmaller() throws Exception {
+        ByteBuf plain = Unpooled.buffer();
+        conversions.write(MessageProperties.class, example(), plain);
+        ByteBuf compact = Unpooled.buffer();
+        conversions.compact(true).write(MessageProperties.class, example(), compact);
+        assertThat(compact.readableBytes(), lessThan(plain.readableBytes()));
+    }
+
     public MessageProperties marshall(MessageProperties input) {
         ByteBuf buffer = Unpooled.buffer();
         conversions.write(MessageProperties.class, input, buffer);
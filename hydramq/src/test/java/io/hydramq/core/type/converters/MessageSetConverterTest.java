@@ -20,11 +20,14 @@
 package io.hydramq.core.type.converters;
 
 import java.util.Iterator;
+import java.util.Random;
 
 import io.hydramq.Message;
 import io.hydramq.MessageProperties;
 import io.hydramq.MessageSet;
+import io.hydramq.core.type.Compression;
 import io.hydramq.core.type.ConversionContext;
+import io.hydramq.exceptions.HydraRuntimeException;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import org.testng.annotations.Test;
@@ -59,4 +62,225 @@ public class MessageSetConverterTest {
             assertThat(outputIterator.next().getInteger("id"), is(inputIterator.next().getInteger("id")));
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testColumnarWriteAndRead() throws Exception {
+        ConversionContext columnar = columnar();
+        MessageSet input = new MessageSet(-5);
+        for (int i = 0; i < 500; i++) {
+            input.add(Message.withBodyAsString("Message " + i)
+                             .withInteger("id", i)
+                             .withLong("timestamp", 1_500_000_000_000L + (i % 7) * 13 - (i % 3) * 1000)
+                             .withString("source", "sensor-" + (i % 4))
+                             .withBoolean("even", i % 2 == 0)
+                             .withDouble("reading", i / 3.0)
+                             .build());
+        }
+        MessageSet output = roundTrip(columnar, input);
+        assertThat(output.startOffset(), is(-5L));
+        assertThat(output.size(), is(500));
+        Iterator<Message> inputIterator = input.iterator();
+        for (Message message : output) {
+            Message expected = inputIterator.next();
+            assertThat(message, instanceOf(ColumnarMessage.class));
+            MessagePropertiesConverterTest.assertEquivalent(expected.properties(), message.properties());
+            assertThat(message.bodyAsString(), is(expected.bodyAsString()));
+        }
+    }
+
+    @Test
+    public void testColumnarIsSmallerThanRows() throws Exception {
+        MessageSet input = new MessageSet(0);
+        for (int i = 0; i < 500; i++) {
+            input.add(Message.withBodyAsString("Hello").withInteger("id", i)
+                             .withLong("timestamp", 1_500_000_000_000L + i).build());
+        }
+        ByteBuf rows = Unpooled.buffer();
+        context.write(MessageSet.class, input, rows);
+        ByteBuf columns = Unpooled.buffer();
+        columnar().write(MessageSet.class, input, columns);
+        assertThat(columns.readableBytes(), lessThan(rows.readableBytes() / 3));
+    }
+
+    @Test
+    public void testColumnarWithMissingValues() throws Exception {
+        MessageSet input = new MessageSet(0);
+        input.add(Message.withBodyAsString("first").withString("a", "1").withLong("n", 10L).build());
+        input.add(Message.empty().withLong("n", -10L).withBytes("b", new byte[]{1, 2}).build());
+        input.add(Message.withBodyAsString("third").withString("a", "3").withLong("a", 7L).build());
+        MessageSet output = roundTrip(columnar(), input);
+        Iterator<Message> iterator = output.iterator();
+        Message first = iterator.next();
+        assertThat(first.getString("a"), is("1"));
+        assertThat(first.getLong("n"), is(10L));
+        assertThat(first.hasBytes("b"), is(false));
+        assertThat(first.hasLong("a"), is(false));
+        Message second = iterator.next();
+        assertThat(second.hasString("a"), is(false));
+        assertThat(second.getLong("n"), is(-10L));
+        assertThat(second.getBytes("b"), is(new byte[]{1, 2}));
+        assertThat(second.body().length, is(0));
+        assertThat(second.getStringKeys(), empty());
+        Message third = iterator.next();
+        assertThat(third.getString("a"), is("3"));
+        assertThat(third.getLong("a"), is(7L));
+        assertThat(third.getLongKeys(), contains("a"));
+        assertThat(third.bodyAsString(), is("third"));
+    }
+
+    @Test
+    public void testColumnarNullAndEmptyBodies() throws Exception {
+        MessageSet input = new MessageSet(0);
+        input.add(Message.withBodyAsString("first").build());
+        input.add(new Message(null, Message.empty().withInteger("i", 2).build().properties()));
+        input.add(Message.withBody(new byte[0]).build());
+        input.add(Message.withBodyAsString("fourth").build());
+        Iterator<Message> iterator = roundTrip(columnar(), input).iterator();
+        assertThat(iterator.next().bodyAsString(), is("first"));
+        Message second = iterator.next();
+        assertThat(second.body(), nullValue());
+        assertThat(second.getInteger("i"), is(2));
+        assertThat(iterator.next().body(), is(new byte[0]));
+        assertThat(iterator.next().bodyAsString(), is("fourth"));
+    }
+
+    @Test
+    public void testColumnarMessagesMaterializeOnModification() throws Exception {
+        MessageSet input = new MessageSet(0);
+        input.add(Message.empty().withString("a", "1").withInteger("i", 1).build());
+        input.add(Message.empty().withString("a", "2").withInteger("i", 2).build());
+        ConversionContext columnar = columnar();
+        Message message = roundTrip(columnar, input).iterator().next();
+        message.setString("b", "added");
+        message.removeInteger("i");
+        assertThat(((ColumnarMessage) message).properties().isModified(), is(true));
+        MessageSet reencoded = new MessageSet(0).add(message);
+        Message output = roundTrip(context, roundTrip(columnar, reencoded)).iterator().next();
+        assertThat(output.getString("a"), is("1"));
+        assertThat(output.getString("b"), is("added"));
+        assertThat(output.hasInteger("i"), is(false));
+    }
+
+    @Test
+    public void testSingleMessageSetsAreWrittenAsRows() throws Exception {
+        MessageSet input = new MessageSet(0).add(Message.empty().withInteger("id", 1).build());
+        Message output = roundTrip(columnar(), input).iterator().next();
+        assertThat(output, instanceOf(LazyMessage.class));
+        assertThat(output.getInteger("id"), is(1));
+    }
+
+    @Test
+    public void testCompressedWriteAndRead() throws Exception {
+        MessageSet input = new MessageSet(42);
+        for (int i = 0; i < 200; i++) {
+            input.add(Message.withBodyAsString("Hello World " + i % 10).withInteger("id", i)
+                             .withString("region", "us-west-2").build());
+        }
+        ByteBuf uncompressed = Unpooled.buffer();
+        columnar().write(MessageSet.class, input, uncompressed);
+        ByteBuf compressed = Unpooled.buffer();
+        columnar().compression(Compression.DEFLATE).write(MessageSet.class, input, compressed);
+        assertThat(compressed.readableBytes(), lessThan(uncompressed.readableBytes() / 2));
+
+        MessageSet output = roundTrip(columnar().compression(Compression.DEFLATE), input);
+        assertThat(output.startOffset(), is(42L));
+        assertThat(output.size(), is(200));
+        int i = 0;
+        for (Message message : output) {
+            assertThat(message.getInteger("id"), is(i));
+            assertThat(message.getString("region"), is("us-west-2"));
+            assertThat(message.bodyAsString(), is("Hello World " + i % 10));
+            i++;
+        }
+    }
+
+    @Test
+    public void testIncompressibleSetsAreWrittenUncompressed() throws Exception {
+        MessageSet input = new MessageSet(0);
+        Random random = new Random(7);
+        for (int i = 0; i < 4; i++) {
+            byte[] body = new byte[256];
+            random.nextBytes(body);
+            input.add(Message.withBody(body).build());
+        }
+        ByteBuf uncompressed = Unpooled.buffer();
+        columnar().write(MessageSet.class, input, uncompressed);
+        ByteBuf buffer = Unpooled.buffer();
+        columnar().compression(Compression.DEFLATE).write(MessageSet.class, input, buffer);
+        // Only the codec byte is added
+        assertThat(buffer.readableBytes(), is(uncompressed.readableBytes() + 1));
+        MessageSet output = columnar().compression(Compression.DEFLATE).read(MessageSet.class, buffer);
+        assertThat(output.iterator().next().body(), is(input.iterator().next().body()));
+    }
+
+    @Test(expectedExceptions = HydraRuntimeException.class)
+    public void testCompressedSetDeclaringAnOversizeLengthIsRejected() throws Exception {
+        columnar().compression(Compression.DEFLATE).read(MessageSet.class,
+                forgedCompressedSet(MessageSetConverter.MAX_DECOMPRESSED_LENGTH + 1, 0));
+    }
+
+    @Test(expectedExceptions = HydraRuntimeException.class)
+    public void testCompressedSetDeclaringMoreBytesThanSentIsRejected() throws Exception {
+        columnar().compression(Compression.DEFLATE).read(MessageSet.class, forgedCompressedSet(0, 1000));
+    }
+
+    @Test(expectedExceptions = HydraRuntimeException.class)
+    public void testCompressedSetInflatingBeyondItsDeclaredLengthIsRejected() throws Exception {
+        columnar().compression(Compression.DEFLATE).read(MessageSet.class, forgedCompressedSet(16, 0));
+    }
+
+    @Test
+    public void testCompressionRequiresCompactEncoding() throws Exception {
+        assertThat(ConversionContext.base().compression(Compression.DEFLATE).compression(), is(Compression.NONE));
+        MessageSet input = new MessageSet(0).add(Message.withBodyAsString("a").build())
+                                            .add(Message.withBodyAsString("b").build());
+        ConversionContext rows = ConversionContext.base()
+                .register(Message.class, new MessageConverter())
+                .register(MessageProperties.class, new MessagePropertiesConverter())
+                .register(MessageSet.class, new MessageSetConverter())
+                .compression(Compression.DEFLATE);
+        assertThat(roundTrip(rows, input).size(), is(2));
+    }
+
+    private ConversionContext columnar() {
+        return ConversionContext.base()
+                                .register(Message.class, new MessageConverter())
+                                .register(MessageProperties.class, new MessagePropertiesConverter())
+                                .register(MessageSet.class, new MessageSetConverter())
+                                .compact(true)
+                                .columnar(true);
+    }
+
+    /**
+     * A genuinely compressed set, redeclared as decompressing to length bytes, and as extraCompressedLength bytes
+     * longer than it is.
+     */
+    private ByteBuf forgedCompressedSet(int length, int extraCompressedLength) {
+        MessageSet input = new MessageSet(0);
+        for (int i = 0; i < 100; i++) {
+            input.add(Message.withBodyAsString("Hello World").build());
+        }
+        ByteBuf buffer = Unpooled.buffer();
+        columnar().compression(Compression.DEFLATE).write(MessageSet.class, input, buffer);
+        VarInts.readSignedLong(buffer);
+        VarInts.readUnsignedInt(buffer);
+        assertThat(buffer.readByte(), is((byte) Compression.DEFLATE.id()));
+        VarInts.readUnsignedInt(buffer);
+        int compressedLength = VarInts.readUnsignedInt(buffer);
+        ByteBuf forged = Unpooled.buffer();
+        VarInts.writeSignedLong(forged, 0);
+        VarInts.writeUnsignedInt(forged, input.size());
+        forged.writeByte(Compression.DEFLATE.id());
+        VarInts.writeUnsignedInt(forged, length);
+        VarInts.writeUnsignedInt(forged, compressedLength + extraCompressedLength);
+        return forged.writeBytes(buffer);
+    }
+
+    private MessageSet roundTrip(ConversionContext context, MessageSet input) {
+        ByteBuf buffer = Unpooled.buffer();
+        context.write(MessageSet.class, input, buffer);
+        MessageSet output = context.read(MessageSet.class, buffer);
+        assertThat(buffer.isReadable(), is(false));
+        return output;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type.converters;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class StringCacheTest {
+
+    @Test
+    public void testHitsReturnCachedInstance() throws Exception {
+        StringCache cache = new StringCache(16, 32);
+        ByteBuf buffer = Unpooled.copiedBuffer("xxfirstNamefirstName", CharsetUtil.UTF_8);
+        String first = cache.get(buffer, 2, 9);
+        assertThat(first, is("firstName"));
+        assertThat(cache.get(buffer, 11, 9), sameInstance(first));
+        cache.clear();
+        assertThat(cache.get(buffer, 11, 9), not(sameInstance(first)));
+    }
+
+    @Test
+    public void testCollisionsReplaceSlot() throws Exception {
+        StringCache cache = new StringCache(1, 32);
+        ByteBuf buffer = Unpooled.copiedBuffer("ab", CharsetUtil.UTF_8);
+        assertThat(cache.get(buffer, 0, 1), is("a"));
+        assertThat(cache.get(buffer, 1, 1), is("b"));
+        assertThat(cache.get(buffer, 0, 1), is("a"));
+        assertThat(cache.get(buffer, 0, 2), is("ab"));
+    }
+
+    @Test
+    public void testLongStringsBypassCache() throws Exception {
+        StringCache cache = new StringCache(16, 4);
+        ByteBuf buffer = Unpooled.copiedBuffer("topicName", CharsetUtil.UTF_8);
+        String first = cache.get(buffer, 0, 9);
+        assertThat(first, is("topicName"));
+        assertThat(cache.get(buffer, 0, 9), not(sameInstance(first)));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSizeMustBePowerOfTwo() throws Exception {
+        new StringCache(12, 32);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type.converters;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class Utf8Test {
+
+    @DataProvider
+    public Object[][] strings() {
+        return new Object[][]{
+                {""},
+                {"firstName"},
+                {"Zürich"},
+                {"naïve café"},
+                {"日本語"},
+                {"emoji 😀 pair"},
+                {"unpaired \uD83D high"},
+                {"unpaired \uDE00 low"},
+                {"trailing \uD83D"}
+        };
+    }
+
+    @Test(dataProvider = "strings")
+    public void testMatchesStringGetBytes(String value) throws Exception {
+        byte[] expected = value.getBytes(CharsetUtil.UTF_8);
+        assertThat(Utf8.length(value), is(expected.length));
+        ByteBuf buffer = Unpooled.buffer(1);
+        buffer.writeByte(7);
+        Utf8.write(buffer, value, Utf8.length(value));
+        assertThat(buffer.readableBytes(), is(1 + expected.length));
+        byte[] actual = new byte[expected.length];
+        buffer.getBytes(1, actual);
+        assertThat(actual, is(expected));
+    }
+
+    @Test(dataProvider = "strings")
+    public void testStringConverterRoundTrip(String value) throws Exception {
+        ByteBuf buffer = Unpooled.buffer();
+        new StringConverter().write(null, value, buffer);
+        StringConverter.writeCompact(buffer, value);
+        String expected = new String(value.getBytes(CharsetUtil.UTF_8), CharsetUtil.UTF_8);
+        assertThat(new StringConverter().read(null, buffer), is(expected));
+        assertThat(StringConverter.readCompact(buffer), is(expected));
+        assertThat(buffer.isReadable(), is(false));
+    }
+
+    @Test
+    public void testShortStringsAreDecodedOnce() throws Exception {
+        ByteBuf buffer = Unpooled.buffer();
+        StringConverter.writeCompact(buffer, "messageNumber");
+        StringConverter.writeCompact(buffer, "messageNumber");
+        String first = StringConverter.readCompact(buffer);
+        String second = StringConverter.readCompact(buffer);
+        assertThat(second, is("messageNumber"));
+        assertThat(second, sameInstance(first));
+    }
+}
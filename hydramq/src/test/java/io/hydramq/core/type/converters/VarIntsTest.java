@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.core.type.converters;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class VarIntsTest {
+
+    @Test
+    public void testUnsignedRoundTrip() throws Exception {
+        ByteBuf buffer = Unpooled.buffer();
+        int[] ints = {0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, -1};
+        long[] longs = {0L, 127L, 128L, 1L << 35, Long.MAX_VALUE, -1L};
+        for (int value : ints) {
+            VarInts.writeUnsignedInt(buffer, value);
+        }
+        for (long value : longs) {
+            VarInts.writeUnsignedLong(buffer, value);
+        }
+        for (int value : ints) {
+            int index = buffer.readerIndex();
+            assertThat(VarInts.sizeAt(buffer, index), is(VarInts.sizeOfUnsignedInt(value)));
+            assertThat(VarInts.readUnsignedInt(buffer), is(value));
+        }
+        for (long value : longs) {
+            assertThat(VarInts.sizeAt(buffer, buffer.readerIndex()), is(VarInts.sizeOfUnsignedLong(value)));
+            assertThat(VarInts.readUnsignedLong(buffer), is(value));
+        }
+        assertThat(buffer.isReadable(), is(false));
+    }
+
+    @Test
+    public void testSignedRoundTrip() throws Exception {
+        ByteBuf buffer = Unpooled.buffer();
+        int[] ints = {0, -1, 1, -64, 63, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        long[] longs = {0L, -1L, 1L, -1234567890123L, Long.MIN_VALUE, Long.MAX_VALUE};
+        for (int value : ints) {
+            VarInts.writeSignedInt(buffer, value);
+        }
+        for (long value : longs) {
+            VarInts.writeSignedLong(buffer, value);
+        }
+        for (int value : ints) {
+            assertThat(VarInts.readSignedInt(buffer), is(value));
+        }
+        for (long value : longs) {
+            assertThat(VarInts.readSignedLong(buffer), is(value));
+        }
+        assertThat(buffer.isReadable(), is(false));
+    }
+
+    @Test
+    public void testSmallNegativeValuesTakeOneByte() throws Exception {
+        ByteBuf buffer = Unpooled.buffer();
+        VarInts.writeSignedInt(buffer, -64);
+        VarInts.writeSignedLong(buffer, -64L);
+        assertThat(buffer.readableBytes(), is(2));
+    }
+}
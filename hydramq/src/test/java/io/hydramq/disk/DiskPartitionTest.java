@@ -23,6 +23,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -103,6 +106,32 @@ public class DiskPartitionTest extends PersistenceTestsBase {
         }
     }
 
+    @Test
+    public void testExpiredReadsAreNotAnsweredOnTheTimerThread() throws Exception {
+        try (Partition partition = partition(10)) {
+            String thread = partition.read(0, 10, Duration.ofMillis(10))
+                                     .thenApply(messageSet -> Thread.currentThread().getName())
+                                     .get(5, TimeUnit.SECONDS);
+            assertThat(thread, startsWith("hydra-read-expiry"));
+        }
+    }
+
+    @Test
+    public void testCancelledReadsAreDropped() throws Exception {
+        try (DiskPartition partition = (DiskPartition) partition(10)) {
+            CompletableFuture<MessageSet> cancelled = partition.read(0, 10, Duration.ofSeconds(30));
+            CompletableFuture<MessageSet> waiting = partition.read(0, 10, Duration.ofSeconds(30));
+            assertThat(partition.delayedReads(), is(2));
+
+            cancelled.cancel(false);
+            assertThat(partition.delayedReads(), is(1));
+
+            partition.write(Message.empty().build()).join();
+            assertThat(waiting.get(5, TimeUnit.SECONDS).size(), is(1));
+            assertThat(partition.delayedReads(), is(0));
+        }
+    }
+
     @Test
     public void testPartitionInfo() throws Exception {
         try (Partition partition = partition(10)) {
@@ -192,6 +221,28 @@ public class DiskPartitionTest extends PersistenceTestsBase {
         assertThat(Files.exists(segmentsDirectory.resolve(Paths.get("0000000000000000110"))), is(true));
     }
 
+    @Test
+    public void testBatchWriteAcrossSegments() throws Exception {
+        Path partitionDirectory = partitionDirectory();
+        Path segmentsDirectory = segmentsDirectory(partitionDirectory);
+        try (Partition partition = partition(partitionDirectory, 10)) {
+            partition.write(numberedMessage(0)).join();
+            List<Message> messages = new ArrayList<>();
+            for (int i = 1; i < 25; i++) {
+                messages.add(numberedMessage(i));
+            }
+            partition.write(messages).join();
+            MessageSet messageSet = partition.read(0, 25, Duration.ofMillis(1000)).join();
+            assertThat(messageSet.size(), is(25));
+            int expectedMessageNumber = 0;
+            for (Message message : messageSet) {
+                assertThat(message.getInteger("messageNumber"), is(expectedMessageNumber++));
+            }
+        }
+        assertThat(Files.list(segmentsDirectory).count(), is(3L));
+        assertThat(Files.exists(segmentsDirectory.resolve(segmentName(20))), is(true));
+    }
+
     @Test
     public void testReadSingleSegment() throws Exception {
         Path partitionDirectory = partitionDirectory();
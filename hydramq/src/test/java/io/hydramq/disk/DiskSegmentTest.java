@@ -19,12 +19,28 @@
 
 package io.hydramq.disk;
 
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+import com.codahale.metrics.MetricRegistry;
 import io.hydramq.Message;
+import io.hydramq.MessageProperties;
 import io.hydramq.MessageSet;
+import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.PropertyKeyDictionary;
+import io.hydramq.core.type.converters.MessageConverter;
+import io.hydramq.core.type.converters.MessagePropertiesConverter;
+import io.hydramq.disk.flushing.FlushScheduler;
 import io.hydramq.exceptions.HydraRuntimeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
 import org.hamcrest.CoreMatchers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -76,7 +92,8 @@ public class DiskSegmentTest extends PersistenceTestsBase {
             assertThat(segment.size(), is(1));
         }
         assertThat(Files.size(segmentIndex), is(12L));
-        assertThat(Files.size(segmentData), is(12L));
+        // Record size, then a one byte presence bitmap and a one byte body length in the compact format
+        assertThat(Files.size(segmentData), is(6L));
         try (DiskSegment segment = new DiskSegment(segmentDirectory)) {
             MessageSet messages = new MessageSet(0);
             assertThat(segment.size(), is(1));
@@ -134,6 +151,125 @@ public class DiskSegmentTest extends PersistenceTestsBase {
         }
     }
 
+    @Test
+    public void testBatchWrite() throws Exception {
+        Path segmentDirectory = getOutputDirectory().resolve("segment8");
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            messages.add(Message.withBodyAsString("Hello world!").withInteger("messageNumber", i).build());
+        }
+        try (DiskSegment segment = new DiskSegment(segmentDirectory)) {
+            segment.write(Message.empty().withInteger("messageNumber", -1).build());
+            segment.write(messages);
+            assertThat(segment.size(), is(101));
+        }
+        assertThat(Files.size(segmentDirectory.resolve("segment.idx")), is(101L * DiskSegment.INDEX_ENTRY_SIZE));
+        try (DiskSegment segment = new DiskSegment(segmentDirectory)) {
+            assertThat(segment.size(), is(101));
+            assertThat(segment.read(0).getInteger("messageNumber"), is(-1));
+            MessageSet messageSet = new MessageSet(0);
+            segment.read(1, 100, messageSet);
+            int expectedMessageNumber = 0;
+            for (Message message : messageSet) {
+                assertThat(message.bodyAsString(), is("Hello world!"));
+                assertThat(message.getInteger("messageNumber"), is(expectedMessageNumber++));
+            }
+            assertThat(expectedMessageNumber, is(100));
+        }
+    }
+
+    @Test
+    public void testKeyDictionaryIsPersisted() throws Exception {
+        Path segmentDirectory = getOutputDirectory().resolve("segment4");
+        try (DiskSegment segment = new DiskSegment(segmentDirectory)) {
+            for (int i = 0; i < 100; i++) {
+                segment.write(Message.withBodyAsString("Hello world!").withString("firstName", "Jimmie" + i)
+                                     .withInteger("messageNumber", i).build());
+            }
+            assertThat(segment.propertyKeys(), contains("firstName", "messageNumber"));
+        }
+        assertThat(Files.size(segmentDirectory.resolve("segment.keys")),
+                is((long) (4 + "firstName".length() + 4 + "messageNumber".length())));
+        try (DiskSegment segment = new DiskSegment(segmentDirectory)) {
+            segment.write(Message.withBodyAsString("Hello world!").withString("lastName", "Fulton").build());
+            assertThat(segment.propertyKeys(), contains("firstName", "messageNumber", "lastName"));
+            assertThat(segment.read(42).getString("firstName"), is("Jimmie42"));
+            assertThat(segment.read(42).getInteger("messageNumber"), is(42));
+            assertThat(segment.read(100).getString("lastName"), is("Fulton"));
+        }
+    }
+
+    @Test
+    public void testSegmentWithoutKeyDictionaryIsReadable() throws Exception {
+        Path segmentDirectory = getOutputDirectory().resolve("segment5");
+        try (DiskSegment segment = new DiskSegment(segmentDirectory)) {
+            // An empty segment has no records that could refer to the dictionary
+            Files.delete(segmentDirectory.resolve("segment.keys"));
+            Files.delete(segmentDirectory.resolve("segment.format"));
+        }
+        ByteBuf record = Unpooled.buffer();
+        ConversionContext.base()
+                         .register(Message.class, new MessageConverter())
+                         .register(MessageProperties.class, new MessagePropertiesConverter())
+                         .write(Message.withBodyAsString("legacy").withString("firstName", "Jimmie").build(),
+                                 record);
+        ByteBuffer data = ByteBuffer.allocate(4 + record.readableBytes());
+        data.putInt(record.readableBytes()).put(record.nioBuffer()).flip();
+        Files.write(segmentDirectory.resolve("segment.dat"), data.array());
+        Files.write(segmentDirectory.resolve("segment.idx"), new byte[DiskSegment.INDEX_ENTRY_SIZE]);
+        try (DiskSegment segment = new DiskSegment(segmentDirectory)) {
+            assertThat(segment.format(), is(DiskSegment.FORMAT_PLAIN));
+            segment.write(Message.withBodyAsString("current").withString("firstName", "James").build());
+            assertThat(segment.propertyKeys(), empty());
+            assertThat(segment.read(0).getString("firstName"), is("Jimmie"));
+            assertThat(segment.read(1).getString("firstName"), is("James"));
+        }
+        assertThat(Files.exists(segmentDirectory.resolve("segment.keys")), is(false));
+        assertThat(Files.exists(segmentDirectory.resolve("segment.format")), is(false));
+    }
+
+    @Test
+    public void testSegmentWithKeyDictionaryPredatingFormatIsReadable() throws Exception {
+        Path segmentDirectory = getOutputDirectory().resolve("segment6");
+        try (DiskSegment segment = new DiskSegment(segmentDirectory)) {
+            Files.delete(segmentDirectory.resolve("segment.format"));
+        }
+        ByteBuf record = Unpooled.buffer();
+        ConversionContext.base()
+                         .register(Message.class, new MessageConverter())
+                         .register(MessageProperties.class, new MessagePropertiesConverter())
+                         .keyDictionary(new PropertyKeyDictionary(Collections.singletonList("firstName")))
+                         .write(Message.withBodyAsString("dictionary").withString("firstName", "Jimmie")
+                                       .withLong("timestamp", 42L).build(), record);
+        ByteBuffer data = ByteBuffer.allocate(4 + record.readableBytes());
+        data.putInt(record.readableBytes()).put(record.nioBuffer()).flip();
+        Files.write(segmentDirectory.resolve("segment.dat"), data.array());
+        Files.write(segmentDirectory.resolve("segment.idx"), new byte[DiskSegment.INDEX_ENTRY_SIZE]);
+        ByteBuffer keys = ByteBuffer.allocate(4 + "firstName".length());
+        keys.putInt("firstName".length()).put("firstName".getBytes(CharsetUtil.UTF_8));
+        Files.write(segmentDirectory.resolve("segment.keys"), keys.array());
+        try (DiskSegment segment = new DiskSegment(segmentDirectory)) {
+            assertThat(segment.format(), is(DiskSegment.FORMAT_KEY_DICTIONARY));
+            segment.write(Message.withBodyAsString("current").withString("firstName", "James").build());
+            assertThat(segment.read(0).getString("firstName"), is("Jimmie"));
+            assertThat(segment.read(0).getLong("timestamp"), is(42L));
+            assertThat(segment.read(1).getString("firstName"), is("James"));
+        }
+    }
+
+    @Test
+    public void testNewSegmentRecordsCurrentFormat() throws Exception {
+        Path segmentDirectory = getOutputDirectory().resolve("segment7");
+        try (DiskSegment segment = new DiskSegment(segmentDirectory)) {
+            assertThat(segment.format(), is(DiskSegment.CURRENT_FORMAT));
+            segment.write(Message.withBodyAsString("compact").withLong("timestamp", -1L).build());
+        }
+        try (DiskSegment segment = new DiskSegment(segmentDirectory)) {
+            assertThat(segment.format(), is(DiskSegment.FORMAT_COMPACT));
+            assertThat(segment.read(0).getLong("timestamp"), is(-1L));
+        }
+    }
+
     @Test
     public void testNegativeOffset() throws Exception {
         try (DiskSegment segment = new DiskSegment(segmentDirectory())) {
@@ -148,6 +284,22 @@ public class DiskSegmentTest extends PersistenceTestsBase {
         }
     }
 
+    @Test
+    public void testDurabilityLagIsReportedPerTopicPartition() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        try (FlushScheduler flushScheduler = new FlushScheduler(Duration.ofSeconds(1), 1, metricRegistry, Clock.systemUTC());
+             DiskSegment first = new DiskSegment(segmentDirectory("topic1"), flushScheduler);
+             DiskSegment second = new DiskSegment(segmentDirectory("topic2"), flushScheduler)) {
+            assertThat(metricRegistry.getGauges().keySet(), hasItems(
+                    MetricRegistry.name(FlushScheduler.class, "durabilityLag", "topic1", "0"),
+                    MetricRegistry.name(FlushScheduler.class, "durabilityLag", "topic2", "0")));
+        }
+    }
+
+    private Path segmentDirectory(String topicName) {
+        return getOutputDirectory().resolve(topicName).resolve("partitions").resolve("0").resolve("segments").resolve("0");
+    }
+
     private void failExpectedOutOfBounds() {
         fail("HydraRuntimeException expected for index out of range");
     }
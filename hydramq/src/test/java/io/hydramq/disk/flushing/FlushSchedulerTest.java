@@ -0,0 +1,287 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.disk.flushing;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codahale.metrics.MetricRegistry;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Apart from {@link #testConcurrentFlushesAreCapped()}, schedulers here are ticked by hand against a manual clock,
+ * with fixed flush delays and flushes run on the ticking thread.
+ *
+ * @author jfulton
+ */
+public class FlushSchedulerTest {
+
+    @Test
+    public void testDirtyTargetIsFlushedOnce() throws Exception {
+        ManualClock clock = new ManualClock();
+        AtomicInteger flushes = new AtomicInteger();
+        try (FlushScheduler scheduler = scheduler(clock, 50)) {
+            FlushScheduler.Registration registration = scheduler.register("partition", flushes::incrementAndGet);
+            for (int i = 0; i < 100; i++) {
+                registration.dirty();
+            }
+            assertThat(scheduler.pendingFlushes(), is(1));
+
+            clock.set(49);
+            scheduler.tick();
+            assertThat(flushes.get(), is(0));
+
+            clock.set(50);
+            scheduler.tick();
+            scheduler.tick();
+            assertThat(flushes.get(), is(1));
+            assertThat(scheduler.pendingFlushes(), is(0));
+            assertThat(scheduler.lagMillis("partition"), is(0L));
+        }
+    }
+
+    @Test
+    public void testLagIsReportedUntilFlushed() throws Exception {
+        ManualClock clock = new ManualClock();
+        try (FlushScheduler scheduler = scheduler(clock, 100)) {
+            FlushScheduler.Registration registration = scheduler.register("partition", () -> {});
+            assertThat(scheduler.lagMillis("partition"), is(0L));
+            clock.set(10);
+            registration.dirty();
+            clock.set(30);
+            assertThat(scheduler.lagMillis("partition"), is(20L));
+            registration.close();
+            assertThat(scheduler.lagMillis("partition"), is(0L));
+        }
+    }
+
+    @Test
+    public void testConcurrentFlushesAreCapped() throws Exception {
+        ManualClock clock = new ManualClock();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch flushed = new CountDownLatch(10);
+        try (FlushScheduler scheduler = new FlushScheduler(Duration.ofMillis(10), 2, new MetricRegistry(), clock)) {
+            for (int i = 0; i < 10; i++) {
+                scheduler.register("partition" + i, () -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    inFlight.decrementAndGet();
+                    flushed.countDown();
+                }).dirty();
+            }
+            clock.set(10);
+            assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(scheduler.pendingFlushes(), is(0));
+            release.countDown();
+            assertThat(flushed.await(5, TimeUnit.SECONDS), is(true));
+        }
+        assertThat(maxInFlight.get(), is(2));
+    }
+
+    @Test
+    public void testCloseFlushesPendingTargets() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        FlushScheduler scheduler = scheduler(new ManualClock(), 100);
+        scheduler.register("partition", flushes::incrementAndGet).dirty();
+        assertThat(flushes.get(), is(0));
+        scheduler.close();
+        assertThat(flushes.get(), is(1));
+    }
+
+    @Test
+    public void testFailedFlushIsRetriedFromANewDeadline() throws Exception {
+        ManualClock clock = new ManualClock();
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicInteger flushes = new AtomicInteger();
+        try (FlushScheduler scheduler = scheduler(clock, 100, 50)) {
+            scheduler.register("failing", () -> {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IOException("Disk unavailable");
+                }
+            }).dirty();
+            FlushScheduler.Registration healthy = scheduler.register("healthy", flushes::incrementAndGet);
+            clock.set(100);
+            scheduler.tick();
+            assertThat(attempts.get(), is(1));
+            assertThat(scheduler.pendingFlushes(), is(1));
+            assertThat(scheduler.lagMillis("failing"), is(100L));
+
+            healthy.dirty();
+            clock.set(149);
+            scheduler.tick();
+            assertThat(flushes.get(), is(0));
+
+            clock.set(150);
+            scheduler.tick();
+            assertThat(flushes.get(), is(1));
+            assertThat(attempts.get(), is(1));
+
+            clock.set(199);
+            scheduler.tick();
+            assertThat(attempts.get(), is(1));
+
+            clock.set(200);
+            scheduler.tick();
+            assertThat(attempts.get(), is(2));
+            assertThat(scheduler.pendingFlushes(), is(0));
+            assertThat(scheduler.lagMillis("failing"), is(0L));
+        }
+    }
+
+    @Test
+    public void testTargetsDirtiedTogetherAreFlushedAtTheirOwnDeadlines() throws Exception {
+        ManualClock clock = new ManualClock();
+        List<Integer> flushed = new ArrayList<>();
+        try (FlushScheduler scheduler = scheduler(clock, 90, 50, 70)) {
+            for (int i = 0; i < 3; i++) {
+                int target = i;
+                scheduler.register("partition" + i, () -> flushed.add(target)).dirty();
+            }
+            clock.set(49);
+            scheduler.tick();
+            assertThat(flushed, is(empty()));
+
+            clock.set(50);
+            scheduler.tick();
+            assertThat(flushed, contains(1));
+
+            clock.set(70);
+            scheduler.tick();
+            assertThat(flushed, contains(1, 2));
+
+            clock.set(89);
+            scheduler.tick();
+            assertThat(flushed, contains(1, 2));
+
+            clock.set(90);
+            scheduler.tick();
+            assertThat(flushed, contains(1, 2, 0));
+        }
+    }
+
+    @Test
+    public void testJitteredDelaysFallWithinTheSecondHalfOfTheInterval() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            assertThat(FlushScheduler.JITTERED_DELAYS.applyAsLong(100), allOf(greaterThanOrEqualTo(50L),
+                    lessThanOrEqualTo(100L)));
+        }
+    }
+
+    /**
+     * @return a scheduler with a 100ms interval, handing out the given flush delays to registrations in order
+     */
+    private FlushScheduler scheduler(Clock clock, long... delays) {
+        Deque<Long> remaining = new ArrayDeque<>();
+        for (long delay : delays) {
+            remaining.add(delay);
+        }
+        return new FlushScheduler(Duration.ofMillis(100), new MetricRegistry(), clock, null, new DirectExecutor(),
+                interval -> remaining.removeFirst());
+    }
+
+    private static class DirectExecutor extends AbstractExecutorService {
+
+        private volatile boolean shutdown;
+
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) {
+            return shutdown;
+        }
+    }
+
+    private static class ManualClock extends Clock {
+
+        private volatile long millis;
+
+        private void set(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
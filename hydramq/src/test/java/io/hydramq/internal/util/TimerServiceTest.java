@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.internal.util;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.util.Timeout;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class TimerServiceTest {
+
+    private TimerService timerService;
+
+    @BeforeMethod
+    public void setup() {
+        timerService = new TimerService("test-timer", Duration.ofMillis(5));
+    }
+
+    @AfterMethod
+    public void cleanup() {
+        timerService.close();
+    }
+
+    @Test
+    public void testWithinFailsIncompleteFuture() throws Exception {
+        CompletableFuture<String> result = timerService.within(new CompletableFuture<>(), Duration.ofMillis(20));
+        try {
+            result.get();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(TimeoutException.class));
+        }
+        assertThat(result.isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    public void testWithinCompletesWithDefaultValue() throws Exception {
+        assertThat(timerService.within(new CompletableFuture<>(), Duration.ofMillis(20), "default").get(), is("default"));
+    }
+
+    @Test
+    public void testCompletionCancelsTimeout() throws Exception {
+        AtomicInteger timeouts = new AtomicInteger();
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Timeout timeout = timerService.onTimeout(future, Duration.ofMillis(20), timeouts::incrementAndGet);
+        future.complete("done");
+        assertThat(timeout.isCancelled(), is(true));
+        Thread.sleep(100);
+        assertThat(timeouts.get(), is(0));
+    }
+
+    @Test
+    public void testWithinFollowsGuardedFuture() throws Exception {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> result = timerService.within(future, Duration.ofSeconds(60));
+        future.complete("reply");
+        assertThat(result.get(), is("reply"));
+    }
+}
@@ -21,16 +21,26 @@ package io.hydramq.network;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
 import io.hydramq.HydraServer;
+import io.hydramq.Message;
+import io.hydramq.PartitionId;
+import io.hydramq.Topic;
 import io.hydramq.TopicManager;
 import io.hydramq.TopicManagers;
+import io.hydramq.core.net.netty.Transport;
 import io.hydramq.disk.DiskTopicManager;
 import io.hydramq.disk.PersistenceTestsBase;
 import io.hydramq.listeners.DiscoverTopicsListener;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.unix.DomainSocketAddress;
 import org.slf4j.Logger;
+import org.testng.SkipException;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -161,6 +171,51 @@ public class NetworkTopicManagerTest extends PersistenceTestsBase {
     }
 
 
+    @Test(timeOut = 5000)
+    public void testLocal() throws Exception {
+        String localName = "hydramq-" + System.nanoTime();
+        HydraServer localServer = new HydraServer(diskTopicManager, 0).local(localName);
+        localServer.start().join();
+        try {
+            NetworkTopicManager topicManager = new NetworkTopicManager();
+            topicManager.connect(new LocalAddress(localName)).join();
+            Topic topic = topicManager.topic("local");
+            PartitionId id = getPartitionId(topic);
+            topic.write(id, Message.withBodyAsString("Hello").withInteger("count", 1).build()).join();
+            Message read = topic.read(id, 0, 1).join().iterator().next();
+            assertThat(read.bodyAsString(), is("Hello"));
+            assertThat(read.getInteger("count"), is(1));
+            assertThat(diskTopicManager.topic("local").read(id, 0, 1).join().size(), is(1));
+            // In-VM topics get channels of their own rather than streams of a socket
+            assertThat(topicManager.sockets(), is(0));
+            topicManager.close();
+        } finally {
+            localServer.stop().join();
+        }
+    }
+
+    @Test(timeOut = 5000)
+    public void testDomainSocket() throws Exception {
+        if (!Transport.EPOLL.isAvailable()) {
+            throw new SkipException("Domain sockets need the epoll transport");
+        }
+        Path socketPath = Paths.get(System.getProperty("java.io.tmpdir"), "hydramq-" + System.nanoTime() + ".sock");
+        HydraServer domainServer = new HydraServer(diskTopicManager, 0).domainSocket(socketPath);
+        domainServer.start().join();
+        try {
+            NetworkTopicManager topicManager = new NetworkTopicManager();
+            topicManager.connect(new DomainSocketAddress(socketPath.toFile())).join();
+            Topic topic = topicManager.topic("domain");
+            PartitionId id = getPartitionId(topic);
+            topic.write(id, Message.withBodyAsString("Hello").build()).join();
+            assertThat(diskTopicManager.topic("domain").read(id, 0, 1).join().size(), is(1));
+            topicManager.close();
+        } finally {
+            domainServer.stop().join();
+        }
+        assertThat(Files.exists(socketPath), is(false));
+    }
+
     private InetSocketAddress endpoint() {
         return new InetSocketAddress("localhost", port);
     }
@@ -21,15 +21,29 @@ package io.hydramq.network;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import io.hydramq.HydraServer;
+import io.hydramq.Message;
+import io.hydramq.MessageSet;
 import io.hydramq.PartitionId;
+import io.hydramq.Subscription;
 import io.hydramq.Topic;
+import io.hydramq.core.type.Compression;
+import io.hydramq.core.type.converters.ColumnarMessage;
 import io.hydramq.disk.DiskTopicManager;
 import io.hydramq.disk.PersistenceTestsBase;
 import io.hydramq.listeners.PartitionFlags;
+import io.hydramq.subscriptions.LockState;
 import org.slf4j.Logger;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -128,6 +142,231 @@ public class NetworkTopicTest extends PersistenceTestsBase {
         }).join();
     }
 
+    @Test
+    public void testMessagesRoundTripWithNegotiatedKeyDictionary() throws Exception {
+        Topic diskTopic = diskTopicManager.topic("topic1");
+        PartitionId id = getPartitionId(diskTopic);
+        diskTopic.write(id, Message.withBodyAsString("seed").withString("seenOnDisk", "yes").build()).join();
+
+        NetworkTopic networkTopic = new NetworkTopic("topic1").propertyKeys(Collections.singletonList("proposed"));
+        networkTopic.connect(endpoint()).join();
+        assertThat(networkTopic.getPropertyKeys(), contains("proposed", "seenOnDisk"));
+        networkTopic.write(id, Message.withBodyAsString("Hello")
+                                      .withString("proposed", "a")
+                                      .withString("seenOnDisk", "b")
+                                      .withInteger("unknown", 3)
+                                      .build()).join();
+
+        Message written = diskTopic.read(id, 1, 1).join().iterator().next();
+        assertThat(written.getString("proposed"), is("a"));
+        assertThat(written.getString("seenOnDisk"), is("b"));
+        assertThat(written.getInteger("unknown"), is(3));
+
+        Message read = networkTopic.read(id, 1, 1).join().iterator().next();
+        assertThat(read.bodyAsString(), is("Hello"));
+        assertThat(read.getString("proposed"), is("a"));
+        assertThat(read.getString("seenOnDisk"), is("b"));
+        assertThat(read.getInteger("unknown"), is(3));
+    }
+
+    @Test
+    public void testMessageSetsAreReadColumnWise() throws Exception {
+        Topic diskTopic = diskTopicManager.topic("topic1");
+        PartitionId id = getPartitionId(diskTopic);
+        for (int i = 0; i < 20; i++) {
+            diskTopic.write(id, Message.withBodyAsString("Message " + i).withInteger("messageNumber", i)
+                                       .withLong("timestamp", 1000L + i).build()).join();
+        }
+        NetworkTopic networkTopic = new NetworkTopic("topic1");
+        networkTopic.connect(endpoint()).join();
+        MessageSet messages = networkTopic.read(id, 0, 20).join();
+        assertThat(messages.size(), is(20));
+        int i = 0;
+        for (Message message : messages) {
+            assertThat(message, instanceOf(ColumnarMessage.class));
+            assertThat(message.getInteger("messageNumber"), is(i));
+            assertThat(message.getLong("timestamp"), is(1000L + i));
+            assertThat(message.bodyAsString(), is("Message " + i));
+            i++;
+        }
+    }
+
+    @Test
+    public void testMessageSetsAreReadCompressed() throws Exception {
+        Topic diskTopic = diskTopicManager.topic("topic1");
+        PartitionId id = getPartitionId(diskTopic);
+        for (int i = 0; i < 20; i++) {
+            diskTopic.write(id, Message.withBodyAsString("Message " + i).withInteger("messageNumber", i).build()).join();
+        }
+        NetworkTopic networkTopic = new NetworkTopic("topic1").compression(Compression.DEFLATE);
+        networkTopic.connect(endpoint()).join();
+        MessageSet messages = networkTopic.read(id, 0, 20).join();
+        assertThat(messages.size(), is(20));
+        int i = 0;
+        for (Message message : messages) {
+            assertThat(message.getInteger("messageNumber"), is(i));
+            assertThat(message.bodyAsString(), is("Message " + i));
+            i++;
+        }
+    }
+
+    @Test
+    public void testMessagesLongerThanMaxFrameLength() throws Exception {
+        Topic diskTopic = diskTopicManager.topic("topic1");
+        PartitionId id = getPartitionId(diskTopic);
+        byte[] body = new byte[NetworkTopic.MAX_FRAME_LENGTH * 3];
+        new Random(42).nextBytes(body);
+        NetworkTopic networkTopic = new NetworkTopic("topic1");
+        networkTopic.connect(endpoint()).join();
+        networkTopic.write(id, Message.withBody(body).withInteger("messageNumber", 0).build()).join();
+        networkTopic.write(id, Message.withBody(body).withInteger("messageNumber", 1).build()).join();
+        MessageSet messages = networkTopic.read(id, 0, 2).join();
+        assertThat(messages.size(), is(2));
+        for (Message message : messages) {
+            assertThat(message.body(), is(body));
+        }
+    }
+
+    @Test
+    public void testBatchWrite() throws Exception {
+        Topic diskTopic = diskTopicManager.topic("topic1");
+        PartitionId id = getPartitionId(diskTopic);
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            messages.add(Message.withBodyAsString("Message " + i).withInteger("messageNumber", i).build());
+        }
+        NetworkTopic networkTopic = new NetworkTopic("topic1");
+        networkTopic.connect(endpoint()).join();
+        networkTopic.write(Collections.singletonMap(id, messages)).join();
+        MessageSet written = diskTopic.read(id, 0, 50).join();
+        assertThat(written.size(), is(50));
+        int i = 0;
+        for (Message message : written) {
+            assertThat(message.getInteger("messageNumber"), is(i));
+            assertThat(message.bodyAsString(), is("Message " + i));
+            i++;
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testSubscriptionPushesMessagesAsTheyAreWritten() throws Exception {
+        Topic diskTopic = diskTopicManager.topic("topic1");
+        PartitionId id = getPartitionId(diskTopic);
+        diskTopic.write(id, Message.withBodyAsString("Before").build()).join();
+        NetworkTopic networkTopic = new NetworkTopic("topic1");
+        networkTopic.connect(endpoint()).join();
+        List<Message> received = new CopyOnWriteArrayList<>();
+        Subscription subscription = networkTopic.subscribe(id, 1, 10, (partitionId, messageSet) -> messageSet.forEach(received::add));
+        for (int i = 0; i < 50; i++) {
+            networkTopic.write(id, Message.withBodyAsString("Message " + i).build()).join();
+        }
+        while (received.size() < 50) {
+            Thread.sleep(10);
+        }
+        for (int i = 0; i < 50; i++) {
+            assertThat(received.get(i).bodyAsString(), is("Message " + i));
+        }
+        assertThat(subscription.nextOffset(), is(51L));
+
+        subscription.cancel().join();
+        networkTopic.write(id, Message.withBodyAsString("After").build()).join();
+        Thread.sleep(100);
+        assertThat(received.size(), is(50));
+    }
+
+    @Test(timeOut = 10_000)
+    public void testSubscriptionWaitsForCredits() throws Exception {
+        Topic diskTopic = diskTopicManager.topic("topic1");
+        PartitionId id = getPartitionId(diskTopic);
+        for (int i = 0; i < 10; i++) {
+            diskTopic.write(id, Message.withBodyAsString("Message " + i).build()).join();
+        }
+        NetworkTopic networkTopic = new NetworkTopic("topic1");
+        networkTopic.connect(endpoint()).join();
+        List<Message> received = new CopyOnWriteArrayList<>();
+        // A single byte is overdrawn by the first MessageSet, and bytes are not granted back as messages are consumed
+        Subscription subscription = networkTopic.subscribe(id, 0, 1, 100, 1, (partitionId, messageSet) -> messageSet.forEach(received::add));
+        Thread.sleep(200);
+        assertThat(received.size(), is(1));
+        subscription.grant(0, Long.MAX_VALUE);
+        while (received.size() < 10) {
+            Thread.sleep(10);
+        }
+        subscription.cancel().join();
+    }
+
+    @Test(timeOut = 10_000)
+    public void testWriteWindowIsAdvertisedByTheServer() throws Exception {
+        Topic diskTopic = diskTopicManager.topic("topic1");
+        PartitionId id = getPartitionId(diskTopic);
+        server.writeWindow(16);
+        NetworkTopic networkTopic = new NetworkTopic("topic1");
+        networkTopic.connect(endpoint()).join();
+        assertThat(networkTopic.getWriteWindow(), is(16));
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            writes.add(networkTopic.write(id, Message.withBodyAsString("Message " + i).build()));
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture[writes.size()])).join();
+        assertThat(diskTopic.read(id, 0, 500).join().size(), is(500));
+    }
+
+    @Test(timeOut = 20_000)
+    public void testRequestsWhileDisconnectedAreReplayedOnReconnect() throws Exception {
+        Topic diskTopic = diskTopicManager.topic("topic1");
+        PartitionId id = getPartitionId(diskTopic);
+        NetworkTopic networkTopic = new NetworkTopic("topic1");
+        networkTopic.connect(endpoint()).join();
+        server.stop().join();
+        while (networkTopic.isConnected()) {
+            Thread.sleep(10);
+        }
+
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            writes.add(networkTopic.write(id, Message.withBodyAsString("Message " + i).build()));
+        }
+        assertThat(writes.get(9).isDone(), is(false));
+
+        server = new HydraServer(diskTopicManager, port);
+        server.start().join();
+        networkTopic.connect(endpoint()).join();
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture[writes.size()])).join();
+        MessageSet messages = networkTopic.read(id, 0, 10).join();
+        int i = 0;
+        for (Message message : messages) {
+            assertThat(message.bodyAsString(), is("Message " + i++));
+        }
+        assertThat(i, is(10));
+        networkTopic.close();
+    }
+
+    @Test(timeOut = 20_000)
+    public void testLockListenersRegisteredWhileDisconnectedAreSentOnReconnect() throws Exception {
+        PartitionId id = getPartitionId(diskTopicManager.topic("topic1"));
+        NetworkTopic networkTopic = new NetworkTopic("topic1");
+        networkTopic.connect(endpoint()).join();
+        server.stop().join();
+        while (networkTopic.isConnected()) {
+            Thread.sleep(10);
+        }
+
+        CountDownLatch locked = new CountDownLatch(1);
+        networkTopic.acquirePartitionLocks("group", (partitionId, state) -> {
+            if (partitionId.equals(id) && state == LockState.LOCKED) {
+                locked.countDown();
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+        assertThat(locked.getCount(), is(1L));
+
+        server = new HydraServer(diskTopicManager, port);
+        server.start().join();
+        networkTopic.connect(endpoint()).join();
+        assertThat(locked.await(10, TimeUnit.SECONDS), is(true));
+        networkTopic.close();
+    }
+
     private InetSocketAddress endpoint() {
         return new InetSocketAddress("localhost", port);
     }
@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class WriteWindowTest {
+
+    @Test
+    public void testWritesBeyondTheWindowWaitTheirTurn() throws Exception {
+        WriteWindow window = new WriteWindow(2, 10);
+        List<CompletableFuture<Void>> acks = new ArrayList<>();
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            writes.add(window.submit(() -> {
+                CompletableFuture<Void> ack = new CompletableFuture<>();
+                acks.add(ack);
+                return ack;
+            }));
+        }
+        assertThat(acks.size(), is(2));
+        assertThat(window.inFlight(), is(2));
+        assertThat(window.queued(), is(3));
+
+        acks.get(0).complete(null);
+        assertThat(writes.get(0).isDone(), is(true));
+        assertThat(acks.size(), is(3));
+
+        acks.get(1).completeExceptionally(new RuntimeException("Failed"));
+        assertThat(writes.get(1).isCompletedExceptionally(), is(true));
+        assertThat(acks.size(), is(4));
+
+        acks.get(3).complete(null);
+        assertThat(writes.get(3).isDone(), is(true));
+        assertThat(writes.get(2).isDone(), is(false));
+        assertThat(acks.size(), is(5));
+        assertThat(window.queued(), is(0));
+    }
+
+    @Test
+    public void testWritesBeyondTheQueueFail() throws Exception {
+        WriteWindow window = new WriteWindow(1, 1);
+        window.submit(CompletableFuture::new);
+        CompletableFuture<Void> queued = window.submit(() -> CompletableFuture.completedFuture(null));
+        CompletableFuture<Void> rejected = window.submit(() -> CompletableFuture.completedFuture(null));
+        assertThat(queued.isDone(), is(false));
+        assertThat(rejected.isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    public void testWideningTheWindowStartsQueuedWrites() throws Exception {
+        WriteWindow window = new WriteWindow(1, 100);
+        window.submit(CompletableFuture::new);
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            writes.add(window.submit(() -> CompletableFuture.completedFuture(null)));
+        }
+        window.limit(2);
+        for (CompletableFuture<Void> write : writes) {
+            assertThat(write.isDone(), is(true));
+        }
+        assertThat(window.inFlight(), is(1));
+    }
+}
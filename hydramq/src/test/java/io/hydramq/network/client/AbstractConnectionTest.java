@@ -27,6 +27,7 @@ import java.util.concurrent.TimeoutException;
 
 import io.hydramq.HydraServer;
 import io.hydramq.PartitionId;
+import io.hydramq.PartitionInfo;
 import io.hydramq.TopicManagers;
 import io.hydramq.disk.PersistenceTestsBase;
 import io.hydramq.internal.util.AsyncUtils;
@@ -38,6 +39,7 @@ import org.testng.annotations.Test;
 
 import static io.hydramq.listeners.Listen.CONTINUOUSLY;
 import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 /**
@@ -104,16 +106,17 @@ public class AbstractConnectionTest extends PersistenceTestsBase {
     }
 
     @Test
-    public void testBlockOnConnection() throws Exception {
+    public void testRequestsWaitForConnectionWithoutBlocking() throws Exception {
         CountDownLatch latch = new CountDownLatch(1);
         NetworkTopic topic = new NetworkTopic("Foo");
-        AsyncUtils.within(CompletableFuture.runAsync(() -> {
-            topic.partitionInfo(PartitionId.create());
-        }), Duration.ofMillis(5000)).whenComplete((aVoid, throwable) -> {
-            logger.error("{}", throwable);
+        CompletableFuture<PartitionInfo> partitionInfo = topic.partitionInfo(PartitionId.create());
+        assertThat(partitionInfo.isDone(), is(false));
+        AsyncUtils.within(partitionInfo, Duration.ofMillis(500)).whenComplete((info, throwable) -> {
             assertThat(throwable.getCause(), instanceOf(TimeoutException.class));
             latch.countDown();
         });
         latch.await();
+        topic.close();
+        assertThat(partitionInfo.isCompletedExceptionally(), is(true));
     }
 }
\ No newline at end of file
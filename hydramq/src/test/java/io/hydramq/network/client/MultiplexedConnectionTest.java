@@ -0,0 +1,166 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.network.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletionException;
+
+import io.hydramq.HydraServer;
+import io.hydramq.Message;
+import io.hydramq.PartitionId;
+import io.hydramq.Topic;
+import io.hydramq.core.net.netty.ChunkedFrameDecoder;
+import io.hydramq.core.net.netty.ChunkedFrameEncoder;
+import io.hydramq.disk.DiskTopicManager;
+import io.hydramq.disk.PersistenceTestsBase;
+import io.hydramq.network.NetworkTopic;
+import io.hydramq.network.server.ProtocolSelector;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class MultiplexedConnectionTest extends PersistenceTestsBase {
+
+    private int port;
+    private HydraServer server;
+    private DiskTopicManager diskTopicManager;
+
+    @BeforeMethod(timeOut = 5000)
+    public void setup() throws IOException {
+        super.setup();
+        diskTopicManager = new DiskTopicManager(messageStoreDirectory());
+        server = new HydraServer(diskTopicManager, 0);
+        port = server.start().join();
+    }
+
+    @AfterMethod(timeOut = 5000)
+    public void cleanup() throws IOException {
+        server.stop().join();
+        diskTopicManager.close();
+        super.cleanup();
+    }
+
+    @Test(timeOut = 10_000)
+    public void testTopicsShareOneSocket() throws Exception {
+        Topic diskTopic1 = diskTopicManager.topic("topic1");
+        Topic diskTopic2 = diskTopicManager.topic("topic2");
+        PartitionId id1 = getPartitionId(diskTopic1);
+        PartitionId id2 = getPartitionId(diskTopic2);
+        try (MultiplexedConnection connection = new MultiplexedConnection()) {
+            NetworkTopic topic1 = new NetworkTopic("topic1", connection);
+            NetworkTopic topic2 = new NetworkTopic("topic2", connection);
+            topic1.connect(endpoint()).join();
+            topic2.connect(endpoint()).join();
+            assertThat(connection.sockets(), is(1));
+
+            for (int i = 0; i < 10; i++) {
+                topic1.write(id1, Message.withBodyAsString("one " + i).build()).join();
+                topic2.write(id2, Message.withBodyAsString("two " + i).build()).join();
+            }
+            assertThat(topic1.read(id1, 0, 20).join().size(), is(10));
+            assertThat(topic2.read(id2, 0, 20).join().size(), is(10));
+            assertThat(topic2.read(id2, 9, 1).join().iterator().next().bodyAsString(), is("two 9"));
+
+            topic1.close();
+            assertThat(topic2.read(id2, 0, 1).join().size(), is(1));
+            topic2.close();
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testServersRejectingTheHandshakeGetASocketPerConnection() throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        try (MultiplexedConnection connection = new MultiplexedConnection()) {
+            // Selects protocols as servers that do not multiplex do, answering the handshake with an Error
+            ProtocolSelector protocolSelector = new ProtocolSelector();
+            InetSocketAddress endpoint = serve(group, new ChannelInitializer<Channel>() {
+                @Override
+                protected void initChannel(final Channel ch) throws Exception {
+                    ch.pipeline().addLast(new ChunkedFrameDecoder(MultiplexedConnection.MAX_FRAME_LENGTH,
+                            MultiplexedConnection.MAX_CHUNKED_FRAME_LENGTH));
+                    ch.pipeline().addLast(new ChunkedFrameEncoder(MultiplexedConnection.MAX_FRAME_LENGTH));
+                    ch.pipeline().addLast(protocolSelector);
+                }
+            });
+            Channel channel = connection.open(endpoint, new ChannelInboundHandlerAdapter()).join();
+            assertThat(channel.isActive(), is(true));
+            assertThat(connection.sockets(), is(0));
+            channel.close().sync();
+        } finally {
+            group.shutdownGracefully().sync();
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testLostHandshakesAreTriedAgain() throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        try (MultiplexedConnection connection = new MultiplexedConnection()) {
+            InetSocketAddress endpoint = serve(group, new ChannelInboundHandlerAdapter() {
+                @Override
+                public void channelActive(final ChannelHandlerContext ctx) throws Exception {
+                    ctx.close();
+                }
+
+                @Override
+                public boolean isSharable() {
+                    return true;
+                }
+            });
+            // Were the endpoint taken not to multiplex, the second open would connect a socket of its own
+            for (int i = 0; i < 2; i++) {
+                try {
+                    connection.open(endpoint, new ChannelInboundHandlerAdapter()).join();
+                    throw new AssertionError("Expected the open to fail");
+                } catch (CompletionException expected) {
+                    assertThat(connection.sockets(), is(0));
+                }
+            }
+        } finally {
+            group.shutdownGracefully().sync();
+        }
+    }
+
+    private InetSocketAddress serve(EventLoopGroup group, ChannelHandler handler) throws InterruptedException {
+        Channel server = new ServerBootstrap().group(group).channel(NioServerSocketChannel.class).childHandler(handler)
+                                              .bind("localhost", 0).sync().channel();
+        return (InetSocketAddress) server.localAddress();
+    }
+
+    private InetSocketAddress endpoint() {
+        return new InetSocketAddress("localhost", port);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.network.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class ReconnectBufferTest {
+
+    @Test
+    public void testRequestsAreReplayedInOrder() throws Exception {
+        ReconnectBuffer buffer = new ReconnectBuffer(10, OverflowPolicy.FAIL);
+        List<Integer> sent = new ArrayList<>();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int request = i;
+            futures.add(buffer.submit(() -> {
+                sent.add(request);
+                return CompletableFuture.completedFuture(request);
+            }));
+        }
+        assertThat(sent, is(empty()));
+        assertThat(buffer.buffered(), is(5));
+        buffer.open();
+        assertThat(sent, contains(0, 1, 2, 3, 4));
+        assertThat(futures.get(4).join(), is(4));
+        assertThat(buffer.submit(() -> CompletableFuture.completedFuture(5)).join(), is(5));
+    }
+
+    @Test
+    public void testFailPolicyRejectsOverflow() throws Exception {
+        ReconnectBuffer buffer = new ReconnectBuffer(1, OverflowPolicy.FAIL);
+        CompletableFuture<Integer> first = buffer.submit(() -> CompletableFuture.completedFuture(1));
+        CompletableFuture<Integer> second = buffer.submit(() -> CompletableFuture.completedFuture(2));
+        assertThat(first.isDone(), is(false));
+        assertThat(second.isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    public void testDropOldestPolicyMakesRoom() throws Exception {
+        ReconnectBuffer buffer = new ReconnectBuffer(1, OverflowPolicy.DROP_OLDEST);
+        CompletableFuture<Integer> first = buffer.submit(() -> CompletableFuture.completedFuture(1));
+        CompletableFuture<Integer> second = buffer.submit(() -> CompletableFuture.completedFuture(2));
+        assertThat(first.isCompletedExceptionally(), is(true));
+        buffer.open();
+        assertThat(second.join(), is(2));
+    }
+
+    @Test(timeOut = 5000)
+    public void testBlockPolicyWaitsForConnection() throws Exception {
+        ReconnectBuffer buffer = new ReconnectBuffer(1, OverflowPolicy.BLOCK);
+        buffer.submit(() -> CompletableFuture.completedFuture(1));
+        CountDownLatch submitted = new CountDownLatch(1);
+        new Thread(() -> {
+            buffer.submit(() -> CompletableFuture.completedFuture(2));
+            submitted.countDown();
+        }).start();
+        assertThat(submitted.await(100, TimeUnit.MILLISECONDS), is(false));
+        buffer.open();
+        assertThat(submitted.await(1, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void testPausedBufferHoldsRequestsAgain() throws Exception {
+        ReconnectBuffer buffer = new ReconnectBuffer(10, OverflowPolicy.FAIL);
+        buffer.open();
+        buffer.pause();
+        CompletableFuture<Integer> future = buffer.submit(() -> CompletableFuture.completedFuture(1));
+        assertThat(future.isDone(), is(false));
+        buffer.failAll(new IllegalStateException("closed"));
+        assertThat(future.isCompletedExceptionally(), is(true));
+    }
+}
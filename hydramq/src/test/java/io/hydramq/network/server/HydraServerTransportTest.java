@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.network.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletionException;
+
+import io.hydramq.core.net.netty.Transport;
+import io.hydramq.exceptions.HydraRuntimeException;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.testng.Assert.fail;
+
+/**
+ * @author jfulton
+ */
+public class HydraServerTransportTest {
+
+    @Test
+    public void testAcceptorsShareTheBoundPort() throws Exception {
+        HydraServerTransport transport = new HydraServerTransport(new ProtocolSelector(), 0).acceptors(2);
+        int port = transport.start().join();
+        assertThat(port, greaterThan(0));
+        for (int i = 0; i < 2; i++) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("localhost", port), 1000);
+                assertThat(socket.isConnected(), is(true));
+            }
+        }
+        transport.stop().join();
+    }
+
+    @Test
+    public void testNioTransport() throws Exception {
+        HydraServerTransport transport = new HydraServerTransport(new ProtocolSelector(), 0).transport(Transport.NIO);
+        int port = transport.start().join();
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", port), 1000);
+            assertThat(socket.isConnected(), is(true));
+        }
+        transport.stop().join();
+    }
+
+    @Test
+    public void testDomainSocketNeedsEpoll() throws Exception {
+        int port = freePort();
+        Path socketPath = Paths.get(System.getProperty("java.io.tmpdir"), "hydramq-" + System.nanoTime() + ".sock");
+        HydraServerTransport transport = new HydraServerTransport(new ProtocolSelector(), port)
+                .transport(Transport.NIO).domainSocket(socketPath);
+        try {
+            transport.start().join();
+            fail(HydraRuntimeException.class.getSimpleName() + " expected");
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), instanceOf(HydraRuntimeException.class));
+        }
+        assertThat(Files.exists(socketPath), is(false));
+        assertPortIsFree(port);
+        transport.stop().join();
+    }
+
+    @Test
+    public void testFailedStartReleasesBoundPort() throws Exception {
+        String localName = "hydramq-" + System.nanoTime();
+        HydraServerTransport first = new HydraServerTransport(new ProtocolSelector(), 0).transport(Transport.NIO)
+                                                                                       .local(localName);
+        first.start().join();
+        int port = freePort();
+        HydraServerTransport second = new HydraServerTransport(new ProtocolSelector(), port).transport(Transport.NIO)
+                                                                                            .local(localName);
+        try {
+            second.start().join();
+            fail("Binding a local name twice should fail");
+        } catch (CompletionException expected) {
+        }
+        assertPortIsFree(port);
+        second.stop().join();
+        first.stop().join();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void assertPortIsFree(int port) throws IOException {
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.setReuseAddress(true);
+            socket.bind(new InetSocketAddress(port));
+        }
+    }
+}
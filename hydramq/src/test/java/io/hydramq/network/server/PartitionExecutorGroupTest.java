@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.hydramq.network.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.hydramq.PartitionId;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class PartitionExecutorGroupTest {
+
+    @Test
+    public void testPartitionsArePinnedToOneExecutor() throws Exception {
+        try (PartitionExecutorGroup group = new PartitionExecutorGroup(4)) {
+            assertThat(group.size(), is(4));
+            for (int i = 0; i < 100; i++) {
+                PartitionId partitionId = PartitionId.create();
+                assertThat(group.executor(partitionId), sameInstance(group.executor(partitionId)));
+                assertThat(group.executor(PartitionId.create(partitionId.getUUID())),
+                        sameInstance(group.executor(partitionId)));
+            }
+        }
+    }
+
+    @Test
+    public void testOperationsOnAPartitionRunInOrderOffTheCallingThread() throws Exception {
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(1000);
+        PartitionId partitionId = PartitionId.create();
+        try (PartitionExecutorGroup group = new PartitionExecutorGroup(4)) {
+            for (int i = 0; i < 1000; i++) {
+                int operation = i;
+                group.executor(partitionId).execute(() -> {
+                    order.add(operation);
+                    threads.add(Thread.currentThread());
+                    latch.countDown();
+                });
+            }
+            assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertThat(order.get(i), is(i));
+            assertThat(threads.get(i), not(Thread.currentThread()));
+        }
+    }
+
+    @Test
+    public void testInlineGroupRunsOnTheCallingThread() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        PartitionExecutorGroup.inline().executor(PartitionId.create()).execute(() -> threads.add(Thread.currentThread()));
+        assertThat(threads, contains(Thread.currentThread()));
+    }
+}
@@ -19,12 +19,34 @@
 
 package io.hydramq.network.server;
 
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import io.hydramq.Message;
+import io.hydramq.PartitionId;
+import io.hydramq.Topic;
 import io.hydramq.TopicManager;
+import io.hydramq.core.net.Command;
+import io.hydramq.core.net.protocols.topic.BatchWriteRequest;
+import io.hydramq.core.net.protocols.topic.PartitionIdWriteRequest;
+import io.hydramq.core.net.protocols.topic.TopicHandshake;
+import io.hydramq.core.type.ConversionContext;
+import io.hydramq.core.type.converters.LazyMessage;
+import io.hydramq.exceptions.HydraRuntimeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.mockito.Mockito;
 import org.testng.annotations.Test;
 
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
 /**
@@ -37,4 +59,92 @@ public class TopicProtocolTest {
         TopicProtocol protocol = new TopicProtocol(Mockito.mock(TopicManager.class));
         MatcherAssert.assertThat(protocol.getConversionContext(), is(Matchers.notNullValue()));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFailedWriteReleasesPooledMessage() throws Exception {
+        List<ByteBuf> written = new ArrayList<>();
+        EmbeddedChannel channel = connect(failingTopic(written, false));
+        channel.writeInbound(encode(new PartitionIdWriteRequest(2, PartitionId.create(), message())));
+        assertThat(written.size(), is(1));
+        assertThat(written.get(0).refCnt(), is(0));
+        channel.finish();
+    }
+
+    @Test
+    public void testRejectedWriteReleasesPooledMessage() throws Exception {
+        List<ByteBuf> written = new ArrayList<>();
+        EmbeddedChannel channel = connect(failingTopic(written, true));
+        channel.writeInbound(encode(new PartitionIdWriteRequest(2, PartitionId.create(), message())));
+        assertThat(written.size(), is(1));
+        assertThat(written.get(0).refCnt(), is(0));
+        channel.finish();
+    }
+
+    @Test
+    public void testFailedBatchWriteReleasesPooledMessages() throws Exception {
+        List<ByteBuf> written = new ArrayList<>();
+        EmbeddedChannel channel = connect(failingTopic(written, false));
+        Map<PartitionId, List<Message>> batch = new HashMap<>();
+        batch.put(PartitionId.create(), Arrays.asList(message(), message()));
+        batch.put(PartitionId.create(), Arrays.asList(message()));
+        channel.writeInbound(encode(new BatchWriteRequest(2, batch)));
+        assertThat(written.size(), is(3));
+        for (ByteBuf encoded : written) {
+            assertThat(encoded.refCnt(), is(0));
+        }
+        channel.finish();
+    }
+
+    private static Message message() {
+        return Message.withBodyAsString("Hello World!").withString("key", "value").build();
+    }
+
+    private static ByteBuf encode(Command command) {
+        ByteBuf buffer = Unpooled.buffer();
+        ConversionContext.topicProtocol().write(command, buffer);
+        return buffer;
+    }
+
+    private static EmbeddedChannel connect(Topic topic) {
+        TopicManager topicManager = (TopicManager) Proxy.newProxyInstance(TopicManager.class.getClassLoader(),
+                new Class<?>[]{TopicManager.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("topic")) {
+                        return topic;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        EmbeddedChannel channel = new EmbeddedChannel(new TopicProtocol(topicManager));
+        channel.writeInbound(encode(new TopicHandshake(1, 1, "topic", new HashMap<>())));
+        return channel;
+    }
+
+    /**
+     * @return a topic failing every write, or throwing if rejecting, that collects the encoded bytes of the pooled
+     * messages written to it
+     */
+    @SuppressWarnings("unchecked")
+    private static Topic failingTopic(List<ByteBuf> written, boolean rejecting) {
+        return (Topic) Proxy.newProxyInstance(Topic.class.getClassLoader(), new Class<?>[]{Topic.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "discoverPartitions":
+                            return null;
+                        case "write":
+                            if (args[0] instanceof Map) {
+                                ((Map<PartitionId, List<Message>>) args[0]).values().forEach(messages ->
+                                        messages.forEach(message -> written.add(((LazyMessage) message).encoded())));
+                            } else {
+                                written.add(((LazyMessage) args[1]).encoded());
+                            }
+                            if (rejecting) {
+                                throw new HydraRuntimeException("Topic is closed");
+                            }
+                            CompletableFuture<Void> future = new CompletableFuture<>();
+                            future.completeExceptionally(new HydraRuntimeException("Disk unavailable"));
+                            return future;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright © 2016-, Boku Inc., Jimmie Fulton
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package io.hydramq.readers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.hydramq.Message;
+import io.hydramq.MessageSet;
+import io.hydramq.PartitionId;
+import io.hydramq.Topic;
+import io.hydramq.TopicManager;
+import io.hydramq.TopicManagers;
+import io.hydramq.disk.PersistenceTestsBase;
+import io.hydramq.internal.util.TimerService;
+import io.hydramq.topics.TopicWrapper;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author jfulton
+ */
+public class PollingSubscriptionTest extends PersistenceTestsBase {
+
+    @Test(timeOut = 30_000)
+    public void testReadsArePipelinedAndDeliveredInOrder() throws Exception {
+        int messageCount = 1000;
+        try (TopicManager topicManager = TopicManagers.disk(messageStoreDirectory())) {
+            Topic diskTopic = topicManager.topic("topic");
+            PartitionId partitionId = getPartitionId(diskTopic);
+            for (int i = 0; i < messageCount; i++) {
+                diskTopic.write(partitionId, Message.withBodyAsString("Message " + i).build()).join();
+            }
+            SlowTopic topic = new SlowTopic(diskTopic);
+            List<String> bodies = new CopyOnWriteArrayList<>();
+            CountDownLatch latch = new CountDownLatch(messageCount);
+            PollingSubscription subscription = new PollingSubscription(topic, partitionId, 0, 10, 4, (id, messageSet) -> {
+                for (Message message : messageSet) {
+                    bodies.add(message.bodyAsString());
+                    latch.countDown();
+                }
+            });
+            assertThat(latch.await(20, TimeUnit.SECONDS), is(true));
+            subscription.cancel().join();
+            for (int i = 0; i < messageCount; i++) {
+                assertThat(bodies.get(i), is("Message " + i));
+            }
+            assertThat(subscription.nextOffset(), is((long) messageCount));
+            assertThat(topic.maxOutstanding.get(), allOf(greaterThan(1), lessThanOrEqualTo(4)));
+        }
+    }
+
+    @Test(timeOut = 30_000)
+    public void testReadsAheadOfTheTailPickUpNewWrites() throws Exception {
+        try (TopicManager topicManager = TopicManagers.disk(messageStoreDirectory())) {
+            Topic diskTopic = topicManager.topic("topic");
+            PartitionId partitionId = getPartitionId(diskTopic);
+            List<String> bodies = new CopyOnWriteArrayList<>();
+            CountDownLatch latch = new CountDownLatch(100);
+            PollingSubscription subscription = new PollingSubscription(new SlowTopic(diskTopic), partitionId, 0, 10, 4,
+                    (id, messageSet) -> messageSet.forEach(message -> {
+                        bodies.add(message.bodyAsString());
+                        latch.countDown();
+                    }));
+            for (int i = 0; i < 100; i++) {
+                diskTopic.write(partitionId, Message.withBodyAsString("Message " + i).build()).join();
+            }
+            assertThat(latch.await(20, TimeUnit.SECONDS), is(true));
+            subscription.cancel().join();
+            for (int i = 0; i < 100; i++) {
+                assertThat(bodies.get(i), is("Message " + i));
+            }
+        }
+    }
+
+    @Test(timeOut = 30_000)
+    public void testReadsLeftOutstandingAtTheTailDoNotHoldBackReadsAfterAShortRead() throws Exception {
+        try (TopicManager topicManager = TopicManagers.disk(messageStoreDirectory())) {
+            Topic diskTopic = topicManager.topic("topic");
+            PartitionId partitionId = getPartitionId(diskTopic);
+            for (int i = 0; i < 15; i++) {
+                diskTopic.write(partitionId, Message.withBodyAsString("Message " + i).build()).join();
+            }
+            List<String> bodies = new CopyOnWriteArrayList<>();
+            CountDownLatch latch = new CountDownLatch(20);
+            // The reads made from 20 onwards, alongside the short read from 10, never complete
+            PollingSubscription subscription = new PollingSubscription(new HangingTopic(diskTopic, 20), partitionId, 0,
+                    10, 4, (id, messageSet) -> messageSet.forEach(message -> {
+                        bodies.add(message.bodyAsString());
+                        latch.countDown();
+                    }));
+            while (bodies.size() < 15) {
+                Thread.sleep(10);
+            }
+            for (int i = 15; i < 20; i++) {
+                diskTopic.write(partitionId, Message.withBodyAsString("Message " + i).build()).join();
+            }
+            assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+            subscription.cancel().get(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 20; i++) {
+                assertThat(bodies.get(i), is("Message " + i));
+            }
+        }
+    }
+
+    @Test(timeOut = 30_000)
+    public void testReadsLeftOutstandingAreCancelled() throws Exception {
+        try (TopicManager topicManager = TopicManagers.disk(messageStoreDirectory())) {
+            Topic diskTopic = topicManager.topic("topic");
+            PartitionId partitionId = getPartitionId(diskTopic);
+            for (int i = 0; i < 15; i++) {
+                diskTopic.write(partitionId, Message.withBodyAsString("Message " + i).build()).join();
+            }
+            HangingTopic topic = new HangingTopic(diskTopic, 20);
+            CountDownLatch latch = new CountDownLatch(25);
+            PollingSubscription subscription = new PollingSubscription(topic, partitionId, 0, 10, 4,
+                    (id, messageSet) -> messageSet.forEach(message -> latch.countDown()));
+            while (latch.getCount() > 10) {
+                Thread.sleep(10);
+            }
+            // Written at once, so that the read from 15 takes all of them, rather than reading on from 20 or later
+            List<Message> messages = new ArrayList<>();
+            for (int i = 15; i < 25; i++) {
+                messages.add(Message.withBodyAsString("Message " + i).build());
+            }
+            diskTopic.write(Collections.singletonMap(partitionId, messages)).join();
+            assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+
+            // Reads made ahead of the short read from 10 were of 20, 30 and so on; those after it, of 25 and on
+            assertThat(topic.hung.keySet(), hasItem(20L));
+            topic.hung.forEach((offset, read) -> assertThat(read.isCancelled(), is(offset % 10 == 0)));
+            while (!topic.hung.containsKey(25L)) {
+                Thread.sleep(10);
+            }
+            subscription.cancel().get(5, TimeUnit.SECONDS);
+            topic.hung.forEach((offset, read) -> assertThat(read.isCancelled(), is(true)));
+        }
+    }
+
+    /**
+     * Never answers reads from the given offset onwards.
+     */
+    private static class HangingTopic extends TopicWrapper {
+
+        private final long hangFrom;
+        private final Map<Long, CompletableFuture<MessageSet>> hung = new ConcurrentHashMap<>();
+
+        private HangingTopic(Topic wrapped, long hangFrom) {
+            super(wrapped);
+            this.hangFrom = hangFrom;
+        }
+
+        @Override
+        public CompletableFuture<MessageSet> read(PartitionId partitionId, long messageOffset, int maxMessages) {
+            if (messageOffset >= hangFrom) {
+                CompletableFuture<MessageSet> read = new CompletableFuture<>();
+                hung.put(messageOffset, read);
+                return read;
+            }
+            return super.read(partitionId, messageOffset, maxMessages);
+        }
+    }
+
+    /**
+     * Answers reads after a random delay, so that they complete out of order.
+     */
+    private static class SlowTopic extends TopicWrapper {
+
+        private final Random random = new Random();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger maxOutstanding = new AtomicInteger();
+
+        private SlowTopic(Topic wrapped) {
+            super(wrapped);
+        }
+
+        @Override
+        public CompletableFuture<MessageSet> read(PartitionId partitionId, long messageOffset, int maxMessages) {
+            maxOutstanding.accumulateAndGet(outstanding.incrementAndGet(), Math::max);
+            CompletableFuture<MessageSet> delayed = new CompletableFuture<>();
+            TimerService.shared().schedule(() -> super.read(partitionId, messageOffset, maxMessages).whenComplete((messageSet, throwable) -> {
+                outstanding.decrementAndGet();
+                if (throwable == null) {
+                    delayed.complete(messageSet);
+                } else {
+                    delayed.completeExceptionally(throwable);
+                }
+            }), Duration.ofMillis(1 + random.nextInt(20)));
+            return delayed;
+        }
+    }
+}